@@ -0,0 +1,160 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicLong;
+import org.apache.commons.lang.StringUtils;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.domain.RundeckExecution.ExecutionStatus;
+import org.rundeck.api.domain.RundeckJob;
+import org.rundeck.api.domain.RundeckNode;
+import org.rundeck.api.domain.RundeckProject;
+
+/**
+ * In-memory fake of a {@link RundeckClient} : projects, jobs and nodes defined by the benchmark, and executions
+ * finished as soon as they are triggered (not kept, so that a long benchmark doesn't fill the memory). No HTTP call,
+ * so that the benchmarks measure the plugin, not the network.
+ */
+public class InMemoryRundeckClient extends RundeckClient {
+
+    private static final long serialVersionUID = 1L;
+
+    /** jobs by RunDeck project name */
+    private final Map<String, List<RundeckJob>> jobsByProject = new LinkedHashMap<String, List<RundeckJob>>();
+
+    private final Map<String, RundeckJob> jobsById = new LinkedHashMap<String, RundeckJob>();
+
+    /** nodes by RunDeck project name */
+    private final Map<String, List<RundeckNode>> nodesByProject = new LinkedHashMap<String, List<RundeckNode>>();
+
+    private final AtomicLong lastExecutionId = new AtomicLong();
+
+    public InMemoryRundeckClient() {
+        super("http://localhost:4440", "admin", "admin");
+    }
+
+    /**
+     * Add a job (and its project, if needed). Not thread-safe : call it while setting up the benchmark.
+     */
+    public RundeckJob addJob(String id, String project, String group, String name) {
+        RundeckJob job = new RundeckJob();
+        job.setId(id);
+        job.setProject(project);
+        job.setGroup(group);
+        job.setName(name);
+        jobsById.put(id, job);
+        projectJobs(project).add(job);
+        return job;
+    }
+
+    /**
+     * Add a node to a project. Not thread-safe : call it while setting up the benchmark.
+     */
+    public RundeckNode addNode(String project, String name, String osFamily, String... tags) {
+        RundeckNode node = new RundeckNode();
+        node.setName(name);
+        node.setHostname(name + ".example.com");
+        node.setOsFamily(osFamily);
+        node.setTags(Arrays.asList(tags));
+        List<RundeckNode> nodes = nodesByProject.get(project);
+        if (nodes == null) {
+            nodes = new ArrayList<RundeckNode>();
+            nodesByProject.put(project, nodes);
+        }
+        nodes.add(node);
+        return node;
+    }
+
+    @Override
+    public void ping() {
+        // always alive
+    }
+
+    @Override
+    public void testCredentials() {
+        // always valid
+    }
+
+    @Override
+    public List<RundeckProject> getProjects() {
+        List<RundeckProject> projects = new ArrayList<RundeckProject>();
+        for (String name : jobsByProject.keySet()) {
+            RundeckProject project = new RundeckProject();
+            project.setName(name);
+            projects.add(project);
+        }
+        return projects;
+    }
+
+    @Override
+    public List<RundeckJob> getJobs(String project) {
+        List<RundeckJob> jobs = jobsByProject.get(project);
+        return jobs != null ? new ArrayList<RundeckJob>(jobs) : new ArrayList<RundeckJob>();
+    }
+
+    @Override
+    public RundeckJob getJob(String jobId) {
+        RundeckJob job = jobsById.get(jobId);
+        if (job == null) {
+            throw new RundeckApiException("Job not found : " + jobId);
+        }
+        return job;
+    }
+
+    @Override
+    public RundeckJob findJob(String project, String groupPath, String name) {
+        for (RundeckJob job : getJobs(project)) {
+            if (StringUtils.equals(StringUtils.defaultString(groupPath), StringUtils.defaultString(job.getGroup()))
+                && StringUtils.equals(name, job.getName())) {
+                return job;
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public List<RundeckNode> getNodes(String project) {
+        List<RundeckNode> nodes = nodesByProject.get(project);
+        return nodes != null ? new ArrayList<RundeckNode>(nodes) : new ArrayList<RundeckNode>();
+    }
+
+    @Override
+    public RundeckExecution triggerJob(String jobId, Properties options, Properties nodeFilters) {
+        return createExecution(lastExecutionId.incrementAndGet(), getJob(jobId));
+    }
+
+    @Override
+    public RundeckExecution getExecution(Long executionId) {
+        if (executionId == null || executionId <= 0 || executionId > lastExecutionId.get()) {
+            throw new RundeckApiException("Execution not found : " + executionId);
+        }
+        return createExecution(executionId, null);
+    }
+
+    private static RundeckExecution createExecution(Long id, RundeckJob job) {
+        RundeckExecution execution = new RundeckExecution();
+        execution.setId(id);
+        execution.setUrl("http://localhost:4440/execution/follow/" + id);
+        execution.setStatus(ExecutionStatus.SUCCEEDED);
+        execution.setStartedAt(new Date());
+        execution.setEndedAt(execution.getStartedAt());
+        execution.setJob(job);
+        return execution;
+    }
+
+    private List<RundeckJob> projectJobs(String project) {
+        List<RundeckJob> jobs = jobsByProject.get(project);
+        if (jobs == null) {
+            jobs = new ArrayList<RundeckJob>();
+            jobsByProject.put(project, jobs);
+        }
+        return jobs;
+    }
+}
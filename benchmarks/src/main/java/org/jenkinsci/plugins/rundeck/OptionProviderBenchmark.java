@@ -0,0 +1,105 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import org.jenkinsci.plugins.rundeck.OptionProvider.BuildAdapter;
+import org.jenkinsci.plugins.rundeck.OptionProvider.Option;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark the generation of the {@link OptionProvider} options (the scan of the "build" provider, against in-memory
+ * fake builds) and their JSON serialization.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class OptionProviderBenchmark {
+
+    /** Access to the fake builds, creating the options like the "build" provider */
+    private static final BuildAdapter<FakeBuild, String> ADAPTER = new BuildAdapter<FakeBuild, String>() {
+
+        public List<String> getArtifacts(FakeBuild build) {
+            return build.artifacts;
+        }
+
+        public String getFileName(String artifact) {
+            return artifact;
+        }
+
+        public Option createOption(FakeBuild build, String artifact) {
+            return new Option("#" + build.number + " - " + build.timestamp, build.url + "artifact/" + artifact);
+        }
+    };
+
+    /** Number of builds of the fake project */
+    @Param({ "10", "100", "1000" })
+    public int builds;
+
+    private List<FakeBuild> fakeBuilds;
+
+    private Pattern artifactPattern;
+
+    private List<Option> options;
+
+    @Setup
+    public void setup() {
+        fakeBuilds = new ArrayList<FakeBuild>();
+        for (int i = builds; i > 0; i--) {
+            FakeBuild build = new FakeBuild(i);
+            build.artifacts.add("lib/my-library-" + i + ".jar");
+            build.artifacts.add("my-webapp-1.2." + i + ".war");
+            build.artifacts.add("my-webapp-1.2." + i + "-dist.zip");
+            fakeBuilds.add(build);
+        }
+        artifactPattern = Pattern.compile("my-webapp-[0-9.]+\\.war");
+        options = generateOptions();
+    }
+
+    @Benchmark
+    public List<Option> generate() {
+        return generateOptions();
+    }
+
+    @Benchmark
+    public String writeJson() {
+        return OptionProvider.toJson(options);
+    }
+
+    @Benchmark
+    public String generateAndWriteJson() {
+        return OptionProvider.toJson(generateOptions());
+    }
+
+    private List<Option> generateOptions() {
+        return OptionProvider.generateBuildOptions(fakeBuilds, ADAPTER, null, artifactPattern, null);
+    }
+
+    /**
+     * In-memory fake of a Jenkins build : just what the option provider needs
+     */
+    private static class FakeBuild {
+
+        private final int number;
+
+        private final String timestamp;
+
+        private final String url;
+
+        private final List<String> artifacts = new ArrayList<String>();
+
+        private FakeBuild(int number) {
+            this.number = number;
+            this.timestamp = "2011-07-08 21:03:" + (number % 60);
+            this.url = "http://localhost:8080/job/my-project/" + number + "/";
+        }
+    }
+}
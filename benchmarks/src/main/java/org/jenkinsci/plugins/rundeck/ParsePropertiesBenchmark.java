@@ -0,0 +1,74 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.EnvVars;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.output.NullOutputStream;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark the parsing of the {@link RundeckNotifier} options / node filters, with the expansion of the Jenkins
+ * environment variables and of the $ARTIFACT_NAME{regex} tokens, against a fake build.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class ParsePropertiesBenchmark {
+
+    /** Number of artifacts of the fake build */
+    @Param({ "1", "100", "1000" })
+    public int artifacts;
+
+    private String options;
+
+    private String optionsWithArtifactTokens;
+
+    private EnvVars envVars;
+
+    private List<String> artifactFileNames;
+
+    private PrintStream logger;
+
+    @Setup
+    public void setup() {
+        options = "# deploy options\n" + "option1=value 1\n" + "workspace=$WORKSPACE\n" + "jobName=$JOB_NAME\n"
+                  + "buildNumber=$BUILD_NUMBER\n" + "url=${BUILD_URL}artifact/\n";
+        optionsWithArtifactTokens = options + "war=$ARTIFACT_NAME{my-webapp-[0-9.]+\\.war}\n"
+                                    + "zip=$ARTIFACT_NAME{.*-dist\\.zip}\n";
+
+        envVars = new EnvVars();
+        envVars.put("WORKSPACE", "/var/lib/jenkins/jobs/my project name/workspace");
+        envVars.put("JOB_NAME", "my project name");
+        envVars.put("BUILD_NUMBER", "1234");
+        envVars.put("BUILD_URL", "http://localhost:8080/job/my%20project%20name/1234/");
+
+        artifactFileNames = new ArrayList<String>();
+        for (int i = 0; i < artifacts - 2; i++) {
+            artifactFileNames.add("lib/my-library-" + i + ".jar");
+        }
+        artifactFileNames.add("my-webapp-1.2.3.war");
+        artifactFileNames.add("my-webapp-1.2.3-dist.zip");
+
+        logger = new PrintStream(new NullOutputStream());
+    }
+
+    @Benchmark
+    public Properties expandEnvVars() {
+        return RundeckNotifier.parseProperties(options, envVars, artifactFileNames, logger);
+    }
+
+    @Benchmark
+    public Properties expandArtifactTokens() {
+        return RundeckNotifier.parseProperties(optionsWithArtifactTokens, envVars, artifactFileNames, logger);
+    }
+}
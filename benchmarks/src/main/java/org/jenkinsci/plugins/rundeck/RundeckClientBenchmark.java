@@ -0,0 +1,117 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.domain.RundeckJob;
+import org.rundeck.api.domain.RundeckNode;
+
+/**
+ * Benchmark the plugin code running on each call to RunDeck, against an {@link InMemoryRundeckClient} : the job
+ * lookups in the {@link RundeckJobCatalog}, the node filters evaluated by the {@link RundeckNodeInventory}, and the
+ * overhead of the {@link GuardedRundeckClient} (rate limiter and circuit breaker) on a trigger.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RundeckClientBenchmark {
+
+    private static final int PROJECTS = 10;
+
+    /** Number of jobs of the fake RunDeck instance (spread over the projects) */
+    @Param({ "100", "1000", "10000" })
+    public int jobs;
+
+    /** Number of nodes of each RunDeck project */
+    @Param({ "10", "100" })
+    public int nodes;
+
+    private InMemoryRundeckClient rundeck;
+
+    private GuardedRundeckClient guardedRundeck;
+
+    private RundeckJobCatalog catalog;
+
+    private RundeckNodeInventory inventory;
+
+    private String lastJobId;
+
+    private String lastJobReference;
+
+    private Properties nodeFilters;
+
+    private final Properties options = new Properties();
+
+    @Setup
+    public void setup() throws Exception {
+        rundeck = new InMemoryRundeckClient();
+        for (int i = 0; i < jobs; i++) {
+            RundeckJob job = rundeck.addJob("2027ce89-7924-4ecf-a963-" + (100000000000L + i),
+                                            "project-" + (i % PROJECTS),
+                                            "main-group/group-" + (i % 7),
+                                            "job-" + i);
+            lastJobId = job.getId();
+            lastJobReference = RundeckJobCatalog.getReference(job);
+        }
+        for (int i = 0; i < nodes; i++) {
+            String osFamily = i % 2 == 0 ? "unix" : "windows";
+            rundeck.addNode("project-0", "web" + i, osFamily, "web", i % 3 == 0 ? "prod" : "test");
+        }
+        guardedRundeck = new GuardedRundeckClient(rundeck,
+                                                  new RundeckCircuitBreaker(5, 30000L),
+                                                  new RundeckRateLimiter(1e9, 1000),
+                                                  0);
+        catalog = new RundeckJobCatalog();
+        catalog.refresh(rundeck);
+        inventory = new RundeckNodeInventory();
+        inventory.getNodes(rundeck, "project-0");
+        nodeFilters = new Properties();
+        nodeFilters.setProperty("tags", "web+prod");
+        nodeFilters.setProperty("exclude-os-family", "windows");
+        options.setProperty("version", "1.2.3");
+    }
+
+    @Benchmark
+    public int refreshCatalog() throws Exception {
+        return catalog.refresh(rundeck);
+    }
+
+    @Benchmark
+    public RundeckJob findJobById() {
+        return catalog.findJob(lastJobId);
+    }
+
+    @Benchmark
+    public RundeckJob findJobByReference() {
+        return catalog.findJob(lastJobReference);
+    }
+
+    @Benchmark
+    public List<RundeckJob> findJobsByPrefix() {
+        return catalog.findJobsByPrefix("project-3:main-group/group-2/job-1", 20);
+    }
+
+    @Benchmark
+    public List<RundeckNode> findMatchingNodes() throws Exception {
+        return inventory.findMatchingNodes(rundeck, "project-0", nodeFilters);
+    }
+
+    @Benchmark
+    public RundeckExecution triggerJob() {
+        return rundeck.triggerJob(lastJobId, options, nodeFilters);
+    }
+
+    @Benchmark
+    public RundeckExecution guardedTriggerJob() {
+        return guardedRundeck.triggerJob(lastJobId, options, nodeFilters);
+    }
+}
@@ -0,0 +1,85 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.domain.RundeckExecution.ExecutionStatus;
+import org.rundeck.api.domain.RundeckJob;
+
+/**
+ * Benchmark the matching of a RunDeck notification against the configuration of a {@link RundeckTrigger}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RundeckTriggerBenchmark {
+
+    /** Number of job identifiers configured on the trigger (UUIDs, followed by a single job reference) */
+    @Param({ "2", "10", "100" })
+    public int identifiers;
+
+    private RundeckTrigger trigger;
+
+    private RundeckExecution matchingByUuid;
+
+    private RundeckExecution matchingByReference;
+
+    private RundeckExecution notMatching;
+
+    @Setup
+    public void setup() {
+        List<String> jobsIdentifiers = new ArrayList<String>();
+        for (int i = 0; i < identifiers - 1; i++) {
+            jobsIdentifiers.add("2027ce89-7924-4ecf-a963-" + (100000000000L + i));
+        }
+        jobsIdentifiers.add("my-project:main-group/sub-group/deploy");
+        trigger = new RundeckTrigger(true, jobsIdentifiers, Arrays.asList("SUCCEEDED", "FAILED"));
+
+        // worst cases : the matching identifiers are at the end of the list
+        matchingByUuid = createExecution(jobsIdentifiers.get(identifiers - 2), "my-project", "group", "build");
+        matchingByReference = createExecution("2027ce89-7924-4ecf-a963-30090ada834f",
+                                              "my-project",
+                                              "main-group/sub-group",
+                                              "deploy");
+        notMatching = createExecution("another-uuid", "another-project", "group", "another-job");
+    }
+
+    @Benchmark
+    public boolean matchByUuid() {
+        return trigger.shouldScheduleBuild(matchingByUuid);
+    }
+
+    @Benchmark
+    public boolean matchByReference() {
+        return trigger.shouldScheduleBuild(matchingByReference);
+    }
+
+    @Benchmark
+    public boolean noMatch() {
+        return trigger.shouldScheduleBuild(notMatching);
+    }
+
+    private static RundeckExecution createExecution(String jobId, String project, String group, String name) {
+        RundeckJob job = new RundeckJob();
+        job.setId(jobId);
+        job.setProject(project);
+        job.setGroup(group);
+        job.setName(name);
+
+        RundeckExecution execution = new RundeckExecution();
+        execution.setId(42L);
+        execution.setStatus(ExecutionStatus.SUCCEEDED);
+        execution.setJob(job);
+        return execution;
+    }
+}
@@ -0,0 +1,40 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.io.IOUtils;
+import org.dom4j.Node;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.parser.ExecutionParser;
+
+/**
+ * Benchmark the parsing of the RunDeck WebHook notification payload by the {@link WebHookListener}
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class WebHookListenerBenchmark {
+
+    private final ExecutionParser executionParser = new ExecutionParser();
+
+    private byte[] payload;
+
+    @Setup
+    public void setup() throws IOException {
+        payload = IOUtils.toByteArray(getClass().getResourceAsStream("notification.xml"));
+    }
+
+    @Benchmark
+    public RundeckExecution parseNotification() {
+        Node executionNode = WebHookListener.parseExecutionNodes(new ByteArrayInputStream(payload)).get(0);
+        return executionParser.parseXmlNode(executionNode);
+    }
+}
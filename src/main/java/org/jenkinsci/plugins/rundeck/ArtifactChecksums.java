@@ -0,0 +1,240 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Util;
+import hudson.model.Run;
+import hudson.model.Run.Artifact;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * SHA-256 checksums of the build artifacts, for the {@link OptionProvider}. Each checksum is computed once (by
+ * hashing the memory-mapped file), and stored in a "rundeck-checksums.properties" file in the directory of the build,
+ * so that the next requests (even after a restart) get it for free. The most recently used checksums are also kept
+ * in memory.
+ */
+public class ArtifactChecksums {
+
+    private static final Logger LOGGER = Logger.getLogger(ArtifactChecksums.class.getName());
+
+    private static final ArtifactChecksums INSTANCE = new ArtifactChecksums();
+
+    private static final String CACHE_FILE_NAME = "rundeck-checksums.properties";
+
+    /** Size of the regions of the file mapped in memory at once */
+    private static final long MAPPED_REGION_SIZE = 64 * 1024 * 1024;
+
+    /** Number of checksums kept in memory */
+    private static final int MEMORY_CACHE_SIZE = 1000;
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    /** checksums, by artifact file - the least recently used are evicted */
+    private final Map<File, Checksum> memoryCache = new LinkedHashMap<File, Checksum>(16, 0.75f, true) {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<File, Checksum> eldest) {
+            return size() > MEMORY_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * @return the checksums shared by all option providers
+     */
+    public static ArtifactChecksums get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Get the checksum of the given artifact, from the cache or by hashing it
+     * 
+     * @param build of the artifact
+     * @param artifact to hash
+     * @return the checksum, or null if the artifact can't be read
+     */
+    public Checksum getChecksum(Run<?, ?> build, Artifact artifact) {
+        RundeckMetrics metrics = RundeckMetrics.get();
+        File file = artifact.getFile();
+        long size = file.length();
+        long lastModified = file.lastModified();
+
+        Checksum checksum;
+        synchronized (memoryCache) {
+            checksum = memoryCache.get(file);
+        }
+        if (checksum == null) {
+            checksum = loadChecksum(build, artifact.relativePath);
+        }
+        if (checksum != null && checksum.matches(size, lastModified)) {
+            metrics.checksumCacheHits.increment();
+        } else {
+            metrics.checksumCacheMisses.increment();
+            long start = System.nanoTime();
+            try {
+                checksum = new Checksum(sha256(file), size, lastModified);
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to compute the checksum of " + file, e);
+                return null;
+            } finally {
+                metrics.checksumDuration.observeSince(start);
+            }
+            storeChecksum(build, artifact.relativePath, checksum);
+        }
+        synchronized (memoryCache) {
+            memoryCache.put(file, checksum);
+        }
+        return checksum;
+    }
+
+    /**
+     * Compute the SHA-256 digest of the given file, by mapping it in memory (region by region)
+     * 
+     * @return the hexadecimal digest
+     */
+    static String sha256(File file) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            long size = channel.size();
+            for (long position = 0; position < size; position += MAPPED_REGION_SIZE) {
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY,
+                                                      position,
+                                                      Math.min(MAPPED_REGION_SIZE, size - position));
+                digest.update(region);
+            }
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    private Checksum loadChecksum(Run<?, ?> build, String relativePath) {
+        File cacheFile = new File(build.getRootDir(), CACHE_FILE_NAME);
+        if (!cacheFile.isFile()) {
+            return null;
+        }
+        synchronized (this) {
+            Properties checksums = readCacheFile(cacheFile);
+            return Checksum.parse(checksums.getProperty(relativePath));
+        }
+    }
+
+    private synchronized void storeChecksum(Run<?, ?> build, String relativePath, Checksum checksum) {
+        File cacheFile = new File(build.getRootDir(), CACHE_FILE_NAME);
+        Properties checksums = readCacheFile(cacheFile);
+        checksums.setProperty(relativePath, checksum.format());
+        OutputStream output = null;
+        try {
+            output = new FileOutputStream(cacheFile);
+            checksums.store(output, "SHA-256 checksums of the artifacts, for the RunDeck option provider");
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to store the checksums in " + cacheFile, e);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    private static Properties readCacheFile(File cacheFile) {
+        Properties checksums = new Properties();
+        if (!cacheFile.isFile()) {
+            return checksums;
+        }
+        InputStream input = null;
+        try {
+            input = new FileInputStream(cacheFile);
+            checksums.load(input);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the checksums in " + cacheFile, e);
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+        return checksums;
+    }
+
+    /**
+     * Checksum of an artifact, with the size and date of the file when it was computed
+     */
+    public static class Checksum {
+
+        private final String sha256;
+
+        private final long size;
+
+        private final long lastModified;
+
+        public Checksum(String sha256, long size, long lastModified) {
+            this.sha256 = sha256;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        /**
+         * @return true if this checksum has been computed for a file of the given size and date
+         */
+        public boolean matches(long fileSize, long fileLastModified) {
+            return size == fileSize && lastModified == fileLastModified;
+        }
+
+        public String getSha256() {
+            return sha256;
+        }
+
+        public long getSize() {
+            return size;
+        }
+
+        /**
+         * @return "SHA256 SIZE LASTMODIFIED"
+         */
+        String format() {
+            return sha256 + " " + size + " " + lastModified;
+        }
+
+        /**
+         * @param value in the format of {@link #format()} - may be null
+         * @return the checksum, or null if the value is not valid
+         */
+        static Checksum parse(String value) {
+            String[] parts = StringUtils.split(Util.fixNull(value), ' ');
+            if (parts.length != 3) {
+                return null;
+            }
+            try {
+                return new Checksum(parts[0], Long.parseLong(parts[1]), Long.parseLong(parts[2]));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+    }
+}
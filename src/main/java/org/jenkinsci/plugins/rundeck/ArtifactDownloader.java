@@ -0,0 +1,297 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Util;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.Run;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.URLDecoder;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import javax.servlet.http.HttpServletResponse;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Serves the artifacts of the builds to the RunDeck nodes, at /plugin/rundeck/download/PROJECT/BUILD/PATH (see the
+ * "directDownload" parameter of the {@link OptionProvider}).<br>
+ * Unlike the generic "artifact/" URLs, it is built for many nodes downloading the same artifact at once : the file is
+ * sent with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, HTTP Range requests are supported (so
+ * that an interrupted download can be resumed), the responses have a strong ETag and long cache headers (the
+ * artifacts of a build never change), and the number of concurrent downloads of a given artifact is limited.
+ */
+public class ArtifactDownloader {
+
+    /** Maximum number of concurrent downloads of a given artifact - can be changed with a system property */
+    private static final int MAX_CONCURRENT_DOWNLOADS = Integer.getInteger(ArtifactDownloader.class.getName()
+                                                                           + ".maxConcurrentDownloads", 20);
+
+    /** Maximum time to wait for a download slot, before answering "503 Service Unavailable" */
+    private static final long SLOT_TIMEOUT_SECONDS = 30;
+
+    /** 1 year, the artifacts of a given build never change */
+    private static final long CACHE_MAX_AGE_SECONDS = 365L * 24 * 60 * 60;
+
+    /** Maximum number of bytes sent by a single transferTo call */
+    private static final long TRANSFER_CHUNK_SIZE = 8 * 1024 * 1024;
+
+    private static final Pattern RANGE_PATTERN = Pattern.compile("^bytes=(\\d*)-(\\d*)$");
+
+    /** download slots, by artifact file - removed when nobody uses them */
+    private final Map<File, DownloadSlots> slots = new HashMap<File, DownloadSlots>();
+
+    /** maximum time to wait for a download slot - shortened by the tests */
+    long slotTimeoutSeconds = SLOT_TIMEOUT_SECONDS;
+
+    public void doDynamic(StaplerRequest request, StaplerResponse response) throws IOException {
+        // "/PROJECT/BUILD/PATH"
+        String[] parts = StringUtils.split(request.getRestOfPath(), "/", 3);
+        if (parts.length < 3) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "The URL should be /download/PROJECT/BUILD/PATH !");
+            return;
+        }
+        AbstractProject<?, ?> project = Hudson.getInstance().getItemByFullName(decode(parts[0]),
+                                                                               AbstractProject.class);
+        if (project == null || !project.hasPermission(Item.READ)) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown project : " + decode(parts[0]) + " !");
+            return;
+        }
+        Run<?, ?> build = null;
+        try {
+            build = project.getBuildByNumber(Integer.parseInt(parts[1]));
+        } catch (NumberFormatException e) {
+            // not a build number
+        }
+        if (build == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown build : " + parts[1] + " !");
+            return;
+        }
+        File file = resolveArtifact(build, decode(parts[2]));
+        if (file == null) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND, "Unknown artifact : " + decode(parts[2]) + " !");
+            return;
+        }
+
+        DownloadSlots artifactSlots = acquireSlots(file);
+        try {
+            if (!artifactSlots.semaphore.tryAcquire(slotTimeoutSeconds, TimeUnit.SECONDS)) {
+                RundeckMetrics.get().downloadsRejected.increment();
+                response.setHeader("Retry-After", String.valueOf(slotTimeoutSeconds));
+                response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent downloads of "
+                                                                               + file.getName() + " !");
+                return;
+            }
+            RundeckMetrics.get().downloadsActive.add(1);
+            try {
+                serve(file, build, request, response);
+            } finally {
+                RundeckMetrics.get().downloadsActive.add(-1);
+                artifactSlots.semaphore.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Interrupted !");
+        } finally {
+            releaseSlots(file, artifactSlots);
+        }
+    }
+
+    /**
+     * Send the given artifact (or the requested range) with the cache headers
+     */
+    private void serve(File file, Run<?, ?> build, StaplerRequest request, StaplerResponse response)
+            throws IOException {
+        long length = file.length();
+        long lastModified = file.lastModified();
+        String etag = "\"" + build.getNumber() + "-" + Long.toHexString(length) + "-" + Long.toHexString(lastModified)
+                      + "\"";
+        response.setHeader("ETag", etag);
+        response.setHeader("Cache-Control", "public, max-age=" + CACHE_MAX_AGE_SECONDS);
+        response.setHeader("Accept-Ranges", "bytes");
+        response.setDateHeader("Last-Modified", lastModified);
+        if (matchesETag(request.getHeader("If-None-Match"), etag)) {
+            response.setStatus(HttpServletResponse.SC_NOT_MODIFIED);
+            return;
+        }
+
+        long start = 0;
+        long end = length - 1;
+        String range = request.getHeader("Range");
+        String ifRange = request.getHeader("If-Range");
+        if (range != null && (ifRange == null || ifRange.equals(etag))) {
+            long[] bounds = parseRange(range, length);
+            if (bounds == null) {
+                response.setHeader("Content-Range", "bytes */" + length);
+                response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE,
+                                   "Invalid range : " + range + " !");
+                return;
+            }
+            if (bounds.length == 2) {
+                start = bounds[0];
+                end = bounds[1];
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setHeader("Content-Range", "bytes " + start + "-" + end + "/" + length);
+            }
+        }
+
+        String contentType = Hudson.getInstance().servletContext.getMimeType(file.getName());
+        response.setContentType(contentType != null ? contentType : "application/octet-stream");
+        // setContentLength() only takes an int, artifacts may be bigger than 2 GB
+        response.setHeader("Content-Length", String.valueOf(end - start + 1));
+        if ("HEAD".equals(request.getMethod()) || length == 0) {
+            return;
+        }
+
+        FileInputStream input = new FileInputStream(file);
+        try {
+            FileChannel channel = input.getChannel();
+            OutputStream output = response.getOutputStream();
+            WritableByteChannel target = Channels.newChannel(output);
+            long position = start;
+            while (position <= end) {
+                long sent = channel.transferTo(position, Math.min(TRANSFER_CHUNK_SIZE, end - position + 1), target);
+                if (sent <= 0) {
+                    break;
+                }
+                position += sent;
+                RundeckMetrics.get().downloadBytes.add(sent);
+            }
+            output.flush();
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
+    }
+
+    /**
+     * Parse a single "bytes=START-END" range (multiple ranges are not supported : the whole file is sent)
+     * 
+     * @return the first and last positions, an empty array to send the whole file, or null if not satisfiable
+     */
+    static long[] parseRange(String range, long length) {
+        Matcher matcher = RANGE_PATTERN.matcher(range.trim());
+        if (!matcher.matches()) {
+            return new long[0];
+        }
+        String first = matcher.group(1);
+        String last = matcher.group(2);
+        long start;
+        long end;
+        try {
+            if (first.length() == 0) {
+                // suffix range : the last N bytes
+                if (last.length() == 0) {
+                    return null;
+                }
+                long suffix = Long.parseLong(last);
+                start = Math.max(0, length - suffix);
+                end = length - 1;
+                if (suffix == 0) {
+                    return null;
+                }
+            } else {
+                start = Long.parseLong(first);
+                end = last.length() == 0 ? length - 1 : Math.min(Long.parseLong(last), length - 1);
+            }
+        } catch (NumberFormatException e) {
+            return null;
+        }
+        if (start >= length || start > end) {
+            return null;
+        }
+        return new long[] { start, end };
+    }
+
+    private static boolean matchesETag(String ifNoneMatch, String etag) {
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String candidate : StringUtils.split(ifNoneMatch, ',')) {
+            if (candidate.trim().equals(etag) || candidate.trim().equals("*")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the artifact file, or null if it does not exist or is not an artifact of the given build
+     */
+    private static File resolveArtifact(Run<?, ?> build, String path) throws IOException {
+        File artifactsDir = build.getArtifactsDir().getCanonicalFile();
+        File file = new File(artifactsDir, path).getCanonicalFile();
+        if (!file.getPath().startsWith(artifactsDir.getPath() + File.separator) || !file.isFile()) {
+            return null;
+        }
+        return file;
+    }
+
+    private static String decode(String value) throws UnsupportedEncodingException {
+        // the '+' are not spaces in a path
+        return URLDecoder.decode(value.replace("+", "%2B"), "UTF-8");
+    }
+
+    DownloadSlots acquireSlots(File file) {
+        synchronized (slots) {
+            DownloadSlots artifactSlots = slots.get(file);
+            if (artifactSlots == null) {
+                artifactSlots = new DownloadSlots();
+                slots.put(file, artifactSlots);
+            }
+            artifactSlots.users++;
+            return artifactSlots;
+        }
+    }
+
+    void releaseSlots(File file, DownloadSlots artifactSlots) {
+        synchronized (slots) {
+            if (--artifactSlots.users == 0) {
+                slots.remove(file);
+            }
+        }
+    }
+
+    /**
+     * Build the absolute url of the given artifact on this endpoint
+     * 
+     * @param build of the artifact
+     * @param relativePath of the artifact, in the artifacts of the build
+     * @return absolute url
+     */
+    public static String buildUrl(Run<?, ?> build, String relativePath) {
+        StringBuilder url = new StringBuilder();
+        url.append(Hudson.getInstance().getRootUrlFromRequest());
+        url.append("plugin/rundeck/download/");
+        url.append(Util.rawEncode(build.getParent().getFullName())).append('/');
+        url.append(build.getNumber()).append('/');
+        for (String part : StringUtils.split(relativePath, '/')) {
+            url.append(Util.rawEncode(part)).append('/');
+        }
+        url.setLength(url.length() - 1);
+        return url.toString();
+    }
+
+    /**
+     * Download slots of an artifact, and the number of requests using them
+     */
+    static class DownloadSlots {
+
+        final Semaphore semaphore = new Semaphore(MAX_CONCURRENT_DOWNLOADS, true);
+
+        /** guarded by the slots map */
+        private int users;
+    }
+}
@@ -0,0 +1,258 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.RunListener;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletResponse;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.lang.StringUtils;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Lets RunDeck wait for the completion of Jenkins builds, instead of polling the Jenkins JSON API : long-poll (a JSON
+ * response once all the builds are completed) or Server-Sent Events (one event per completed build), at
+ * /plugin/rundeck/completion/?project=PROJECT&build=NUMBER[&build=NUMBER...][&timeout=SECONDS][&stream=true].<br>
+ * The waiting requests are woken up by a {@link RunListener} when the builds complete, without any polling. Jenkins
+ * (Servlet 2.4) has no asynchronous requests, so each waiter holds a request thread of the container : the number of
+ * concurrent waiters is limited, and the next ones get a "503 Service Unavailable" with a Retry-After header.
+ */
+public class BuildCompletionListener {
+
+    /** Maximum number of concurrent waiters - can be changed with a system property */
+    private static final int MAX_WAITERS = Integer.getInteger(BuildCompletionListener.class.getName() + ".maxWaiters",
+                                                              200);
+
+    private static final int DEFAULT_TIMEOUT_SECONDS = 60;
+
+    private static final int MAX_TIMEOUT_SECONDS = 600;
+
+    /** Interval between 2 SSE comments, so that proxies don't close an idle stream */
+    private static final long HEARTBEAT_MILLIS = 15000;
+
+    /** queues of the waiting requests, by build key (see {@link #key(String, int)}) */
+    private static final ConcurrentMap<String, Set<BlockingQueue<Run<?, ?>>>> WAITERS =
+            new ConcurrentHashMap<String, Set<BlockingQueue<Run<?, ?>>>>();
+
+    private final Semaphore waiterSlots = new Semaphore(MAX_WAITERS);
+
+    public void doIndex(StaplerRequest request, StaplerResponse response) throws IOException {
+        AbstractProject<?, ?> project = Hudson.getInstance().getItemByFullName(request.getParameter("project"),
+                                                                               AbstractProject.class);
+        if (project == null || !project.hasPermission(Item.READ)) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "You must provide a valid 'project' parameter !");
+            return;
+        }
+        Map<String, Run<?, ?>> builds = new LinkedHashMap<String, Run<?, ?>>();
+        String[] numbers = request.getParameterValues("build");
+        for (String number : numbers != null ? numbers : new String[0]) {
+            Run<?, ?> build = null;
+            try {
+                build = project.getBuildByNumber(Integer.parseInt(number));
+            } catch (NumberFormatException e) {
+                // not a build number
+            }
+            if (build == null) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST, "Unknown build : " + number + " !");
+                return;
+            }
+            builds.put(key(project.getFullName(), build.getNumber()), build);
+        }
+        if (builds.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                               "You must provide at least one 'build' parameter !");
+            return;
+        }
+        int timeout = DEFAULT_TIMEOUT_SECONDS;
+        try {
+            timeout = Math.min(MAX_TIMEOUT_SECONDS, Integer.parseInt(request.getParameter("timeout")));
+        } catch (NumberFormatException e) {
+            // default timeout
+        }
+        boolean stream = Boolean.valueOf(request.getParameter("stream"))
+                         || StringUtils.contains(request.getHeader("Accept"), "text/event-stream");
+
+        RundeckMetrics metrics = RundeckMetrics.get();
+        if (!waiterSlots.tryAcquire()) {
+            metrics.completionRejected.increment();
+            response.setHeader("Retry-After", "5");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many clients waiting for builds !");
+            return;
+        }
+        metrics.completionWaiters.add(1);
+        long start = System.nanoTime();
+        BlockingQueue<Run<?, ?>> queue = new LinkedBlockingQueue<Run<?, ?>>();
+        try {
+            // register before checking the builds, so that we can't miss a completion
+            for (String key : builds.keySet()) {
+                register(key, queue);
+            }
+            for (Run<?, ?> build : builds.values()) {
+                if (!build.isBuilding()) {
+                    queue.offer(build);
+                }
+            }
+            if (stream) {
+                stream(builds, queue, timeout, response);
+            } else {
+                longPoll(builds, queue, timeout, response);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            for (String key : builds.keySet()) {
+                unregister(key, queue);
+            }
+            metrics.completionWaiters.add(-1);
+            metrics.completionWaitDuration.observeSince(start);
+            waiterSlots.release();
+        }
+    }
+
+    /**
+     * Wait until all the builds are completed (or the timeout), and write a single JSON response
+     */
+    private void longPoll(Map<String, Run<?, ?>> builds, BlockingQueue<Run<?, ?>> queue, int timeout,
+            StaplerResponse response) throws IOException, InterruptedException {
+        Map<String, Run<?, ?>> pending = new LinkedHashMap<String, Run<?, ?>>(builds);
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        while (!pending.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            Run<?, ?> completed = remaining > 0 ? queue.poll(remaining, TimeUnit.MILLISECONDS) : null;
+            if (completed == null) {
+                break;
+            }
+            pending.remove(key(completed.getParent().getFullName(), completed.getNumber()));
+        }
+
+        JSONArray array = new JSONArray();
+        for (Map.Entry<String, Run<?, ?>> entry : builds.entrySet()) {
+            array.add(toJson(entry.getValue(), !pending.containsKey(entry.getKey())));
+        }
+        JSONObject json = new JSONObject();
+        json.put("completed", pending.isEmpty());
+        json.put("builds", array);
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().append(json.toString());
+    }
+
+    /**
+     * Send an SSE event for each completed build, until all the builds are completed (or the timeout)
+     */
+    private void stream(Map<String, Run<?, ?>> builds, BlockingQueue<Run<?, ?>> queue, int timeout,
+            StaplerResponse response) throws IOException, InterruptedException {
+        response.setContentType("text/event-stream;charset=UTF-8");
+        response.setHeader("Cache-Control", "no-cache");
+        PrintWriter writer = response.getWriter();
+        writer.print(": waiting for " + builds.size() + " builds\n\n");
+        writer.flush();
+
+        List<String> pending = new ArrayList<String>(builds.keySet());
+        long deadline = System.currentTimeMillis() + timeout * 1000L;
+        while (!pending.isEmpty()) {
+            long remaining = deadline - System.currentTimeMillis();
+            if (remaining <= 0) {
+                writer.print("event: timeout\ndata: " + pending.size() + "\n\n");
+                break;
+            }
+            Run<?, ?> completed = queue.poll(Math.min(remaining, HEARTBEAT_MILLIS), TimeUnit.MILLISECONDS);
+            if (completed == null) {
+                writer.print(": still waiting\n\n");
+            } else if (pending.remove(key(completed.getParent().getFullName(), completed.getNumber()))) {
+                writer.print("event: completed\ndata: " + toJson(completed, true) + "\n\n");
+            }
+            writer.flush();
+            if (writer.checkError()) {
+                // the client is gone
+                return;
+            }
+        }
+        writer.flush();
+    }
+
+    private static JSONObject toJson(Run<?, ?> build, boolean completed) {
+        JSONObject json = new JSONObject();
+        json.put("project", build.getParent().getFullName());
+        json.put("number", build.getNumber());
+        json.put("completed", completed);
+        if (completed && build.getResult() != null) {
+            json.put("result", build.getResult().toString());
+            json.put("duration", build.getDuration());
+        }
+        json.put("url", Hudson.getInstance().getRootUrlFromRequest() + build.getUrl());
+        return json;
+    }
+
+    private static String key(String projectName, int buildNumber) {
+        return projectName + "#" + buildNumber;
+    }
+
+    private static void register(String key, BlockingQueue<Run<?, ?>> queue) {
+        while (true) {
+            Set<BlockingQueue<Run<?, ?>>> queues = WAITERS.get(key);
+            if (queues == null) {
+                Set<BlockingQueue<Run<?, ?>>> newQueues = new CopyOnWriteArraySet<BlockingQueue<Run<?, ?>>>();
+                queues = WAITERS.putIfAbsent(key, newQueues);
+                if (queues == null) {
+                    queues = newQueues;
+                }
+            }
+            queues.add(queue);
+            // the set may have been removed by the last waiter leaving it, in the meantime
+            if (WAITERS.get(key) == queues) {
+                return;
+            }
+        }
+    }
+
+    private static void unregister(String key, BlockingQueue<Run<?, ?>> queue) {
+        Set<BlockingQueue<Run<?, ?>>> queues = WAITERS.get(key);
+        if (queues != null) {
+            queues.remove(queue);
+            if (queues.isEmpty()) {
+                WAITERS.remove(key, queues);
+            }
+        }
+    }
+
+    /**
+     * Wakes up the requests waiting for a build, when it is completed
+     */
+    @Extension
+    public static class CompletionRunListener extends RunListener<Run> {
+
+        public CompletionRunListener() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onCompleted(Run build, TaskListener listener) {
+            String key = key(build.getParent().getFullName(), build.getNumber());
+            Set<BlockingQueue<Run<?, ?>>> queues = WAITERS.get(key);
+            if (queues != null) {
+                for (BlockingQueue<Run<?, ?>> queue : queues) {
+                    queue.offer(build);
+                }
+            }
+        }
+    }
+}
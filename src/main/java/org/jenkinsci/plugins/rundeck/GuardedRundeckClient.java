@@ -0,0 +1,330 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.apache.commons.lang.StringUtils;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckAbort;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.domain.RundeckHistory;
+import org.rundeck.api.domain.RundeckJob;
+import org.rundeck.api.domain.RundeckNode;
+import org.rundeck.api.domain.RundeckProject;
+
+/**
+ * {@link RundeckClient} that protects Jenkins from a degraded RunDeck instance : all calls go through a shared
+ * {@link RundeckRateLimiter} and {@link RundeckCircuitBreaker}, and may be abandoned after a timeout. Rejected calls
+ * fail fast with a {@link RundeckUnavailableException}.<br>
+ * Only the methods used by the plugin are guarded (and delegated to the wrapped client) : any new call to the RunDeck
+ * API should be added here.
+ */
+public class GuardedRundeckClient extends RundeckClient {
+
+    private static final long serialVersionUID = 1L;
+
+    /** Maximum number of calls waiting for a (slow) RunDeck response at the same time, when using a timeout */
+    private static final int MAX_PENDING_CALLS = 20;
+
+    /** Threads running the calls with a timeout, so that the caller (build executor, http thread) can give up */
+    private static final ThreadPoolExecutor CALL_EXECUTOR = createCallExecutor();
+
+    private final RundeckClient delegate;
+
+    private final transient RundeckCircuitBreaker circuitBreaker;
+
+    private final transient RundeckRateLimiter rateLimiter;
+
+    private final long callTimeoutMillis;
+
+    /**
+     * @param delegate client doing the real calls
+     * @param circuitBreaker shared by all callers
+     * @param rateLimiter shared by all callers
+     * @param callTimeoutMillis maximum duration of a call - 0 for no timeout
+     */
+    public GuardedRundeckClient(RundeckClient delegate, RundeckCircuitBreaker circuitBreaker,
+            RundeckRateLimiter rateLimiter, long callTimeoutMillis) {
+        super(delegate.getUrl(), delegate.getLogin(), delegate.getPassword());
+        this.delegate = delegate;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+        this.callTimeoutMillis = callTimeoutMillis;
+    }
+
+    @Override
+    public void ping() throws RundeckApiException {
+        call("ping", new Callable<Void>() {
+
+            public Void call() {
+                delegate.ping();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public void testCredentials() throws RundeckApiException {
+        call("testCredentials", new Callable<Void>() {
+
+            public Void call() {
+                delegate.testCredentials();
+                return null;
+            }
+        });
+    }
+
+    @Override
+    public RundeckJob getJob(final String jobId) throws RundeckApiException, IllegalArgumentException {
+        return call("getJob", new Callable<RundeckJob>() {
+
+            public RundeckJob call() {
+                return delegate.getJob(jobId);
+            }
+        });
+    }
+
+    @Override
+    public RundeckJob findJob(final String project, final String groupPath, final String name)
+            throws RundeckApiException, IllegalArgumentException {
+        return call("findJob", new Callable<RundeckJob>() {
+
+            public RundeckJob call() {
+                return delegate.findJob(project, groupPath, name);
+            }
+        });
+    }
+
+    @Override
+    public List<RundeckProject> getProjects() throws RundeckApiException {
+        return call("getProjects", new Callable<List<RundeckProject>>() {
+
+            public List<RundeckProject> call() {
+                return delegate.getProjects();
+            }
+        });
+    }
+
+    @Override
+    public List<RundeckJob> getJobs(final String project) throws RundeckApiException, IllegalArgumentException {
+        return call("getJobs", new Callable<List<RundeckJob>>() {
+
+            public List<RundeckJob> call() {
+                return delegate.getJobs(project);
+            }
+        });
+    }
+
+    @Override
+    public List<RundeckNode> getNodes(final String project) throws RundeckApiException, IllegalArgumentException {
+        return call("getNodes", new Callable<List<RundeckNode>>() {
+
+            public List<RundeckNode> call() {
+                return delegate.getNodes(project);
+            }
+        });
+    }
+
+    @Override
+    public RundeckExecution triggerJob(final String jobId, final Properties options, final Properties nodeFilters)
+            throws RundeckApiException, IllegalArgumentException {
+        return call("triggerJob", new Callable<RundeckExecution>() {
+
+            public RundeckExecution call() {
+                return delegate.triggerJob(jobId, options, nodeFilters);
+            }
+        });
+    }
+
+    @Override
+    public RundeckExecution getExecution(final Long executionId) throws RundeckApiException,
+            IllegalArgumentException {
+        return call("getExecution", new Callable<RundeckExecution>() {
+
+            public RundeckExecution call() {
+                return delegate.getExecution(executionId);
+            }
+        });
+    }
+
+    @Override
+    public List<RundeckExecution> getRunningExecutions(final String project) throws RundeckApiException,
+            IllegalArgumentException {
+        return call("getRunningExecutions", new Callable<List<RundeckExecution>>() {
+
+            public List<RundeckExecution> call() {
+                return delegate.getRunningExecutions(project);
+            }
+        });
+    }
+
+    @Override
+    public RundeckHistory getHistory(final String project, final Long max, final Long offset)
+            throws RundeckApiException, IllegalArgumentException {
+        return call("getHistory", new Callable<RundeckHistory>() {
+
+            public RundeckHistory call() {
+                return delegate.getHistory(project, max, offset);
+            }
+        });
+    }
+
+    @Override
+    public RundeckAbort abortExecution(final Long executionId) throws RundeckApiException, IllegalArgumentException {
+        return call("abortExecution", new Callable<RundeckAbort>() {
+
+            public RundeckAbort call() {
+                return delegate.abortExecution(executionId);
+            }
+        });
+    }
+
+    /**
+     * @return the wrapped client
+     */
+    public RundeckClient getDelegate() {
+        return delegate;
+    }
+
+    public RundeckCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the maximum duration of a call, in ms - 0 for no timeout
+     */
+    public long getCallTimeoutMillis() {
+        return callTimeoutMillis;
+    }
+
+    /**
+     * Run the given call to the RunDeck API, if allowed by the rate limiter and the circuit breaker. Also used for the
+     * calls not supported by the wrapped client (see {@link RundeckExecutionOutputTail}).
+     * 
+     * @param name of the call, for error messages
+     * @param call to run
+     * @return the result of the call
+     * @throws RundeckUnavailableException if the call has been rejected, or has timed out
+     * @throws RundeckApiException if the call failed (an I/O error is the cause of the exception)
+     */
+    <T> T call(String name, Callable<T> call) throws RundeckApiException {
+        RundeckMetrics metrics = RundeckMetrics.get();
+        if (!rateLimiter.tryAcquire()) {
+            metrics.clientRejectedCalls.increment();
+            throw new RundeckUnavailableException("Too many calls to the RunDeck API (rate limit reached) : " + name);
+        }
+        if (!circuitBreaker.allowRequest()) {
+            metrics.clientRejectedCalls.increment();
+            throw new RundeckUnavailableException("RunDeck at " + getUrl()
+                                                  + " is unavailable (circuit breaker is open), skipping : " + name);
+        }
+
+        try {
+            T result = callTimeoutMillis > 0 ? callWithTimeout(name, call) : call.call();
+            circuitBreaker.onSuccess();
+            return result;
+        } catch (RundeckUnavailableException e) {
+            circuitBreaker.onFailure();
+            throw e;
+        } catch (RundeckApiException e) {
+            if (e.getCause() instanceof InterruptedException) {
+                // we don't know if RunDeck is healthy : don't keep the probe, and don't count it
+                circuitBreaker.onAbandoned();
+            } else if (isUnavailable(e)) {
+                circuitBreaker.onFailure();
+            } else {
+                // RunDeck answered (for example "job not found") : it is alive
+                circuitBreaker.onSuccess();
+            }
+            throw e;
+        } catch (RuntimeException e) {
+            circuitBreaker.onSuccess();
+            throw e;
+        } catch (InterruptedException e) {
+            // interrupted call made without the wrapped client
+            circuitBreaker.onAbandoned();
+            Thread.currentThread().interrupt();
+            throw new RundeckApiException("Interrupted while calling the RunDeck API : " + name, e);
+        } catch (Exception e) {
+            // I/O error of a call made without the wrapped client
+            circuitBreaker.onFailure();
+            throw new RundeckApiException("Failed to call the RunDeck API : " + name, e);
+        }
+    }
+
+    private <T> T callWithTimeout(String name, Callable<T> call) throws Exception {
+        Future<T> future;
+        try {
+            future = CALL_EXECUTOR.submit(call);
+        } catch (RejectedExecutionException e) {
+            RundeckMetrics.get().clientRejectedCalls.increment();
+            throw new RundeckUnavailableException("Too many pending calls to the RunDeck API at " + getUrl()
+                                                  + ", skipping : " + name);
+        }
+        try {
+            return future.get(callTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            RundeckMetrics.get().clientTimeouts.increment();
+            throw new RundeckUnavailableException("No response from RunDeck at " + getUrl() + " after "
+                                                  + callTimeoutMillis + " ms : " + name);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RundeckApiException("Interrupted while calling the RunDeck API : " + name, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        }
+    }
+
+    private static ThreadPoolExecutor createCallExecutor() {
+        ThreadFactory threadFactory = new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RunDeck API call");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        return new ThreadPoolExecutor(0,
+                                      MAX_PENDING_CALLS,
+                                      60L,
+                                      TimeUnit.SECONDS,
+                                      new SynchronousQueue<Runnable>(),
+                                      threadFactory);
+    }
+
+    /**
+     * @return true if the exception means that RunDeck is down or degraded (as opposed to an API error)
+     */
+    static boolean isUnavailable(RundeckApiException e) {
+        return e instanceof RundeckUnavailableException || e.getCause() instanceof IOException
+               || StringUtils.startsWith(e.getMessage(), "Invalid HTTP response");
+    }
+
+    /**
+     * Exception thrown when a call to the RunDeck API has not been attempted (or has been abandoned), because RunDeck
+     * is known to be unavailable, or to protect it.
+     */
+    public static class RundeckUnavailableException extends RundeckApiException {
+
+        private static final long serialVersionUID = 1L;
+
+        public RundeckUnavailableException(String message) {
+            super(message);
+        }
+    }
+}
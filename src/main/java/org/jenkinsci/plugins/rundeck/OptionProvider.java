@@ -1,20 +1,25 @@
 package org.jenkinsci.plugins.rundeck;
 
-import hudson.model.TopLevelItem;
 import hudson.model.AbstractProject;
 import hudson.model.Hudson;
 import hudson.model.Run;
 import hudson.model.Run.Artifact;
-import hudson.util.RunList;
 import java.io.IOException;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 import javax.servlet.http.HttpServletResponse;
 import net.sf.json.JSONArray;
+import net.sf.json.JsonConfig;
+import net.sf.json.util.PropertyFilter;
 import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.rundeck.ArtifactChecksums.Checksum;
+import org.jenkinsci.plugins.rundeck.RundeckDeploymentLedger.Deployment;
+import org.jenkinsci.plugins.rundeck.RundeckRevisionIndex.Revision;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
@@ -25,147 +30,268 @@ import org.kohsuke.stapler.StaplerResponse;
  */
 public class OptionProvider {
 
+    /** Don't serialize the optional fields of the options (checksum and size) when they are not set */
+    private static final JsonConfig JSON_CONFIG = new JsonConfig();
+
+    static {
+        JSON_CONFIG.setJsonPropertyFilter(new PropertyFilter() {
+
+            public boolean apply(Object source, String name, Object value) {
+                return value == null;
+            }
+        });
+    }
+
     /**
      * Provider for artifacts of a specific build, with the name and absolute url of the artifact.<br>
-     * Mandatory parameter : "project"<br>
+     * Mandatory parameter : "project" (full name, with the folders if any)<br>
      * Optional parameters : "build" (either a build number, or "lastStable", "lastSuccessful", "last"), "artifactRegex"
-     * (java regex used to filter artifacts).
+     * (java regex used to filter artifacts), "directDownload" (boolean, see {@link ArtifactDownloader}), "checksums"
+     * (boolean, to add the SHA-256 checksum and the size of the artifacts).
      */
     public void doArtifact(StaplerRequest request, StaplerResponse response) throws IOException {
-        // mandatory parameters
-        AbstractProject<?, ?> project = findProject(request.getParameter("project"));
-        if (project == null) {
-            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "You must provide a valid 'project' parameter !");
-            return;
-        }
-
-        // optional parameters
-        String artifactRegex = request.getParameter("artifactRegex");
-        Pattern artifactPattern = null;
-        if (StringUtils.isNotBlank(artifactRegex)) {
-            try {
-                artifactPattern = Pattern.compile(artifactRegex);
-            } catch (PatternSyntaxException e) {
+        long start = System.nanoTime();
+        try {
+            // mandatory parameters
+            AbstractProject<?, ?> project = findProject(request.getParameter("project"));
+            if (project == null) {
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST,
-                                   "Invalid java-regex syntax for the 'artifactRegex' parameter : " + e.getMessage());
+                                   "You must provide a valid 'project' parameter !");
                 return;
             }
-        }
 
-        Run<?, ?> build = findBuild(request.getParameter("build"), project);
-        if (build == null) {
-            return;
-        }
+            // optional parameters
+            String artifactRegex = request.getParameter("artifactRegex");
+            Pattern artifactPattern = null;
+            if (StringUtils.isNotBlank(artifactRegex)) {
+                try {
+                    artifactPattern = Pattern.compile(artifactRegex);
+                } catch (PatternSyntaxException e) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                                       "Invalid java-regex syntax for the 'artifactRegex' parameter : "
+                                               + e.getMessage());
+                    return;
+                }
+            }
 
-        List<Option> options = new ArrayList<OptionProvider.Option>();
-        for (Artifact artifact : build.getArtifacts()) {
-            if (artifactPattern == null
-                || (artifactPattern != null && artifactPattern.matcher(artifact.getFileName()).matches())) {
-                options.add(new Option(artifact.getFileName(), buildArtifactUrl(build, artifact)));
+            boolean directDownload = Boolean.valueOf(request.getParameter("directDownload"));
+            boolean checksums = Boolean.valueOf(request.getParameter("checksums"));
+
+            Run<?, ?> build = findBuild(request.getParameter("build"), project);
+            if (build == null) {
+                return;
+            }
+
+            List<Option> options = new ArrayList<OptionProvider.Option>();
+            for (Artifact artifact : build.getArtifacts()) {
+                if (artifactPattern == null
+                    || (artifactPattern != null && artifactPattern.matcher(artifact.getFileName()).matches())) {
+                    options.add(createOption(artifact.getFileName(),
+                                             build,
+                                             artifact,
+                                             directDownload,
+                                             checksums));
+                }
             }
-        }
 
-        writeJson(options, response);
+            writeJson(options, response);
+        } finally {
+            RundeckMetrics.get().optionsArtifactDuration.observeSince(start);
+        }
     }
 
     /**
      * Provider for builds of a specific artifact, with the version/date of the build and absolute url of the artifact.<br>
-     * Mandatory parameters : "project" and either "artifact" (exact filename of the artifact) or "artifactRegex" (java
-     * regex used to match against the filename of the artifact).<br>
+     * Mandatory parameters : "project" (full name, with the folders if any) and either "artifact" (exact filename of
+     * the artifact) or "artifactRegex" (java regex used to match against the filename of the artifact).<br>
      * Optional parameters : "limit" (int), "includeLastStableBuild" (boolean), "includeLastSuccessfulBuild" (boolean),
-     * "includeLastBuild" (boolean)
+     * "includeLastBuild" (boolean), "directDownload" (boolean, see {@link ArtifactDownloader}), "checksums" (boolean,
+     * to add the SHA-256 checksum and the size of the artifacts), "deployed" (boolean, to list only the builds
+     * successfully deployed by RunDeck - for rollbacks - most recently deployed first, see
+     * {@link RundeckDeploymentLedger})
      */
     public void doBuild(StaplerRequest request, StaplerResponse response) throws IOException {
-        // mandatory parameters
-        AbstractProject<?, ?> project = findProject(request.getParameter("project"));
-        if (project == null) {
-            response.sendError(HttpServletResponse.SC_BAD_REQUEST, "You must provide a valid 'project' parameter !");
-            return;
-        }
-        String artifactName = request.getParameter("artifact");
-        String artifactRegex = request.getParameter("artifactRegex");
-        if (StringUtils.isBlank(artifactName) && StringUtils.isBlank(artifactRegex)) {
-            response.sendError(HttpServletResponse.SC_BAD_REQUEST,
-                               "You must provide either a valid 'artifact' or 'artifactRegex' parameter !");
-            return;
-        }
-        Pattern artifactPattern = null;
-        if (StringUtils.isNotBlank(artifactRegex)) {
-            try {
-                artifactPattern = Pattern.compile(artifactRegex);
-            } catch (PatternSyntaxException e) {
+        long start = System.nanoTime();
+        try {
+            // mandatory parameters
+            AbstractProject<?, ?> project = findProject(request.getParameter("project"));
+            if (project == null) {
                 response.sendError(HttpServletResponse.SC_BAD_REQUEST,
-                                   "Invalid java-regex syntax for the 'artifactRegex' parameter : " + e.getMessage());
+                                   "You must provide a valid 'project' parameter !");
                 return;
             }
-        }
-
-        // optional parameters
-        Integer limit;
-        try {
-            limit = Integer.parseInt(request.getParameter("limit"));
-        } catch (NumberFormatException e) {
-            limit = null;
-        }
+            String artifactName = request.getParameter("artifact");
+            String artifactRegex = request.getParameter("artifactRegex");
+            if (StringUtils.isBlank(artifactName) && StringUtils.isBlank(artifactRegex)) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                                   "You must provide either a valid 'artifact' or 'artifactRegex' parameter !");
+                return;
+            }
+            Pattern artifactPattern = null;
+            if (StringUtils.isNotBlank(artifactRegex)) {
+                try {
+                    artifactPattern = Pattern.compile(artifactRegex);
+                } catch (PatternSyntaxException e) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                                       "Invalid java-regex syntax for the 'artifactRegex' parameter : "
+                                               + e.getMessage());
+                    return;
+                }
+            }
 
-        // build options
-        List<Option> options = new ArrayList<OptionProvider.Option>();
-        RunList<?> builds = project.getBuilds();
-        for (Run<?, ?> build : builds) {
-            Artifact artifact = findArtifact(artifactName, artifactPattern, build);
-            if (artifact != null) {
-                String buildName = "#" + build.getNumber() + " - " + build.getTimestampString2();
-                options.add(new Option(buildName, buildArtifactUrl(build, artifact)));
+            // optional parameters
+            boolean directDownload = Boolean.valueOf(request.getParameter("directDownload"));
+            boolean checksums = Boolean.valueOf(request.getParameter("checksums"));
+            Integer limit;
+            try {
+                limit = Integer.parseInt(request.getParameter("limit"));
+            } catch (NumberFormatException e) {
+                limit = null;
             }
 
-            if (limit != null && options.size() >= limit) {
-                break;
+            // build options
+            List<? extends Run<?, ?>> builds;
+            if (Boolean.valueOf(request.getParameter("deployed"))) {
+                builds = findDeployedBuilds(project);
+            } else {
+                builds = project.getBuilds();
             }
+            RunAdapter adapter = new RunAdapter(directDownload, checksums);
+            List<Option> options = generateBuildOptions(builds, adapter, artifactName, artifactPattern, limit);
+            RundeckMetrics.get().optionsBuildsScanned.observe(adapter.scanned);
+
+            // add optional references to last / lastStable / lastSuccessful builds
+            if (Boolean.valueOf(request.getParameter("includeLastStableBuild"))) {
+                Run<?, ?> build = project.getLastStableBuild();
+                Artifact artifact = findArtifact(artifactName, artifactPattern, build, adapter);
+                if (build != null && artifact != null) {
+                    options.add(0, createOption("lastStableBuild", build, artifact, directDownload, checksums));
+                }
+            }
+            if (Boolean.valueOf(request.getParameter("includeLastSuccessfulBuild"))) {
+                Run<?, ?> build = project.getLastSuccessfulBuild();
+                Artifact artifact = findArtifact(artifactName, artifactPattern, build, adapter);
+                if (build != null && artifact != null) {
+                    options.add(0, createOption("lastSuccessfulBuild", build, artifact, directDownload, checksums));
+                }
+            }
+            if (Boolean.valueOf(request.getParameter("includeLastBuild"))) {
+                Run<?, ?> build = project.getLastBuild();
+                Artifact artifact = findArtifact(artifactName, artifactPattern, build, adapter);
+                if (build != null && artifact != null) {
+                    options.add(0, createOption("lastBuild", build, artifact, directDownload, checksums));
+                }
+            }
+
+            writeJson(options, response);
+        } finally {
+            RundeckMetrics.get().optionsBuildDuration.observeSince(start);
         }
+    }
 
-        // add optional references to last / lastStable / lastSuccessful builds
-        if (Boolean.valueOf(request.getParameter("includeLastStableBuild"))) {
-            Run<?, ?> build = project.getLastStableBuild();
-            Artifact artifact = findArtifact(artifactName, artifactPattern, build);
-            if (build != null && artifact != null) {
-                options.add(0, new Option("lastStableBuild", buildArtifactUrl(build, artifact)));
+    /**
+     * Provider for SCM revisions, with the revision and commit message, and the absolute url of the first successful
+     * build containing the revision (or of its artifact). Served from the {@link RundeckRevisionIndex}, without walking
+     * the build history.<br>
+     * Mandatory parameter : "project" (full name, with the folders if any)<br>
+     * Optional parameters : "artifact" (exact filename of the artifact) or "artifactRegex" (java regex used to match
+     * against the filename of the artifact) to use the url of the artifact instead of the url of the build (the
+     * revisions whose build doesn't have this artifact are skipped), "limit" (int), "directDownload" (boolean, see
+     * {@link ArtifactDownloader}), "checksums" (boolean, to add the SHA-256 checksum and the size of the artifacts)
+     */
+    public void doRevision(StaplerRequest request, StaplerResponse response) throws IOException {
+        long start = System.nanoTime();
+        try {
+            // mandatory parameters
+            AbstractProject<?, ?> project = findProject(request.getParameter("project"));
+            if (project == null) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                                   "You must provide a valid 'project' parameter !");
+                return;
             }
-        }
-        if (Boolean.valueOf(request.getParameter("includeLastSuccessfulBuild"))) {
-            Run<?, ?> build = project.getLastSuccessfulBuild();
-            Artifact artifact = findArtifact(artifactName, artifactPattern, build);
-            if (build != null && artifact != null) {
-                options.add(0, new Option("lastSuccessfulBuild", buildArtifactUrl(build, artifact)));
+
+            // optional parameters
+            String artifactName = request.getParameter("artifact");
+            String artifactRegex = request.getParameter("artifactRegex");
+            Pattern artifactPattern = null;
+            if (StringUtils.isNotBlank(artifactRegex)) {
+                try {
+                    artifactPattern = Pattern.compile(artifactRegex);
+                } catch (PatternSyntaxException e) {
+                    response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                                       "Invalid java-regex syntax for the 'artifactRegex' parameter : "
+                                               + e.getMessage());
+                    return;
+                }
             }
-        }
-        if (Boolean.valueOf(request.getParameter("includeLastBuild"))) {
-            Run<?, ?> build = project.getLastBuild();
-            Artifact artifact = findArtifact(artifactName, artifactPattern, build);
-            if (build != null && artifact != null) {
-                options.add(0, new Option("lastBuild", buildArtifactUrl(build, artifact)));
+            boolean useArtifact = StringUtils.isNotBlank(artifactName) || artifactPattern != null;
+            boolean directDownload = Boolean.valueOf(request.getParameter("directDownload"));
+            boolean checksums = Boolean.valueOf(request.getParameter("checksums"));
+            Integer limit;
+            try {
+                limit = Integer.parseInt(request.getParameter("limit"));
+            } catch (NumberFormatException e) {
+                limit = null;
+            }
+
+            // build options
+            List<Option> options = new ArrayList<OptionProvider.Option>();
+            RunAdapter adapter = new RunAdapter(directDownload, checksums);
+            Run<?, ?> build = null;
+            Artifact artifact = null;
+            for (Revision revision : RundeckRevisionIndex.get().getRevisions(project)) {
+                // consecutive revisions are often in the same build
+                if (build == null || build.getNumber() != revision.getBuildNumber()) {
+                    build = project.getBuildByNumber(revision.getBuildNumber());
+                    artifact = useArtifact ? findArtifact(artifactName, artifactPattern, build, adapter) : null;
+                }
+                if (build == null || (useArtifact && artifact == null)) {
+                    continue;
+                }
+                String name = revisionName(revision);
+                if (artifact != null) {
+                    options.add(createOption(name, build, artifact, directDownload, checksums));
+                } else {
+                    options.add(new Option(name, Hudson.getInstance().getRootUrlFromRequest() + build.getUrl()));
+                }
+
+                if (limit != null && options.size() >= limit) {
+                    break;
+                }
             }
+
+            writeJson(options, response);
+        } finally {
+            RundeckMetrics.get().optionsRevisionDuration.observeSince(start);
         }
+    }
 
-        writeJson(options, response);
+    /**
+     * @param revision
+     * @return "REVISION - #BUILD - first line of the commit message"
+     */
+    private String revisionName(Revision revision) {
+        StringBuilder name = new StringBuilder();
+        if (revision.getRevision() != null) {
+            // abbreviate the long hashes, like git does
+            name.append(StringUtils.left(revision.getRevision(), 12)).append(" - ");
+        }
+        name.append("#").append(revision.getBuildNumber());
+        String message = StringUtils.trimToEmpty(StringUtils.substringBefore(revision.getMessage(), "\n"));
+        if (message.length() > 0) {
+            name.append(" - ").append(StringUtils.abbreviate(message, 80));
+        }
+        return name.toString();
     }
 
     /**
-     * Find the Jenkins project matching the given name.
+     * Find the Jenkins project matching the given name, in the {@link RundeckProjectIndex}.
      * 
-     * @param projectName
+     * @param projectName full name of the project ("folder/sub-folder/project", or just "project" at the top level)
      * @return an {@link AbstractProject} instance, or null if not found
      */
     private AbstractProject<?, ?> findProject(String projectName) {
-        if (StringUtils.isBlank(projectName)) {
-            return null;
-        }
-
-        TopLevelItem item = Hudson.getInstance().getItem(projectName);
-        if (AbstractProject.class.isInstance(item)) {
-            return (AbstractProject<?, ?>) item;
-        }
-
-        return null;
+        return RundeckProjectIndex.get().getProject(projectName);
     }
 
     /**
@@ -204,25 +330,82 @@ public class OptionProvider {
         return project.getLastBuild();
     }
 
+    /**
+     * Find the builds of the given project successfully deployed by RunDeck, from the {@link RundeckDeploymentLedger}
+     * 
+     * @param project
+     * @return the deployed builds, most recently deployed first
+     */
+    private List<Run<?, ?>> findDeployedBuilds(AbstractProject<?, ?> project) {
+        List<Run<?, ?>> builds = new ArrayList<Run<?, ?>>();
+        RundeckPlugin plugin = Hudson.getInstance().getPlugin(RundeckPlugin.class);
+        if (plugin == null) {
+            return builds;
+        }
+        Set<Integer> buildNumbers = new LinkedHashSet<Integer>();
+        for (Deployment deployment : plugin.getDeployments().getDeployments(project.getFullName())) {
+            if (deployment.isSucceeded()) {
+                buildNumbers.add(deployment.getBuildNumber());
+            }
+        }
+        for (Integer buildNumber : buildNumbers) {
+            Run<?, ?> build = project.getBuildByNumber(buildNumber);
+            if (build != null) {
+                builds.add(build);
+            }
+        }
+        return builds;
+    }
+
+    /**
+     * Generate the options of the "build" provider : one option per build having a matching artifact, in the order of
+     * the given builds, up to the limit. Independent from Jenkins (through the {@link BuildAdapter}), so that it can be
+     * benchmarked.
+     * 
+     * @param builds to scan
+     * @param adapter to the builds and their artifacts
+     * @param artifactName exact filename of the artifact - may be null
+     * @param artifactPattern to match against the artifact filename - may be null
+     * @param limit maximum number of options - null for no limit
+     * @return the options
+     */
+    static <B, A> List<Option> generateBuildOptions(Iterable<? extends B> builds, BuildAdapter<B, A> adapter,
+            String artifactName, Pattern artifactPattern, Integer limit) {
+        List<Option> options = new ArrayList<OptionProvider.Option>();
+        for (B build : builds) {
+            A artifact = findArtifact(artifactName, artifactPattern, build, adapter);
+            if (artifact != null) {
+                options.add(adapter.createOption(build, artifact));
+            }
+
+            if (limit != null && options.size() >= limit) {
+                break;
+            }
+        }
+        return options;
+    }
+
     /**
      * Find an artifact of the given build, matching the artifactName (filename) or the artifactPattern (java-regex). If
      * not found, return null.
      * 
      * @param artifactName exact filename of the artifact - may be null
      * @param artifactPattern to match against the artifact filename - may be null
-     * @param build
-     * @return an {@link Artifact} instance, or null if not found
+     * @param build - may be null
+     * @param adapter to the builds and their artifacts
+     * @return the artifact, or null if not found
      */
-    private Artifact findArtifact(String artifactName, Pattern artifactPattern, Run<?, ?> build) {
+    static <B, A> A findArtifact(String artifactName, Pattern artifactPattern, B build, BuildAdapter<B, A> adapter) {
         if (build == null) {
             return null;
         }
 
-        for (Artifact artifact : build.getArtifacts()) {
-            if (StringUtils.equals(artifactName, artifact.getFileName())) {
+        for (A artifact : adapter.getArtifacts(build)) {
+            String fileName = adapter.getFileName(artifact);
+            if (StringUtils.equals(artifactName, fileName)) {
                 return artifact;
             }
-            if (artifactPattern != null && artifactPattern.matcher(artifact.getFileName()).matches()) {
+            if (artifactPattern != null && artifactPattern.matcher(fileName).matches()) {
                 return artifact;
             }
         }
@@ -230,14 +413,40 @@ public class OptionProvider {
         return null;
     }
 
+    /**
+     * Create the option for the given artifact
+     * 
+     * @param name of the option
+     * @param build
+     * @param artifact
+     * @param directDownload true to use the {@link ArtifactDownloader} endpoint, false for the generic Jenkins url
+     * @param checksums true to add the checksum and the size of the artifact (see {@link ArtifactChecksums})
+     * @return the option
+     */
+    private Option createOption(String name, Run<?, ?> build, Artifact artifact, boolean directDownload,
+            boolean checksums) {
+        String url = buildArtifactUrl(build, artifact, directDownload);
+        if (checksums) {
+            Checksum checksum = ArtifactChecksums.get().getChecksum(build, artifact);
+            if (checksum != null) {
+                return new Option(name, url, checksum.getSha256(), checksum.getSize());
+            }
+        }
+        return new Option(name, url);
+    }
+
     /**
      * Build the absolute url of the given artifact
      * 
      * @param build
      * @param artifact
+     * @param directDownload true to use the {@link ArtifactDownloader} endpoint, false for the generic Jenkins url
      * @return absolute url
      */
-    private String buildArtifactUrl(Run<?, ?> build, Artifact artifact) {
+    private String buildArtifactUrl(Run<?, ?> build, Artifact artifact, boolean directDownload) {
+        if (directDownload) {
+            return ArtifactDownloader.buildUrl(build, artifact.relativePath);
+        }
         StringBuilder url = new StringBuilder();
         url.append(Hudson.getInstance().getRootUrlFromRequest());
         url.append(build.getUrl()).append("artifact/").append(artifact.getHref());
@@ -252,14 +461,74 @@ public class OptionProvider {
      * @param response
      */
     private void writeJson(List<Option> options, StaplerResponse response) throws IOException {
-        JSONArray array = new JSONArray();
-        array.addAll(options);
-        String json = array.toString();
+        String json = toJson(options);
 
         response.setContentType("application/json;charset=UTF-8");
         response.getWriter().append(json);
     }
 
+    /**
+     * Serialize the given list of options as a JSON array
+     * 
+     * @param options
+     * @return JSON representation of the options
+     */
+    static String toJson(List<Option> options) {
+        JSONArray array = new JSONArray();
+        array.addAll(options, JSON_CONFIG);
+        return array.toString();
+    }
+
+    /**
+     * Access to the builds and their artifacts, for {@link OptionProvider#generateBuildOptions}
+     * 
+     * @param <B> type of the builds
+     * @param <A> type of the artifacts
+     */
+    interface BuildAdapter<B, A> {
+
+        List<? extends A> getArtifacts(B build);
+
+        String getFileName(A artifact);
+
+        /**
+         * @return the option of the "build" provider for the given build, and its matching artifact
+         */
+        Option createOption(B build, A artifact);
+    }
+
+    /**
+     * {@link BuildAdapter} for the Jenkins builds
+     */
+    private class RunAdapter implements BuildAdapter<Run<?, ?>, Artifact> {
+
+        private final boolean directDownload;
+
+        private final boolean checksums;
+
+        /** number of builds whose artifacts have been listed */
+        private int scanned;
+
+        private RunAdapter(boolean directDownload, boolean checksums) {
+            this.directDownload = directDownload;
+            this.checksums = checksums;
+        }
+
+        public List<? extends Artifact> getArtifacts(Run<?, ?> build) {
+            scanned++;
+            return build.getArtifacts();
+        }
+
+        public String getFileName(Artifact artifact) {
+            return artifact.getFileName();
+        }
+
+        public Option createOption(Run<?, ?> build, Artifact artifact) {
+            String buildName = "#" + build.getNumber() + " - " + build.getTimestampString2();
+            return OptionProvider.this.createOption(buildName, build, artifact, directDownload, checksums);
+        }
+    }
+
     /**
      * Javabean representation of an option
      */
@@ -271,10 +540,22 @@ public class OptionProvider {
 
         private final String value;
 
+        /** SHA-256 checksum of the artifact - may be null */
+        private final String checksum;
+
+        /** size of the artifact, in bytes - may be null */
+        private final Long size;
+
         public Option(String name, String value) {
+            this(name, value, null, null);
+        }
+
+        public Option(String name, String value, String checksum, Long size) {
             super();
             this.name = name;
             this.value = value;
+            this.checksum = checksum;
+            this.size = size;
         }
 
         public String getName() {
@@ -285,11 +566,21 @@ public class OptionProvider {
             return value;
         }
 
+        public String getChecksum() {
+            return checksum;
+        }
+
+        public Long getSize() {
+            return size;
+        }
+
         @Override
         public int hashCode() {
             final int prime = 31;
             int result = 1;
+            result = prime * result + ((checksum == null) ? 0 : checksum.hashCode());
             result = prime * result + ((name == null) ? 0 : name.hashCode());
+            result = prime * result + ((size == null) ? 0 : size.hashCode());
             result = prime * result + ((value == null) ? 0 : value.hashCode());
             return result;
         }
@@ -303,11 +594,21 @@ public class OptionProvider {
             if (getClass() != obj.getClass())
                 return false;
             Option other = (Option) obj;
+            if (checksum == null) {
+                if (other.checksum != null)
+                    return false;
+            } else if (!checksum.equals(other.checksum))
+                return false;
             if (name == null) {
                 if (other.name != null)
                     return false;
             } else if (!name.equals(other.name))
                 return false;
+            if (size == null) {
+                if (other.size != null)
+                    return false;
+            } else if (!size.equals(other.size))
+                return false;
             if (value == null) {
                 if (other.value != null)
                     return false;
@@ -318,7 +619,7 @@ public class OptionProvider {
 
         @Override
         public String toString() {
-            return "Option [name=" + name + ", value=" + value + "]";
+            return "Option [name=" + name + ", value=" + value + ", checksum=" + checksum + ", size=" + size + "]";
         }
     }
 }
@@ -4,6 +4,7 @@ import hudson.EnvVars;
 import hudson.model.EnvironmentContributingAction;
 import hudson.model.AbstractBuild;
 import hudson.model.Cause;
+import org.kohsuke.stapler.export.Exported;
 import org.rundeck.api.domain.RundeckExecution;
 
 /**
@@ -16,14 +17,76 @@ public class RundeckCause extends Cause {
 
     private final RundeckExecution execution;
 
+    /** priority of the build in the queue (see {@link RundeckQueueSorter}) - null for the default priority */
+    private final Integer priority;
+
+    /** time (in ms) of the entry of the build in the queue - null for the builds started by an older version */
+    private final Long queuedAt;
+
+    /** time (in ms) of the start of the build - null if not started yet */
+    private Long startedAt;
+
     /**
      * Instantiate a new cause for the given execution
      * 
      * @param execution at the origin of the RunDeck notification
      */
     public RundeckCause(RundeckExecution execution) {
+        this(execution, null);
+    }
+
+    /**
+     * Instantiate a new cause for the given execution, for a build about to enter the queue
+     * 
+     * @param execution at the origin of the RunDeck notification
+     * @param priority of the build in the queue (1 is the highest) - null for the default priority
+     */
+    public RundeckCause(RundeckExecution execution, Integer priority) {
         super();
         this.execution = execution;
+        this.priority = priority;
+        this.queuedAt = System.currentTimeMillis();
+    }
+
+    /**
+     * @return the priority of the build in the queue (1 is the highest) - null for the default priority
+     */
+    public Integer getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return the latency (in ms) from the end of the RunDeck execution to the entry of the build in the queue - null
+     *         if unknown
+     */
+    @Exported(visibility = 3)
+    public Long getNotificationLatencyMillis() {
+        if (execution == null || execution.getEndedAt() == null || queuedAt == null) {
+            return null;
+        }
+        return queuedAt - execution.getEndedAt().getTime();
+    }
+
+    /**
+     * @return the latency (in ms) from the entry of the build in the queue to its start - null if unknown
+     */
+    @Exported(visibility = 3)
+    public Long getQueueLatencyMillis() {
+        if (queuedAt == null || startedAt == null) {
+            return null;
+        }
+        return startedAt - queuedAt;
+    }
+
+    /**
+     * @return the latency (in ms) from the end of the RunDeck execution to the start of the build - null if unknown
+     */
+    @Exported(visibility = 3)
+    public Long getTotalLatencyMillis() {
+        if (execution == null || execution.getEndedAt() == null || startedAt == null) {
+            return null;
+        }
+        return startedAt - execution.getEndedAt().getTime();
     }
 
     @Override
@@ -51,6 +114,10 @@ public class RundeckCause extends Cause {
     public void onAddedTo(AbstractBuild build) {
         super.onAddedTo(build);
         build.addAction(new RundeckExecutionEnvironmentContributingAction(execution));
+        if (startedAt == null) {
+            startedAt = System.currentTimeMillis();
+            RundeckTriggerLatency.get().started(this);
+        }
     }
 
     @Override
@@ -0,0 +1,97 @@
+package org.jenkinsci.plugins.rundeck;
+
+/**
+ * Circuit breaker for the calls to the RunDeck API : after a number of consecutive failures, the circuit "opens" and
+ * all calls fail fast. After a while, a single "probe" call is allowed (half-open state) : if it succeeds the circuit
+ * closes again, otherwise it stays open for another period.
+ */
+public class RundeckCircuitBreaker {
+
+    public static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    private final int failureThreshold;
+
+    private final long openDurationMillis;
+
+    private State state = State.CLOSED;
+
+    private int consecutiveFailures;
+
+    private long openedAt;
+
+    private boolean probeInFlight;
+
+    /**
+     * @param failureThreshold number of consecutive failures before opening the circuit - 0 to disable the circuit
+     *            breaker
+     * @param openDurationMillis time during which all calls will fail fast, before allowing a probe call
+     */
+    public RundeckCircuitBreaker(int failureThreshold, long openDurationMillis) {
+        super();
+        this.failureThreshold = failureThreshold;
+        this.openDurationMillis = openDurationMillis;
+    }
+
+    /**
+     * @return true if a call should be attempted, false if it should fail fast
+     */
+    public synchronized boolean allowRequest() {
+        switch (state) {
+            case OPEN:
+                if (System.currentTimeMillis() - openedAt < openDurationMillis) {
+                    return false;
+                }
+                setState(State.HALF_OPEN);
+                probeInFlight = true;
+                return true;
+            case HALF_OPEN:
+                if (probeInFlight) {
+                    return false;
+                }
+                probeInFlight = true;
+                return true;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Record a call which proved that RunDeck is healthy (even if the API returned an error)
+     */
+    public synchronized void onSuccess() {
+        consecutiveFailures = 0;
+        probeInFlight = false;
+        setState(State.CLOSED);
+    }
+
+    /**
+     * Record a call which failed because RunDeck is down or degraded (connection error, HTTP 5xx, timeout)
+     */
+    public synchronized void onFailure() {
+        probeInFlight = false;
+        consecutiveFailures++;
+        if (failureThreshold > 0 && (State.HALF_OPEN.equals(state) || consecutiveFailures >= failureThreshold)) {
+            openedAt = System.currentTimeMillis();
+            setState(State.OPEN);
+        }
+    }
+
+    /**
+     * Record a call abandoned before we know if RunDeck is healthy (interrupted) : neither a success nor a failure, but
+     * another probe call can be attempted
+     */
+    public synchronized void onAbandoned() {
+        probeInFlight = false;
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    private void setState(State newState) {
+        state = newState;
+        RundeckMetrics.get().circuitBreakerState.set(newState.ordinal());
+    }
+}
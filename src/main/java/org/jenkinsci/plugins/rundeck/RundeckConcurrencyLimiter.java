@@ -0,0 +1,239 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Util;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.rundeck.GuardedRundeckClient.RundeckUnavailableException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.domain.RundeckExecution.ExecutionStatus;
+
+/**
+ * Limits the number of RunDeck executions started by Jenkins and running at the same time, per RunDeck project and per
+ * RunDeck job. Builds wait for a permit (in a fair, first-in first-out queue) before triggering the job, and release
+ * it when the execution is finished.<br>
+ * The limits are defined in the Java-Properties syntax : "project.NAME=N" for a RunDeck project, "job.ID=N" for a
+ * RunDeck job.
+ */
+public class RundeckConcurrencyLimiter {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckConcurrencyLimiter.class.getName());
+
+    private static final String PROJECT_PREFIX = "project.";
+
+    private static final String JOB_PREFIX = "job.";
+
+    /** Interval between 2 checks of an execution which is not waited by a build */
+    private static final long RELEASE_POLL_SECONDS = 5;
+
+    /** Permits of executions which are not waited by a build are released after this delay, whatever happens */
+    private static final long RELEASE_MAX_HOURS = 24;
+
+    /** Polls the executions not waited by a build, to release their permits */
+    private static final ScheduledExecutorService RELEASER = createReleaser();
+
+    private final Map<String, Semaphore> projectPermits;
+
+    private final Map<String, Semaphore> jobPermits;
+
+    private final Map<Semaphore, Integer> limits = new HashMap<Semaphore, Integer>();
+
+    /**
+     * Limiter without any limit
+     */
+    public RundeckConcurrencyLimiter() {
+        super();
+        this.projectPermits = Collections.emptyMap();
+        this.jobPermits = Collections.emptyMap();
+    }
+
+    /**
+     * @param definition of the limits, in the Java-Properties syntax - may be blank (no limit)
+     * @throws IOException if the definition is not valid
+     * @throws IllegalArgumentException if a limit is not a positive number
+     */
+    public RundeckConcurrencyLimiter(String definition) throws IOException, IllegalArgumentException {
+        super();
+        Map<String, Semaphore> projects = new HashMap<String, Semaphore>();
+        Map<String, Semaphore> jobs = new HashMap<String, Semaphore>();
+        if (StringUtils.isNotBlank(definition)) {
+            Properties properties = Util.loadProperties(definition);
+            for (Object name : properties.keySet()) {
+                String key = (String) name;
+                int limit;
+                try {
+                    limit = Integer.parseInt(properties.getProperty(key).trim());
+                } catch (NumberFormatException e) {
+                    throw new IllegalArgumentException("The concurrency limit for " + key + " is not a number : "
+                                                       + properties.getProperty(key));
+                }
+                if (limit < 1) {
+                    throw new IllegalArgumentException("The concurrency limit for " + key
+                                                       + " should be at least 1 : " + limit);
+                }
+                Semaphore semaphore = new Semaphore(limit, true);
+                limits.put(semaphore, limit);
+                if (key.startsWith(PROJECT_PREFIX)) {
+                    projects.put(StringUtils.removeStart(key, PROJECT_PREFIX), semaphore);
+                } else if (key.startsWith(JOB_PREFIX)) {
+                    jobs.put(StringUtils.removeStart(key, JOB_PREFIX), semaphore);
+                } else {
+                    throw new IllegalArgumentException("Unknown concurrency limit (should start with '"
+                                                       + PROJECT_PREFIX + "' or '" + JOB_PREFIX + "') : " + key);
+                }
+            }
+        }
+        this.projectPermits = Collections.unmodifiableMap(projects);
+        this.jobPermits = Collections.unmodifiableMap(jobs);
+    }
+
+    /**
+     * @return true if at least one limit is defined
+     */
+    public boolean isEnabled() {
+        return !projectPermits.isEmpty() || !jobPermits.isEmpty();
+    }
+
+    /**
+     * @return true if at least one limit is defined for a RunDeck project (so that we need the project of a job)
+     */
+    public boolean hasProjectLimits() {
+        return !projectPermits.isEmpty();
+    }
+
+    /**
+     * Wait (in a fair queue) for a permit of the given project, and then of the given job
+     * 
+     * @param project of the RunDeck job - may be null if unknown
+     * @param jobId ID of the RunDeck job
+     * @param logger for logging the queue position and the wait time
+     * @return the acquired permit, to release when the execution is finished
+     * @throws InterruptedException if interrupted while waiting (no permit is held then)
+     */
+    public Permit acquire(String project, String jobId, PrintStream logger) throws InterruptedException {
+        // always in the same order (project then job), so that 2 builds can't wait for each other
+        List<Semaphore> semaphores = new ArrayList<Semaphore>(2);
+        Permit permit = new Permit(semaphores);
+        try {
+            if (project != null && projectPermits.containsKey(project)) {
+                acquire(projectPermits.get(project), "project " + project, logger);
+                semaphores.add(projectPermits.get(project));
+            }
+            if (jobPermits.containsKey(jobId)) {
+                acquire(jobPermits.get(jobId), "job " + jobId, logger);
+                semaphores.add(jobPermits.get(jobId));
+            }
+        } catch (InterruptedException e) {
+            permit.release();
+            throw e;
+        }
+        return permit;
+    }
+
+    private void acquire(Semaphore semaphore, String name, PrintStream logger) throws InterruptedException {
+        // tryAcquire() would not honor the fairness, but the timed version does
+        if (semaphore.tryAcquire(0, TimeUnit.SECONDS)) {
+            return;
+        }
+        RundeckMetrics metrics = RundeckMetrics.get();
+        logger.println("Waiting for one of the " + limits.get(semaphore) + " RunDeck execution slots of the " + name
+                       + " (position in queue : " + (semaphore.getQueueLength() + 1) + ")...");
+        long start = System.nanoTime();
+        metrics.notifierPermitsQueued.add(1);
+        try {
+            semaphore.acquire();
+        } finally {
+            metrics.notifierPermitsQueued.add(-1);
+            metrics.notifierPermitWaitDuration.observeSince(start);
+        }
+        logger.println("Got a RunDeck execution slot of the " + name + " after "
+                       + (System.nanoTime() - start) / 1000000L + " ms");
+    }
+
+    private static ScheduledExecutorService createReleaser() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RunDeck execution permits releaser");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        return executor;
+    }
+
+    /**
+     * Permits held for a RunDeck execution
+     */
+    public static class Permit {
+
+        private final List<Semaphore> semaphores;
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private Permit(List<Semaphore> semaphores) {
+            this.semaphores = semaphores;
+        }
+
+        /**
+         * Release the permits (only the first call has an effect)
+         */
+        public void release() {
+            if (released.compareAndSet(false, true)) {
+                for (Semaphore semaphore : semaphores) {
+                    semaphore.release();
+                }
+            }
+        }
+
+        /**
+         * Release the permits in the background, when the given execution is finished (for builds that don't wait for
+         * their execution)
+         * 
+         * @param rundeck instance running the execution
+         * @param executionId ID of the execution
+         */
+        public void releaseWhenFinished(final RundeckClient rundeck, final Long executionId) {
+            if (semaphores.isEmpty()) {
+                return;
+            }
+            final long deadline = System.currentTimeMillis() + TimeUnit.HOURS.toMillis(RELEASE_MAX_HOURS);
+            RELEASER.schedule(new Runnable() {
+
+                public void run() {
+                    try {
+                        RundeckExecution execution = rundeck.getExecution(executionId);
+                        if (ExecutionStatus.RUNNING.equals(execution.getStatus())
+                            && System.currentTimeMillis() < deadline) {
+                            RELEASER.schedule(this, RELEASE_POLL_SECONDS, TimeUnit.SECONDS);
+                            return;
+                        }
+                    } catch (RundeckUnavailableException e) {
+                        // RunDeck is degraded : the execution may still be running
+                        RELEASER.schedule(this, RELEASE_POLL_SECONDS, TimeUnit.SECONDS);
+                        return;
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Failed to get RunDeck execution #" + executionId
+                                                  + ", releasing its concurrency permits", e);
+                    }
+                    release();
+                }
+            }, RELEASE_POLL_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.rundeck.api.RundeckClient;
+
+/**
+ * Immutable snapshot of the global RunDeck settings, with the objects built from them (the guarded RunDeck client, its
+ * circuit breaker and rate limiter, and the concurrency limiter). A new snapshot is published atomically on each
+ * configuration change (see {@link RundeckNotifier.RundeckDescriptor#getConfiguration()}) : readers never lock, and a
+ * build keeps using the snapshot it started with until its execution is finished, even if the configuration is saved
+ * in the meantime.
+ */
+public final class RundeckConfiguration {
+
+    /** raw client, as configured - may be null */
+    private final RundeckClient rundeckInstance;
+
+    /** rundeckInstance protected by the circuit breaker and rate limiter - may be null */
+    private final GuardedRundeckClient guardedRundeckInstance;
+
+    private final int circuitBreakerFailureThreshold;
+
+    private final int circuitBreakerOpenSeconds;
+
+    private final double rateLimitPerSecond;
+
+    private final int rateLimitBurst;
+
+    private final int callTimeoutSeconds;
+
+    private final RundeckCircuitBreaker circuitBreaker;
+
+    private final RundeckRateLimiter rateLimiter;
+
+    private final String concurrencyLimits;
+
+    private final RundeckConcurrencyLimiter concurrencyLimiter;
+
+    private final List<String> webHookRelayPeers;
+
+    /**
+     * @param rundeckInstance raw client - may be null if the RunDeck configuration is not valid
+     * @param circuitBreakerFailureThreshold number of consecutive RunDeck failures before failing fast - 0 to disable
+     *            the circuit breaker
+     * @param circuitBreakerOpenSeconds time during which we fail fast, before probing RunDeck again
+     * @param rateLimitPerSecond maximum (average) number of RunDeck API calls per second - 0 for no limit
+     * @param rateLimitBurst maximum number of RunDeck API calls at once
+     * @param callTimeoutSeconds maximum duration of a RunDeck API call - 0 for no timeout
+     * @param circuitBreaker built from the circuitBreakerFailureThreshold and circuitBreakerOpenSeconds
+     * @param rateLimiter built from the rateLimitPerSecond and rateLimitBurst
+     * @param concurrencyLimits definition of the concurrency limits - may be null
+     * @param concurrencyLimiter built from the concurrencyLimits
+     * @param webHookRelayPeers URLs of the WebHook of the peer controllers, see {@link RundeckWebHookRelay}
+     */
+    public RundeckConfiguration(RundeckClient rundeckInstance, int circuitBreakerFailureThreshold,
+            int circuitBreakerOpenSeconds, double rateLimitPerSecond, int rateLimitBurst, int callTimeoutSeconds,
+            RundeckCircuitBreaker circuitBreaker, RundeckRateLimiter rateLimiter, String concurrencyLimits,
+            RundeckConcurrencyLimiter concurrencyLimiter, List<String> webHookRelayPeers) {
+        super();
+        this.rundeckInstance = rundeckInstance;
+        this.circuitBreakerFailureThreshold = circuitBreakerFailureThreshold;
+        this.circuitBreakerOpenSeconds = circuitBreakerOpenSeconds;
+        this.rateLimitPerSecond = rateLimitPerSecond;
+        this.rateLimitBurst = rateLimitBurst;
+        this.callTimeoutSeconds = callTimeoutSeconds;
+        this.circuitBreaker = circuitBreaker;
+        this.rateLimiter = rateLimiter;
+        this.concurrencyLimits = concurrencyLimits;
+        this.concurrencyLimiter = concurrencyLimiter;
+        this.webHookRelayPeers = Collections.unmodifiableList(new ArrayList<String>(webHookRelayPeers));
+        if (rundeckInstance != null) {
+            this.guardedRundeckInstance = new GuardedRundeckClient(rundeckInstance,
+                                                                   circuitBreaker,
+                                                                   rateLimiter,
+                                                                   callTimeoutSeconds * 1000L);
+        } else {
+            this.guardedRundeckInstance = null;
+        }
+    }
+
+    /**
+     * @return the RunDeck client, protected by a circuit breaker and a rate limiter shared by all the users of this
+     *         snapshot - or null if the RunDeck configuration is not valid
+     */
+    public RundeckClient getRundeckClient() {
+        return guardedRundeckInstance;
+    }
+
+    /**
+     * @return the RunDeck client as configured, without any protection - or null if the RunDeck configuration is not
+     *         valid
+     */
+    public RundeckClient getRundeckInstance() {
+        return rundeckInstance;
+    }
+
+    public int getCircuitBreakerFailureThreshold() {
+        return circuitBreakerFailureThreshold;
+    }
+
+    public int getCircuitBreakerOpenSeconds() {
+        return circuitBreakerOpenSeconds;
+    }
+
+    public double getRateLimitPerSecond() {
+        return rateLimitPerSecond;
+    }
+
+    public int getRateLimitBurst() {
+        return rateLimitBurst;
+    }
+
+    public int getCallTimeoutSeconds() {
+        return callTimeoutSeconds;
+    }
+
+    /**
+     * @return the circuit breaker of the RunDeck client (never null)
+     */
+    public RundeckCircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * @return the rate limiter of the RunDeck client (never null)
+     */
+    public RundeckRateLimiter getRateLimiter() {
+        return rateLimiter;
+    }
+
+    public String getConcurrencyLimits() {
+        return concurrencyLimits;
+    }
+
+    /**
+     * @return the concurrency limiter of the RunDeck executions (never null, but may have no limit)
+     */
+    public RundeckConcurrencyLimiter getConcurrencyLimiter() {
+        return concurrencyLimiter;
+    }
+
+    /**
+     * @return the URLs of the WebHook of the peer controllers, to which the WebHook notifications are relayed (may be
+     *         empty)
+     */
+    public List<String> getWebHookRelayPeers() {
+        return webHookRelayPeers;
+    }
+}
@@ -0,0 +1,513 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.servlet.http.HttpServletResponse;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.rundeck.GuardedRundeckClient.RundeckUnavailableException;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckDescriptor;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.domain.RundeckExecution.ExecutionStatus;
+
+/**
+ * Ledger of the RunDeck deployments : every execution triggered by a {@link RundeckNotifier}, with the build, the
+ * RunDeck job, the node filters, the final status and the timestamps. The ledger is an append-only file in
+ * JENKINS_HOME (one compact record per line), replayed on startup into rolled-up views : the last deployments of each
+ * Jenkins project, and the current deployment (last successful execution) of each RunDeck job and node filters.
+ * Nothing needs to load the builds to know what is deployed where.<br>
+ * The ledger is compacted to the deployments kept in memory on startup, and when it grows too much.<br>
+ * The final status of an execution comes from the build waiting for it, from the WebHook / poll notifications, or
+ * from a background follower for the executions nobody waits for.<br>
+ * Served as JSON at /plugin/rundeck/deployments/[?project=PROJECT].
+ */
+public class RundeckDeploymentLedger {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckDeploymentLedger.class.getName());
+
+    /** Number of deployments kept in memory for each Jenkins project (the ledger file has all of them) */
+    private static final int MAX_DEPLOYMENTS_PER_PROJECT = 100;
+
+    /** Executions still running after this delay are no longer followed */
+    private static final long FOLLOW_MAX_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** The ledger is compacted when it grew by this size since the last compaction */
+    private static final long COMPACT_THRESHOLD_BYTES = 1024 * 1024L;
+
+    private static final String TRIGGERED = "T";
+
+    private static final String FINISHED = "F";
+
+    /** final status of the executions we stopped following */
+    private static final String UNKNOWN = "UNKNOWN";
+
+    private final RundeckJournal ledger;
+
+    /** size of the ledger after the last compaction */
+    private long compactedLength;
+
+    /** last deployments, by Jenkins project full name, newest first */
+    private final Map<String, LinkedList<Deployment>> deploymentsByProject =
+            new HashMap<String, LinkedList<Deployment>>();
+
+    /** current deployment (last successful execution), by RunDeck job and node filters */
+    private final Map<String, Deployment> currentDeployments = new TreeMap<String, Deployment>();
+
+    /** deployments whose execution is not finished yet */
+    private final List<Deployment> runningDeployments = new ArrayList<Deployment>();
+
+    /**
+     * @param directory where the ledger is stored (created if needed)
+     */
+    public RundeckDeploymentLedger(File directory) {
+        super();
+        directory.mkdirs();
+        this.ledger = new RundeckJournal(new File(directory, "deployments.ledger"), "RunDeck deployment ledger");
+    }
+
+    /**
+     * Replay the ledger, then compact it
+     */
+    public synchronized void load() {
+        deploymentsByProject.clear();
+        currentDeployments.clear();
+        runningDeployments.clear();
+        final int[] records = new int[1];
+        ledger.replay(new RundeckJournal.RecordHandler() {
+
+            public void replay(String[] record) {
+                records[0]++;
+                RundeckDeploymentLedger.this.replay(record);
+            }
+        });
+        // the builds waiting for their executions are gone : only follow the recent ones
+        long now = System.currentTimeMillis();
+        for (Deployment deployment : new ArrayList<Deployment>(runningDeployments)) {
+            if (now - deployment.triggeredAt > FOLLOW_MAX_MILLIS) {
+                finish(deployment.executionId, UNKNOWN, now);
+            }
+        }
+        List<String> retained = getRetainedRecords();
+        if (records[0] != retained.size()) {
+            ledger.compact(retained);
+        }
+        compactedLength = ledger.length();
+    }
+
+    /**
+     * Record the execution triggered (or reused) for a build - ignored if the build already has a deployment for this
+     * job (for example when a spooled notification is resumed)
+     * 
+     * @param projectName full name of the Jenkins project
+     * @param buildNumber number of the build
+     * @param jobId identifier of the RunDeck job, as configured
+     * @param nodeFilters expanded node filters - may be null
+     * @param execution triggered execution
+     * @param waited true if the build (or the spool) waits for the execution, and will record its final status
+     */
+    public synchronized void triggered(String projectName, int buildNumber, String jobId, Properties nodeFilters,
+            RundeckExecution execution, boolean waited) {
+        LinkedList<Deployment> deployments = deploymentsByProject.get(projectName);
+        if (deployments != null) {
+            for (Deployment deployment : deployments) {
+                if (deployment.buildNumber == buildNumber && StringUtils.equals(deployment.jobId, jobId)) {
+                    return;
+                }
+            }
+        }
+        Deployment deployment = new Deployment(projectName,
+                                               buildNumber,
+                                               jobId,
+                                               formatNodeFilters(nodeFilters),
+                                               execution.getId(),
+                                               System.currentTimeMillis());
+        deployment.waited = waited;
+        append(TRIGGERED, projectName, String.valueOf(buildNumber), jobId, deployment.nodeFilter,
+               String.valueOf(deployment.executionId), String.valueOf(deployment.triggeredAt));
+        add(deployment);
+        finished(execution);
+        compactIfNeeded();
+    }
+
+    /**
+     * Record the final status of the given execution, if it is finished and has been triggered by a build
+     * 
+     * @param execution with its (maybe final) status
+     */
+    public synchronized void finished(RundeckExecution execution) {
+        if (execution == null || execution.getStatus() == null
+            || ExecutionStatus.RUNNING.equals(execution.getStatus()) || runningDeployments.isEmpty()) {
+            return;
+        }
+        long endedAt = execution.getEndedAt() != null ? execution.getEndedAt().getTime()
+                : System.currentTimeMillis();
+        finished(execution.getId(), execution.getStatus().toString(), endedAt);
+    }
+
+    /**
+     * Record the final status of the given execution, if it has been triggered by a build and is not finished yet
+     */
+    synchronized void finished(Long executionId, String status, long endedAt) {
+        for (Deployment deployment : runningDeployments) {
+            if (executionId.equals(deployment.executionId)) {
+                append(FINISHED, String.valueOf(executionId), status, String.valueOf(endedAt));
+                finish(executionId, status, endedAt);
+                compactIfNeeded();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Let the background follower get the final status of the given execution, because nobody waits for it anymore
+     */
+    public synchronized void follow(Long executionId) {
+        for (Deployment deployment : runningDeployments) {
+            if (executionId.equals(deployment.executionId)) {
+                deployment.waited = false;
+            }
+        }
+    }
+
+    /**
+     * @param projectName full name of a Jenkins project
+     * @return the last deployments of the project, newest first
+     */
+    public synchronized List<Deployment> getDeployments(String projectName) {
+        LinkedList<Deployment> deployments = deploymentsByProject.get(projectName);
+        return deployments != null ? new ArrayList<Deployment>(deployments) : new ArrayList<Deployment>();
+    }
+
+    /**
+     * @return the current deployment (last successful execution) of each RunDeck job and node filters
+     */
+    public synchronized List<Deployment> getCurrentDeployments() {
+        return new ArrayList<Deployment>(currentDeployments.values());
+    }
+
+    /**
+     * @return the deployments whose execution is not finished yet
+     */
+    synchronized List<Deployment> getRunningDeployments() {
+        return new ArrayList<Deployment>(runningDeployments);
+    }
+
+    /**
+     * Deployments as JSON : the current deployments, and the last deployments of the given project (if any)
+     */
+    public void doIndex(StaplerRequest request, StaplerResponse response) throws IOException {
+        String projectName = request.getParameter("project");
+        JSONObject json = new JSONObject();
+        json.put("current", toJson(getCurrentDeployments()));
+        if (StringUtils.isNotBlank(projectName)) {
+            if (!canRead(projectName)) {
+                response.sendError(HttpServletResponse.SC_BAD_REQUEST,
+                                   "You must provide a valid 'project' parameter !");
+                return;
+            }
+            json.put("deployments", toJson(getDeployments(projectName)));
+        }
+        response.setContentType("application/json;charset=UTF-8");
+        response.getWriter().append(json.toString());
+    }
+
+    private JSONArray toJson(Collection<Deployment> deployments) {
+        JSONArray array = new JSONArray();
+        for (Deployment deployment : deployments) {
+            if (!canRead(deployment.projectName)) {
+                continue;
+            }
+            JSONObject json = new JSONObject();
+            json.put("project", deployment.projectName);
+            json.put("build", deployment.buildNumber);
+            json.put("job", deployment.jobId);
+            json.put("nodeFilter", deployment.nodeFilter);
+            json.put("execution", deployment.executionId);
+            json.put("status", deployment.status);
+            json.put("triggeredAt", deployment.triggeredAt);
+            if (deployment.endedAt > 0) {
+                json.put("endedAt", deployment.endedAt);
+            }
+            array.add(json);
+        }
+        return array;
+    }
+
+    private static boolean canRead(String projectName) {
+        AbstractProject<?, ?> project = Hudson.getInstance().getItemByFullName(projectName, AbstractProject.class);
+        return project != null && project.hasPermission(Item.READ);
+    }
+
+    private void replay(String[] record) {
+        String type = record[0];
+        if (TRIGGERED.equals(type)) {
+            add(new Deployment(RundeckJournal.decode(record[1]),
+                               Integer.parseInt(record[2]),
+                               RundeckJournal.decode(record[3]),
+                               RundeckJournal.decode(record[4]),
+                               Long.valueOf(record[5]),
+                               Long.parseLong(record[6])));
+        } else if (FINISHED.equals(type)) {
+            finish(Long.valueOf(record[1]), record[2], Long.parseLong(record[3]));
+        }
+    }
+
+    private void add(Deployment deployment) {
+        LinkedList<Deployment> deployments = deploymentsByProject.get(deployment.projectName);
+        if (deployments == null) {
+            deployments = new LinkedList<Deployment>();
+            deploymentsByProject.put(deployment.projectName, deployments);
+        }
+        deployments.addFirst(deployment);
+        while (deployments.size() > MAX_DEPLOYMENTS_PER_PROJECT) {
+            deployments.removeLast();
+        }
+        runningDeployments.add(deployment);
+    }
+
+    private void finish(Long executionId, String status, long endedAt) {
+        for (Deployment deployment : new ArrayList<Deployment>(runningDeployments)) {
+            if (!executionId.equals(deployment.executionId)) {
+                continue;
+            }
+            deployment.status = status;
+            deployment.endedAt = endedAt;
+            runningDeployments.remove(deployment);
+            if (ExecutionStatus.SUCCEEDED.toString().equals(status)) {
+                Deployment current = currentDeployments.get(deployment.getTarget());
+                if (current == null || current.executionId < deployment.executionId) {
+                    currentDeployments.put(deployment.getTarget(), deployment);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the given node filters, in a canonical form : "name=value,name=value" sorted by name
+     */
+    static String formatNodeFilters(Properties nodeFilters) {
+        if (nodeFilters == null) {
+            return "";
+        }
+        StringBuilder formatted = new StringBuilder();
+        for (Map.Entry<Object, Object> filter : new TreeMap<Object, Object>(nodeFilters).entrySet()) {
+            if (formatted.length() > 0) {
+                formatted.append(',');
+            }
+            formatted.append(filter.getKey()).append('=').append(filter.getValue());
+        }
+        return formatted.toString();
+    }
+
+    private void append(String... fields) {
+        ledger.append(fields);
+    }
+
+    /**
+     * Compact the ledger if it grew too much since the last compaction
+     */
+    private void compactIfNeeded() {
+        if (ledger.length() > compactedLength + COMPACT_THRESHOLD_BYTES) {
+            ledger.compact(getRetainedRecords());
+            // if the compaction failed, don't try again on every record
+            compactedLength = ledger.length();
+        }
+    }
+
+    /**
+     * @return the records of the deployments kept in memory (the last deployments of each project, the current
+     *         deployments and the running ones), in the order they have been triggered
+     */
+    private List<String> getRetainedRecords() {
+        Set<Deployment> retained = new HashSet<Deployment>(runningDeployments);
+        for (List<Deployment> deployments : deploymentsByProject.values()) {
+            retained.addAll(deployments);
+        }
+        retained.addAll(currentDeployments.values());
+        List<Deployment> sorted = new ArrayList<Deployment>(retained);
+        Collections.sort(sorted, new Comparator<Deployment>() {
+
+            public int compare(Deployment first, Deployment second) {
+                if (first.triggeredAt != second.triggeredAt) {
+                    return first.triggeredAt < second.triggeredAt ? -1 : 1;
+                }
+                return first.executionId.compareTo(second.executionId);
+            }
+        });
+        List<String> records = new ArrayList<String>();
+        for (Deployment deployment : sorted) {
+            records.add(RundeckJournal.record(TRIGGERED, deployment.projectName,
+                                              String.valueOf(deployment.buildNumber), deployment.jobId,
+                                              deployment.nodeFilter, String.valueOf(deployment.executionId),
+                                              String.valueOf(deployment.triggeredAt)));
+            if (!runningDeployments.contains(deployment)) {
+                records.add(RundeckJournal.record(FINISHED, String.valueOf(deployment.executionId), deployment.status,
+                                                  String.valueOf(deployment.endedAt)));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * A RunDeck execution triggered for a Jenkins build
+     */
+    public static class Deployment {
+
+        private final String projectName;
+
+        private final int buildNumber;
+
+        private final String jobId;
+
+        /** canonical form of the node filters, see {@link RundeckDeploymentLedger#formatNodeFilters(Properties)} */
+        private final String nodeFilter;
+
+        private final Long executionId;
+
+        private final long triggeredAt;
+
+        /** status of the execution - RUNNING until we know the final status */
+        private volatile String status = ExecutionStatus.RUNNING.toString();
+
+        /** 0 until the execution is finished */
+        private volatile long endedAt;
+
+        /** true if the final status will be recorded by the build (or the spool) waiting for the execution */
+        private transient boolean waited;
+
+        Deployment(String projectName, int buildNumber, String jobId, String nodeFilter, Long executionId,
+                long triggeredAt) {
+            this.projectName = projectName;
+            this.buildNumber = buildNumber;
+            this.jobId = jobId;
+            this.nodeFilter = nodeFilter;
+            this.executionId = executionId;
+            this.triggeredAt = triggeredAt;
+        }
+
+        /**
+         * @return the RunDeck job and node filters deployed by this deployment
+         */
+        String getTarget() {
+            return jobId + "\t" + nodeFilter;
+        }
+
+        public String getProjectName() {
+            return projectName;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public String getNodeFilter() {
+            return nodeFilter;
+        }
+
+        public Long getExecutionId() {
+            return executionId;
+        }
+
+        public long getTriggeredAt() {
+            return triggeredAt;
+        }
+
+        public String getStatus() {
+            return status;
+        }
+
+        public long getEndedAt() {
+            return endedAt;
+        }
+
+        public boolean isSucceeded() {
+            return ExecutionStatus.SUCCEEDED.toString().equals(status);
+        }
+    }
+
+    /**
+     * Get the final status of the executions nobody waits for (the builds that don't wait for RunDeck, without WebHook
+     * or poll notification)
+     */
+    @Extension
+    public static class DeploymentFollower extends AsyncPeriodicWork {
+
+        public DeploymentFollower() {
+            super("RunDeck deployment follower");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return 60 * 1000L;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            RundeckPlugin plugin = Hudson.getInstance().getPlugin(RundeckPlugin.class);
+            RundeckDeploymentLedger ledger = plugin != null ? plugin.getDeployments() : null;
+            if (ledger == null) {
+                return;
+            }
+            List<Deployment> running = ledger.getRunningDeployments();
+            if (running.isEmpty()) {
+                return;
+            }
+            RundeckDescriptor descriptor = Hudson.getInstance().getDescriptorByType(RundeckDescriptor.class);
+            RundeckClient rundeck = descriptor != null ? descriptor.getRundeckInstance() : null;
+            if (rundeck == null) {
+                return;
+            }
+            for (Deployment deployment : running) {
+                if (deployment.waited) {
+                    continue;
+                }
+                try {
+                    RundeckExecution execution = rundeck.getExecution(deployment.executionId);
+                    if (ExecutionStatus.RUNNING.equals(execution.getStatus())
+                        && System.currentTimeMillis() - deployment.triggeredAt > FOLLOW_MAX_MILLIS) {
+                        // don't follow it forever
+                        ledger.finished(deployment.executionId, UNKNOWN, System.currentTimeMillis());
+                    } else {
+                        ledger.finished(execution);
+                    }
+                } catch (RundeckUnavailableException e) {
+                    // RunDeck is degraded : try again later
+                    return;
+                } catch (RundeckApiException e) {
+                    LOGGER.log(Level.WARNING, "Failed to get RunDeck execution #" + deployment.executionId
+                                              + ", no longer following it", e);
+                    ledger.finished(deployment.executionId, UNKNOWN, System.currentTimeMillis());
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,463 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import org.apache.commons.lang.StringUtils;
+import org.rundeck.api.domain.RundeckExecution;
+
+/**
+ * Filter on the fields of a {@link RundeckExecution}, used by the {@link RundeckTrigger} to ignore some executions
+ * (started by a bot, too short, ...) before any build is scheduled. The expression is compiled once into a tree of
+ * conditions, whose evaluation allocates nothing. Syntax :
+ * 
+ * <pre>
+ * startedBy != "deploy-bot" and duration >= 30s and not (description *= "dry-run" or abortedBy != "")
+ * </pre>
+ * 
+ * <ul>
+ * <li>text fields : startedBy, abortedBy, description (a missing value is an empty text) - operators == (equals), !=
+ * (not equals), ^= (starts with), *= (contains), $= (ends with), all case-insensitive</li>
+ * <li>numeric field : duration, in seconds or with a unit (500ms, 30s, 5m, 1h) - operators ==, !=, &lt;, &lt;=, &gt;,
+ * &gt;= (always false if the execution is not finished)</li>
+ * <li>conditions are combined with and, or, not, and parentheses</li>
+ * </ul>
+ */
+public final class RundeckExecutionFilter {
+
+    /** filter that matches no execution */
+    static final RundeckExecutionFilter REJECT_ALL = new RundeckExecutionFilter("", new Condition() {
+
+        @Override
+        boolean matches(RundeckExecution execution) {
+            return false;
+        }
+    });
+
+    private final String expression;
+
+    private final Condition condition;
+
+    private RundeckExecutionFilter(String expression, Condition condition) {
+        this.expression = expression;
+        this.condition = condition;
+    }
+
+    /**
+     * Compile the given expression
+     * 
+     * @param expression of the filter (see the syntax above)
+     * @return the compiled filter, or null if the expression is blank (no filter)
+     * @throws IllegalArgumentException if the expression is not valid
+     */
+    public static RundeckExecutionFilter compile(String expression) throws IllegalArgumentException {
+        if (StringUtils.isBlank(expression)) {
+            return null;
+        }
+        Parser parser = new Parser(expression);
+        Condition condition = parser.parseOr();
+        if (parser.hasNext()) {
+            throw new IllegalArgumentException("Unexpected '" + parser.next().text + "' in the filter expression : "
+                                               + expression);
+        }
+        return new RundeckExecutionFilter(expression, condition);
+    }
+
+    /**
+     * @param execution to test
+     * @return true if the execution matches the filter
+     */
+    public boolean matches(RundeckExecution execution) {
+        return condition.matches(execution);
+    }
+
+    public String getExpression() {
+        return expression;
+    }
+
+    @Override
+    public String toString() {
+        return expression;
+    }
+
+    private static abstract class Condition {
+
+        abstract boolean matches(RundeckExecution execution);
+    }
+
+    private static final class And extends Condition {
+
+        private final Condition left;
+
+        private final Condition right;
+
+        And(Condition left, Condition right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean matches(RundeckExecution execution) {
+            return left.matches(execution) && right.matches(execution);
+        }
+    }
+
+    private static final class Or extends Condition {
+
+        private final Condition left;
+
+        private final Condition right;
+
+        Or(Condition left, Condition right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        boolean matches(RundeckExecution execution) {
+            return left.matches(execution) || right.matches(execution);
+        }
+    }
+
+    private static final class Not extends Condition {
+
+        private final Condition condition;
+
+        Not(Condition condition) {
+            this.condition = condition;
+        }
+
+        @Override
+        boolean matches(RundeckExecution execution) {
+            return !condition.matches(execution);
+        }
+    }
+
+    private static enum TextField {
+        STARTED_BY("startedBy") {
+
+            @Override
+            String get(RundeckExecution execution) {
+                return execution.getStartedBy();
+            }
+        },
+        ABORTED_BY("abortedBy") {
+
+            @Override
+            String get(RundeckExecution execution) {
+                return execution.getAbortedBy();
+            }
+        },
+        DESCRIPTION("description") {
+
+            @Override
+            String get(RundeckExecution execution) {
+                return execution.getDescription();
+            }
+        };
+
+        private final String name;
+
+        private TextField(String name) {
+            this.name = name;
+        }
+
+        abstract String get(RundeckExecution execution);
+
+        static TextField forName(String name) {
+            for (TextField field : values()) {
+                if (field.name.equalsIgnoreCase(name)) {
+                    return field;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static enum TextOperator {
+        EQUALS("=="), NOT_EQUALS("!="), STARTS_WITH("^="), CONTAINS("*="), ENDS_WITH("$=");
+
+        private final String symbol;
+
+        private TextOperator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        static TextOperator forSymbol(String symbol) {
+            for (TextOperator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class TextCondition extends Condition {
+
+        private final TextField field;
+
+        private final TextOperator operator;
+
+        private final String value;
+
+        TextCondition(TextField field, TextOperator operator, String value) {
+            this.field = field;
+            this.operator = operator;
+            this.value = value;
+        }
+
+        @Override
+        boolean matches(RundeckExecution execution) {
+            String text = field.get(execution);
+            if (text == null) {
+                text = "";
+            }
+            switch (operator) {
+                case EQUALS:
+                    return text.equalsIgnoreCase(value);
+                case NOT_EQUALS:
+                    return !text.equalsIgnoreCase(value);
+                case STARTS_WITH:
+                    return text.regionMatches(true, 0, value, 0, value.length());
+                case ENDS_WITH:
+                    return text.regionMatches(true, text.length() - value.length(), value, 0, value.length());
+                case CONTAINS:
+                    for (int i = 0; i <= text.length() - value.length(); i++) {
+                        if (text.regionMatches(true, i, value, 0, value.length())) {
+                            return true;
+                        }
+                    }
+                    return false;
+                default:
+                    throw new IllegalStateException("Unknown operator : " + operator);
+            }
+        }
+    }
+
+    private static enum NumericOperator {
+        EQUALS("=="), NOT_EQUALS("!="), LOWER("<"), LOWER_OR_EQUALS("<="), GREATER(">"), GREATER_OR_EQUALS(">=");
+
+        private final String symbol;
+
+        private NumericOperator(String symbol) {
+            this.symbol = symbol;
+        }
+
+        static NumericOperator forSymbol(String symbol) {
+            for (NumericOperator operator : values()) {
+                if (operator.symbol.equals(symbol)) {
+                    return operator;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final class DurationCondition extends Condition {
+
+        private final NumericOperator operator;
+
+        private final long millis;
+
+        DurationCondition(NumericOperator operator, long millis) {
+            this.operator = operator;
+            this.millis = millis;
+        }
+
+        @Override
+        boolean matches(RundeckExecution execution) {
+            Date startedAt = execution.getStartedAt();
+            Date endedAt = execution.getEndedAt();
+            if (startedAt == null || endedAt == null) {
+                return false;
+            }
+            long duration = endedAt.getTime() - startedAt.getTime();
+            switch (operator) {
+                case EQUALS:
+                    return duration == millis;
+                case NOT_EQUALS:
+                    return duration != millis;
+                case LOWER:
+                    return duration < millis;
+                case LOWER_OR_EQUALS:
+                    return duration <= millis;
+                case GREATER:
+                    return duration > millis;
+                case GREATER_OR_EQUALS:
+                    return duration >= millis;
+                default:
+                    throw new IllegalStateException("Unknown operator : " + operator);
+            }
+        }
+    }
+
+    private static final class Token {
+
+        private final String text;
+
+        private final boolean quoted;
+
+        Token(String text, boolean quoted) {
+            this.text = text;
+            this.quoted = quoted;
+        }
+
+        boolean is(String keyword) {
+            return !quoted && text.equalsIgnoreCase(keyword);
+        }
+    }
+
+    /**
+     * Recursive descent parser : or > and > not > condition
+     */
+    private static final class Parser {
+
+        private static final String OPERATOR_CHARS = "=!^*$<>";
+
+        private final String expression;
+
+        private final List<Token> tokens = new ArrayList<Token>();
+
+        private int position = 0;
+
+        Parser(String expression) {
+            this.expression = expression;
+            tokenize();
+        }
+
+        boolean hasNext() {
+            return position < tokens.size();
+        }
+
+        Token next() {
+            if (!hasNext()) {
+                throw new IllegalArgumentException("Unexpected end of the filter expression : " + expression);
+            }
+            return tokens.get(position++);
+        }
+
+        private boolean accept(String keyword) {
+            if (hasNext() && tokens.get(position).is(keyword)) {
+                position++;
+                return true;
+            }
+            return false;
+        }
+
+        Condition parseOr() {
+            Condition condition = parseAnd();
+            while (accept("or")) {
+                condition = new Or(condition, parseAnd());
+            }
+            return condition;
+        }
+
+        private Condition parseAnd() {
+            Condition condition = parseNot();
+            while (accept("and")) {
+                condition = new And(condition, parseNot());
+            }
+            return condition;
+        }
+
+        private Condition parseNot() {
+            if (accept("not")) {
+                return new Not(parseNot());
+            }
+            if (accept("(")) {
+                Condition condition = parseOr();
+                if (!accept(")")) {
+                    throw new IllegalArgumentException("Missing ')' in the filter expression : " + expression);
+                }
+                return condition;
+            }
+            return parseCondition();
+        }
+
+        private Condition parseCondition() {
+            Token field = next();
+            Token operator = next();
+            Token value = next();
+            if ("duration".equalsIgnoreCase(field.text) && !field.quoted) {
+                NumericOperator numericOperator = NumericOperator.forSymbol(operator.text);
+                if (numericOperator == null || operator.quoted) {
+                    throw new IllegalArgumentException("Invalid operator for the duration : " + operator.text);
+                }
+                return new DurationCondition(numericOperator, parseDuration(value.text));
+            }
+            TextField textField = field.quoted ? null : TextField.forName(field.text);
+            if (textField == null) {
+                throw new IllegalArgumentException("Unknown field (should be startedBy, abortedBy, description or "
+                                                   + "duration) : " + field.text);
+            }
+            TextOperator textOperator = TextOperator.forSymbol(operator.text);
+            if (textOperator == null || operator.quoted) {
+                throw new IllegalArgumentException("Invalid operator for " + field.text + " : " + operator.text);
+            }
+            return new TextCondition(textField, textOperator, value.text);
+        }
+
+        /**
+         * @param value "500ms", "30s", "5m", "1h", or a number of seconds
+         * @return the duration in milliseconds
+         */
+        private long parseDuration(String value) {
+            String number = value;
+            long unit = 1000;
+            if (value.endsWith("ms")) {
+                number = StringUtils.removeEnd(value, "ms");
+                unit = 1;
+            } else if (value.endsWith("s")) {
+                number = StringUtils.removeEnd(value, "s");
+            } else if (value.endsWith("m")) {
+                number = StringUtils.removeEnd(value, "m");
+                unit = 60 * 1000;
+            } else if (value.endsWith("h")) {
+                number = StringUtils.removeEnd(value, "h");
+                unit = 60 * 60 * 1000;
+            }
+            try {
+                return Long.parseLong(number) * unit;
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("The duration is not valid : " + value);
+            }
+        }
+
+        private void tokenize() {
+            int i = 0;
+            while (i < expression.length()) {
+                char c = expression.charAt(i);
+                if (Character.isWhitespace(c)) {
+                    i++;
+                } else if (c == '(' || c == ')') {
+                    tokens.add(new Token(String.valueOf(c), false));
+                    i++;
+                } else if (c == '"') {
+                    StringBuilder text = new StringBuilder();
+                    i++;
+                    while (i < expression.length() && expression.charAt(i) != '"') {
+                        if (expression.charAt(i) == '\\' && i + 1 < expression.length()) {
+                            i++;
+                        }
+                        text.append(expression.charAt(i++));
+                    }
+                    if (i >= expression.length()) {
+                        throw new IllegalArgumentException("Missing '\"' in the filter expression : " + expression);
+                    }
+                    tokens.add(new Token(text.toString(), true));
+                    i++;
+                } else {
+                    int start = i;
+                    boolean operator = OPERATOR_CHARS.indexOf(c) >= 0;
+                    while (i < expression.length() && !Character.isWhitespace(expression.charAt(i))
+                           && "()\"".indexOf(expression.charAt(i)) < 0
+                           && (OPERATOR_CHARS.indexOf(expression.charAt(i)) >= 0) == operator) {
+                        i++;
+                    }
+                    tokens.add(new Token(expression.substring(start, i), false));
+                }
+            }
+        }
+    }
+}
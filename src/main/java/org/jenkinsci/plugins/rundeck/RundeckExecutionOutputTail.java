@@ -0,0 +1,267 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.zip.GZIPOutputStream;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.NameValuePair;
+import org.apache.http.client.entity.UrlEncodedFormEntity;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.message.BasicNameValuePair;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+import org.dom4j.Document;
+import org.dom4j.Node;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckApiException.RundeckApiLoginException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.parser.ParserHelper;
+
+/**
+ * Incrementally tails the output of a RunDeck execution (using the "execution output" API, available since RunDeck
+ * 1.5 / API v5) : each poll only fetches the output produced since the previous poll (using the offset returned by
+ * RunDeck), writes it to the build console, and streams it to a compressed file.<br>
+ * The API calls go through the circuit breaker and the rate limiter of the {@link GuardedRundeckClient}, and are
+ * bounded by its call timeout (also used as the connection and socket timeouts).
+ */
+public class RundeckExecutionOutputTail {
+
+    /** Maximum number of lines fetched by a single poll */
+    private static final int MAX_LINES = 500;
+
+    /** Timeout (in ms) of the HTTP connections if the client has no call timeout : never wait forever for the output */
+    private static final int DEFAULT_TIMEOUT_MILLIS = 60000;
+
+    private final RundeckClient rundeck;
+
+    private final Long executionId;
+
+    private final PrintStream console;
+
+    private final File outputFile;
+
+    private DefaultHttpClient httpClient;
+
+    private Writer output;
+
+    private long offset;
+
+    private boolean completed;
+
+    /**
+     * @param rundeck client, used for the url and credentials of the RunDeck instance (and to guard the calls, if it
+     *            is a {@link GuardedRundeckClient})
+     * @param executionId ID of the execution to tail
+     * @param console to write the output to
+     * @param outputFile to write the full output to (gzipped)
+     */
+    public RundeckExecutionOutputTail(RundeckClient rundeck, Long executionId, PrintStream console, File outputFile) {
+        super();
+        this.rundeck = rundeck;
+        this.executionId = executionId;
+        this.console = console;
+        this.outputFile = outputFile;
+    }
+
+    /**
+     * Fetch and write the output produced since the last poll
+     * 
+     * @return true if the output is complete (nothing more to fetch), false otherwise
+     * @throws IOException in case of error while fetching or writing the output
+     * @throws RundeckApiException in case of error returned by the RunDeck API
+     */
+    public boolean poll() throws IOException, RundeckApiException {
+        if (completed) {
+            return true;
+        }
+        if (httpClient == null) {
+            httpClient = createHttpClient();
+            login();
+            outputFile.getParentFile().mkdirs();
+            output = new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(outputFile)),
+                                                               "UTF-8"));
+        }
+
+        // loop until we caught up with the execution, as each fetch is limited to MAX_LINES
+        while (true) {
+            Document document = fetch();
+            Node outputNode = document.selectSingleNode("result/output");
+            if (outputNode == null) {
+                throw new RundeckApiException("Invalid response for the output of execution #" + executionId);
+            }
+            long newOffset = Long.parseLong(StringUtils.defaultIfEmpty(outputNode.valueOf("offset"),
+                                                                       String.valueOf(offset)));
+            @SuppressWarnings("unchecked")
+            List<Node> entries = outputNode.selectNodes("entries/entry");
+            for (Node entry : entries) {
+                writeEntry(entry);
+            }
+            output.flush();
+            boolean caughtUp = entries.size() < MAX_LINES || newOffset <= offset;
+            offset = newOffset;
+            completed = Boolean.valueOf(outputNode.valueOf("completed"));
+            if (completed || caughtUp) {
+                return completed;
+            }
+        }
+    }
+
+    /**
+     * Release the HTTP connections and close the output file
+     */
+    public void close() {
+        IOUtils.closeQuietly(output);
+        if (httpClient != null) {
+            httpClient.getConnectionManager().shutdown();
+        }
+    }
+
+    public File getOutputFile() {
+        return outputFile;
+    }
+
+    private void writeEntry(Node entry) throws IOException {
+        // the message is an attribute in API v5, and the content of the node in later versions
+        String message = entry.valueOf("@log");
+        if (StringUtils.isEmpty(message)) {
+            message = entry.getText();
+        }
+        String node = entry.valueOf("@node");
+        String line = StringUtils.isNotBlank(node) ? "[" + node + "] " + message : message;
+        console.println(line);
+        output.write(line);
+        output.write('\n');
+    }
+
+    private DefaultHttpClient createHttpClient() {
+        long timeout = 0;
+        if (rundeck instanceof GuardedRundeckClient) {
+            timeout = ((GuardedRundeckClient) rundeck).getCallTimeoutMillis();
+        }
+        int timeoutMillis = timeout > 0 ? (int) Math.min(timeout, Integer.MAX_VALUE) : DEFAULT_TIMEOUT_MILLIS;
+        DefaultHttpClient client = new DefaultHttpClient();
+        HttpParams params = client.getParams();
+        HttpConnectionParams.setConnectionTimeout(params, timeoutMillis);
+        HttpConnectionParams.setSoTimeout(params, timeoutMillis);
+        return client;
+    }
+
+    /**
+     * Run the given call to the RunDeck API through the {@link GuardedRundeckClient}, if any
+     */
+    private <T> T execute(String name, Callable<T> call) throws IOException, RundeckApiException {
+        if (rundeck instanceof GuardedRundeckClient) {
+            return ((GuardedRundeckClient) rundeck).call(name, call);
+        }
+        try {
+            return call.call();
+        } catch (IOException e) {
+            throw e;
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RundeckApiException("Failed to call the RunDeck API : " + name, e);
+        }
+    }
+
+    private Document fetch() throws IOException, RundeckApiException {
+        return execute("getExecutionOutput", new Callable<Document>() {
+
+            public Document call() throws IOException {
+                return doFetch();
+            }
+        });
+    }
+
+    private Document doFetch() throws IOException, RundeckApiException {
+        HttpGet get = new HttpGet(buildUrl("/api/5/execution/" + executionId + "/output?offset=" + offset
+                                           + "&maxlines=" + MAX_LINES));
+        HttpResponse response = httpClient.execute(get);
+        HttpEntity entity = response.getEntity();
+        int status = response.getStatusLine().getStatusCode();
+        if (status / 100 != 2 || entity == null) {
+            consume(entity);
+            throw new RundeckApiException("Invalid HTTP response '" + response.getStatusLine()
+                                          + "' for the output of execution #" + executionId
+                                          + " (requires RunDeck 1.5+)");
+        }
+        InputStream content = entity.getContent();
+        try {
+            Document document = ParserHelper.loadDocument(content);
+            Node error = document.selectSingleNode("result[@error='true']");
+            if (error != null) {
+                throw new RundeckApiException(error.valueOf("error/message"));
+            }
+            return document;
+        } finally {
+            IOUtils.closeQuietly(content);
+        }
+    }
+
+    /**
+     * Open a session on RunDeck (same form-based login as the {@link RundeckClient}), kept in the cookies of our HTTP
+     * client
+     */
+    private void login() throws IOException, RundeckApiException {
+        execute("login", new Callable<Void>() {
+
+            public Void call() throws IOException {
+                doLogin();
+                return null;
+            }
+        });
+    }
+
+    private void doLogin() throws IOException, RundeckApiLoginException {
+        HttpPost post = new HttpPost(buildUrl("/j_security_check"));
+        List<NameValuePair> params = new ArrayList<NameValuePair>();
+        params.add(new BasicNameValuePair("j_username", rundeck.getLogin()));
+        params.add(new BasicNameValuePair("j_password", rundeck.getPassword()));
+        params.add(new BasicNameValuePair("action", "login"));
+        post.setEntity(new UrlEncodedFormEntity(params, "UTF-8"));
+        HttpResponse response = httpClient.execute(post);
+        int status = response.getStatusLine().getStatusCode();
+        if (status / 100 == 3) {
+            Header location = response.getFirstHeader("Location");
+            consume(response.getEntity());
+            if (location != null && StringUtils.contains(location.getValue(), "/user/error")) {
+                throw new RundeckApiLoginException("Login failed for user " + rundeck.getLogin());
+            }
+            return;
+        }
+        if (status / 100 != 2) {
+            consume(response.getEntity());
+            throw new RundeckApiLoginException("Invalid HTTP response '" + response.getStatusLine() + "' for login");
+        }
+        HttpEntity entity = response.getEntity();
+        String content = entity != null ? IOUtils.toString(entity.getContent(), "UTF-8") : "";
+        if (StringUtils.contains(content, "j_security_check")) {
+            throw new RundeckApiLoginException("Login failed for user " + rundeck.getLogin());
+        }
+    }
+
+    private String buildUrl(String path) {
+        return StringUtils.removeEnd(rundeck.getUrl(), "/") + path;
+    }
+
+    private static void consume(HttpEntity entity) throws IOException {
+        if (entity != null) {
+            entity.consumeContent();
+        }
+    }
+}
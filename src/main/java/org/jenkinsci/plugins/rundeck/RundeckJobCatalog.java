@@ -0,0 +1,152 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import org.apache.commons.lang.StringUtils;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckJob;
+import org.rundeck.api.domain.RundeckProject;
+
+/**
+ * Local copy of the jobs defined on RunDeck (periodically refreshed by {@link RundeckJobCatalogSync}), indexed by ID
+ * and by reference (project:group/name) for exact and prefix lookups. Used by the configuration pages, so that
+ * validating or completing a job identifier does not need a call to the RunDeck API.<br>
+ * The catalog is an immutable snapshot, replaced as a whole on each refresh : lookups never block.
+ */
+public class RundeckJobCatalog {
+
+    private volatile Snapshot snapshot = Snapshot.EMPTY;
+
+    /**
+     * Load all jobs of all projects from RunDeck, and replace the current snapshot
+     * 
+     * @param rundeck client to use
+     * @return the number of jobs loaded
+     * @throws RundeckApiException in case of error while talking to RunDeck (the current snapshot is kept)
+     */
+    public int refresh(RundeckClient rundeck) throws RundeckApiException {
+        List<RundeckJob> jobs = new ArrayList<RundeckJob>();
+        for (RundeckProject project : rundeck.getProjects()) {
+            jobs.addAll(rundeck.getJobs(project.getName()));
+        }
+        snapshot = new Snapshot(jobs, System.currentTimeMillis());
+        RundeckMetrics.get().jobCatalogSize.set(jobs.size());
+        return jobs.size();
+    }
+
+    /**
+     * Forget all jobs (for example because the RunDeck instance changed)
+     */
+    public void clear() {
+        snapshot = Snapshot.EMPTY;
+        RundeckMetrics.get().jobCatalogSize.set(0);
+    }
+
+    /**
+     * @return true if the catalog has been loaded from RunDeck at least once (since the last {@link #clear()})
+     */
+    public boolean isLoaded() {
+        return snapshot.loadedAt > 0;
+    }
+
+    /**
+     * @return the time (in ms) of the last refresh, or 0 if not loaded
+     */
+    public long getLoadedAt() {
+        return snapshot.loadedAt;
+    }
+
+    public int size() {
+        return snapshot.byId.size();
+    }
+
+    /**
+     * @param jobIdentifier either a simple ID, an UUID or a reference (project:group/name)
+     * @return the job with the given identifier, or null if not in the catalog
+     */
+    public RundeckJob findJob(String jobIdentifier) {
+        if (StringUtils.isBlank(jobIdentifier)) {
+            return null;
+        }
+        Snapshot current = snapshot;
+        RundeckJob job = current.byId.get(jobIdentifier.trim());
+        if (job == null) {
+            job = current.byReference.get(normalize(jobIdentifier));
+        }
+        return job;
+    }
+
+    /**
+     * @param prefix of an ID or of a reference (project:group/name), case-insensitive for references
+     * @param max maximum number of jobs returned
+     * @return the jobs matching the given prefix, sorted by ID then by reference
+     */
+    public List<RundeckJob> findJobsByPrefix(String prefix, int max) {
+        Snapshot current = snapshot;
+        List<RundeckJob> jobs = new ArrayList<RundeckJob>();
+        String trimmed = StringUtils.trimToEmpty(prefix);
+        addPrefixMatches(current.byId, trimmed, jobs, max);
+        addPrefixMatches(current.byReference, normalize(trimmed), jobs, max);
+        return jobs;
+    }
+
+    /**
+     * @return the reference (project:group/name) of the given job
+     */
+    public static String getReference(RundeckJob job) {
+        StringBuilder reference = new StringBuilder();
+        reference.append(job.getProject()).append(':');
+        if (StringUtils.isNotBlank(job.getGroup())) {
+            reference.append(job.getGroup()).append('/');
+        }
+        reference.append(job.getName());
+        return reference.toString();
+    }
+
+    private static void addPrefixMatches(SortedMap<String, RundeckJob> index, String prefix, List<RundeckJob> jobs,
+            int max) {
+        // all keys starting with the prefix are between the prefix and the prefix followed by the highest char
+        for (RundeckJob job : index.subMap(prefix, prefix + Character.MAX_VALUE).values()) {
+            if (jobs.size() >= max) {
+                return;
+            }
+            if (!jobs.contains(job)) {
+                jobs.add(job);
+            }
+        }
+    }
+
+    private static String normalize(String reference) {
+        return StringUtils.trimToEmpty(reference).toLowerCase();
+    }
+
+    /**
+     * Immutable state of the catalog
+     */
+    private static class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(Collections.<RundeckJob> emptyList(), 0);
+
+        private final SortedMap<String, RundeckJob> byId;
+
+        private final SortedMap<String, RundeckJob> byReference;
+
+        private final long loadedAt;
+
+        private Snapshot(List<RundeckJob> jobs, long loadedAt) {
+            SortedMap<String, RundeckJob> ids = new TreeMap<String, RundeckJob>();
+            SortedMap<String, RundeckJob> references = new TreeMap<String, RundeckJob>();
+            for (RundeckJob job : jobs) {
+                ids.put(job.getId(), job);
+                references.put(normalize(getReference(job)), job);
+            }
+            this.byId = Collections.unmodifiableSortedMap(ids);
+            this.byReference = Collections.unmodifiableSortedMap(references);
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,46 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.Hudson;
+import hudson.model.PeriodicWork;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckDescriptor;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+
+/**
+ * Periodically refresh the {@link RundeckJobCatalog} from RunDeck
+ */
+@Extension
+public class RundeckJobCatalogSync extends PeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckJobCatalogSync.class.getName());
+
+    /** Refresh period, in minutes - can be changed with a system property */
+    private static final int PERIOD_MINUTES = Integer.getInteger(RundeckJobCatalogSync.class.getName()
+                                                                 + ".periodMinutes", 5);
+
+    @Override
+    public long getRecurrencePeriod() {
+        return PERIOD_MINUTES * MIN;
+    }
+
+    @Override
+    protected void doRun() {
+        RundeckDescriptor descriptor = Hudson.getInstance().getDescriptorByType(RundeckDescriptor.class);
+        if (descriptor == null) {
+            return;
+        }
+        RundeckClient rundeck = descriptor.getRundeckInstance();
+        if (rundeck == null) {
+            return;
+        }
+        try {
+            int count = descriptor.getJobCatalog().refresh(rundeck);
+            LOGGER.fine("Loaded " + count + " jobs from RunDeck at " + rundeck.getUrl());
+        } catch (RundeckApiException e) {
+            LOGGER.log(Level.WARNING, "Failed to load the jobs from RunDeck at " + rundeck.getUrl(), e);
+        }
+    }
+}
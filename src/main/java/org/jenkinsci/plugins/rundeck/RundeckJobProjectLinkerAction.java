@@ -39,6 +39,25 @@ public class RundeckJobProjectLinkerAction implements Action {
         this.rundeckJobUrl = buildRundeckJobUrl();
     }
 
+    /**
+     * Use the given RunDeck job details (for example from the {@link RundeckJobCatalog}), without calling RunDeck.
+     * 
+     * @param rundeck client used for talking to the RunDeck API
+     * @param rundeckJob details of the RunDeck job
+     * @throws IllegalArgumentException if rundeck or rundeckJob is null
+     */
+    public RundeckJobProjectLinkerAction(RundeckClient rundeck, RundeckJob rundeckJob) throws IllegalArgumentException {
+        if (rundeck == null) {
+            throw new IllegalArgumentException("rundeckClient should not be null !");
+        }
+        if (rundeckJob == null) {
+            throw new IllegalArgumentException("rundeckJob should not be null !");
+        }
+        this.rundeck = rundeck;
+        this.rundeckJob = rundeckJob;
+        this.rundeckJobUrl = buildRundeckJobUrl();
+    }
+
     /**
      * Build the absolute url to the RunDeck job page.
      * 
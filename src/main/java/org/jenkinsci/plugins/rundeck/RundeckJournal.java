@@ -0,0 +1,200 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.util.Arrays;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Append-only journal on disk, shared by the {@link RundeckNotificationSpool}, the {@link RundeckWebHookRelay} and the
+ * {@link RundeckDeploymentLedger} : one record per line (a type, then url-encoded fields, separated by tabs), synced
+ * to the disk when appended, and replayed on startup.<br>
+ * A journal is compacted by writing the live records in a temporary file, renamed over the journal : on POSIX
+ * systems the journal is replaced atomically. Otherwise (Windows) the journal has to be deleted before the rename, and
+ * if we crash in between, the temporary file is recovered on the next replay.
+ */
+class RundeckJournal {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckJournal.class.getName());
+
+    private final File file;
+
+    private final File compacted;
+
+    /** for the logs, for example "RunDeck spool" */
+    private final String name;
+
+    /**
+     * Handles the records of a journal, when it is replayed
+     */
+    interface RecordHandler {
+
+        /**
+         * @param record the type of the record, then its fields (still encoded, see {@link RundeckJournal#decode})
+         * @throws RuntimeException if the record is not valid (it is then ignored)
+         */
+        void replay(String[] record);
+    }
+
+    /**
+     * @param file of the journal (its directory must exist)
+     * @param name of the journal, for the logs
+     */
+    RundeckJournal(File file, String name) {
+        this.file = file;
+        this.compacted = new File(file.getPath() + ".tmp");
+        this.name = name;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    /**
+     * @return the size of the journal, in bytes
+     */
+    long length() {
+        return file.length();
+    }
+
+    /**
+     * Replay all the records of the journal. A truncated record (crash while writing) is ignored.
+     */
+    void replay(RecordHandler handler) {
+        if (!file.exists() && compacted.exists()) {
+            // crash during a compaction, between the deletion of the journal and the rename of the compacted one
+            LOGGER.warning("Recovering the compacted " + name + " at " + compacted);
+            if (!compacted.renameTo(file)) {
+                LOGGER.warning("Failed to rename " + compacted + " to " + file);
+            }
+        }
+        if (!file.exists()) {
+            return;
+        }
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                try {
+                    handler.replay(StringUtils.splitPreserveAllTokens(line, '\t'));
+                } catch (RuntimeException e) {
+                    LOGGER.log(Level.WARNING, "Ignoring invalid record in the " + name + " : " + line, e);
+                }
+            }
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to read the " + name + " at " + file, e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * Append a record at the end of the journal, and sync it to the disk. A failure is logged, but is not an error :
+     * the record is then only lost on a restart.
+     * 
+     * @param fields the type of the record, then its fields (encoded by this method)
+     */
+    void append(String... fields) {
+        FileOutputStream output = null;
+        try {
+            output = new FileOutputStream(file, true);
+            output.write(record(fields).getBytes("UTF-8"));
+            output.flush();
+            output.getFD().sync();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write to the " + name + " at " + file + " : "
+                                      + Arrays.toString(fields), e);
+        } finally {
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the given records
+     * 
+     * @param records built with {@link #record(String...)}
+     * @return true if the journal has been compacted, false if it is unchanged (the failure is logged)
+     */
+    boolean compact(List<String> records) {
+        FileOutputStream output = null;
+        Writer writer = null;
+        try {
+            output = new FileOutputStream(compacted);
+            writer = new OutputStreamWriter(output, "UTF-8");
+            for (String record : records) {
+                writer.write(record);
+            }
+            writer.flush();
+            output.getFD().sync();
+            writer.close();
+            writer = null;
+            if (!compacted.renameTo(file)) {
+                // Windows can't rename over an existing file : if we crash now, replay() recovers the compacted file
+                if (file.exists() && !file.delete()) {
+                    throw new IOException("Failed to delete " + file);
+                }
+                if (!compacted.renameTo(file)) {
+                    throw new IOException("Failed to rename " + compacted + " to " + file);
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to compact the " + name + " at " + file, e);
+            return false;
+        } finally {
+            IOUtils.closeQuietly(writer);
+            IOUtils.closeQuietly(output);
+        }
+    }
+
+    /**
+     * Delete the journal
+     */
+    void delete() {
+        if (!file.delete() && file.exists()) {
+            LOGGER.warning("Failed to delete the " + name + " at " + file);
+        }
+    }
+
+    /**
+     * @param fields the type of the record, then its fields
+     * @return the record, as a line of the journal
+     */
+    static String record(String... fields) {
+        StringBuilder record = new StringBuilder(fields[0]);
+        for (int i = 1; i < fields.length; i++) {
+            record.append('\t').append(encode(fields[i]));
+        }
+        return record.append('\n').toString();
+    }
+
+    static String encode(String value) {
+        try {
+            return URLEncoder.encode(StringUtils.defaultString(value), "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,489 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.model.Hudson;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.servlet.http.HttpServletResponse;
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+/**
+ * Counters and histograms about the RunDeck integration (latency and failures of the RunDeck API calls, WebHook
+ * notifications, option provider requests), exposed in the Prometheus text format at /plugin/rundeck/metrics/ and
+ * through JMX (see {@link RundeckMetricsMBean}).
+ */
+public class RundeckMetrics {
+
+    /** Buckets (in seconds) for the duration of HTTP calls */
+    private static final double[] CALL_BUCKETS = { 0.005, 0.01, 0.025, 0.05, 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60 };
+
+    /** Buckets (in seconds) for the duration of RunDeck executions */
+    private static final double[] EXECUTION_BUCKETS = { 1, 5, 10, 30, 60, 120, 300, 600, 1200, 1800, 3600, 7200 };
+
+    /** Buckets (in seconds) for the latency of the builds started by RunDeck */
+    private static final double[] LATENCY_BUCKETS = { 0.1, 0.25, 0.5, 1, 2.5, 5, 10, 30, 60, 120, 300, 600, 1800 };
+
+    /** Buckets for the size of a set of items */
+    private static final double[] COUNT_BUCKETS = { 0, 1, 2, 5, 10, 25, 50, 100, 250, 500, 1000, 5000 };
+
+    /** Needs to be declared after the buckets, as the metrics are registered by the constructor */
+    private static final RundeckMetrics INSTANCE = new RundeckMetrics();
+
+    private final Map<String, Metric> metrics = Collections.synchronizedMap(new LinkedHashMap<String, Metric>());
+
+    public final Gauge ready = gauge("rundeck_plugin_ready",
+                                     "1 once the plugin has been warmed up after the startup of Jenkins, 0 before");
+
+    public final Gauge warmUpDuration = gauge("rundeck_plugin_warm_up_milliseconds",
+                                              "Duration of the warm-up of the plugin after the startup of Jenkins");
+
+    public final Histogram notifierPingDuration = histogram("rundeck_notifier_ping_seconds",
+                                                            "Duration of the RunDeck ping calls",
+                                                            CALL_BUCKETS);
+
+    public final Counter notifierPingFailures = counter("rundeck_notifier_ping_failures_total",
+                                                        "Number of failed RunDeck ping calls");
+
+    public final Histogram notifierTriggerDuration = histogram("rundeck_notifier_trigger_seconds",
+                                                               "Duration of the RunDeck job trigger calls",
+                                                               CALL_BUCKETS);
+
+    public final Counter notifierTriggerFailures = counter("rundeck_notifier_trigger_failures_total",
+                                                           "Number of failed RunDeck job trigger calls");
+
+    public final Histogram notifierGetExecutionDuration = histogram("rundeck_notifier_get_execution_seconds",
+                                                                    "Duration of the RunDeck get execution calls",
+                                                                    CALL_BUCKETS);
+
+    public final Counter notifierGetExecutionFailures = counter("rundeck_notifier_get_execution_failures_total",
+                                                                "Number of failed RunDeck get execution calls");
+
+    public final Counter notifierAttachedExecutions = counter("rundeck_notifier_attached_executions_total",
+                                                              "Number of builds attached to an identical running "
+                                                                      + "execution, instead of triggering a new one");
+
+    public final Gauge notifierPermitsQueued = gauge("rundeck_notifier_permits_queued",
+                                                     "Number of builds waiting for a RunDeck execution slot");
+
+    public final Histogram notifierPermitWaitDuration = histogram("rundeck_notifier_permit_wait_seconds",
+                                                                  "Time spent by builds waiting for a RunDeck "
+                                                                          + "execution slot",
+                                                                  EXECUTION_BUCKETS);
+
+    public final Histogram notifierWaitDuration = histogram("rundeck_notifier_wait_seconds",
+                                                            "Time spent by builds waiting for RunDeck executions",
+                                                            EXECUTION_BUCKETS);
+
+    public final Histogram webHookParseDuration = histogram("rundeck_webhook_parse_seconds",
+                                                            "Duration of the parsing of the WebHook notifications",
+                                                            CALL_BUCKETS);
+
+    public final Counter webHookParseFailures = counter("rundeck_webhook_parse_failures_total",
+                                                        "Number of WebHook notifications that could not be parsed");
+
+    public final Histogram webHookDispatchDuration = histogram("rundeck_webhook_dispatch_seconds",
+                                                               "Duration of the dispatch of a WebHook notification",
+                                                               CALL_BUCKETS);
+
+    public final Histogram webHookFanOut = histogram("rundeck_webhook_triggers_notified",
+                                                     "Number of triggers notified for a WebHook notification",
+                                                     COUNT_BUCKETS);
+
+    public final Counter webHookBuildsScheduled = counter("rundeck_webhook_builds_scheduled_total",
+                                                          "Number of builds scheduled from WebHook notifications");
+
+    public final Counter webHookDuplicates = counter("rundeck_webhook_duplicates_total",
+                                                     "Number of WebHook notifications ignored, as already received");
+
+    public final Counter webHookRelayQueued = counter("rundeck_webhook_relay_queued_total",
+                                                      "Number of WebHook notifications queued for a peer controller");
+
+    public final Counter webHookRelaySent = counter("rundeck_webhook_relay_sent_total",
+                                                    "Number of WebHook notifications relayed to a peer controller");
+
+    public final Counter webHookRelayFailures = counter("rundeck_webhook_relay_failures_total",
+                                                        "Number of failed attempts to relay notifications to a peer");
+
+    public final Histogram triggerNotificationLatency = histogram("rundeck_trigger_notification_latency_seconds",
+                                                                  "Latency from the end of a RunDeck execution to "
+                                                                          + "the entry of its build in the queue",
+                                                                  LATENCY_BUCKETS);
+
+    public final Histogram triggerQueueLatency = histogram("rundeck_trigger_queue_latency_seconds",
+                                                           "Time spent in the queue by the builds started by RunDeck",
+                                                           LATENCY_BUCKETS);
+
+    public final Histogram triggerTotalLatency = histogram("rundeck_trigger_total_latency_seconds",
+                                                           "Latency from the end of a RunDeck execution to the start "
+                                                                   + "of its build",
+                                                           LATENCY_BUCKETS);
+
+    public final Histogram pollDuration = histogram("rundeck_poll_seconds",
+                                                    "Duration of the poll of the executions of a RunDeck project",
+                                                    CALL_BUCKETS);
+
+    public final Counter pollFailures = counter("rundeck_poll_failures_total",
+                                                "Number of polls of a RunDeck project that failed");
+
+    public final Counter pollExecutions = counter("rundeck_poll_executions_total",
+                                                  "Number of new RunDeck executions found by polling");
+
+    public final Counter pollBuildsScheduled = counter("rundeck_poll_builds_scheduled_total",
+                                                       "Number of builds scheduled from polled RunDeck executions");
+
+    public final Histogram optionsArtifactDuration = histogram("rundeck_options_artifact_request_seconds",
+                                                               "Duration of the 'artifact' option provider requests",
+                                                               CALL_BUCKETS);
+
+    public final Histogram optionsBuildDuration = histogram("rundeck_options_build_request_seconds",
+                                                            "Duration of the 'build' option provider requests",
+                                                            CALL_BUCKETS);
+
+    public final Histogram optionsRevisionDuration = histogram("rundeck_options_revision_request_seconds",
+                                                               "Duration of the 'revision' option provider requests",
+                                                               CALL_BUCKETS);
+
+    public final Histogram optionsBuildsScanned = histogram("rundeck_options_builds_scanned",
+                                                            "Number of builds scanned for an option provider request",
+                                                            COUNT_BUCKETS);
+
+    public final Gauge completionWaiters = gauge("rundeck_completion_waiters",
+                                                 "Number of clients waiting for the completion of builds");
+
+    public final Counter completionRejected = counter("rundeck_completion_rejected_total",
+                                                      "Number of clients rejected (too many clients waiting for "
+                                                              + "the completion of builds)");
+
+    public final Histogram completionWaitDuration = histogram("rundeck_completion_wait_seconds",
+                                                              "Time spent by clients waiting for the completion of "
+                                                                      + "builds",
+                                                              EXECUTION_BUCKETS);
+
+    public final Counter checksumCacheHits = counter("rundeck_checksum_cache_hits_total",
+                                                     "Number of artifact checksums found in the cache");
+
+    public final Counter checksumCacheMisses = counter("rundeck_checksum_cache_misses_total",
+                                                       "Number of artifact checksums computed");
+
+    public final Histogram checksumDuration = histogram("rundeck_checksum_seconds",
+                                                        "Duration of the computation of an artifact checksum",
+                                                        CALL_BUCKETS);
+
+    public final Counter downloadBytes = counter("rundeck_download_bytes_total",
+                                                 "Number of bytes of artifacts sent to the RunDeck nodes");
+
+    public final Gauge downloadsActive = gauge("rundeck_downloads_active",
+                                               "Number of artifacts being sent to the RunDeck nodes");
+
+    public final Counter downloadsRejected = counter("rundeck_downloads_rejected_total",
+                                                     "Number of artifact downloads rejected (too many concurrent "
+                                                             + "downloads of the same artifact)");
+
+    public final Counter clientRejectedCalls = counter("rundeck_client_rejected_calls_total",
+                                                      "Number of RunDeck API calls rejected without being attempted");
+
+    public final Counter clientTimeouts = counter("rundeck_client_timeouts_total",
+                                                  "Number of RunDeck API calls abandoned after the call timeout");
+
+    public final Gauge circuitBreakerState = gauge("rundeck_circuit_breaker_state",
+                                                   "RunDeck circuit breaker state (0 closed, 1 open, 2 half-open)");
+
+    public final Gauge jobCatalogSize = gauge("rundeck_job_catalog_jobs",
+                                              "Number of jobs in the local RunDeck job catalog");
+
+    /**
+     * @return the metrics of the RunDeck plugin
+     */
+    public static RundeckMetrics get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Register a new counter
+     * 
+     * @param name of the counter (Prometheus syntax)
+     * @param help description
+     * @return the new counter
+     */
+    public Counter counter(String name, String help) {
+        Counter counter = new Counter(name, help);
+        metrics.put(name, counter);
+        return counter;
+    }
+
+    /**
+     * Register a new histogram
+     * 
+     * @param name of the histogram (Prometheus syntax)
+     * @param help description
+     * @param buckets upper bounds of the buckets, in ascending order
+     * @return the new histogram
+     */
+    public Histogram histogram(String name, String help, double[] buckets) {
+        Histogram histogram = new Histogram(name, help, buckets);
+        metrics.put(name, histogram);
+        return histogram;
+    }
+
+    /**
+     * Register a new gauge
+     * 
+     * @param name of the gauge (Prometheus syntax)
+     * @param help description
+     * @return the new gauge
+     */
+    public Gauge gauge(String name, String help) {
+        Gauge gauge = new Gauge(name, help);
+        metrics.put(name, gauge);
+        return gauge;
+    }
+
+    /**
+     * @return all registered metrics, in registration order
+     */
+    public List<Metric> getMetrics() {
+        synchronized (metrics) {
+            return new ArrayList<Metric>(metrics.values());
+        }
+    }
+
+    /**
+     * Write all metrics in the Prometheus text format (version 0.0.4)
+     * 
+     * @param writer
+     */
+    public void writePrometheus(Writer writer) throws IOException {
+        PrintWriter out = new PrintWriter(writer);
+        for (Metric metric : getMetrics()) {
+            out.append("# HELP ").append(metric.getName()).append(' ').append(metric.getHelp()).append('\n');
+            out.append("# TYPE ").append(metric.getName()).append(' ').append(metric.getType()).append('\n');
+            metric.writeSamples(out);
+        }
+        out.flush();
+    }
+
+    /**
+     * Prometheus endpoint, for the users who can see Jenkins
+     */
+    public void doIndex(StaplerRequest request, StaplerResponse response) throws IOException {
+        Hudson.getInstance().checkPermission(Hudson.READ);
+        response.setStatus(HttpServletResponse.SC_OK);
+        response.setContentType("text/plain; version=0.0.4; charset=UTF-8");
+        writePrometheus(response.getWriter());
+    }
+
+    /**
+     * Format a double value as expected by Prometheus
+     */
+    static String format(double value) {
+        if (Double.isInfinite(value)) {
+            return value > 0 ? "+Inf" : "-Inf";
+        }
+        if (value == Math.rint(value) && Math.abs(value) < 1e15) {
+            return String.valueOf((long) value);
+        }
+        return String.valueOf(value);
+    }
+
+    /**
+     * Base class for all metrics
+     */
+    public abstract static class Metric {
+
+        private final String name;
+
+        private final String help;
+
+        protected Metric(String name, String help) {
+            this.name = name;
+            this.help = help;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getHelp() {
+            return help;
+        }
+
+        /**
+         * @return the Prometheus type of this metric
+         */
+        public abstract String getType();
+
+        /**
+         * @return the current values of this metric, by sample name
+         */
+        public abstract Map<String, Number> getValues();
+
+        protected abstract void writeSamples(PrintWriter out);
+    }
+
+    /**
+     * Monotonic counter
+     */
+    public static class Counter extends Metric {
+
+        private final AtomicLong value = new AtomicLong();
+
+        protected Counter(String name, String help) {
+            super(name, help);
+        }
+
+        public void increment() {
+            value.incrementAndGet();
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long getValue() {
+            return value.get();
+        }
+
+        @Override
+        public String getType() {
+            return "counter";
+        }
+
+        @Override
+        public Map<String, Number> getValues() {
+            return Collections.<String, Number> singletonMap(getName(), getValue());
+        }
+
+        @Override
+        protected void writeSamples(PrintWriter out) {
+            out.append(getName()).append(' ').append(String.valueOf(getValue())).append('\n');
+        }
+    }
+
+    /**
+     * Value that can go up and down
+     */
+    public static class Gauge extends Metric {
+
+        private final AtomicLong value = new AtomicLong();
+
+        protected Gauge(String name, String help) {
+            super(name, help);
+        }
+
+        public void set(long newValue) {
+            value.set(newValue);
+        }
+
+        public void add(long delta) {
+            value.addAndGet(delta);
+        }
+
+        public long getValue() {
+            return value.get();
+        }
+
+        @Override
+        public String getType() {
+            return "gauge";
+        }
+
+        @Override
+        public Map<String, Number> getValues() {
+            return Collections.<String, Number> singletonMap(getName(), getValue());
+        }
+
+        @Override
+        protected void writeSamples(PrintWriter out) {
+            out.append(getName()).append(' ').append(String.valueOf(getValue())).append('\n');
+        }
+    }
+
+    /**
+     * Histogram with fixed buckets : lock-free, the values are only counted (not stored)
+     */
+    public static class Histogram extends Metric {
+
+        private final double[] buckets;
+
+        /** count per bucket, the last one being the "+Inf" bucket (not cumulative) */
+        private final AtomicLongArray counts;
+
+        private final AtomicLong count = new AtomicLong();
+
+        /** sum of all observed values, stored as the bits of a double */
+        private final AtomicLong sumBits = new AtomicLong(Double.doubleToLongBits(0));
+
+        protected Histogram(String name, String help, double[] buckets) {
+            super(name, help);
+            this.buckets = buckets.clone();
+            this.counts = new AtomicLongArray(buckets.length + 1);
+        }
+
+        public void observe(double value) {
+            int idx = 0;
+            while (idx < buckets.length && value > buckets[idx]) {
+                idx++;
+            }
+            counts.incrementAndGet(idx);
+            count.incrementAndGet();
+            while (true) {
+                long bits = sumBits.get();
+                long newBits = Double.doubleToLongBits(Double.longBitsToDouble(bits) + value);
+                if (sumBits.compareAndSet(bits, newBits)) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * Observe the time elapsed (in seconds) since the given start time
+         * 
+         * @param startNanos value of {@link System#nanoTime()} at the start of the operation
+         */
+        public void observeSince(long startNanos) {
+            observe((System.nanoTime() - startNanos) / 1e9);
+        }
+
+        public long getCount() {
+            return count.get();
+        }
+
+        public double getSum() {
+            return Double.longBitsToDouble(sumBits.get());
+        }
+
+        @Override
+        public String getType() {
+            return "histogram";
+        }
+
+        @Override
+        public Map<String, Number> getValues() {
+            Map<String, Number> values = new LinkedHashMap<String, Number>();
+            values.put(getName() + "_count", getCount());
+            values.put(getName() + "_sum", getSum());
+            return values;
+        }
+
+        @Override
+        protected void writeSamples(PrintWriter out) {
+            long cumulative = 0;
+            for (int i = 0; i <= buckets.length; i++) {
+                cumulative += counts.get(i);
+                String le = i < buckets.length ? format(buckets[i]) : "+Inf";
+                out.append(getName()).append("_bucket{le=\"").append(le).append("\"} ");
+                out.append(String.valueOf(cumulative)).append('\n');
+            }
+            out.append(getName()).append("_sum ").append(format(getSum())).append('\n');
+            out.append(getName()).append("_count ").append(String.valueOf(getCount())).append('\n');
+        }
+    }
+}
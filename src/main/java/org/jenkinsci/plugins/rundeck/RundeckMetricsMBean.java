@@ -0,0 +1,113 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanOperationInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.ReflectionException;
+import org.jenkinsci.plugins.rundeck.RundeckMetrics.Metric;
+
+/**
+ * Read-only JMX view of the {@link RundeckMetrics} : one attribute per counter, and a "_count" + "_sum" attribute per
+ * histogram.
+ */
+public class RundeckMetricsMBean implements DynamicMBean {
+
+    public static final String OBJECT_NAME = "org.jenkinsci.plugins.rundeck:type=Metrics";
+
+    private final RundeckMetrics metrics;
+
+    public RundeckMetricsMBean(RundeckMetrics metrics) {
+        super();
+        this.metrics = metrics;
+    }
+
+    /**
+     * Register the metrics of the plugin in the platform MBean server (replacing any previous registration)
+     */
+    public static void register(RundeckMetrics metrics) throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(new RundeckMetricsMBean(metrics), name);
+    }
+
+    /**
+     * Unregister the metrics of the plugin from the platform MBean server
+     */
+    public static void unregister() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+    }
+
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        for (Metric metric : metrics.getMetrics()) {
+            Number value = metric.getValues().get(attribute);
+            if (value != null) {
+                return value;
+            }
+        }
+        throw new AttributeNotFoundException(attribute);
+    }
+
+    public AttributeList getAttributes(String[] attributes) {
+        AttributeList list = new AttributeList();
+        for (String attribute : attributes) {
+            try {
+                list.add(new Attribute(attribute, getAttribute(attribute)));
+            } catch (AttributeNotFoundException e) {
+                // ignore, as specified by DynamicMBean
+            }
+        }
+        return list;
+    }
+
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("All RunDeck metrics are read-only : " + attribute.getName());
+    }
+
+    public AttributeList setAttributes(AttributeList attributes) {
+        return new AttributeList();
+    }
+
+    public Object invoke(String actionName, Object[] params, String[] signature) throws ReflectionException {
+        // as specified by DynamicMBean for an unknown operation
+        throw new ReflectionException(new NoSuchMethodException(actionName), "No operation on the RunDeck metrics : "
+                                                                             + actionName);
+    }
+
+    public MBeanInfo getMBeanInfo() {
+        List<MBeanAttributeInfo> attributes = new ArrayList<MBeanAttributeInfo>();
+        for (Metric metric : metrics.getMetrics()) {
+            for (Map.Entry<String, Number> value : metric.getValues().entrySet()) {
+                attributes.add(new MBeanAttributeInfo(value.getKey(),
+                                                      value.getValue().getClass().getName(),
+                                                      metric.getHelp(),
+                                                      true,
+                                                      false,
+                                                      false));
+            }
+        }
+        return new MBeanInfo(getClass().getName(),
+                             "Metrics of the Jenkins RunDeck plugin",
+                             attributes.toArray(new MBeanAttributeInfo[attributes.size()]),
+                             null,
+                             new MBeanOperationInfo[0],
+                             null);
+    }
+}
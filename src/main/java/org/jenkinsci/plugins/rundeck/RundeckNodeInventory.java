@@ -0,0 +1,330 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import org.apache.commons.lang.StringUtils;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckNode;
+
+/**
+ * Local copy of the nodes of the RunDeck projects (periodically refreshed by {@link RundeckNodeInventorySync}), used
+ * to evaluate the node filters of a notification without triggering anything : preview of the matching nodes when
+ * configuring the job, and refusal of the executions which would match no node.<br>
+ * The nodes of a project are loaded from RunDeck the first time the project is requested, and kept as an immutable
+ * snapshot, replaced as a whole on each refresh : lookups never block.
+ */
+public class RundeckNodeInventory {
+
+    /** nodes by RunDeck project name */
+    private final ConcurrentMap<String, Snapshot> projects = new ConcurrentHashMap<String, Snapshot>();
+
+    /**
+     * @param rundeck client to use if the nodes of the project are not loaded yet
+     * @param project name of the RunDeck project
+     * @return the nodes of the project (loaded from RunDeck if needed)
+     * @throws RundeckApiException in case of error while loading the nodes from RunDeck
+     */
+    public List<RundeckNode> getNodes(RundeckClient rundeck, String project) throws RundeckApiException {
+        Snapshot snapshot = projects.get(project);
+        if (snapshot == null) {
+            snapshot = load(rundeck, project);
+        }
+        return snapshot.nodes;
+    }
+
+    /**
+     * @param project name of the RunDeck project
+     * @return the time (in ms) of the last refresh of the nodes of the project, or 0 if not loaded
+     */
+    public long getLoadedAt(String project) {
+        Snapshot snapshot = projects.get(project);
+        return snapshot != null ? snapshot.loadedAt : 0;
+    }
+
+    /**
+     * Reload the nodes of all the projects already loaded, replacing their snapshot
+     * 
+     * @param rundeck client to use
+     * @return the number of nodes loaded
+     * @throws RundeckApiException in case of error while talking to RunDeck (the current snapshots are kept)
+     */
+    public int refresh(RundeckClient rundeck) throws RundeckApiException {
+        int count = 0;
+        for (String project : projects.keySet()) {
+            count += load(rundeck, project).nodes.size();
+        }
+        return count;
+    }
+
+    /**
+     * Forget all nodes (for example because the RunDeck instance changed)
+     */
+    public void clear() {
+        projects.clear();
+    }
+
+    /**
+     * @param rundeck client to use if the nodes of the project are not loaded yet
+     * @param project name of the RunDeck project
+     * @param nodeFilters as sent to RunDeck (hostname, tags, os-name, ..., exclude-hostname, ...)
+     * @return the nodes of the project matching the filters
+     * @throws RundeckApiException in case of error while loading the nodes from RunDeck
+     * @throws IllegalArgumentException if a filter can't be evaluated locally (unknown key)
+     */
+    public List<RundeckNode> findMatchingNodes(RundeckClient rundeck, String project, Properties nodeFilters)
+            throws RundeckApiException, IllegalArgumentException {
+        NodeFilter filter = new NodeFilter(nodeFilters);
+        List<RundeckNode> matching = new ArrayList<RundeckNode>();
+        for (RundeckNode node : getNodes(rundeck, project)) {
+            if (filter.matches(node)) {
+                matching.add(node);
+            }
+        }
+        return matching;
+    }
+
+    private Snapshot load(RundeckClient rundeck, String project) throws RundeckApiException {
+        Snapshot snapshot = new Snapshot(rundeck.getNodes(project), System.currentTimeMillis());
+        projects.put(project, snapshot);
+        return snapshot;
+    }
+
+    /**
+     * Immutable nodes of a project
+     */
+    private static class Snapshot {
+
+        private final List<RundeckNode> nodes;
+
+        private final long loadedAt;
+
+        private Snapshot(List<RundeckNode> nodes, long loadedAt) {
+            this.nodes = Collections.unmodifiableList(new ArrayList<RundeckNode>(nodes));
+            this.loadedAt = loadedAt;
+        }
+    }
+
+    /**
+     * Node filters, evaluated like RunDeck does : each value is a comma-separated list of names or regular
+     * expressions, and a node is included (or excluded) if it matches all the include (or exclude) filters. For the
+     * tags, "a+b" means that the node should have both tags. The exclusion wins, unless "exclude-precedence" is false.
+     */
+    static class NodeFilter {
+
+        private static final String EXCLUDE_PREFIX = "exclude-";
+
+        private static final String EXCLUDE_PRECEDENCE = "exclude-precedence";
+
+        private final List<Criterion> includes = new ArrayList<Criterion>();
+
+        private final List<Criterion> excludes = new ArrayList<Criterion>();
+
+        private final boolean excludePrecedence;
+
+        /**
+         * @param nodeFilters as sent to RunDeck
+         * @throws IllegalArgumentException if a filter has an unknown key
+         */
+        NodeFilter(Properties nodeFilters) throws IllegalArgumentException {
+            boolean precedence = true;
+            for (Map.Entry<Object, Object> filter : nodeFilters.entrySet()) {
+                String key = StringUtils.trimToEmpty((String) filter.getKey());
+                String value = StringUtils.trimToEmpty((String) filter.getValue());
+                if (EXCLUDE_PRECEDENCE.equals(key)) {
+                    precedence = !"false".equalsIgnoreCase(value);
+                } else if (StringUtils.isNotEmpty(value)) {
+                    if (key.startsWith(EXCLUDE_PREFIX)) {
+                        excludes.add(new Criterion(Attribute.forKey(StringUtils.removeStart(key, EXCLUDE_PREFIX)),
+                                                   value));
+                    } else {
+                        includes.add(new Criterion(Attribute.forKey(key), value));
+                    }
+                }
+            }
+            this.excludePrecedence = precedence;
+        }
+
+        boolean matches(RundeckNode node) {
+            boolean included = matchesAll(includes, node);
+            boolean excluded = !excludes.isEmpty() && matchesAll(excludes, node);
+            if (excludePrecedence) {
+                return included && !excluded;
+            }
+            // the inclusion wins : an explicitly included node is kept, even if it is excluded
+            return included && (!includes.isEmpty() || !excluded);
+        }
+
+        private static boolean matchesAll(List<Criterion> criteria, RundeckNode node) {
+            for (Criterion criterion : criteria) {
+                if (!criterion.matches(node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Filter on a single attribute of the nodes
+     */
+    private static class Criterion {
+
+        private final Attribute attribute;
+
+        /** alternatives (any of them should match) - for the tags, each alternative is a set of tags */
+        private final List<String[]> alternatives = new ArrayList<String[]>();
+
+        Criterion(Attribute attribute, String value) {
+            this.attribute = attribute;
+            for (String alternative : StringUtils.split(value, ',')) {
+                if (StringUtils.isNotBlank(alternative)) {
+                    alternatives.add(attribute == Attribute.TAGS ? StringUtils.split(alternative.trim(), '+')
+                            : new String[] { alternative.trim() });
+                }
+            }
+        }
+
+        boolean matches(RundeckNode node) {
+            if (attribute == Attribute.TAGS) {
+                List<String> tags = node.getTags() != null ? node.getTags() : Collections.<String> emptyList();
+                for (String[] required : alternatives) {
+                    if (hasAllTags(tags, required)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            String nodeValue = attribute.get(node);
+            if (nodeValue == null) {
+                return false;
+            }
+            for (String[] alternative : alternatives) {
+                if (matchesValue(alternative[0], nodeValue)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static boolean hasAllTags(List<String> tags, String[] required) {
+            for (String tag : required) {
+                boolean found = false;
+                for (String nodeTag : tags) {
+                    if (matchesValue(tag.trim(), nodeTag)) {
+                        found = true;
+                        break;
+                    }
+                }
+                if (!found) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @param expected name or regular expression
+         * @param value of the node
+         * @return true if the value is the expected one, or matches it as a regular expression
+         */
+        private static boolean matchesValue(String expected, String value) {
+            if (expected.equals(value)) {
+                return true;
+            }
+            try {
+                return Pattern.matches(expected, value);
+            } catch (PatternSyntaxException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * Attributes of the nodes that can be filtered
+     */
+    private static enum Attribute {
+        NAME("name") {
+
+            @Override
+            String get(RundeckNode node) {
+                return node.getName();
+            }
+        },
+        HOSTNAME("hostname") {
+
+            @Override
+            String get(RundeckNode node) {
+                return node.getHostname();
+            }
+        },
+        TAGS("tags") {
+
+            @Override
+            String get(RundeckNode node) {
+                return null;
+            }
+        },
+        TYPE("type") {
+
+            @Override
+            String get(RundeckNode node) {
+                return node.getType();
+            }
+        },
+        OS_NAME("os-name") {
+
+            @Override
+            String get(RundeckNode node) {
+                return node.getOsName();
+            }
+        },
+        OS_FAMILY("os-family") {
+
+            @Override
+            String get(RundeckNode node) {
+                return node.getOsFamily();
+            }
+        },
+        OS_ARCH("os-arch") {
+
+            @Override
+            String get(RundeckNode node) {
+                return node.getOsArch();
+            }
+        },
+        OS_VERSION("os-version") {
+
+            @Override
+            String get(RundeckNode node) {
+                return node.getOsVersion();
+            }
+        };
+
+        private final String key;
+
+        private Attribute(String key) {
+            this.key = key;
+        }
+
+        abstract String get(RundeckNode node);
+
+        static Attribute forKey(String key) throws IllegalArgumentException {
+            for (Attribute attribute : values()) {
+                if (attribute.key.equals(key)) {
+                    return attribute;
+                }
+            }
+            throw new IllegalArgumentException("Unknown node filter (should be name, hostname, tags, type, os-name, "
+                                               + "os-family, os-arch or os-version, optionally prefixed by exclude-) : "
+                                               + key);
+        }
+    }
+}
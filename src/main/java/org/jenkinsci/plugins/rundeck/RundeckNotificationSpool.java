@@ -0,0 +1,386 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Durable spool of the pending RunDeck notifications : the triggers not done yet (to retry, with a jittered
+ * exponential backoff), and the executions waited by builds (to resume the wait after a restart of Jenkins).<br>
+ * The spool is an append-only journal (one record per line) in JENKINS_HOME, replayed on startup and compacted when
+ * it contains too many finished entries. Each entry is identified by an idempotency key (the build and the RunDeck
+ * job), so that a notification is only triggered once, even if it is retried or spooled again.
+ */
+public class RundeckNotificationSpool {
+
+    /** Maximum number of attempts to trigger a job, before giving up */
+    public static final int MAX_ATTEMPTS = 10;
+
+    private static final long BASE_BACKOFF_MILLIS = 5000;
+
+    private static final long MAX_BACKOFF_MILLIS = 10 * 60 * 1000;
+
+    /** Compact the journal when it contains more finished records than this */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final String TRIGGER = "T";
+
+    private static final String ATTEMPT = "A";
+
+    private static final String EXECUTION = "E";
+
+    private static final String DONE = "D";
+
+    private static final Random RANDOM = new Random();
+
+    private final RundeckJournal journal;
+
+    /** pending entries, by idempotency key, in the order of their creation */
+    private final Map<String, SpoolEntry> entries = new LinkedHashMap<String, SpoolEntry>();
+
+    /** keys of the entries currently handled by a build or by the worker */
+    private final ConcurrentMap<String, Boolean> claimed = new ConcurrentHashMap<String, Boolean>();
+
+    private int finishedRecords;
+
+    /**
+     * @param directory where the journal is stored (created if needed)
+     */
+    public RundeckNotificationSpool(File directory) {
+        super();
+        directory.mkdirs();
+        this.journal = new RundeckJournal(new File(directory, "spool.journal"), "RunDeck spool");
+    }
+
+    /**
+     * Replay the journal, and compact it
+     */
+    public synchronized void load() {
+        entries.clear();
+        journal.replay(new RundeckJournal.RecordHandler() {
+
+            public void replay(String[] record) {
+                RundeckNotificationSpool.this.replay(record);
+            }
+        });
+        compact();
+    }
+
+    /**
+     * Add a notification to the spool, or get the existing one with the same key (so that a notification is never
+     * triggered twice)
+     * 
+     * @param key idempotency key, see {@link #key(String, int, String)}
+     * @param jobId ID of the RunDeck job
+     * @param options expanded options of the job - may be null
+     * @param nodeFilters expanded node filters - may be null
+     * @param wait true if the build waits for the execution
+     * @return the spooled entry
+     */
+    public synchronized SpoolEntry enqueue(String key, String jobId, Properties options, Properties nodeFilters,
+            boolean wait) {
+        SpoolEntry entry = entries.get(key);
+        if (entry == null) {
+            long now = System.currentTimeMillis();
+            entry = new SpoolEntry(key, jobId, encode(options), encode(nodeFilters), wait, now);
+            entries.put(key, entry);
+            append(TRIGGER, key, jobId, entry.options, entry.nodeFilters, String.valueOf(wait),
+                   String.valueOf(entry.createdAt));
+        }
+        return entry;
+    }
+
+    /**
+     * Record a failed attempt to trigger the job, and schedule the next one
+     * 
+     * @return true if we should retry, false if we gave up (the entry is then finished)
+     */
+    public synchronized boolean attemptFailed(SpoolEntry entry) {
+        entry.attempts++;
+        if (entry.attempts >= MAX_ATTEMPTS) {
+            done(entry);
+            return false;
+        }
+        entry.nextAttemptAt = System.currentTimeMillis() + backoffMillis(entry.attempts);
+        append(ATTEMPT, entry.key, String.valueOf(entry.attempts), String.valueOf(entry.nextAttemptAt));
+        return true;
+    }
+
+    /**
+     * Record the execution triggered for the given entry. If the build does not wait for the execution, the entry is
+     * finished.
+     */
+    public synchronized void triggered(SpoolEntry entry, Long executionId) {
+        entry.executionId = executionId;
+        append(EXECUTION, entry.key, String.valueOf(executionId));
+        if (!entry.wait) {
+            done(entry);
+        }
+    }
+
+    /**
+     * Remove the given entry from the spool (the execution is finished, or we gave up)
+     */
+    public synchronized void done(SpoolEntry entry) {
+        if (entries.remove(entry.key) != null) {
+            append(DONE, entry.key);
+            finishedRecords++;
+            if (finishedRecords > COMPACTION_THRESHOLD) {
+                compact();
+            }
+        }
+    }
+
+    /**
+     * Take the ownership of the given entry (so that it is not handled by 2 threads at the same time)
+     * 
+     * @return true if the entry has been claimed, false if it is already owned
+     */
+    public boolean claim(SpoolEntry entry) {
+        return claimed.putIfAbsent(entry.key, Boolean.TRUE) == null;
+    }
+
+    /**
+     * Release the ownership of the given entry, taken with {@link #claim(SpoolEntry)}
+     */
+    public void release(SpoolEntry entry) {
+        claimed.remove(entry.key);
+    }
+
+    /**
+     * @return the entries which are not owned, and for which the next attempt is due
+     */
+    public synchronized List<SpoolEntry> getDueEntries() {
+        long now = System.currentTimeMillis();
+        List<SpoolEntry> due = new ArrayList<SpoolEntry>();
+        for (SpoolEntry entry : entries.values()) {
+            if (!claimed.containsKey(entry.key) && entry.nextAttemptAt <= now) {
+                due.add(entry);
+            }
+        }
+        return due;
+    }
+
+    /**
+     * @return true if the given execution has been triggered for one of the pending entries
+     */
+    public synchronized boolean containsExecution(Long executionId) {
+        for (SpoolEntry entry : entries.values()) {
+            if (executionId.equals(entry.executionId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the number of pending entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * @return the idempotency key of the notification of the given build, for the given RunDeck job
+     */
+    public static String key(String projectName, int buildNumber, String jobId) {
+        return projectName + "#" + buildNumber + "#" + jobId;
+    }
+
+    /**
+     * Exponential backoff with "equal jitter" : between half and the whole of the exponential delay, so that the
+     * retries of many builds (or of the {@link RundeckWebHookRelay}) don't all hit the same server at the same time
+     * 
+     * @param attempts number of failed attempts (at least 1)
+     * @return the delay before the next attempt, in ms
+     */
+    static long backoffMillis(int attempts) {
+        long delay = Math.min(MAX_BACKOFF_MILLIS, BASE_BACKOFF_MILLIS << Math.min(attempts - 1, 20));
+        double jitter;
+        synchronized (RANDOM) {
+            jitter = RANDOM.nextDouble();
+        }
+        return delay / 2 + (long) (jitter * delay / 2);
+    }
+
+    private void replay(String[] record) {
+        String type = record[0];
+        String key = RundeckJournal.decode(record[1]);
+        if (TRIGGER.equals(type)) {
+            entries.put(key, new SpoolEntry(key,
+                                            RundeckJournal.decode(record[2]),
+                                            RundeckJournal.decode(record[3]),
+                                            RundeckJournal.decode(record[4]),
+                                            Boolean.valueOf(record[5]),
+                                            Long.parseLong(record[6])));
+            return;
+        }
+        SpoolEntry entry = entries.get(key);
+        if (entry == null) {
+            return;
+        }
+        if (ATTEMPT.equals(type)) {
+            entry.attempts = Integer.parseInt(record[2]);
+            entry.nextAttemptAt = Long.parseLong(record[3]);
+        } else if (EXECUTION.equals(type)) {
+            entry.executionId = Long.valueOf(record[2]);
+            if (!entry.wait) {
+                entries.remove(key);
+            }
+        } else if (DONE.equals(type)) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * Rewrite the journal with only the pending entries
+     */
+    private void compact() {
+        List<String> records = new ArrayList<String>();
+        for (SpoolEntry entry : entries.values()) {
+            records.add(RundeckJournal.record(TRIGGER, entry.key, entry.jobId, entry.options, entry.nodeFilters,
+                                              String.valueOf(entry.wait), String.valueOf(entry.createdAt)));
+            if (entry.attempts > 0) {
+                records.add(RundeckJournal.record(ATTEMPT, entry.key, String.valueOf(entry.attempts),
+                                                  String.valueOf(entry.nextAttemptAt)));
+            }
+            if (entry.executionId != null) {
+                records.add(RundeckJournal.record(EXECUTION, entry.key, String.valueOf(entry.executionId)));
+            }
+        }
+        if (journal.compact(records)) {
+            finishedRecords = 0;
+        }
+    }
+
+    private void append(String... fields) {
+        journal.append(fields);
+    }
+
+    /**
+     * @return the given properties, as an url-encoded query string
+     */
+    static String encode(Properties properties) {
+        if (properties == null) {
+            return "";
+        }
+        StringBuilder encoded = new StringBuilder();
+        for (Map.Entry<Object, Object> property : properties.entrySet()) {
+            if (encoded.length() > 0) {
+                encoded.append('&');
+            }
+            encoded.append(RundeckJournal.encode(String.valueOf(property.getKey()))).append('=');
+            encoded.append(RundeckJournal.encode(String.valueOf(property.getValue())));
+        }
+        return encoded.toString();
+    }
+
+    /**
+     * @return the properties from the given url-encoded query string
+     */
+    static Properties decodeProperties(String encoded) {
+        Properties properties = new Properties();
+        for (String pair : StringUtils.split(StringUtils.defaultString(encoded), '&')) {
+            properties.setProperty(RundeckJournal.decode(StringUtils.substringBefore(pair, "=")),
+                                   RundeckJournal.decode(StringUtils.substringAfter(pair, "=")));
+        }
+        return properties;
+    }
+
+    /**
+     * A pending notification
+     */
+    public static class SpoolEntry {
+
+        private final String key;
+
+        private final String jobId;
+
+        private final String options;
+
+        private final String nodeFilters;
+
+        private final boolean wait;
+
+        private final long createdAt;
+
+        private volatile int attempts;
+
+        private volatile long nextAttemptAt;
+
+        private volatile Long executionId;
+
+        private SpoolEntry(String key, String jobId, String options, String nodeFilters, boolean wait,
+                long createdAt) {
+            this.key = key;
+            this.jobId = jobId;
+            this.options = options;
+            this.nodeFilters = nodeFilters;
+            this.wait = wait;
+            this.createdAt = createdAt;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public String getJobId() {
+            return jobId;
+        }
+
+        public Properties getOptions() {
+            return decodeProperties(options);
+        }
+
+        public Properties getNodeFilters() {
+            return decodeProperties(nodeFilters);
+        }
+
+        public boolean isWait() {
+            return wait;
+        }
+
+        public long getCreatedAt() {
+            return createdAt;
+        }
+
+        public int getAttempts() {
+            return attempts;
+        }
+
+        /**
+         * @return the time (in ms) of the next attempt to trigger the job
+         */
+        public long getNextAttemptAt() {
+            return nextAttemptAt;
+        }
+
+        /**
+         * @return the ID of the triggered execution, or null if not triggered yet
+         */
+        public Long getExecutionId() {
+            return executionId;
+        }
+
+        /**
+         * @return the name of the Jenkins project of the build (from the key - the project name may contain a '#')
+         */
+        public String getProjectName() {
+            return key.substring(0, key.lastIndexOf('#', key.lastIndexOf('#') - 1));
+        }
+
+        /**
+         * @return the number of the build (from the key)
+         */
+        public int getBuildNumber() {
+            return Integer.parseInt(key.substring(getProjectName().length() + 1, key.lastIndexOf('#')));
+        }
+    }
+}
@@ -5,6 +5,7 @@ import hudson.Extension;
 import hudson.Launcher;
 import hudson.Util;
 import hudson.model.Action;
+import hudson.model.AutoCompletionCandidates;
 import hudson.model.BuildBadgeAction;
 import hudson.model.BuildListener;
 import hudson.model.Result;
@@ -21,21 +22,38 @@ import hudson.tasks.BuildStepMonitor;
 import hudson.tasks.Notifier;
 import hudson.tasks.Publisher;
 import hudson.util.FormValidation;
+import java.io.File;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.rundeck.GuardedRundeckClient.RundeckUnavailableException;
+import org.jenkinsci.plugins.rundeck.RundeckConcurrencyLimiter.Permit;
+import org.jenkinsci.plugins.rundeck.RundeckNotificationSpool.SpoolEntry;
+import org.jenkinsci.plugins.rundeck.RundeckSingleFlight.Flight;
 import org.kohsuke.stapler.DataBoundConstructor;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
 import org.rundeck.api.RundeckApiException;
 import org.rundeck.api.RundeckApiException.RundeckApiLoginException;
 import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckAbort;
 import org.rundeck.api.domain.RundeckExecution;
 import org.rundeck.api.domain.RundeckExecution.ExecutionStatus;
 import org.rundeck.api.domain.RundeckJob;
+import org.rundeck.api.domain.RundeckNode;
 
 /**
  * Jenkins {@link Notifier} that runs a job on RunDeck (via the {@link RundeckClient})
@@ -44,6 +62,8 @@ import org.rundeck.api.domain.RundeckJob;
  */
 public class RundeckNotifier extends Notifier {
 
+    private static final Logger LOGGER = Logger.getLogger(RundeckNotifier.class.getName());
+
     /** Pattern used for the token expansion of $ARTIFACT_NAME{regex} */
     private static final transient Pattern TOKEN_ARTIFACT_NAME_PATTERN = Pattern.compile("\\$ARTIFACT_NAME\\{(.+)\\}");
 
@@ -62,15 +82,40 @@ public class RundeckNotifier extends Notifier {
 
     private final Boolean shouldFailTheBuild;
 
-    @DataBoundConstructor
+    /** maximum time to wait for the RunDeck execution, before aborting it - null or 0 for no timeout */
+    private final Integer waitTimeoutMinutes;
+
+    /** attach to a running execution of the same job, with the same options and node filters, if any */
+    private final Boolean shouldReuseRunningExecution;
+
+    /** don't trigger the job if the (expanded) node filters match no node of the RunDeck project */
+    private final Boolean shouldRefuseEmptyNodeSet;
+
     public RundeckNotifier(String jobId, String options, String nodeFilters, String tag,
             Boolean shouldWaitForRundeckJob, Boolean shouldFailTheBuild) {
+        this(jobId, options, nodeFilters, tag, shouldWaitForRundeckJob, shouldFailTheBuild, null, false);
+    }
+
+    public RundeckNotifier(String jobId, String options, String nodeFilters, String tag,
+            Boolean shouldWaitForRundeckJob, Boolean shouldFailTheBuild, Integer waitTimeoutMinutes,
+            Boolean shouldReuseRunningExecution) {
+        this(jobId, options, nodeFilters, tag, shouldWaitForRundeckJob, shouldFailTheBuild, waitTimeoutMinutes,
+             shouldReuseRunningExecution, false);
+    }
+
+    @DataBoundConstructor
+    public RundeckNotifier(String jobId, String options, String nodeFilters, String tag,
+            Boolean shouldWaitForRundeckJob, Boolean shouldFailTheBuild, Integer waitTimeoutMinutes,
+            Boolean shouldReuseRunningExecution, Boolean shouldRefuseEmptyNodeSet) {
         this.jobId = jobId;
         this.options = options;
         this.nodeFilters = nodeFilters;
         this.tag = tag;
         this.shouldWaitForRundeckJob = shouldWaitForRundeckJob;
         this.shouldFailTheBuild = shouldFailTheBuild;
+        this.waitTimeoutMinutes = waitTimeoutMinutes;
+        this.shouldReuseRunningExecution = shouldReuseRunningExecution;
+        this.shouldRefuseEmptyNodeSet = shouldRefuseEmptyNodeSet;
     }
 
     @Override
@@ -80,21 +125,35 @@ public class RundeckNotifier extends Notifier {
             return true;
         }
 
-        RundeckClient rundeck = getDescriptor().getRundeckInstance();
+        // the same settings are used until the end of the notification, even if the configuration changes
+        RundeckConfiguration configuration = getDescriptor().getConfiguration();
+        RundeckClient rundeck = configuration.getRundeckClient();
 
         if (rundeck == null) {
             listener.getLogger().println("RunDeck configuration is not valid !");
             return false;
         }
+        RundeckMetrics metrics = RundeckMetrics.get();
+        RundeckApiException pingFailure = null;
+        long pingStart = System.nanoTime();
         try {
             rundeck.ping();
         } catch (RundeckApiException e) {
+            metrics.notifierPingFailures.increment();
             listener.getLogger().println("RunDeck is not running !");
-            return false;
+            if (Boolean.TRUE.equals(shouldWaitForRundeckJob) || getSpool() == null) {
+                return false;
+            }
+            // don't lose the notification : it will be spooled instead of triggered, and retried in background
+            pingFailure = e;
+        } finally {
+            metrics.notifierPingDuration.observeSince(pingStart);
         }
+        long healthCheckMillis = elapsedMillis(pingStart);
 
         if (shouldNotifyRundeck(build, listener)) {
-            return notifyRundeck(rundeck, build, listener);
+            return new TriggerCoordinator(configuration, build, listener, healthCheckMillis, pingFailure)
+                    .notifyRundeck();
         }
 
         return true;
@@ -150,59 +209,293 @@ public class RundeckNotifier extends Notifier {
     }
 
     /**
-     * Notify RunDeck : run a job on RunDeck
+     * Trigger our job on RunDeck. If RunDeck is unavailable and the notification is spooled, retry with a backoff if we
+     * wait for the execution, or let the spool retry in background otherwise.
      * 
      * @param rundeck instance to notify
-     * @param build for adding actions
+     * @param jobOptions expanded options
+     * @param jobNodeFilters expanded node filters
+     * @param spoolEntry of this notification - may be null if there is no spool
+     * @param pingFailure error of the health check, counted as the first failed attempt - may be null
      * @param listener for logging the result
-     * @return true if successful, false otherwise
+     * @return the triggered execution, or null if the notification will be retried in background
+     * @throws RundeckApiException if we failed to trigger the job (and gave up)
+     * @throws InterruptedException if interrupted while waiting for the next attempt
      */
-    private boolean notifyRundeck(RundeckClient rundeck, AbstractBuild<?, ?> build, BuildListener listener) {
-        try {
-            RundeckExecution execution = rundeck.triggerJob(jobId,
-                                                            parseProperties(options, build, listener),
-                                                            parseProperties(nodeFilters, build, listener));
-            listener.getLogger().println("Notification succeeded ! Execution #" + execution.getId() + ", at "
-                                         + execution.getUrl() + " (status : " + execution.getStatus() + ")");
-            build.addAction(new RundeckExecutionBuildBadgeAction(execution.getUrl()));
-
-            if (Boolean.TRUE.equals(shouldWaitForRundeckJob)) {
-                listener.getLogger().println("Waiting for RunDeck execution to finish...");
-                while (ExecutionStatus.RUNNING.equals(execution.getStatus())) {
-                    try {
-                        Thread.sleep(5000);
-                    } catch (InterruptedException e) {
-                        listener.getLogger().println("Oops, interrupted ! " + e.getMessage());
-                        break;
-                    }
-                    execution = rundeck.getExecution(execution.getId());
+    private RundeckExecution triggerJob(RundeckClient rundeck, Properties jobOptions, Properties jobNodeFilters,
+            SpoolEntry spoolEntry, RundeckApiException pingFailure, BuildListener listener)
+            throws RundeckApiException, InterruptedException {
+        RundeckMetrics metrics = RundeckMetrics.get();
+        RundeckNotificationSpool spool = getSpool();
+        RundeckApiException failure = pingFailure;
+        while (true) {
+            if (failure == null) {
+                long callStart = System.nanoTime();
+                try {
+                    return rundeck.triggerJob(jobId, jobOptions, jobNodeFilters);
+                } catch (RundeckApiException e) {
+                    metrics.notifierTriggerFailures.increment();
+                    failure = e;
+                } finally {
+                    metrics.notifierTriggerDuration.observeSince(callStart);
                 }
-                listener.getLogger().println("RunDeck execution #" + execution.getId() + " finished in "
-                                             + execution.getDuration() + ", with status : " + execution.getStatus());
+            }
+            if (spoolEntry == null) {
+                throw failure;
+            }
+            if (!GuardedRundeckClient.isUnavailable(failure)) {
+                spool.done(spoolEntry);
+                throw failure;
+            }
+            if (!spool.attemptFailed(spoolEntry)) {
+                throw failure;
+            }
+            if (!Boolean.TRUE.equals(shouldWaitForRundeckJob)) {
+                listener.getLogger().println("RunDeck is unavailable (" + failure.getMessage()
+                                             + ") : the notification has been spooled, and will be retried in "
+                                             + "background");
+                return null;
+            }
+            long delay = Math.max(0, spoolEntry.getNextAttemptAt() - System.currentTimeMillis());
+            listener.getLogger().println("RunDeck is unavailable (" + failure.getMessage() + ") : retrying in "
+                                         + delay / 1000 + " seconds (attempt " + (spoolEntry.getAttempts() + 1)
+                                         + "/" + RundeckNotificationSpool.MAX_ATTEMPTS + ")");
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ie) {
+                spool.done(spoolEntry);
+                throw ie;
+            }
+            failure = null;
+        }
+    }
 
-                switch (execution.getStatus()) {
-                    case SUCCEEDED:
-                        return true;
-                    case ABORTED:
-                    case FAILED:
-                        return false;
-                    default:
-                        return true;
+    /**
+     * @return the spool of the pending notifications, or null if not available (plugin not started)
+     */
+    private static RundeckNotificationSpool getSpool() {
+        RundeckPlugin plugin = Hudson.getInstance().getPlugin(RundeckPlugin.class);
+        return plugin != null ? plugin.getSpool() : null;
+    }
+
+    /**
+     * @return the ledger of the deployments, or null if not available (plugin not started)
+     */
+    private static RundeckDeploymentLedger getDeploymentLedger() {
+        RundeckPlugin plugin = Hudson.getInstance().getPlugin(RundeckPlugin.class);
+        return plugin != null ? plugin.getDeployments() : null;
+    }
+
+    /**
+     * Wait for a permit to start a new execution of our job, if there is a concurrency limit for this job or its
+     * project
+     * 
+     * @param configuration of the notification, with the RunDeck instance running the job and the limiter
+     * @param listener for logging the wait
+     * @return the acquired permit, or null if there is no limit
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private Permit acquirePermit(RundeckConfiguration configuration, BuildListener listener)
+            throws InterruptedException {
+        RundeckConcurrencyLimiter limiter = configuration.getConcurrencyLimiter();
+        if (!limiter.isEnabled()) {
+            return null;
+        }
+        String project = null;
+        if (limiter.hasProjectLimits()) {
+            RundeckJob job = getDescriptor().getJobCatalog().findJob(jobId);
+            try {
+                if (job == null) {
+                    job = configuration.getRundeckClient().getJob(jobId);
                 }
-            } else {
-                return true;
+                project = job.getProject();
+            } catch (RundeckApiException e) {
+                listener.getLogger().println("Failed to get the project of the RunDeck job " + jobId
+                                             + ", ignoring the project concurrency limit : " + e.getMessage());
             }
-        } catch (RundeckApiLoginException e) {
-            listener.getLogger().println("Login failed on " + rundeck.getUrl() + " : " + e.getMessage());
-            return false;
+        }
+        return limiter.acquire(project, jobId, listener.getLogger());
+    }
+
+    /**
+     * Check, with the {@link RundeckNodeInventory}, that the given node filters match at least one node of the project
+     * of the job. If the filters can't be evaluated locally, or if the nodes can't be loaded, the execution is allowed
+     * (RunDeck will decide).
+     * 
+     * @param configuration of the notification, with the RunDeck instance running the job
+     * @param jobNodeFilters expanded node filters
+     * @param listener for logging the result
+     * @return false if we are sure that the filters match no node, true otherwise
+     */
+    private boolean hasMatchingNodes(RundeckConfiguration configuration, Properties jobNodeFilters,
+            BuildListener listener) {
+        if (jobNodeFilters == null || jobNodeFilters.isEmpty()) {
+            // no filter : the job runs on its own nodes
+            return true;
+        }
+        RundeckClient rundeck = configuration.getRundeckClient();
+        try {
+            RundeckJob job = getDescriptor().getJobCatalog().findJob(jobId);
+            if (job == null) {
+                job = rundeck.getJob(jobId);
+            }
+            List<RundeckNode> nodes = getDescriptor().getNodeInventory().findMatchingNodes(rundeck,
+                                                                                           job.getProject(),
+                                                                                           jobNodeFilters);
+            if (nodes.isEmpty()) {
+                listener.getLogger().println("The node filters " + jobNodeFilters + " match no node of the RunDeck "
+                                             + "project " + job.getProject() + " : the job will not be triggered !");
+                return false;
+            }
+            listener.getLogger().println("The node filters match " + nodes.size() + " node(s) of the RunDeck project "
+                                         + job.getProject());
         } catch (RundeckApiException e) {
-            listener.getLogger().println("Error while talking to RunDeck's API at " + rundeck.getUrl() + " : "
+            listener.getLogger().println("Failed to load the RunDeck nodes, the node filters are not checked : "
                                          + e.getMessage());
-            return false;
         } catch (IllegalArgumentException e) {
-            listener.getLogger().println("Configuration error : " + e.getMessage());
+            listener.getLogger().println("The node filters can't be checked : " + e.getMessage());
+        }
+        return true;
+    }
+
+    /**
+     * Wait for the execution triggered by the leader of the given flight, and attach to it if it is still running. The
+     * caller stays attached to the flight until it detaches from it.
+     * 
+     * @param rundeck instance running the execution
+     * @param flight joined as a follower
+     * @param listener for logging the result
+     * @return the running execution, or null if we should start a new one
+     * @throws InterruptedException if interrupted while waiting for the leader
+     */
+    private RundeckExecution attachToExecution(RundeckClient rundeck, Flight flight, BuildListener listener)
+            throws InterruptedException {
+        RundeckExecution execution = flight.awaitExecution();
+        if (execution != null) {
+            execution = getExecution(rundeck, execution.getId());
+        }
+        if (execution == null || !ExecutionStatus.RUNNING.equals(execution.getStatus())) {
+            return null;
+        }
+        RundeckMetrics.get().notifierAttachedExecutions.increment();
+        listener.getLogger().println("Identical RunDeck execution already running : attached to execution #"
+                                     + execution.getId() + ", at " + execution.getUrl());
+        return execution;
+    }
+
+    /**
+     * Stop waiting for the execution of the given flight (if any)
+     * 
+     * @param flight may be null
+     * @return true if no other build is waiting for the execution
+     */
+    private static boolean detach(Flight flight) {
+        if (flight == null) {
+            return true;
+        }
+        if (flight.detach() > 0) {
             return false;
         }
+        RundeckSingleFlight.get().remove(flight);
+        return true;
+    }
+
+    /**
+     * Abort the given RunDeck execution, unless other builds are attached to it. Failing to abort it is logged, but
+     * is not an error.
+     * 
+     * @param rundeck instance running the execution
+     * @param execution to abort
+     * @param flight shared with other builds - may be null
+     * @param listener for logging the result
+     * @return the state of the execution after the abort (or the given execution if we could not get it)
+     */
+    private RundeckExecution abortExecution(RundeckClient rundeck, RundeckExecution execution, Flight flight,
+            BuildListener listener) {
+        if (!detach(flight)) {
+            listener.getLogger().println("RunDeck execution #" + execution.getId()
+                                         + " is still used by other builds, it won't be aborted");
+            return execution;
+        }
+        listener.getLogger().println("Aborting RunDeck execution #" + execution.getId() + "...");
+        try {
+            RundeckAbort abort = rundeck.abortExecution(execution.getId());
+            listener.getLogger().println("RunDeck execution #" + execution.getId() + " abort status : "
+                                         + abort.getStatus());
+            return getExecution(rundeck, execution.getId());
+        } catch (RundeckApiException e) {
+            listener.getLogger().println("Failed to abort RunDeck execution #" + execution.getId() + " : "
+                                         + e.getMessage());
+        }
+        return execution;
+    }
+
+    /**
+     * Write the new output of the RunDeck execution to the build console. Failing to get the output (for example with
+     * RunDeck before 1.5, or when RunDeck is degraded) is not an error : we just stop tailing, and keep waiting for the
+     * status of the execution.
+     * 
+     * @param outputTail to poll - may be null if we already stopped tailing
+     * @param finished true if the execution is finished, so that we fetch all the remaining output
+     * @param listener for logging the output
+     * @return the given tail, or null if we should stop tailing
+     */
+    private static RundeckExecutionOutputTail tailOutput(RundeckExecutionOutputTail outputTail, boolean finished,
+            BuildListener listener) {
+        if (outputTail == null) {
+            return null;
+        }
+        try {
+            // the output of a finished execution may still be written by RunDeck : try a few times
+            for (int attempt = 0; attempt < (finished ? 5 : 1); attempt++) {
+                if (outputTail.poll()) {
+                    break;
+                }
+                if (finished) {
+                    Thread.sleep(1000);
+                }
+            }
+            return outputTail;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return outputTail;
+        } catch (IOException e) {
+            listener.getLogger().println("Unable to get the output of the RunDeck execution : " + e.getMessage());
+        } catch (RuntimeException e) {
+            // RundeckApiException (including a call rejected or abandoned by the guarded client), invalid response...
+            listener.getLogger().println("Unable to get the output of the RunDeck execution : " + e.getMessage());
+        }
+        outputTail.close();
+        return null;
+    }
+
+    /**
+     * @param startNanos value of {@link System#nanoTime()} at the start of the operation
+     * @return the number of milliseconds elapsed since the start of the operation
+     */
+    private static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1000000L;
+    }
+
+    /**
+     * Get the current state of the given execution, recording the latency and failures of the call
+     * 
+     * @param rundeck instance to query
+     * @param executionId ID of the execution
+     * @return the execution
+     * @throws RundeckApiException in case of error while talking to RunDeck
+     */
+    private RundeckExecution getExecution(RundeckClient rundeck, Long executionId) throws RundeckApiException {
+        RundeckMetrics metrics = RundeckMetrics.get();
+        long start = System.nanoTime();
+        try {
+            return rundeck.getExecution(executionId);
+        } catch (RundeckApiException e) {
+            metrics.notifierGetExecutionFailures.increment();
+            throw e;
+        } finally {
+            metrics.notifierGetExecutionDuration.observeSince(start);
+        }
     }
 
     /**
@@ -219,13 +512,45 @@ public class RundeckNotifier extends Notifier {
         }
 
         // try to expand jenkins env vars
+        EnvVars envVars = null;
         try {
-            EnvVars envVars = build.getEnvironment(listener);
-            input = Util.replaceMacro(input, envVars);
+            envVars = build.getEnvironment(listener);
         } catch (Exception e) {
             listener.getLogger().println("Failed to expand environment variables : " + e.getMessage());
         }
 
+        // only look at the artifacts if we have some custom tokens to expand
+        List<String> artifactFileNames = new ArrayList<String>();
+        if (StringUtils.contains(input, "$ARTIFACT_NAME{")) {
+            for (@SuppressWarnings("rawtypes")
+            Artifact artifact : build.getArtifacts()) {
+                artifactFileNames.add(artifact.getFileName());
+            }
+        }
+
+        return parseProperties(input, envVars, artifactFileNames, listener.getLogger());
+    }
+
+    /**
+     * Parse the given input (should be in the Java-Properties syntax), expand the given environment variables and our
+     * custom tokens. Does not need a running Jenkins instance.
+     * 
+     * @param input specified in the Java-Properties syntax (multi-line, key and value separated by = or :)
+     * @param envVars variables to expand - may be null
+     * @param artifactFileNames names of the build artifacts, used for the $ARTIFACT_NAME{regex} token
+     * @param logger for logging the errors
+     * @return A {@link Properties} instance (may be empty), or null if unable to parse the options
+     */
+    static Properties parseProperties(String input, Map<String, String> envVars, List<String> artifactFileNames,
+            PrintStream logger) {
+        if (StringUtils.isBlank(input)) {
+            return new Properties();
+        }
+
+        if (envVars != null) {
+            input = Util.replaceMacro(input, envVars);
+        }
+
         // expand our custom tokens : $ARTIFACT_NAME{regex} => name of the first matching artifact found
         // http://groups.google.com/group/rundeck-discuss/browse_thread/thread/94a6833b84fdc10b
         Matcher matcher = TOKEN_ARTIFACT_NAME_PATTERN.matcher(input);
@@ -234,11 +559,10 @@ public class RundeckNotifier extends Notifier {
             idx = matcher.end();
             String regex = matcher.group(1);
             Pattern pattern = Pattern.compile(regex);
-            for (@SuppressWarnings("rawtypes")
-            Artifact artifact : build.getArtifacts()) {
-                if (pattern.matcher(artifact.getFileName()).matches()) {
-                    input = StringUtils.replace(input, matcher.group(0), artifact.getFileName());
-                    idx = matcher.start() + artifact.getFileName().length();
+            for (String artifactFileName : artifactFileNames) {
+                if (pattern.matcher(artifactFileName).matches()) {
+                    input = StringUtils.replace(input, matcher.group(0), artifactFileName);
+                    idx = matcher.start() + artifactFileName.length();
                     break;
                 }
             }
@@ -247,8 +571,8 @@ public class RundeckNotifier extends Notifier {
         try {
             return Util.loadProperties(input);
         } catch (IOException e) {
-            listener.getLogger().println("Failed to parse : " + input);
-            listener.getLogger().println("Error : " + e.getMessage());
+            logger.println("Failed to parse : " + input);
+            logger.println("Error : " + e.getMessage());
             return null;
         }
     }
@@ -256,6 +580,11 @@ public class RundeckNotifier extends Notifier {
     @Override
     public Action getProjectAction(AbstractProject<?, ?> project) {
         try {
+            // the catalog is loaded by the warm-up, so that rendering the project page does not need to call RunDeck
+            RundeckJob job = getDescriptor().getJobCatalog().findJob(jobId);
+            if (job != null) {
+                return new RundeckJobProjectLinkerAction(getDescriptor().getRundeckInstance(), job);
+            }
             return new RundeckJobProjectLinkerAction(getDescriptor().getRundeckInstance(), jobId);
         } catch (RundeckApiException e) {
             return null;
@@ -305,33 +634,558 @@ public class RundeckNotifier extends Notifier {
         return shouldFailTheBuild;
     }
 
+    public Integer getWaitTimeoutMinutes() {
+        return waitTimeoutMinutes;
+    }
+
+    public Boolean getShouldReuseRunningExecution() {
+        return shouldReuseRunningExecution;
+    }
+
+    public Boolean getShouldRefuseEmptyNodeSet() {
+        return shouldRefuseEmptyNodeSet;
+    }
+
     @Override
     public RundeckDescriptor getDescriptor() {
         return (RundeckDescriptor) super.getDescriptor();
     }
 
+    /**
+     * Notifies RunDeck for a build, one phase at a time : expansion of the options and node filters, check of the
+     * nodes, single-flight of the identical triggers, spool, trigger, deployment ledger and wait for the execution.
+     * Each resource (flight, spool entry, permit, output tail) is released in the finally of its own phase.
+     */
+    private class TriggerCoordinator {
+
+        private final RundeckConfiguration configuration;
+
+        private final RundeckClient rundeck;
+
+        private final AbstractBuild<?, ?> build;
+
+        private final BuildListener listener;
+
+        /** time spent checking that RunDeck is alive, for the timing breakdown */
+        private final long healthCheckMillis;
+
+        /** error of the health check if RunDeck is not running - null if RunDeck is alive */
+        private final RundeckApiException pingFailure;
+
+        private final RundeckMetrics metrics = RundeckMetrics.get();
+
+        private final RundeckNotificationSpool spool = getSpool();
+
+        private final RundeckDeploymentLedger ledger = getDeploymentLedger();
+
+        private Properties jobOptions;
+
+        private Properties jobNodeFilters;
+
+        private long optionExpansionMillis;
+
+        private long triggeredAt;
+
+        private long triggerStart;
+
+        /** flight of identical triggers joined by this build, until we detach from it */
+        private Flight flight;
+
+        /** spooled entry of this notification, claimed by this build until we release it */
+        private SpoolEntry spoolEntry;
+
+        /** permit of the concurrency limiter, until we release it (or hand it over to the limiter) */
+        private Permit permit;
+
+        /** true if the spooled entry should survive the end of the wait (Jenkins is stopping) */
+        private boolean keepSpooled;
+
+        private RundeckExecution execution;
+
+        private RundeckExecutionBuildBadgeAction badge;
+
+        TriggerCoordinator(RundeckConfiguration configuration, AbstractBuild<?, ?> build, BuildListener listener,
+                long healthCheckMillis, RundeckApiException pingFailure) {
+            this.configuration = configuration;
+            this.rundeck = configuration.getRundeckClient();
+            this.build = build;
+            this.listener = listener;
+            this.healthCheckMillis = healthCheckMillis;
+            this.pingFailure = pingFailure;
+        }
+
+        /**
+         * Notify RunDeck : run a job on RunDeck. If RunDeck is not running ({@link #pingFailure}), the notification is
+         * spooled instead of triggered, after the same checks.
+         * 
+         * @return true if successful, false otherwise
+         * @throws InterruptedException if the build has been interrupted while waiting for the RunDeck execution
+         *             (which has been aborted)
+         */
+        boolean notifyRundeck() throws InterruptedException {
+            try {
+                expandProperties();
+                if (Boolean.TRUE.equals(shouldRefuseEmptyNodeSet)
+                    && !hasMatchingNodes(configuration, jobNodeFilters, listener)) {
+                    return false;
+                }
+                return joinFlightAndTrigger();
+            } catch (RundeckApiLoginException e) {
+                listener.getLogger().println("Login failed on " + rundeck.getUrl() + " : " + e.getMessage());
+                return false;
+            } catch (RundeckApiException e) {
+                listener.getLogger().println("Error while talking to RunDeck's API at " + rundeck.getUrl() + " : "
+                                             + e.getMessage());
+                return false;
+            } catch (IllegalArgumentException e) {
+                listener.getLogger().println("Configuration error : " + e.getMessage());
+                return false;
+            }
+        }
+
+        private void expandProperties() {
+            long expansionStart = System.nanoTime();
+            jobOptions = parseProperties(options, build, listener);
+            jobNodeFilters = parseProperties(nodeFilters, build, listener);
+            optionExpansionMillis = elapsedMillis(expansionStart);
+        }
+
+        /**
+         * Attach to the running execution of an identical trigger (if we should reuse it), or lead the flight of the
+         * identical triggers - then go on with the next phases
+         */
+        private boolean joinFlightAndTrigger() throws InterruptedException {
+            triggeredAt = System.currentTimeMillis();
+            triggerStart = System.nanoTime();
+            try {
+                if (Boolean.TRUE.equals(shouldReuseRunningExecution)) {
+                    String key = RundeckSingleFlight.key(jobId, jobOptions, jobNodeFilters);
+                    while (execution == null) {
+                        flight = RundeckSingleFlight.get().join(key);
+                        if (flight.isLeader()) {
+                            break;
+                        }
+                        execution = attachToExecution(rundeck, flight, listener);
+                        if (execution == null) {
+                            // the leader failed, or its execution is already finished : we need a new execution
+                            detach(flight);
+                            flight = null;
+                        }
+                    }
+                }
+                return claimAndTrigger();
+            } finally {
+                if (flight != null) {
+                    if (flight.isLeader()) {
+                        // wake up the followers (no-op if the execution has been published)
+                        flight.fail();
+                    }
+                    // whatever the path (not waiting, spooled, error...), the next identical trigger must not join a
+                    // flight that nobody follows anymore
+                    detach(flight);
+                    flight = null;
+                }
+            }
+        }
+
+        /**
+         * Claim the spooled entry of this notification (if there is a spool and no execution to attach to) - then go
+         * on with the next phases
+         */
+        private boolean claimAndTrigger() throws InterruptedException {
+            try {
+                if (execution == null && spool != null) {
+                    SpoolEntry entry = spool.enqueue(RundeckNotificationSpool.key(build.getProject().getFullName(),
+                                                                                  build.getNumber(),
+                                                                                  jobId),
+                                                     jobId,
+                                                     jobOptions,
+                                                     jobNodeFilters,
+                                                     Boolean.TRUE.equals(shouldWaitForRundeckJob));
+                    if (!spool.claim(entry)) {
+                        listener.getLogger().println("The notification is already handled by the RunDeck spool !");
+                        return true;
+                    }
+                    spoolEntry = entry;
+                    if (spoolEntry.getExecutionId() != null) {
+                        // idempotency : this notification has already been triggered
+                        execution = getExecution(rundeck, spoolEntry.getExecutionId());
+                        listener.getLogger().println("Notification already done : execution #" + execution.getId());
+                        if (flight != null) {
+                            flight.publish(execution);
+                        }
+                    }
+                }
+                return triggerAndFollow();
+            } finally {
+                if (spoolEntry != null) {
+                    // a pending entry is then handled by the spool worker (or replayed after a restart)
+                    spool.release(spoolEntry);
+                    spoolEntry = null;
+                }
+            }
+        }
+
+        /**
+         * Trigger the job (if we have no execution yet), record the deployment, and wait for the execution (or let the
+         * limiter release the permit when it is finished)
+         */
+        private boolean triggerAndFollow() throws InterruptedException {
+            try {
+                if (execution == null && !trigger()) {
+                    // spooled, will be retried in background
+                    return true;
+                }
+                recordDeployment();
+                if (Boolean.TRUE.equals(shouldWaitForRundeckJob)) {
+                    return waitForExecution();
+                }
+                if (permit != null) {
+                    permit.releaseWhenFinished(rundeck, execution.getId());
+                    permit = null;
+                }
+                return true;
+            } finally {
+                if (permit != null) {
+                    permit.release();
+                    permit = null;
+                }
+            }
+        }
+
+        /**
+         * @return true if the job has been triggered, false if the notification will be retried in background
+         */
+        private boolean trigger() throws InterruptedException {
+            try {
+                permit = acquirePermit(configuration, listener);
+                execution = triggerJob(rundeck, jobOptions, jobNodeFilters, spoolEntry, pingFailure, listener);
+            } catch (InterruptedException e) {
+                // the build has been aborted : the notification should not be replayed after a restart
+                if (spoolEntry != null) {
+                    spool.done(spoolEntry);
+                }
+                throw e;
+            } finally {
+                if (flight != null && execution != null) {
+                    flight.publish(execution);
+                }
+            }
+            if (execution == null) {
+                return false;
+            }
+            listener.getLogger().println("Notification succeeded ! Execution #" + execution.getId() + ", at "
+                                         + execution.getUrl() + " (status : " + execution.getStatus() + ")");
+            if (spoolEntry != null) {
+                spool.triggered(spoolEntry, execution.getId());
+            }
+            return true;
+        }
+
+        private void recordDeployment() {
+            if (ledger != null) {
+                ledger.triggered(build.getProject().getFullName(),
+                                 build.getNumber(),
+                                 jobId,
+                                 jobNodeFilters,
+                                 execution,
+                                 Boolean.TRUE.equals(shouldWaitForRundeckJob));
+            }
+            long triggerMillis = elapsedMillis(triggerStart);
+            badge = new RundeckExecutionBuildBadgeAction(execution,
+                                                         triggeredAt,
+                                                         healthCheckMillis,
+                                                         optionExpansionMillis,
+                                                         triggerMillis);
+            build.addAction(badge);
+        }
+
+        /**
+         * @return true if the execution succeeded, false if it failed, has been aborted or did not finish in time
+         */
+        private boolean waitForExecution() throws InterruptedException {
+            listener.getLogger().println("Waiting for RunDeck execution to finish...");
+            long waitStart = System.nanoTime();
+            boolean timedOut;
+            try {
+                timedOut = tailUntilFinished();
+            } finally {
+                if (ledger != null) {
+                    // if we don't know the final status (interrupted, abort still running...), let the ledger get it
+                    // in background
+                    ledger.follow(execution.getId());
+                }
+                if (spoolEntry != null && !keepSpooled) {
+                    // if Jenkins dies while we are waiting, the spool will resume the wait after the restart
+                    spool.done(spoolEntry);
+                }
+                metrics.notifierWaitDuration.observeSince(waitStart);
+            }
+            badge.update(execution);
+            if (ledger != null) {
+                ledger.finished(execution);
+            }
+            listener.getLogger().println("RunDeck execution #" + execution.getId() + " finished in "
+                                         + execution.getDuration() + ", with status : " + execution.getStatus());
+
+            if (timedOut) {
+                return false;
+            }
+            switch (execution.getStatus()) {
+                case SUCCEEDED:
+                    return true;
+                case ABORTED:
+                case FAILED:
+                    return false;
+                default:
+                    return true;
+            }
+        }
+
+        /**
+         * Poll the execution until it is finished (or aborted, after the timeout), writing its output to the build
+         * console
+         * 
+         * @return true if the execution has been aborted because it did not finish in time
+         */
+        private boolean tailUntilFinished() throws InterruptedException {
+            File outputFile = new File(build.getArtifactsDir(), "rundeck-execution-" + execution.getId() + ".log.gz");
+            RundeckExecutionOutputTail outputTail = new RundeckExecutionOutputTail(rundeck,
+                                                                                   execution.getId(),
+                                                                                   listener.getLogger(),
+                                                                                   outputFile);
+            long deadline = 0;
+            if (waitTimeoutMinutes != null && waitTimeoutMinutes > 0) {
+                deadline = System.currentTimeMillis() + waitTimeoutMinutes * 60000L;
+            }
+            boolean timedOut = false;
+            try {
+                while (ExecutionStatus.RUNNING.equals(execution.getStatus())) {
+                    if (deadline > 0 && System.currentTimeMillis() > deadline) {
+                        listener.getLogger().println("RunDeck execution #" + execution.getId()
+                                                     + " did not finish within " + waitTimeoutMinutes + " minutes !");
+                        execution = abortExecution(rundeck, execution, flight, listener);
+                        flight = null;
+                        timedOut = true;
+                        break;
+                    }
+                    try {
+                        Thread.sleep(5000);
+                    } catch (InterruptedException e) {
+                        if (spoolEntry != null && Hudson.getInstance().isTerminating()) {
+                            // Jenkins is stopping, not the build : the spool will follow the execution
+                            listener.getLogger().println("Jenkins is stopping : RunDeck execution #"
+                                                         + execution.getId() + " will be followed after the restart");
+                            keepSpooled = true;
+                            throw e;
+                        }
+                        // the build has been aborted (or has timed out) : nobody wants this execution anymore
+                        listener.getLogger().println("Oops, interrupted ! " + e.getMessage());
+                        badge.update(abortExecution(rundeck, execution, flight, listener));
+                        flight = null;
+                        throw e;
+                    }
+                    outputTail = tailOutput(outputTail, false, listener);
+                    try {
+                        execution = getExecution(rundeck, execution.getId());
+                    } catch (RundeckUnavailableException e) {
+                        // RunDeck is degraded, but our execution may still be running : try again later
+                        listener.getLogger().println(e.getMessage());
+                    }
+                }
+                outputTail = tailOutput(outputTail, true, listener);
+                return timedOut;
+            } finally {
+                if (outputTail != null) {
+                    outputTail.close();
+                }
+            }
+        }
+    }
+
     @Extension(ordinal = 1000)
     public static final class RundeckDescriptor extends BuildStepDescriptor<Publisher> {
 
+        public static final int DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD = 5;
+
+        public static final int DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS = 30;
+
+        public static final int DEFAULT_RATE_LIMIT_BURST = 20;
+
+        public static final int DEFAULT_CALL_TIMEOUT_SECONDS = 60;
+
+        private static final int MAX_AUTO_COMPLETION_CANDIDATES = 20;
+
+        /** maximum number of node names shown when checking the node filters */
+        private static final int MAX_PREVIEWED_NODES = 10;
+
+        // the persisted settings are only written under the lock of the descriptor, and published to the readers
+        // through the immutable configuration snapshot
+
         private RundeckClient rundeckInstance;
 
+        /** number of consecutive RunDeck failures before failing fast - 0 to disable the circuit breaker */
+        private int circuitBreakerFailureThreshold = DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD;
+
+        /** time during which we fail fast, before probing RunDeck again */
+        private int circuitBreakerOpenSeconds = DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS;
+
+        /** maximum (average) number of RunDeck API calls per second - 0 for no limit */
+        private double rateLimitPerSecond;
+
+        private int rateLimitBurst = DEFAULT_RATE_LIMIT_BURST;
+
+        /** maximum duration of a RunDeck API call - 0 for no timeout */
+        private int callTimeoutSeconds = DEFAULT_CALL_TIMEOUT_SECONDS;
+
+        /** concurrency limits of the RunDeck executions, see {@link RundeckConcurrencyLimiter} */
+        private String concurrencyLimits;
+
+        /** URLs of the WebHook of the peer controllers, one per line, see {@link RundeckWebHookRelay} */
+        private String webHookRelayPeers;
+
+        /** snapshot of the settings above, replaced as a whole on each change */
+        private transient volatile RundeckConfiguration configuration;
+
+        /** jobs defined on RunDeck, refreshed by {@link RundeckJobCatalogSync} */
+        private transient RundeckJobCatalog jobCatalog = new RundeckJobCatalog();
+
+        /** nodes defined on RunDeck, refreshed by {@link RundeckNodeInventorySync} */
+        private transient RundeckNodeInventory nodeInventory = new RundeckNodeInventory();
+
         public RundeckDescriptor() {
             super();
-            load();
+            synchronized (this) {
+                load();
+                RundeckConcurrencyLimiter limiter;
+                try {
+                    limiter = new RundeckConcurrencyLimiter(concurrencyLimits);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Invalid RunDeck concurrency limits, ignoring them", e);
+                    limiter = new RundeckConcurrencyLimiter();
+                } catch (IllegalArgumentException e) {
+                    LOGGER.log(Level.WARNING, "Invalid RunDeck concurrency limits, ignoring them", e);
+                    limiter = new RundeckConcurrencyLimiter();
+                }
+                publish(limiter, parsePeersQuietly(webHookRelayPeers));
+            }
         }
 
         @Override
         public boolean configure(StaplerRequest req, JSONObject json) throws FormException {
+            synchronized (this) {
+                // validate everything before changing anything
+                String newConcurrencyLimits = json.optString("concurrencyLimits");
+                RundeckConcurrencyLimiter limiter = configuration.getConcurrencyLimiter();
+                if (!StringUtils.equals(newConcurrencyLimits, configuration.getConcurrencyLimits())) {
+                    try {
+                        limiter = new RundeckConcurrencyLimiter(newConcurrencyLimits);
+                    } catch (IOException e) {
+                        throw new FormException("Invalid concurrency limits : " + e.getMessage(), e,
+                                                "concurrencyLimits");
+                    } catch (IllegalArgumentException e) {
+                        throw new FormException("Invalid concurrency limits : " + e.getMessage(), e,
+                                                "concurrencyLimits");
+                    }
+                }
+                String newWebHookRelayPeers = StringUtils.trimToNull(json.optString("webHookRelayPeers"));
+                List<String> peers;
+                try {
+                    peers = RundeckWebHookRelay.parsePeers(newWebHookRelayPeers);
+                } catch (IllegalArgumentException e) {
+                    throw new FormException("Invalid WebHook relay peers : " + e.getMessage(), e,
+                                            "webHookRelayPeers");
+                }
+                try {
+                    rundeckInstance = new RundeckClient(json.getString("url"),
+                                                        json.getString("login"),
+                                                        json.getString("password"));
+                } catch (IllegalArgumentException e) {
+                    rundeckInstance = null;
+                }
+                circuitBreakerFailureThreshold = json.optInt("circuitBreakerFailureThreshold",
+                                                             DEFAULT_CIRCUIT_BREAKER_FAILURE_THRESHOLD);
+                circuitBreakerOpenSeconds = json.optInt("circuitBreakerOpenSeconds",
+                                                        DEFAULT_CIRCUIT_BREAKER_OPEN_SECONDS);
+                rateLimitPerSecond = json.optDouble("rateLimitPerSecond", 0);
+                rateLimitBurst = json.optInt("rateLimitBurst", DEFAULT_RATE_LIMIT_BURST);
+                callTimeoutSeconds = json.optInt("callTimeoutSeconds", DEFAULT_CALL_TIMEOUT_SECONDS);
+                concurrencyLimits = newConcurrencyLimits;
+                webHookRelayPeers = newWebHookRelayPeers;
+                publish(limiter, peers);
+                jobCatalog.clear();
+                nodeInventory.clear();
+
+                save();
+            }
+            return super.configure(req, json);
+        }
+
+        /**
+         * Publish a new configuration snapshot, built from the current settings (should be called with the lock of
+         * the descriptor). The circuit breaker and the rate limiter of the previous snapshot are kept (with their
+         * state) if the RunDeck instance and their settings are unchanged.
+         * 
+         * @param limiter built from the current concurrency limits
+         * @param peers parsed from the current WebHook relay peers
+         */
+        private void publish(RundeckConcurrencyLimiter limiter, List<String> peers) {
+            RundeckConfiguration previous = configuration;
+            boolean sameInstance = previous != null && isSameInstance(previous.getRundeckInstance(), rundeckInstance);
+            RundeckCircuitBreaker circuitBreaker;
+            if (sameInstance && previous.getCircuitBreakerFailureThreshold() == circuitBreakerFailureThreshold
+                && previous.getCircuitBreakerOpenSeconds() == circuitBreakerOpenSeconds) {
+                circuitBreaker = previous.getCircuitBreaker();
+            } else {
+                circuitBreaker = new RundeckCircuitBreaker(circuitBreakerFailureThreshold,
+                                                           circuitBreakerOpenSeconds * 1000L);
+            }
+            RundeckRateLimiter rateLimiter;
+            if (sameInstance && previous.getRateLimitPerSecond() == rateLimitPerSecond
+                && previous.getRateLimitBurst() == rateLimitBurst) {
+                rateLimiter = previous.getRateLimiter();
+            } else {
+                rateLimiter = new RundeckRateLimiter(rateLimitPerSecond, rateLimitBurst);
+            }
+            configuration = new RundeckConfiguration(rundeckInstance,
+                                                     circuitBreakerFailureThreshold,
+                                                     circuitBreakerOpenSeconds,
+                                                     rateLimitPerSecond,
+                                                     rateLimitBurst,
+                                                     callTimeoutSeconds,
+                                                     circuitBreaker,
+                                                     rateLimiter,
+                                                     concurrencyLimits,
+                                                     limiter,
+                                                     peers);
+        }
+
+        /**
+         * @return true if both clients target the same RunDeck instance (or are both null)
+         */
+        private static boolean isSameInstance(RundeckClient rundeck1, RundeckClient rundeck2) {
+            if (rundeck1 == null || rundeck2 == null) {
+                return rundeck1 == rundeck2;
+            }
+            return StringUtils.equals(rundeck1.getUrl(), rundeck2.getUrl())
+                   && StringUtils.equals(rundeck1.getLogin(), rundeck2.getLogin());
+        }
+
+        private static List<String> parsePeersQuietly(String webHookRelayPeers) {
             try {
-                rundeckInstance = new RundeckClient(json.getString("url"),
-                                                    json.getString("login"),
-                                                    json.getString("password"));
+                return RundeckWebHookRelay.parsePeers(webHookRelayPeers);
             } catch (IllegalArgumentException e) {
-                rundeckInstance = null;
+                LOGGER.log(Level.WARNING, "Invalid RunDeck WebHook relay peers, ignoring them", e);
+                return Collections.emptyList();
             }
+        }
 
-            save();
-            return super.configure(req, json);
+        /**
+         * @return the current snapshot of the global RunDeck settings - should be read once, and used for the whole
+         *         operation, to get a consistent view of the settings
+         */
+        public RundeckConfiguration getConfiguration() {
+            return configuration;
         }
 
         @Override
@@ -339,7 +1193,8 @@ public class RundeckNotifier extends Notifier {
             String jobIdentifier = formData.getString("jobIdentifier");
             RundeckJob job = null;
             try {
-                job = findJob(jobIdentifier);
+                // checked with RunDeck, not with the catalog : the job may have been deleted since it was loaded
+                job = queryJob(jobIdentifier);
             } catch (RundeckApiException e) {
                 throw new FormException("Failed to get job with the identifier : " + jobIdentifier, e, "jobIdentifier");
             } catch (IllegalArgumentException e) {
@@ -348,12 +1203,31 @@ public class RundeckNotifier extends Notifier {
             if (job == null) {
                 throw new FormException("Could not found a job with the identifier : " + jobIdentifier, "jobIdentifier");
             }
+            Integer waitTimeoutMinutes = null;
+            if (StringUtils.isNotBlank(formData.optString("waitTimeoutMinutes"))) {
+                try {
+                    waitTimeoutMinutes = Integer.valueOf(formData.getString("waitTimeoutMinutes").trim());
+                } catch (NumberFormatException e) {
+                    throw new FormException("The wait timeout should be a number of minutes : "
+                                            + formData.getString("waitTimeoutMinutes"), e, "waitTimeoutMinutes");
+                }
+            }
             return new RundeckNotifier(job.getId(),
                                        formData.getString("options"),
                                        formData.getString("nodeFilters"),
                                        formData.getString("tag"),
                                        formData.getBoolean("shouldWaitForRundeckJob"),
-                                       formData.getBoolean("shouldFailTheBuild"));
+                                       formData.getBoolean("shouldFailTheBuild"),
+                                       waitTimeoutMinutes,
+                                       formData.optBoolean("shouldReuseRunningExecution"),
+                                       formData.optBoolean("shouldRefuseEmptyNodeSet"));
+        }
+
+        public FormValidation doCheckWaitTimeoutMinutes(@QueryParameter("value") final String value) {
+            if (StringUtils.isBlank(value)) {
+                return FormValidation.ok();
+            }
+            return FormValidation.validateNonNegativeInteger(value.trim());
         }
 
         public FormValidation doTestConnection(@QueryParameter("rundeck.url") final String url,
@@ -379,12 +1253,24 @@ public class RundeckNotifier extends Notifier {
         }
 
         public FormValidation doCheckJobIdentifier(@QueryParameter("jobIdentifier") final String jobIdentifier) {
-            if (rundeckInstance == null) {
+            if (getRundeckInstance() == null) {
                 return FormValidation.error("RunDeck global configuration is not valid !");
             }
             if (StringUtils.isBlank(jobIdentifier)) {
                 return FormValidation.error("The job identifier is mandatory !");
             }
+            if (jobCatalog.isLoaded()) {
+                // no call to RunDeck on each keystroke : the job will be checked with RunDeck when saving
+                RundeckJob job = jobCatalog.findJob(jobIdentifier);
+                if (job == null) {
+                    return FormValidation.warning("Could not find a job with the identifier %s in the RunDeck jobs "
+                                                  + "loaded at %s", jobIdentifier, new Date(jobCatalog.getLoadedAt()));
+                }
+                return FormValidation.ok("Your RunDeck job is : %s [%s] %s",
+                                         job.getId(),
+                                         job.getProject(),
+                                         job.getFullName());
+            }
             try {
                 RundeckJob job = findJob(jobIdentifier);
                 if (job == null) {
@@ -402,8 +1288,67 @@ public class RundeckNotifier extends Notifier {
             }
         }
 
+        public FormValidation doCheckNodeFilters(@QueryParameter("jobIdentifier") final String jobIdentifier,
+                @QueryParameter("nodeFilters") final String nodeFilters) {
+            if (StringUtils.isBlank(nodeFilters) || StringUtils.isBlank(jobIdentifier)
+                || getRundeckInstance() == null) {
+                return FormValidation.ok();
+            }
+            if (StringUtils.contains(nodeFilters, "$")) {
+                // the values will only be known when building
+                return FormValidation.ok("The node filters contain variables, and will be checked when building");
+            }
+            Properties filters;
+            try {
+                filters = Util.loadProperties(nodeFilters);
+            } catch (IOException e) {
+                return FormValidation.error("Failed to parse the node filters : %s", e.getMessage());
+            }
+            try {
+                RundeckJob job = findJob(jobIdentifier);
+                if (job == null) {
+                    return FormValidation.ok();
+                }
+                List<RundeckNode> nodes = nodeInventory.findMatchingNodes(getRundeckInstance(),
+                                                                          job.getProject(),
+                                                                          filters);
+                if (nodes.isEmpty()) {
+                    return FormValidation.warning("The node filters match no node of the RunDeck project %s !",
+                                                  job.getProject());
+                }
+                List<String> names = new ArrayList<String>();
+                for (RundeckNode node : nodes) {
+                    if (names.size() >= MAX_PREVIEWED_NODES) {
+                        names.add("...");
+                        break;
+                    }
+                    names.add(node.getName());
+                }
+                return FormValidation.ok("The node filters match %d node(s) of the RunDeck project %s : %s",
+                                         nodes.size(),
+                                         job.getProject(),
+                                         StringUtils.join(names, ", "));
+            } catch (RundeckApiException e) {
+                return FormValidation.warning("Failed to load the RunDeck nodes : %s", e.getMessage());
+            } catch (IllegalArgumentException e) {
+                return FormValidation.warning("The node filters can't be checked : %s", e.getMessage());
+            }
+        }
+
+        public AutoCompletionCandidates doAutoCompleteJobIdentifier(@QueryParameter("value") final String value) {
+            AutoCompletionCandidates candidates = new AutoCompletionCandidates();
+            for (RundeckJob job : jobCatalog.findJobsByPrefix(value, MAX_AUTO_COMPLETION_CANDIDATES)) {
+                if (StringUtils.startsWith(job.getId(), StringUtils.trimToEmpty(value))) {
+                    candidates.add(job.getId());
+                } else {
+                    candidates.add(RundeckJobCatalog.getReference(job));
+                }
+            }
+            return candidates;
+        }
+
         /**
-         * Find a {@link RundeckJob} with the given identifier
+         * Find a {@link RundeckJob} with the given identifier, in the {@link RundeckJobCatalog} or else on RunDeck
          * 
          * @param jobIdentifier either a simple ID, an UUID or a reference (project:group/name)
          * @return the {@link RundeckJob} found, or null if not found
@@ -411,14 +1356,34 @@ public class RundeckNotifier extends Notifier {
          * @throws IllegalArgumentException if the identifier is not valid
          */
         private RundeckJob findJob(String jobIdentifier) throws RundeckApiException, IllegalArgumentException {
+            RundeckJob job = jobCatalog.findJob(jobIdentifier);
+            if (job != null) {
+                return job;
+            }
+            return queryJob(jobIdentifier);
+        }
+
+        /**
+         * Find a {@link RundeckJob} with the given identifier on RunDeck, without the {@link RundeckJobCatalog}
+         * 
+         * @param jobIdentifier either a simple ID, an UUID or a reference (project:group/name)
+         * @return the {@link RundeckJob} found, or null if not found
+         * @throws RundeckApiException in case of error, or if no job with this ID
+         * @throws IllegalArgumentException if the identifier is not valid
+         */
+        private RundeckJob queryJob(String jobIdentifier) throws RundeckApiException, IllegalArgumentException {
+            RundeckClient rundeck = getRundeckInstance();
+            if (rundeck == null) {
+                throw new IllegalArgumentException("RunDeck global configuration is not valid !");
+            }
             Matcher matcher = JOB_REFERENCE_PATTERN.matcher(jobIdentifier);
             if (matcher.find() && matcher.groupCount() == 3) {
                 String project = matcher.group(1);
                 String groupPath = matcher.group(2);
                 String name = matcher.group(3);
-                return rundeckInstance.findJob(project, groupPath, name);
+                return rundeck.findJob(project, groupPath, name);
             } else {
-                return rundeckInstance.getJob(jobIdentifier);
+                return rundeck.getJob(jobIdentifier);
             }
         }
 
@@ -432,28 +1397,152 @@ public class RundeckNotifier extends Notifier {
             return "RunDeck";
         }
 
+        public RundeckJobCatalog getJobCatalog() {
+            return jobCatalog;
+        }
+
+        public RundeckNodeInventory getNodeInventory() {
+            return nodeInventory;
+        }
+
+        /**
+         * @return the concurrency limiter of the RunDeck executions (never null, but may have no limit)
+         */
+        public RundeckConcurrencyLimiter getConcurrencyLimiter() {
+            return configuration.getConcurrencyLimiter();
+        }
+
+        public String getConcurrencyLimits() {
+            return configuration.getConcurrencyLimits();
+        }
+
+        /**
+         * @param concurrencyLimits definition of the limits, see {@link RundeckConcurrencyLimiter}
+         * @throws IOException if the definition is not valid
+         * @throws IllegalArgumentException if a limit is not valid
+         */
+        public synchronized void setConcurrencyLimits(String concurrencyLimits) throws IOException,
+                IllegalArgumentException {
+            RundeckConcurrencyLimiter limiter = new RundeckConcurrencyLimiter(concurrencyLimits);
+            this.concurrencyLimits = concurrencyLimits;
+            publish(limiter, configuration.getWebHookRelayPeers());
+        }
+
+        /**
+         * @return the RunDeck client, protected by a circuit breaker and a rate limiter shared by all callers - or
+         *         null if the RunDeck configuration is not valid
+         */
         public RundeckClient getRundeckInstance() {
-            return rundeckInstance;
+            return configuration.getRundeckClient();
         }
 
-        public void setRundeckInstance(RundeckClient rundeckInstance) {
+        public synchronized void setRundeckInstance(RundeckClient rundeckInstance) {
             this.rundeckInstance = rundeckInstance;
+            publish(configuration.getConcurrencyLimiter(), configuration.getWebHookRelayPeers());
+            this.jobCatalog.clear();
+            this.nodeInventory.clear();
+        }
+
+        public int getCircuitBreakerFailureThreshold() {
+            return configuration.getCircuitBreakerFailureThreshold();
+        }
+
+        public int getCircuitBreakerOpenSeconds() {
+            return configuration.getCircuitBreakerOpenSeconds();
+        }
+
+        public double getRateLimitPerSecond() {
+            return configuration.getRateLimitPerSecond();
+        }
+
+        public int getRateLimitBurst() {
+            return configuration.getRateLimitBurst();
+        }
+
+        public int getCallTimeoutSeconds() {
+            return configuration.getCallTimeoutSeconds();
+        }
+
+        /**
+         * @return the URLs of the WebHook of the peer controllers, one per line
+         */
+        public String getWebHookRelayPeers() {
+            return StringUtils.join(configuration.getWebHookRelayPeers(), "\n");
+        }
+
+        /**
+         * @param webHookRelayPeers URLs of the WebHook of the peer controllers, one per line
+         * @throws IllegalArgumentException if an URL is not valid
+         */
+        public synchronized void setWebHookRelayPeers(String webHookRelayPeers) throws IllegalArgumentException {
+            List<String> peers = RundeckWebHookRelay.parsePeers(webHookRelayPeers);
+            this.webHookRelayPeers = webHookRelayPeers;
+            publish(configuration.getConcurrencyLimiter(), peers);
         }
     }
 
     /**
      * {@link BuildBadgeAction} used to display a RunDeck icon + a link to the RunDeck execution page, on the Jenkins
-     * build history and build result page.
+     * build history and build result page. Also records the RunDeck execution details and the breakdown of the time
+     * spent talking to RunDeck, available through the remote API of the build.
      */
+    @ExportedBean
     public static class RundeckExecutionBuildBadgeAction implements BuildBadgeAction {
 
         private final String executionUrl;
 
+        private Long executionId;
+
+        private String status;
+
+        private Long healthCheckMillis;
+
+        private Long optionExpansionMillis;
+
+        private Long triggerMillis;
+
+        private Long queueToStartMillis;
+
+        private Long executionDurationMillis;
+
         public RundeckExecutionBuildBadgeAction(String executionUrl) {
             super();
             this.executionUrl = executionUrl;
         }
 
+        /**
+         * @param execution just triggered
+         * @param triggeredAt time (in millis) at which the execution has been triggered
+         * @param healthCheckMillis time spent checking that RunDeck is alive
+         * @param optionExpansionMillis time spent expanding the options and node filters
+         * @param triggerMillis time spent in the trigger call
+         */
+        public RundeckExecutionBuildBadgeAction(RundeckExecution execution, long triggeredAt, long healthCheckMillis,
+                long optionExpansionMillis, long triggerMillis) {
+            this(execution.getUrl());
+            this.healthCheckMillis = healthCheckMillis;
+            this.optionExpansionMillis = optionExpansionMillis;
+            this.triggerMillis = triggerMillis;
+            if (execution.getStartedAt() != null) {
+                // RunDeck and Jenkins clocks may differ slightly
+                this.queueToStartMillis = Math.max(0, execution.getStartedAt().getTime() - triggeredAt);
+            }
+            update(execution);
+        }
+
+        /**
+         * Update the execution details (status, duration) with the given (more recent) state of the execution
+         * 
+         * @param execution
+         */
+        public void update(RundeckExecution execution) {
+            this.executionId = execution.getId();
+            this.status = execution.getStatus() != null ? execution.getStatus().toString() : null;
+            if (execution.getEndedAt() != null) {
+                this.executionDurationMillis = execution.getDurationInMillis();
+            }
+        }
+
         public String getDisplayName() {
             return "RunDeck Execution Result";
         }
@@ -466,6 +1555,52 @@ public class RundeckNotifier extends Notifier {
             return executionUrl;
         }
 
+        @Exported
+        public String getExecutionUrl() {
+            return executionUrl;
+        }
+
+        @Exported
+        public Long getExecutionId() {
+            return executionId;
+        }
+
+        /**
+         * @return the last known status of the RunDeck execution (only the initial status if the build did not wait)
+         */
+        @Exported
+        public String getStatus() {
+            return status;
+        }
+
+        @Exported
+        public Long getHealthCheckMillis() {
+            return healthCheckMillis;
+        }
+
+        @Exported
+        public Long getOptionExpansionMillis() {
+            return optionExpansionMillis;
+        }
+
+        @Exported
+        public Long getTriggerMillis() {
+            return triggerMillis;
+        }
+
+        /**
+         * @return time between the trigger call and the start of the execution on RunDeck
+         */
+        @Exported
+        public Long getQueueToStartMillis() {
+            return queueToStartMillis;
+        }
+
+        @Exported
+        public Long getExecutionDurationMillis() {
+            return executionDurationMillis;
+        }
+
     }
 
 }
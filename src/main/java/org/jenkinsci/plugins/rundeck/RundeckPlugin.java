@@ -2,6 +2,11 @@ package org.jenkinsci.plugins.rundeck;
 
 import hudson.Extension;
 import hudson.Plugin;
+import hudson.model.Hudson;
+import java.io.File;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.management.JMException;
 
 /**
  * Entry point for the RunDeck plugin
@@ -11,15 +16,50 @@ import hudson.Plugin;
 @Extension
 public class RundeckPlugin extends Plugin {
 
+    private static final Logger LOGGER = Logger.getLogger(RundeckPlugin.class.getName());
+
     private OptionProvider optionProvider;
 
     private WebHookListener webHookListener;
 
+    private ArtifactDownloader artifactDownloader;
+
+    private BuildCompletionListener buildCompletionListener;
+
+    private RundeckNotificationSpool spool;
+
+    private RundeckDeploymentLedger deployments;
+
+    private RundeckWebHookRelay webHookRelay;
+
     @Override
     public void start() throws Exception {
         super.start();
         optionProvider = new OptionProvider();
         webHookListener = new WebHookListener();
+        artifactDownloader = new ArtifactDownloader();
+        buildCompletionListener = new BuildCompletionListener();
+        spool = new RundeckNotificationSpool(new File(Hudson.getInstance().getRootDir(), "rundeck"));
+        spool.load();
+        deployments = new RundeckDeploymentLedger(new File(Hudson.getInstance().getRootDir(), "rundeck"));
+        deployments.load();
+        webHookRelay = new RundeckWebHookRelay(new File(Hudson.getInstance().getRootDir(), "rundeck"));
+        webHookRelay.load();
+        try {
+            RundeckMetricsMBean.register(RundeckMetrics.get());
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to register the RunDeck metrics in JMX", e);
+        }
+    }
+
+    @Override
+    public void stop() throws Exception {
+        try {
+            RundeckMetricsMBean.unregister();
+        } catch (JMException e) {
+            LOGGER.log(Level.WARNING, "Failed to unregister the RunDeck metrics from JMX", e);
+        }
+        super.stop();
     }
 
     public OptionProvider getOptions() {
@@ -29,4 +69,51 @@ public class RundeckPlugin extends Plugin {
     public WebHookListener getWebhook() {
         return webHookListener;
     }
+
+    public ArtifactDownloader getDownload() {
+        return artifactDownloader;
+    }
+
+    public BuildCompletionListener getCompletion() {
+        return buildCompletionListener;
+    }
+
+    /**
+     * @return the spool of the pending RunDeck notifications
+     */
+    public RundeckNotificationSpool getSpool() {
+        return spool;
+    }
+
+    /**
+     * @return the ledger of the RunDeck deployments
+     */
+    public RundeckDeploymentLedger getDeployments() {
+        return deployments;
+    }
+
+    /**
+     * @return the relay of the WebHook notifications to the peer controllers
+     */
+    public RundeckWebHookRelay getWebHookRelay() {
+        return webHookRelay;
+    }
+
+    public RundeckMetrics getMetrics() {
+        return RundeckMetrics.get();
+    }
+
+    /**
+     * @return the journal of the last WebHook notifications, for troubleshooting
+     */
+    public RundeckWebHookJournal getWebHookJournal() {
+        return RundeckWebHookJournal.get();
+    }
+
+    /**
+     * @return the latency of the builds started by RunDeck
+     */
+    public RundeckTriggerLatency getTriggerLatency() {
+        return RundeckTriggerLatency.get();
+    }
 }
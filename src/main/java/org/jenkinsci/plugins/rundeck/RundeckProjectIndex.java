@@ -0,0 +1,193 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.AbstractProject;
+import hudson.model.Hudson;
+import hudson.model.Item;
+import hudson.model.ItemGroup;
+import hudson.model.listeners.ItemListener;
+import hudson.security.ACL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Index of the Jenkins projects by full name ("folder/sub-folder/project"), so that the option providers resolve a
+ * project with a single lookup, wherever it is in the tree of items. The index is built once (on first use), and then
+ * maintained by an {@link ItemListener} : creations, copies, renames, moves and deletions (of the projects, or of the
+ * folders containing them).<br>
+ * A project missing from the index (or indexed under an outdated name) is still resolved by its full name, and
+ * indexed again.<br>
+ * The index is built with the system permissions (it is shared by all the users), so the {@link Item#READ}
+ * permission of the current user is checked on each lookup.
+ */
+public class RundeckProjectIndex {
+
+    private static final RundeckProjectIndex INSTANCE = new RundeckProjectIndex();
+
+    /** projects by full name - filled on first use */
+    private final ConcurrentMap<String, AbstractProject<?, ?>> projects =
+            new ConcurrentHashMap<String, AbstractProject<?, ?>>();
+
+    private volatile boolean loaded = false;
+
+    /**
+     * @return the index shared by all option providers
+     */
+    public static RundeckProjectIndex get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param fullName of the project ("folder/sub-folder/project"), with or without leading / trailing slashes
+     * @return the project, or null if there is no project with this name (or if the current user can't read it)
+     */
+    public AbstractProject<?, ?> getProject(String fullName) {
+        String name = normalize(fullName);
+        if (StringUtils.isEmpty(name)) {
+            return null;
+        }
+        if (!loaded) {
+            load();
+        }
+        AbstractProject<?, ?> project = projects.get(name);
+        if (project != null && name.equals(project.getFullName())) {
+            return project.hasPermission(Item.READ) ? project : null;
+        }
+
+        // missed event (item moved by a plugin without notification, ...) : resolve it the slow way
+        if (project != null) {
+            projects.remove(name, project);
+        }
+        project = Hudson.getInstance().getItemByFullName(name, AbstractProject.class);
+        if (project != null) {
+            projects.put(name, project);
+        }
+        return project;
+    }
+
+    /**
+     * @return the number of indexed projects
+     */
+    public int size() {
+        return projects.size();
+    }
+
+    /**
+     * Forget everything : the index will be built again on next use
+     */
+    synchronized void clear() {
+        loaded = false;
+        projects.clear();
+    }
+
+    /**
+     * Index all the projects of Jenkins (only walks the tree of items the first time)
+     */
+    private synchronized void load() {
+        if (loaded) {
+            return;
+        }
+        // all the projects, not only the ones the first caller can read
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+        try {
+            for (AbstractProject<?, ?> project : Hudson.getInstance().getAllItems(AbstractProject.class)) {
+                projects.put(project.getFullName(), project);
+            }
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+        }
+        loaded = true;
+    }
+
+    /**
+     * Index the given item, and the projects it contains (if it is a folder)
+     */
+    void add(Item item) {
+        // all the projects of the folder, not only the ones the current user can read
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+        try {
+            index(item);
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+        }
+    }
+
+    private void index(Item item) {
+        if (item instanceof AbstractProject) {
+            projects.put(item.getFullName(), (AbstractProject<?, ?>) item);
+        }
+        if (item instanceof ItemGroup) {
+            for (Object child : ((ItemGroup<?>) item).getItems()) {
+                if (child instanceof Item) {
+                    index((Item) child);
+                }
+            }
+        }
+    }
+
+    /**
+     * Remove the item with the given full name, and all the items it contains (if it is a folder)
+     */
+    void remove(String fullName) {
+        projects.remove(fullName);
+        String prefix = fullName + "/";
+        for (String name : projects.keySet()) {
+            if (name.startsWith(prefix)) {
+                projects.remove(name);
+            }
+        }
+    }
+
+    private static String normalize(String fullName) {
+        return StringUtils.strip(StringUtils.trimToEmpty(fullName), "/");
+    }
+
+    /**
+     * Keep the index up-to-date
+     */
+    @Extension
+    public static class ProjectIndexItemListener extends ItemListener {
+
+        @Override
+        public void onLoaded() {
+            // all items have been (re)loaded from the disk
+            get().clear();
+        }
+
+        @Override
+        public void onCreated(Item item) {
+            get().add(item);
+        }
+
+        @Override
+        public void onCopied(Item src, Item item) {
+            get().add(item);
+        }
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            String parentName = item.getParent().getFullName();
+            get().remove(StringUtils.isEmpty(parentName) ? oldName : parentName + "/" + oldName);
+            get().add(item);
+        }
+
+        /**
+         * Called by the Jenkins versions supporting the move of the items between folders (no @Override, so that we
+         * still build with the older versions)
+         */
+        public void onLocationChanged(Item item, String oldFullName, String newFullName) {
+            get().remove(oldFullName);
+            get().add(item);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().remove(item.getFullName());
+        }
+    }
+}
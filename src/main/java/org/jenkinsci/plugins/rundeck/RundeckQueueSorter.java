@@ -0,0 +1,59 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.Cause;
+import hudson.model.Queue.BuildableItem;
+import hudson.model.queue.QueueSorter;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Sorts the buildable items of the queue by the priority of their {@link RundeckTrigger} : the builds started by
+ * RunDeck with a high priority get the free executors first. The items without priority (including the ones not
+ * started by RunDeck) have the default priority, and the sort is stable : the items of the same priority keep the
+ * order of the queue.<br>
+ * Jenkins uses a single sorter for the whole queue : the first {@link QueueSorter} extension by ordinal, unless a
+ * sorter is already installed. This one has a low ordinal, so that the sorter of another plugin (Priority Sorter,
+ * ...) always wins : then the priority of the triggers has no effect.
+ */
+@Extension(ordinal = -100)
+public class RundeckQueueSorter extends QueueSorter {
+
+    public static final int HIGHEST_PRIORITY = 1;
+
+    public static final int DEFAULT_PRIORITY = 3;
+
+    public static final int LOWEST_PRIORITY = 5;
+
+    private static final Comparator<BuildableItem> BY_PRIORITY = new Comparator<BuildableItem>() {
+
+        public int compare(BuildableItem item1, BuildableItem item2) {
+            int priority1 = getPriority(item1);
+            int priority2 = getPriority(item2);
+            return priority1 < priority2 ? -1 : (priority1 == priority2 ? 0 : 1);
+        }
+    };
+
+    @Override
+    public void sortBuildableItems(List<BuildableItem> buildables) {
+        Collections.sort(buildables, BY_PRIORITY);
+    }
+
+    /**
+     * @param item in the queue
+     * @return the highest priority of the RunDeck causes of the item, or the default priority
+     */
+    static int getPriority(BuildableItem item) {
+        int priority = DEFAULT_PRIORITY;
+        boolean found = false;
+        for (Cause cause : item.getCauses()) {
+            if (cause instanceof RundeckCause && ((RundeckCause) cause).getPriority() != null) {
+                int causePriority = ((RundeckCause) cause).getPriority();
+                priority = found ? Math.min(priority, causePriority) : causePriority;
+                found = true;
+            }
+        }
+        return priority;
+    }
+}
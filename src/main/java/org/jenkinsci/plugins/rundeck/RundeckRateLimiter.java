@@ -0,0 +1,45 @@
+package org.jenkinsci.plugins.rundeck;
+
+/**
+ * Token-bucket rate limiter for the calls to the RunDeck API : the bucket holds at most "burst" tokens, and is refilled
+ * at the rate of "permitsPerSecond" tokens per second. A call without an available token should fail fast.
+ */
+public class RundeckRateLimiter {
+
+    private final double permitsPerSecond;
+
+    private final double burst;
+
+    private double tokens;
+
+    private long lastRefill;
+
+    /**
+     * @param permitsPerSecond refill rate of the bucket - 0 to disable the rate limiting
+     * @param burst maximum number of tokens in the bucket
+     */
+    public RundeckRateLimiter(double permitsPerSecond, int burst) {
+        super();
+        this.permitsPerSecond = permitsPerSecond;
+        this.burst = Math.max(1, burst);
+        this.tokens = this.burst;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * @return true if a token was available (and has been consumed), false otherwise
+     */
+    public synchronized boolean tryAcquire() {
+        if (permitsPerSecond <= 0) {
+            return true;
+        }
+        long now = System.nanoTime();
+        tokens = Math.min(burst, tokens + (now - lastRefill) / 1e9 * permitsPerSecond);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+}
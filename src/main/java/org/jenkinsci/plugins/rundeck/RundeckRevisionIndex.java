@@ -0,0 +1,288 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.XmlFile;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.Item;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.model.listeners.ItemListener;
+import hudson.model.listeners.RunListener;
+import hudson.scm.ChangeLogSet.Entry;
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Index of the SCM revisions of each project, for the "revision" option provider : each revision (with its commit
+ * message and author) is mapped to the first successful build containing it. The index is maintained incrementally
+ * by a {@link RunListener}, from the changelog of each completed build, and stored in a "rundeck-revisions.xml" file
+ * in the directory of the project, so that a request never walks the build history (the history is only walked once,
+ * the first time a project without index file is requested).<br>
+ * The revisions of the unsuccessful builds are kept aside, until the next successful build (which contains them).
+ */
+public class RundeckRevisionIndex {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckRevisionIndex.class.getName());
+
+    private static final RundeckRevisionIndex INSTANCE = new RundeckRevisionIndex();
+
+    private static final String INDEX_FILE_NAME = "rundeck-revisions.xml";
+
+    /** Maximum number of revisions kept for each project - can be changed with a system property */
+    private static final int MAX_REVISIONS = Integer.getInteger(RundeckRevisionIndex.class.getName()
+                                                                + ".maxRevisions", 1000);
+
+    /**
+     * Getters of the revision of a changelog entry, depending on the SCM (there is no common API in the Jenkins
+     * version we depend on)
+     */
+    private static final String[] REVISION_GETTERS = { "getCommitId", "getRevision", "getId", "getNode" };
+
+    /** revision getter of each changelog entry class - {@link #NO_REVISION} if there is none */
+    private static final ConcurrentMap<Class<?>, Method> REVISION_GETTER_CACHE =
+            new ConcurrentHashMap<Class<?>, Method>();
+
+    /** marker for the entry classes without revision getter (a ConcurrentHashMap doesn't accept null values) */
+    private static final Method NO_REVISION;
+
+    static {
+        try {
+            NO_REVISION = Object.class.getMethod("toString");
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /** revisions, by project full name - loaded on first use */
+    private final ConcurrentMap<String, ProjectRevisions> projects = new ConcurrentHashMap<String, ProjectRevisions>();
+
+    /**
+     * @return the index shared by all option providers
+     */
+    public static RundeckRevisionIndex get() {
+        return INSTANCE;
+    }
+
+    /**
+     * @param project for which we want the revisions
+     * @return the revisions of the successful builds of the project, newest first
+     */
+    public List<Revision> getRevisions(AbstractProject<?, ?> project) {
+        ProjectRevisions revisions = getProjectRevisions(project, null);
+        synchronized (revisions) {
+            return new ArrayList<Revision>(revisions.revisions);
+        }
+    }
+
+    /**
+     * Index the changelog of the given completed build
+     */
+    void onCompleted(AbstractBuild<?, ?> build) {
+        ProjectRevisions revisions = getProjectRevisions(build.getProject(), build);
+        synchronized (revisions) {
+            revisions.index(build);
+            save(build.getProject(), revisions);
+        }
+    }
+
+    /**
+     * @param project for which we want the revisions
+     * @param completedBuild build being completed, which should not be indexed if the index is built now - may be
+     *            null
+     * @return the revisions of the project (loaded or built if needed)
+     */
+    private ProjectRevisions getProjectRevisions(AbstractProject<?, ?> project, Run<?, ?> completedBuild) {
+        ProjectRevisions revisions = projects.get(project.getFullName());
+        if (revisions != null) {
+            return revisions;
+        }
+        revisions = load(project, completedBuild);
+        ProjectRevisions existing = projects.putIfAbsent(project.getFullName(), revisions);
+        return existing != null ? existing : revisions;
+    }
+
+    private ProjectRevisions load(AbstractProject<?, ?> project, Run<?, ?> completedBuild) {
+        XmlFile file = new XmlFile(new File(project.getRootDir(), INDEX_FILE_NAME));
+        if (file.exists()) {
+            try {
+                return (ProjectRevisions) file.read();
+            } catch (IOException e) {
+                LOGGER.log(Level.WARNING, "Failed to read the index of the revisions at " + file + ", rebuilding it",
+                           e);
+            }
+        }
+
+        // first use : index the existing builds, oldest first
+        ProjectRevisions revisions = new ProjectRevisions();
+        List<AbstractBuild<?, ?>> builds = new ArrayList<AbstractBuild<?, ?>>(project.getBuilds());
+        Collections.reverse(builds);
+        for (AbstractBuild<?, ?> build : builds) {
+            if (!build.isBuilding() && build != completedBuild) {
+                revisions.index(build);
+            }
+        }
+        save(project, revisions);
+        return revisions;
+    }
+
+    private void save(AbstractProject<?, ?> project, ProjectRevisions revisions) {
+        XmlFile file = new XmlFile(new File(project.getRootDir(), INDEX_FILE_NAME));
+        try {
+            file.write(revisions);
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to write the index of the revisions at " + file, e);
+        }
+    }
+
+    /**
+     * @param entry of a changelog
+     * @return the revision of the entry (commit id, revision number, ...), or null if the SCM doesn't provide one
+     */
+    static String getRevision(Entry entry) {
+        Class<?> entryClass = entry.getClass();
+        Method getter = REVISION_GETTER_CACHE.get(entryClass);
+        if (getter == null) {
+            getter = NO_REVISION;
+            for (String name : REVISION_GETTERS) {
+                try {
+                    getter = entryClass.getMethod(name);
+                    break;
+                } catch (NoSuchMethodException e) {
+                    // try the next one
+                }
+            }
+            REVISION_GETTER_CACHE.put(entryClass, getter);
+        }
+        if (getter == NO_REVISION) {
+            return null;
+        }
+        try {
+            Object revision = getter.invoke(entry);
+            return revision != null ? StringUtils.trimToNull(revision.toString()) : null;
+        } catch (Exception e) {
+            return null;
+        }
+    }
+
+    /**
+     * Revisions of a project (persisted)
+     */
+    static class ProjectRevisions {
+
+        /** revisions of the successful builds, newest first */
+        private final LinkedList<Revision> revisions = new LinkedList<Revision>();
+
+        /** revisions of the unsuccessful builds since the last successful build, oldest first */
+        private final List<Revision> pending = new ArrayList<Revision>();
+
+        void index(AbstractBuild<?, ?> build) {
+            List<Revision> buildRevisions = new ArrayList<Revision>(pending);
+            pending.clear();
+            for (Entry entry : build.getChangeSet()) {
+                buildRevisions.add(new Revision(getRevision(entry),
+                                                entry.getMsg(),
+                                                entry.getAuthor() != null ? entry.getAuthor().getId() : null,
+                                                build.getNumber()));
+            }
+            Result result = build.getResult();
+            if (result == null || result.isWorseThan(Result.UNSTABLE)) {
+                pending.addAll(buildRevisions);
+                return;
+            }
+            for (Revision revision : buildRevisions) {
+                revisions.addFirst(new Revision(revision.revision, revision.message, revision.author,
+                                                build.getNumber()));
+            }
+            while (revisions.size() > MAX_REVISIONS) {
+                revisions.removeLast();
+            }
+        }
+    }
+
+    /**
+     * SCM revision, with the number of the first successful build containing it
+     */
+    public static class Revision {
+
+        /** may be null, if the SCM doesn't provide one */
+        private final String revision;
+
+        private final String message;
+
+        /** may be null */
+        private final String author;
+
+        private final int buildNumber;
+
+        public Revision(String revision, String message, String author, int buildNumber) {
+            this.revision = revision;
+            this.message = message;
+            this.author = author;
+            this.buildNumber = buildNumber;
+        }
+
+        public String getRevision() {
+            return revision;
+        }
+
+        public String getMessage() {
+            return message;
+        }
+
+        public String getAuthor() {
+            return author;
+        }
+
+        public int getBuildNumber() {
+            return buildNumber;
+        }
+    }
+
+    /**
+     * Index the changelog of each completed build
+     */
+    @Extension
+    public static class RevisionRunListener extends RunListener<Run> {
+
+        public RevisionRunListener() {
+            super(Run.class);
+        }
+
+        @Override
+        public void onCompleted(Run build, TaskListener listener) {
+            if (build instanceof AbstractBuild) {
+                get().onCompleted((AbstractBuild<?, ?>) build);
+            }
+        }
+    }
+
+    /**
+     * Forget the revisions of the renamed / deleted projects (the index file moves with the project directory)
+     */
+    @Extension
+    public static class RevisionItemListener extends ItemListener {
+
+        @Override
+        public void onRenamed(Item item, String oldName, String newName) {
+            String parentName = item.getParent().getFullName();
+            get().projects.remove(StringUtils.isEmpty(parentName) ? oldName : parentName + "/" + oldName);
+        }
+
+        @Override
+        public void onDeleted(Item item) {
+            get().projects.remove(item.getFullName());
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.rundeck.api.domain.RundeckExecution;
+
+/**
+ * Registry of the RunDeck executions started by Jenkins, by job + options + node filters, so that identical
+ * concurrent triggers can share a single execution (see {@link RundeckNotifier#getShouldReuseRunningExecution()}).
+ * <br>
+ * The first build for a given key is the "leader" : it triggers the execution, and publishes it in its
+ * {@link Flight}. The other builds for the same key wait for the leader's trigger, and then attach to the same
+ * execution.
+ */
+public class RundeckSingleFlight {
+
+    private static final RundeckSingleFlight INSTANCE = new RundeckSingleFlight();
+
+    private final ConcurrentMap<String, Flight> flights = new ConcurrentHashMap<String, Flight>();
+
+    /**
+     * @return the registry shared by all notifiers
+     */
+    public static RundeckSingleFlight get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Build the key identifying identical triggers (the order of the options and node filters does not matter)
+     * 
+     * @param jobId ID of the RunDeck job
+     * @param options resolved job options - may be null
+     * @param nodeFilters resolved node filters - may be null
+     * @return the key
+     */
+    public static String key(String jobId, Properties options, Properties nodeFilters) {
+        StringBuilder key = new StringBuilder(jobId);
+        appendSorted(key.append("\n"), options);
+        appendSorted(key.append("\n"), nodeFilters);
+        return key.toString();
+    }
+
+    /**
+     * Join the flight for the given key, or create it (the caller is then the leader, and should publish the
+     * execution with {@link Flight#publish(RundeckExecution)}, or {@link Flight#fail()})
+     * 
+     * @param key built with {@link #key(String, Properties, Properties)}
+     * @return the flight for the given key
+     */
+    public Flight join(String key) {
+        Flight flight = new Flight(key, true);
+        Flight existing = flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            existing.attached.incrementAndGet();
+            return new Flight(existing, false);
+        }
+        return flight;
+    }
+
+    /**
+     * Remove the given flight from the registry (if still registered), so that the next trigger for this key starts
+     * a new execution
+     */
+    public void remove(Flight flight) {
+        flights.remove(flight.key, flight.shared);
+    }
+
+    /**
+     * @return the number of flights currently registered
+     */
+    public int size() {
+        return flights.size();
+    }
+
+    private static void appendSorted(StringBuilder key, Properties properties) {
+        if (properties == null) {
+            return;
+        }
+        for (Map.Entry<Object, Object> entry : new TreeMap<Object, Object>(properties).entrySet()) {
+            key.append(entry.getKey()).append('=').append(entry.getValue()).append('\u0000');
+        }
+    }
+
+    /**
+     * View of a shared flight, for one build
+     */
+    public static class Flight {
+
+        private final String key;
+
+        private final boolean leader;
+
+        /** flight registered in the registry (shared by the leader and its followers) */
+        private final Flight shared;
+
+        private final CountDownLatch published = new CountDownLatch(1);
+
+        /** number of builds waiting for the execution (only on the shared flight) */
+        private final AtomicInteger attached = new AtomicInteger(1);
+
+        private volatile RundeckExecution execution;
+
+        private Flight(String key, boolean leader) {
+            this.key = key;
+            this.leader = leader;
+            this.shared = this;
+        }
+
+        private Flight(Flight shared, boolean leader) {
+            this.key = shared.key;
+            this.leader = leader;
+            this.shared = shared;
+        }
+
+        /**
+         * @return true if we should trigger the execution, false if we should attach to the leader's execution
+         */
+        public boolean isLeader() {
+            return leader;
+        }
+
+        /**
+         * Publish the execution triggered by the leader, and wake up the followers
+         */
+        public void publish(RundeckExecution triggeredExecution) {
+            shared.execution = triggeredExecution;
+            shared.published.countDown();
+        }
+
+        /**
+         * The leader failed to trigger the execution : wake up the followers, which will not get any execution
+         */
+        public void fail() {
+            shared.published.countDown();
+        }
+
+        /**
+         * Wait for the leader to trigger the execution
+         * 
+         * @return the execution triggered by the leader, or null if the leader failed
+         * @throws InterruptedException if interrupted while waiting
+         */
+        public RundeckExecution awaitExecution() throws InterruptedException {
+            shared.published.await();
+            return shared.execution;
+        }
+
+        /**
+         * Stop waiting for the execution
+         * 
+         * @return the number of builds still waiting for the execution
+         */
+        public int detach() {
+            return shared.attached.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.AbstractBuild;
+import hudson.model.AbstractProject;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.rundeck.RundeckNotificationSpool.SpoolEntry;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckDescriptor;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckExecutionBuildBadgeAction;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.domain.RundeckExecution.ExecutionStatus;
+import org.rundeck.api.domain.RundeckJob;
+
+/**
+ * Background processing of the {@link RundeckNotificationSpool} : retry the triggers that failed because RunDeck was
+ * unavailable, and follow the executions whose build is gone (for example after a restart of Jenkins), to update the
+ * RunDeck badge of the build when they are finished.
+ */
+@Extension
+public class RundeckSpoolWorker extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckSpoolWorker.class.getName());
+
+    public RundeckSpoolWorker() {
+        super("RunDeck notification spool");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return 10 * 1000L;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        RundeckPlugin plugin = Hudson.getInstance().getPlugin(RundeckPlugin.class);
+        RundeckNotificationSpool spool = plugin != null ? plugin.getSpool() : null;
+        if (spool == null || spool.size() == 0) {
+            return;
+        }
+        RundeckDescriptor descriptor = Hudson.getInstance().getDescriptorByType(RundeckDescriptor.class);
+        RundeckClient rundeck = descriptor != null ? descriptor.getRundeckInstance() : null;
+        if (rundeck == null) {
+            return;
+        }
+
+        // all due entries in one pass
+        for (SpoolEntry entry : spool.getDueEntries()) {
+            if (!spool.claim(entry)) {
+                continue;
+            }
+            try {
+                if (entry.getExecutionId() == null) {
+                    retryTrigger(spool, entry, rundeck);
+                } else {
+                    followExecution(spool, entry, rundeck);
+                }
+            } finally {
+                spool.release(entry);
+            }
+        }
+    }
+
+    private void retryTrigger(RundeckNotificationSpool spool, SpoolEntry entry, RundeckClient rundeck) {
+        try {
+            RundeckExecution execution = findTriggeredExecution(spool, entry, rundeck);
+            if (execution == null) {
+                execution = rundeck.triggerJob(entry.getJobId(), entry.getOptions(), entry.getNodeFilters());
+            }
+            LOGGER.info("Spooled notification " + entry.getKey() + " : triggered RunDeck execution #"
+                        + execution.getId());
+            spool.triggered(entry, execution.getId());
+            RundeckDeploymentLedger ledger = Hudson.getInstance().getPlugin(RundeckPlugin.class).getDeployments();
+            ledger.triggered(entry.getProjectName(),
+                             entry.getBuildNumber(),
+                             entry.getJobId(),
+                             entry.getNodeFilters(),
+                             execution,
+                             entry.isWait());
+            updateBuildBadge(entry, execution);
+        } catch (RundeckApiException e) {
+            if (GuardedRundeckClient.isUnavailable(e) && spool.attemptFailed(entry)) {
+                LOGGER.fine("RunDeck is still unavailable for the spooled notification " + entry.getKey() + " : "
+                            + e.getMessage());
+            } else {
+                LOGGER.log(Level.WARNING, "Giving up the spooled notification " + entry.getKey() + " after "
+                                          + entry.getAttempts() + " attempts", e);
+                spool.done(entry);
+            }
+        }
+    }
+
+    private void followExecution(RundeckNotificationSpool spool, SpoolEntry entry, RundeckClient rundeck) {
+        try {
+            RundeckExecution execution = rundeck.getExecution(entry.getExecutionId());
+            if (!ExecutionStatus.RUNNING.equals(execution.getStatus())) {
+                Hudson.getInstance().getPlugin(RundeckPlugin.class).getDeployments().finished(execution);
+                updateBuildBadge(entry, execution);
+                spool.done(entry);
+            }
+        } catch (RundeckApiException e) {
+            if (!GuardedRundeckClient.isUnavailable(e)) {
+                LOGGER.log(Level.WARNING, "Failed to get RunDeck execution #" + entry.getExecutionId()
+                                          + ", no longer following it", e);
+                spool.done(entry);
+            }
+        }
+    }
+
+    /**
+     * A previous attempt may have reached RunDeck even if we got an error (for example a read timeout) : look for a
+     * running execution of the same job, started by us after the notification was spooled, and not already known by
+     * the spool, so that a retry never triggers the job twice.
+     * 
+     * @return the execution triggered by a previous attempt, or null if not found
+     */
+    private RundeckExecution findTriggeredExecution(RundeckNotificationSpool spool, SpoolEntry entry,
+            RundeckClient rundeck) throws RundeckApiException {
+        if (entry.getAttempts() == 0) {
+            return null;
+        }
+        RundeckJob job = Hudson.getInstance()
+                               .getDescriptorByType(RundeckDescriptor.class)
+                               .getJobCatalog()
+                               .findJob(entry.getJobId());
+        if (job == null) {
+            job = rundeck.getJob(entry.getJobId());
+        }
+        for (RundeckExecution execution : rundeck.getRunningExecutions(job.getProject())) {
+            if (execution.getJob() != null && StringUtils.equals(entry.getJobId(), execution.getJob().getId())
+                && StringUtils.equals(rundeck.getLogin(), execution.getStartedBy())
+                && execution.getStartedAt() != null && execution.getStartedAt().getTime() >= entry.getCreatedAt()
+                && !spool.containsExecution(execution.getId())) {
+                return execution;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Add (or update) the RunDeck badge of the build of the given entry, if it still exists
+     */
+    static void updateBuildBadge(SpoolEntry entry, RundeckExecution execution) {
+        AbstractProject<?, ?> project = Hudson.getInstance().getItemByFullName(entry.getProjectName(),
+                                                                               AbstractProject.class);
+        AbstractBuild<?, ?> build = project != null ? project.getBuildByNumber(entry.getBuildNumber()) : null;
+        if (build == null) {
+            return;
+        }
+        RundeckExecutionBuildBadgeAction badge = build.getAction(RundeckExecutionBuildBadgeAction.class);
+        if (badge == null) {
+            badge = new RundeckExecutionBuildBadgeAction(execution.getUrl());
+            build.addAction(badge);
+        }
+        badge.update(execution);
+        try {
+            build.save();
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Failed to save " + build.getFullDisplayName(), e);
+        }
+    }
+}
@@ -1,50 +1,139 @@
 package org.jenkinsci.plugins.rundeck;
 
 import hudson.Extension;
+import hudson.Util;
 import hudson.model.Item;
 import hudson.model.AbstractProject;
 import hudson.triggers.Trigger;
 import hudson.triggers.TriggerDescriptor;
+import hudson.util.FormValidation;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import net.sf.json.JSONArray;
 import net.sf.json.JSONObject;
 import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.rundeck.RundeckTriggerPoller.PollCursor;
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 import org.rundeck.api.domain.RundeckExecution;
 import org.rundeck.api.domain.RundeckJob;
 
 /**
- * Triggers a build when we receive a WebHook notification from RunDeck.
+ * Triggers a build when we receive a WebHook notification from RunDeck, or when a new execution is found by the
+ * {@link RundeckTriggerPoller} (if the trigger polls a RunDeck project).
  * 
  * @author Vincent Behar
  */
 public class RundeckTrigger extends Trigger<AbstractProject<?, ?>> {
 
+    private static final Logger LOGGER = Logger.getLogger(RundeckTrigger.class.getName());
+
     private final Boolean filterJobs;
 
     private final List<String> jobsIdentifiers;
 
     private final List<String> executionStatuses;
 
-    @DataBoundConstructor
+    /** RunDeck project to poll (instead of waiting for WebHook notifications) - may be null */
+    private final String pollProject;
+
+    /** filter on the fields of the executions, see {@link RundeckExecutionFilter} - may be null */
+    private final String executionFilter;
+
+    /** quiet period (in seconds) of the builds, instead of the one of the project - may be null */
+    private final Integer quietPeriod;
+
+    /** priority of the builds in the queue, from 1 (highest) to 5 (lowest) - null for the default (3) */
+    private final Integer priority;
+
+    /** executionFilter, compiled when the trigger starts - null if there is no filter */
+    private transient volatile RundeckExecutionFilter compiledExecutionFilter;
+
     public RundeckTrigger(Boolean filterJobs, List<String> jobsIdentifiers, List<String> executionStatuses) {
+        this(filterJobs, jobsIdentifiers, executionStatuses, null);
+    }
+
+    public RundeckTrigger(Boolean filterJobs, List<String> jobsIdentifiers, List<String> executionStatuses,
+            String pollProject) {
+        this(filterJobs, jobsIdentifiers, executionStatuses, pollProject, null);
+    }
+
+    public RundeckTrigger(Boolean filterJobs, List<String> jobsIdentifiers, List<String> executionStatuses,
+            String pollProject, String executionFilter) {
+        this(filterJobs, jobsIdentifiers, executionStatuses, pollProject, executionFilter, null, null);
+    }
+
+    @DataBoundConstructor
+    public RundeckTrigger(Boolean filterJobs, List<String> jobsIdentifiers, List<String> executionStatuses,
+            String pollProject, String executionFilter, Integer quietPeriod, Integer priority) {
         this.filterJobs = filterJobs != null ? filterJobs : false;
         this.jobsIdentifiers = jobsIdentifiers != null ? jobsIdentifiers : new ArrayList<String>();
         this.executionStatuses = executionStatuses != null ? executionStatuses : Arrays.asList("SUCCEEDED");
+        this.pollProject = pollProject;
+        this.executionFilter = executionFilter;
+        this.quietPeriod = quietPeriod;
+        this.priority = priority;
+    }
+
+    @Override
+    public void start(AbstractProject<?, ?> project, boolean newInstance) {
+        super.start(project, newInstance);
+        try {
+            compiledExecutionFilter = RundeckExecutionFilter.compile(executionFilter);
+        } catch (IllegalArgumentException e) {
+            // better no build than unwanted builds
+            LOGGER.log(Level.WARNING, "Invalid RunDeck execution filter for " + project.getFullName()
+                                      + ", all the executions will be ignored", e);
+            compiledExecutionFilter = RundeckExecutionFilter.REJECT_ALL;
+        }
+        RundeckTriggerRegistry.get().register(this);
+    }
+
+    @Override
+    public void stop() {
+        RundeckTriggerRegistry.get().unregister(this);
+        super.stop();
+    }
+
+    /**
+     * @return the project started by this trigger
+     */
+    AbstractProject<?, ?> getProject() {
+        return job;
     }
 
     /**
      * Called when we receive a RunDeck notification
      * 
      * @param execution at the origin of the notification
+     * @return true if a new build has been scheduled, false otherwise
      */
-    public void onNotification(RundeckExecution execution) {
+    public boolean onNotification(RundeckExecution execution) {
         if (shouldScheduleBuild(execution)) {
-            job.scheduleBuild(new RundeckCause(execution));
+            return scheduleBuild(execution);
+        }
+        return false;
+    }
+
+    /**
+     * Schedule a new build for the given execution, without filtering it
+     * 
+     * @param execution at the origin of the notification
+     * @return true if a new build has been scheduled, false if it has been rejected (already in the queue)
+     */
+    boolean scheduleBuild(RundeckExecution execution) {
+        RundeckCause cause = new RundeckCause(execution, priority);
+        boolean scheduled = job.scheduleBuild(quietPeriod != null ? quietPeriod : job.getQuietPeriod(), cause);
+        if (scheduled) {
+            RundeckTriggerLatency.get().queued(cause);
         }
+        return scheduled;
     }
 
     /**
@@ -53,15 +142,24 @@ public class RundeckTrigger extends Trigger<AbstractProject<?, ?>> {
      * @param execution at the origin of the notification
      * @return true if we should schedule a new build, false otherwise
      */
-    private boolean shouldScheduleBuild(RundeckExecution execution) {
+    boolean shouldScheduleBuild(RundeckExecution execution) {
         if (!executionStatuses.contains(execution.getStatus().toString())) {
             return false;
         }
-        if (!filterJobs) {
-            return true;
+        if (filterJobs && !matchesJobs(execution.getJob())) {
+            return false;
         }
+        RundeckExecutionFilter filter = compiledExecutionFilter;
+        return filter == null || filter.matches(execution);
+    }
+
+    /**
+     * @param job of the execution - may be null
+     * @return true if the job is identified by one of our jobsIdentifiers
+     */
+    private boolean matchesJobs(RundeckJob job) {
         for (String jobIdentifier : jobsIdentifiers) {
-            if (identifierMatchesJob(jobIdentifier, execution.getJob())) {
+            if (identifierMatchesJob(jobIdentifier, job)) {
                 return true;
             }
         }
@@ -106,6 +204,30 @@ public class RundeckTrigger extends Trigger<AbstractProject<?, ?>> {
         return executionStatuses;
     }
 
+    public String getPollProject() {
+        return pollProject;
+    }
+
+    public String getExecutionFilter() {
+        return executionFilter;
+    }
+
+    public Integer getQuietPeriod() {
+        return quietPeriod;
+    }
+
+    public Integer getPriority() {
+        return priority;
+    }
+
+    /**
+     * @return true if this trigger is fed by the {@link RundeckTriggerPoller}, false if it is fed by the WebHook
+     *         notifications
+     */
+    public boolean isPolling() {
+        return StringUtils.isNotBlank(pollProject);
+    }
+
     @Override
     public RundeckDescriptor getDescriptor() {
         return (RundeckDescriptor) super.getDescriptor();
@@ -114,6 +236,9 @@ public class RundeckTrigger extends Trigger<AbstractProject<?, ?>> {
     @Extension
     public static class RundeckDescriptor extends TriggerDescriptor {
 
+        /** last executions seen by the {@link RundeckTriggerPoller}, by RunDeck project */
+        private Map<String, PollCursor> pollCursors = new HashMap<String, PollCursor>();
+
         public RundeckDescriptor() {
             super();
             load();
@@ -121,9 +246,75 @@ public class RundeckTrigger extends Trigger<AbstractProject<?, ?>> {
 
         @Override
         public Trigger<?> newInstance(StaplerRequest req, JSONObject formData) throws FormException {
+            String executionFilter = Util.fixEmptyAndTrim(formData.optString("executionFilter"));
+            try {
+                RundeckExecutionFilter.compile(executionFilter);
+            } catch (IllegalArgumentException e) {
+                throw new FormException(e.getMessage(), e, "executionFilter");
+            }
+            Integer quietPeriod = parseInteger(formData.optString("quietPeriod"), 0, Integer.MAX_VALUE, "quietPeriod");
+            Integer priority = parseInteger(formData.optString("priority"), RundeckQueueSorter.HIGHEST_PRIORITY,
+                                            RundeckQueueSorter.LOWEST_PRIORITY, "priority");
             return new RundeckTrigger(formData.getJSONObject("filterJobs").getBoolean("value"),
                                       bindJSONToList(formData.getJSONObject("filterJobs").get("jobsIdentifiers")),
-                                      bindJSONToList(formData.get("executionStatuses")));
+                                      bindJSONToList(formData.get("executionStatuses")),
+                                      Util.fixEmptyAndTrim(formData.optString("pollProject")),
+                                      executionFilter,
+                                      quietPeriod,
+                                      priority);
+        }
+
+        public FormValidation doCheckQuietPeriod(@QueryParameter("quietPeriod") String quietPeriod) {
+            return checkInteger(quietPeriod, 0, Integer.MAX_VALUE, "quietPeriod");
+        }
+
+        public FormValidation doCheckPriority(@QueryParameter("priority") String priority) {
+            return checkInteger(priority, RundeckQueueSorter.HIGHEST_PRIORITY, RundeckQueueSorter.LOWEST_PRIORITY,
+                                "priority");
+        }
+
+        private FormValidation checkInteger(String value, int min, int max, String field) {
+            try {
+                parseInteger(value, min, max, field);
+                return FormValidation.ok();
+            } catch (FormException e) {
+                return FormValidation.error(e.getMessage());
+            }
+        }
+
+        /**
+         * @param value to parse
+         * @param min minimum value (inclusive)
+         * @param max maximum value (inclusive)
+         * @param field name of the form field
+         * @return the parsed value, or null if the value is empty
+         * @throws FormException if the value is not an integer between min and max
+         */
+        private Integer parseInteger(String value, int min, int max, String field) throws FormException {
+            String trimmed = Util.fixEmptyAndTrim(value);
+            if (trimmed == null) {
+                return null;
+            }
+            try {
+                int parsed = Integer.parseInt(trimmed);
+                if (parsed >= min && parsed <= max) {
+                    return parsed;
+                }
+            } catch (NumberFormatException e) {
+                // same error as an out-of-range value
+            }
+            String expected = max == Integer.MAX_VALUE ? "an integer greater than or equal to " + min
+                    : "an integer between " + min + " and " + max;
+            throw new FormException("Invalid " + field + " (should be " + expected + ") : " + trimmed, field);
+        }
+
+        public FormValidation doCheckExecutionFilter(@QueryParameter("executionFilter") String executionFilter) {
+            try {
+                RundeckExecutionFilter.compile(executionFilter);
+                return FormValidation.ok();
+            } catch (IllegalArgumentException e) {
+                return FormValidation.error(e.getMessage());
+            }
         }
 
         @Override
@@ -136,6 +327,29 @@ public class RundeckTrigger extends Trigger<AbstractProject<?, ?>> {
             return "Build when we receive a notification from RunDeck";
         }
 
+        /**
+         * @param project name of the RunDeck project
+         * @return the poll cursor of the given project, or null if it has never been polled
+         */
+        public synchronized PollCursor getPollCursor(String project) {
+            return pollCursors != null ? pollCursors.get(project) : null;
+        }
+
+        /**
+         * Save the poll cursor of the given project
+         * 
+         * @param project name of the RunDeck project
+         * @param cursor new cursor
+         */
+        public synchronized void setPollCursor(String project, PollCursor cursor) {
+            if (pollCursors == null) {
+                pollCursors = new HashMap<String, PollCursor>();
+            }
+            if (!cursor.equals(pollCursors.put(project, cursor))) {
+                save();
+            }
+        }
+
         /**
          * Simplistic version of StaplerRequest.bindJSONToList, in order to use a List of String
          */
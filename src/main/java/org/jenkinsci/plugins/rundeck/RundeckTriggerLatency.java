@@ -0,0 +1,166 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.model.Api;
+import hudson.model.Hudson;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+
+/**
+ * Latency of the builds started by RunDeck, from the end of the RunDeck execution to the start of the build, split in
+ * 2 stages : "notification" (end of the execution to the entry in the queue : WebHook delivery or poll interval) and
+ * "queue" (entry in the queue to the start of the build : quiet period and wait for an executor).<br>
+ * The last samples of each stage are kept in a fixed-size ring buffer (in memory only), and the percentiles are
+ * computed when they are requested, through the remote API at /plugin/rundeck/triggerLatency/api/json. The latency of
+ * each build is also available on its {@link RundeckCause}.
+ */
+@ExportedBean
+public class RundeckTriggerLatency {
+
+    /** Number of samples kept for each stage - can be changed with a system property */
+    private static final int CAPACITY = Math.max(1, Integer.getInteger(RundeckTriggerLatency.class.getName()
+                                                                       + ".samples", 1000));
+
+    private static final RundeckTriggerLatency INSTANCE = new RundeckTriggerLatency();
+
+    private final Stage notification = new Stage();
+
+    private final Stage queue = new Stage();
+
+    private final Stage total = new Stage();
+
+    /**
+     * @return the latency of all the builds started by RunDeck
+     */
+    public static RundeckTriggerLatency get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record the latency of a build entering the queue
+     * 
+     * @param cause of the build, with the end of the RunDeck execution and the entry in the queue
+     */
+    void queued(RundeckCause cause) {
+        Long notificationMillis = cause.getNotificationLatencyMillis();
+        if (notificationMillis != null) {
+            notification.record(notificationMillis);
+            RundeckMetrics.get().triggerNotificationLatency.observe(notificationMillis / 1000d);
+        }
+    }
+
+    /**
+     * Record the latency of a build leaving the queue
+     * 
+     * @param cause of the build, with the entry in the queue and the start of the build
+     */
+    void started(RundeckCause cause) {
+        Long queueMillis = cause.getQueueLatencyMillis();
+        if (queueMillis != null) {
+            queue.record(queueMillis);
+            RundeckMetrics.get().triggerQueueLatency.observe(queueMillis / 1000d);
+        }
+        Long totalMillis = cause.getTotalLatencyMillis();
+        if (totalMillis != null) {
+            total.record(totalMillis);
+            RundeckMetrics.get().triggerTotalLatency.observe(totalMillis / 1000d);
+        }
+    }
+
+    /**
+     * @return the latency from the end of the RunDeck execution to the entry of the build in the queue
+     */
+    @Exported(inline = true)
+    public Stage getNotification() {
+        return notification;
+    }
+
+    /**
+     * @return the latency from the entry of the build in the queue to its start
+     */
+    @Exported(inline = true)
+    public Stage getQueue() {
+        return queue;
+    }
+
+    /**
+     * @return the latency from the end of the RunDeck execution to the start of the build
+     */
+    @Exported(inline = true)
+    public Stage getTotal() {
+        return total;
+    }
+
+    /**
+     * Remote API, for the users who can see Jenkins
+     */
+    public Api getApi() {
+        Hudson.getInstance().checkPermission(Hudson.READ);
+        return new Api(this);
+    }
+
+    /**
+     * Latency samples of a stage, in milliseconds
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static class Stage {
+
+        private final AtomicLongArray samples = new AtomicLongArray(CAPACITY);
+
+        /** number of samples recorded since the startup */
+        private final AtomicLong count = new AtomicLong();
+
+        void record(long millis) {
+            // the clocks of RunDeck and Jenkins may not be perfectly in sync
+            samples.set((int) (count.getAndIncrement() % CAPACITY), Math.max(0, millis));
+        }
+
+        /**
+         * @return the number of samples recorded since the startup of Jenkins (including the ones no longer kept)
+         */
+        @Exported
+        public long getCount() {
+            return count.get();
+        }
+
+        @Exported
+        public Long getP50() {
+            return getPercentile(50);
+        }
+
+        @Exported
+        public Long getP90() {
+            return getPercentile(90);
+        }
+
+        @Exported
+        public Long getP99() {
+            return getPercentile(99);
+        }
+
+        @Exported
+        public Long getMax() {
+            return getPercentile(100);
+        }
+
+        /**
+         * @param percentile between 0 and 100
+         * @return the given percentile of the last samples (nearest-rank method), or null if there is no sample
+         */
+        public Long getPercentile(double percentile) {
+            int size = (int) Math.min(count.get(), CAPACITY);
+            if (size == 0) {
+                return null;
+            }
+            long[] sorted = new long[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = samples.get(i);
+            }
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * size);
+            return sorted[Math.min(size - 1, Math.max(0, rank - 1))];
+        }
+    }
+}
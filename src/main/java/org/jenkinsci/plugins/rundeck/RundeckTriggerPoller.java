@@ -0,0 +1,250 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckDescriptor;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckEvent;
+import org.rundeck.api.domain.RundeckExecution;
+import org.rundeck.api.domain.RundeckHistory;
+
+/**
+ * Incrementally polls the history of the RunDeck projects used by the {@link RundeckTrigger} in polling mode, for the
+ * cases where RunDeck can't reach Jenkins through a WebHook. There is a single poll per RunDeck project, shared by all
+ * the triggers of this project, which only fetches the executions newer than the persisted {@link PollCursor}.
+ */
+@Extension
+public class RundeckTriggerPoller extends AsyncPeriodicWork {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckTriggerPoller.class.getName());
+
+    /** Poll period, in seconds - can be changed with a system property */
+    private static final int PERIOD_SECONDS = Integer.getInteger(RundeckTriggerPoller.class.getName()
+                                                                 + ".periodSeconds", 60);
+
+    /** Number of history events fetched per call */
+    private static final long PAGE_SIZE = 20;
+
+    /** Maximum number of pages fetched per poll, so that a long outage does not replay the whole history */
+    private static final int MAX_PAGES = 10;
+
+    private static final Comparator<RundeckEvent> BY_EXECUTION_ID = new Comparator<RundeckEvent>() {
+
+        public int compare(RundeckEvent event1, RundeckEvent event2) {
+            return event1.getExecutionId().compareTo(event2.getExecutionId());
+        }
+    };
+
+    public RundeckTriggerPoller() {
+        super("RunDeck executions poller");
+    }
+
+    @Override
+    public long getRecurrencePeriod() {
+        return PERIOD_SECONDS * 1000L;
+    }
+
+    @Override
+    protected void execute(TaskListener listener) {
+        Map<String, List<RundeckTrigger>> triggersByProject = RundeckTriggerRegistry.get().getPollingTriggers();
+        if (triggersByProject.isEmpty()) {
+            return;
+        }
+        RundeckDescriptor descriptor = Hudson.getInstance().getDescriptorByType(RundeckDescriptor.class);
+        RundeckClient rundeck = descriptor != null ? descriptor.getRundeckInstance() : null;
+        if (rundeck == null) {
+            return;
+        }
+        RundeckTrigger.RundeckDescriptor triggerDescriptor = Hudson.getInstance().getDescriptorByType(
+                RundeckTrigger.RundeckDescriptor.class);
+        RundeckMetrics metrics = RundeckMetrics.get();
+        for (Map.Entry<String, List<RundeckTrigger>> entry : triggersByProject.entrySet()) {
+            long start = System.nanoTime();
+            try {
+                poll(rundeck, entry.getKey(), entry.getValue(), triggerDescriptor);
+            } catch (RundeckApiException e) {
+                metrics.pollFailures.increment();
+                LOGGER.log(Level.WARNING, "Failed to poll the executions of the RunDeck project " + entry.getKey(), e);
+            } finally {
+                metrics.pollDuration.observeSince(start);
+            }
+        }
+    }
+
+    /**
+     * Poll the new executions of the given project, and feed them to the given triggers. The cursor is only saved
+     * once all the new executions have been fetched, so that a failed poll is entirely retried by the next one.
+     * 
+     * @return the number of builds scheduled
+     * @throws RundeckApiException in case of error while talking to RunDeck (nothing has been dispatched)
+     */
+    int poll(RundeckClient rundeck, String project, List<RundeckTrigger> triggers,
+            RundeckTrigger.RundeckDescriptor triggerDescriptor) throws RundeckApiException {
+        PollCursor cursor = triggerDescriptor.getPollCursor(project);
+
+        // running executions are fetched before and after the history, so that we don't miss one that ends between
+        Set<Long> running = getRunningExecutionIds(rundeck, project);
+        List<RundeckEvent> events = getNewEvents(rundeck, project, cursor);
+        running.addAll(getRunningExecutionIds(rundeck, project));
+
+        long lastExecutionId = cursor != null ? cursor.getLastExecutionId() : 0;
+        for (RundeckEvent event : events) {
+            lastExecutionId = Math.max(lastExecutionId, event.getExecutionId());
+        }
+        if (cursor == null) {
+            // the running executions are newer than the history (which may still be empty) : they will be pending,
+            // and dispatched when they finish
+            for (Long executionId : running) {
+                lastExecutionId = Math.max(lastExecutionId, executionId);
+            }
+        }
+
+        // first poll of this project : only initialize the cursor, we don't want to replay the whole history
+        List<RundeckExecution> executions = new ArrayList<RundeckExecution>();
+        if (cursor != null) {
+            Collections.sort(events, BY_EXECUTION_ID);
+            for (RundeckEvent event : events) {
+                if (isWanted(event, triggers)) {
+                    executions.add(rundeck.getExecution(event.getExecutionId()));
+                }
+            }
+        }
+
+        RundeckMetrics metrics = RundeckMetrics.get();
+        int scheduled = 0;
+        RundeckPlugin plugin = Hudson.getInstance().getPlugin(RundeckPlugin.class);
+        for (RundeckExecution execution : executions) {
+            metrics.pollExecutions.increment();
+            if (plugin != null) {
+                // the final status of a deployment triggered by Jenkins
+                plugin.getDeployments().finished(execution);
+            }
+            for (RundeckTrigger trigger : triggers) {
+                if (trigger.onNotification(execution)) {
+                    scheduled++;
+                    metrics.pollBuildsScheduled.increment();
+                }
+            }
+        }
+
+        // executions older than the cursor which are still running will be looked for in the next polls
+        Set<Long> pending = new TreeSet<Long>();
+        for (Long executionId : running) {
+            if (executionId <= lastExecutionId) {
+                pending.add(executionId);
+            }
+        }
+        triggerDescriptor.setPollCursor(project, new PollCursor(lastExecutionId, pending));
+        return scheduled;
+    }
+
+    /**
+     * Fetch the events of the executions newer than the cursor. The history is sorted by end date (most recent
+     * first), so we stop at the first execution already seen by a previous poll.
+     */
+    private List<RundeckEvent> getNewEvents(RundeckClient rundeck, String project, PollCursor cursor)
+            throws RundeckApiException {
+        List<RundeckEvent> events = new ArrayList<RundeckEvent>();
+        for (int page = 0; page < MAX_PAGES; page++) {
+            RundeckHistory history = rundeck.getHistory(project, PAGE_SIZE, page * PAGE_SIZE);
+            for (RundeckEvent event : history.getEvents()) {
+                if (event.getExecutionId() == null) {
+                    continue;
+                }
+                if (cursor != null && !cursor.isNew(event.getExecutionId())) {
+                    return events;
+                }
+                events.add(event);
+            }
+            // the first page is enough to initialize the cursor
+            if (cursor == null || history.getEvents().size() < PAGE_SIZE) {
+                break;
+            }
+        }
+        return events;
+    }
+
+    private Set<Long> getRunningExecutionIds(RundeckClient rundeck, String project) throws RundeckApiException {
+        Set<Long> executionIds = new TreeSet<Long>();
+        for (RundeckExecution execution : rundeck.getRunningExecutions(project)) {
+            executionIds.add(execution.getId());
+        }
+        return executionIds;
+    }
+
+    /**
+     * @return true if at least one of the triggers accepts the status of the given event (so that we need to fetch
+     *         its execution)
+     */
+    private boolean isWanted(RundeckEvent event, List<RundeckTrigger> triggers) {
+        for (RundeckTrigger trigger : triggers) {
+            if (event.getStatus() != null && trigger.getExecutionStatuses().contains(event.getStatus().toString())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Position of the poll in the history of a RunDeck project : the last execution seen, and the older executions
+     * which were still running (and may end after newer ones)
+     */
+    public static class PollCursor {
+
+        private final long lastExecutionId;
+
+        private final Set<Long> pendingExecutionIds;
+
+        public PollCursor(long lastExecutionId, Set<Long> pendingExecutionIds) {
+            this.lastExecutionId = lastExecutionId;
+            this.pendingExecutionIds = pendingExecutionIds;
+        }
+
+        /**
+         * @return true if the given execution has not been seen by a previous poll
+         */
+        public boolean isNew(Long executionId) {
+            return executionId > lastExecutionId
+                   || (pendingExecutionIds != null && pendingExecutionIds.contains(executionId));
+        }
+
+        public long getLastExecutionId() {
+            return lastExecutionId;
+        }
+
+        public Set<Long> getPendingExecutionIds() {
+            return pendingExecutionIds;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof PollCursor)) {
+                return false;
+            }
+            PollCursor other = (PollCursor) obj;
+            return lastExecutionId == other.lastExecutionId
+                   && safePendingExecutionIds().equals(other.safePendingExecutionIds());
+        }
+
+        @Override
+        public int hashCode() {
+            return (int) (lastExecutionId ^ (lastExecutionId >>> 32));
+        }
+
+        private Set<Long> safePendingExecutionIds() {
+            return pendingExecutionIds != null ? pendingExecutionIds : Collections.<Long> emptySet();
+        }
+    }
+}
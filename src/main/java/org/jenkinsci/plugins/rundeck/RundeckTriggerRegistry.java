@@ -0,0 +1,101 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.Item;
+import hudson.model.listeners.ItemListener;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArraySet;
+
+/**
+ * Registry of the started {@link RundeckTrigger}s, maintained by the triggers themselves (on start / stop) and by an
+ * {@link ItemListener} (on delete), so that a WebHook notification or a poll does not need to walk all the items of
+ * Jenkins. Reads are lock-free (the registry is only written when a job is loaded or configured).
+ */
+public class RundeckTriggerRegistry {
+
+    private static final RundeckTriggerRegistry INSTANCE = new RundeckTriggerRegistry();
+
+    private final Set<RundeckTrigger> triggers = new CopyOnWriteArraySet<RundeckTrigger>();
+
+    /**
+     * @return the registry shared by all triggers
+     */
+    public static RundeckTriggerRegistry get() {
+        return INSTANCE;
+    }
+
+    public void register(RundeckTrigger trigger) {
+        triggers.add(trigger);
+    }
+
+    public void unregister(RundeckTrigger trigger) {
+        triggers.remove(trigger);
+    }
+
+    /**
+     * Unregister the triggers of the given item (which has been deleted)
+     */
+    public void unregisterAll(Item item) {
+        // iterates on a snapshot, so we can remove while iterating
+        for (RundeckTrigger trigger : triggers) {
+            if (trigger.getProject() == item) {
+                triggers.remove(trigger);
+            }
+        }
+    }
+
+    /**
+     * @return the triggers fed by the WebHook notifications
+     */
+    public List<RundeckTrigger> getWebHookTriggers() {
+        List<RundeckTrigger> webHookTriggers = new ArrayList<RundeckTrigger>();
+        for (RundeckTrigger trigger : triggers) {
+            if (!trigger.isPolling()) {
+                webHookTriggers.add(trigger);
+            }
+        }
+        return webHookTriggers;
+    }
+
+    /**
+     * @return the triggers in polling mode, by RunDeck project
+     */
+    public Map<String, List<RundeckTrigger>> getPollingTriggers() {
+        Map<String, List<RundeckTrigger>> triggersByProject = new LinkedHashMap<String, List<RundeckTrigger>>();
+        for (RundeckTrigger trigger : triggers) {
+            if (trigger.isPolling()) {
+                String project = trigger.getPollProject().trim();
+                List<RundeckTrigger> projectTriggers = triggersByProject.get(project);
+                if (projectTriggers == null) {
+                    projectTriggers = new ArrayList<RundeckTrigger>();
+                    triggersByProject.put(project, projectTriggers);
+                }
+                projectTriggers.add(trigger);
+            }
+        }
+        return triggersByProject;
+    }
+
+    /**
+     * @return the number of registered triggers
+     */
+    public int size() {
+        return triggers.size();
+    }
+
+    /**
+     * Unregister the triggers of the deleted items
+     */
+    @Extension
+    public static class RundeckTriggerItemListener extends ItemListener {
+
+        @Override
+        public void onDeleted(Item item) {
+            get().unregisterAll(item);
+        }
+    }
+}
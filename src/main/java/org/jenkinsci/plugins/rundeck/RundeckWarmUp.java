@@ -0,0 +1,100 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.AbstractProject;
+import hudson.model.Computer;
+import hudson.model.Hudson;
+import hudson.security.ACL;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContextHolder;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckDescriptor;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckJob;
+
+/**
+ * Warm-up of the plugin after the startup of Jenkins, in background (so that the boot is not blocked), so that the
+ * first WebHook notification, option request, page render or build does not pay all the cold costs at once : creation
+ * of the RunDeck client, first connection to RunDeck, loading of the {@link RundeckJobCatalog} (used by the project
+ * pages and the configuration pages), and for each {@link RundeckNotifier} : its RunDeck job, and the nodes of its
+ * project in the {@link RundeckNodeInventory} if it has node filters. The triggers have already been registered in the
+ * {@link RundeckTriggerRegistry} when the jobs were loaded.<br>
+ * The warm-up runs with the system permissions, so that all the Jenkins projects are visited.<br>
+ * The plugin metrics expose a readiness flag, set once the warm-up is finished (even if RunDeck was not reachable).
+ */
+public class RundeckWarmUp implements Runnable {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckWarmUp.class.getName());
+
+    @Initializer(after = InitMilestone.JOB_LOADED)
+    public static void warmUp() {
+        Computer.threadPoolForRemoting.submit(new RundeckWarmUp());
+    }
+
+    public void run() {
+        RundeckMetrics metrics = RundeckMetrics.get();
+        long start = System.currentTimeMillis();
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+        try {
+            RundeckDescriptor descriptor = Hudson.getInstance().getDescriptorByType(RundeckDescriptor.class);
+            RundeckClient rundeck = descriptor != null ? descriptor.getRundeckInstance() : null;
+            if (rundeck == null) {
+                return;
+            }
+            try {
+                rundeck.ping();
+                int jobs = descriptor.getJobCatalog().refresh(rundeck);
+                int notifiers = warmUpNotifiers(descriptor, rundeck);
+                LOGGER.info("RunDeck plugin warmed up in " + (System.currentTimeMillis() - start) + " ms : "
+                            + RundeckTriggerRegistry.get().size() + " triggers, " + jobs + " RunDeck jobs, "
+                            + notifiers + " notifiers");
+            } catch (RundeckApiException e) {
+                LOGGER.log(Level.WARNING, "Failed to warm up the connection to RunDeck at " + rundeck.getUrl(), e);
+            }
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+            metrics.warmUpDuration.set(System.currentTimeMillis() - start);
+            metrics.ready.set(1);
+        }
+    }
+
+    /**
+     * Warm up the RunDeck job of each {@link RundeckNotifier} (from the catalog, or else from RunDeck), and the nodes
+     * of its project if the notifier has node filters. A notifier that can't be warmed up is logged, and skipped.
+     * 
+     * @param descriptor with the catalog and the inventory to fill
+     * @param rundeck client to use
+     * @return the number of notifiers warmed up
+     */
+    private int warmUpNotifiers(RundeckDescriptor descriptor, RundeckClient rundeck) {
+        Set<String> loadedProjects = new HashSet<String>();
+        int count = 0;
+        for (AbstractProject<?, ?> project : Hudson.getInstance().getAllItems(AbstractProject.class)) {
+            RundeckNotifier notifier = project.getPublishersList().get(RundeckNotifier.class);
+            if (notifier == null || StringUtils.isBlank(notifier.getJobId())) {
+                continue;
+            }
+            try {
+                RundeckJob job = descriptor.getJobCatalog().findJob(notifier.getJobId());
+                if (job == null) {
+                    job = rundeck.getJob(notifier.getJobId());
+                }
+                if (StringUtils.isNotBlank(notifier.getNodeFilters()) && loadedProjects.add(job.getProject())) {
+                    descriptor.getNodeInventory().getNodes(rundeck, job.getProject());
+                }
+                count++;
+            } catch (RundeckApiException e) {
+                LOGGER.log(Level.WARNING, "Failed to warm up the RunDeck job " + notifier.getJobId()
+                                          + " of the project " + project.getFullName(), e);
+            }
+        }
+        return count;
+    }
+}
@@ -0,0 +1,239 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.model.Api;
+import hudson.model.Hudson;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import org.kohsuke.stapler.export.Exported;
+import org.kohsuke.stapler.export.ExportedBean;
+import org.rundeck.api.domain.RundeckExecution;
+
+/**
+ * Journal of the last WebHook notifications received from RunDeck, to find out why a build did not start : did the
+ * notification arrive, was it parsed, did it match a trigger, was the build scheduled ?<br>
+ * The journal is a fixed-size ring buffer, in memory only : recording an event is a single atomic increment and an
+ * atomic write, without lock nor disk I/O. Shown (to the administrators) at /plugin/rundeck/webHookJournal/, and
+ * available through the remote API at /plugin/rundeck/webHookJournal/api/json.
+ */
+@ExportedBean
+public class RundeckWebHookJournal {
+
+    /** Number of events kept - can be changed with a system property */
+    private static final int CAPACITY = Math.max(1, Integer.getInteger(RundeckWebHookJournal.class.getName()
+                                                                       + ".capacity", 200));
+
+    private static final RundeckWebHookJournal INSTANCE = new RundeckWebHookJournal();
+
+    private static final Comparator<WebHookEvent> NEWEST_FIRST = new Comparator<WebHookEvent>() {
+
+        public int compare(WebHookEvent event1, WebHookEvent event2) {
+            return event1.sequence > event2.sequence ? -1 : (event1.sequence == event2.sequence ? 0 : 1);
+        }
+    };
+
+    private final AtomicReferenceArray<WebHookEvent> events = new AtomicReferenceArray<WebHookEvent>(CAPACITY);
+
+    /** number of events recorded since the startup */
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * @return the journal shared by all WebHook notifications
+     */
+    public static RundeckWebHookJournal get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Record the given event (overwriting the oldest one if the journal is full). The event should not be modified
+     * after this call.
+     */
+    public void record(WebHookEvent event) {
+        event.sequence = sequence.getAndIncrement();
+        events.set((int) (event.sequence % CAPACITY), event);
+    }
+
+    /**
+     * @return a snapshot of the recorded events, newest first
+     */
+    @Exported(inline = true)
+    public List<WebHookEvent> getEvents() {
+        List<WebHookEvent> snapshot = new ArrayList<WebHookEvent>(CAPACITY);
+        for (int i = 0; i < CAPACITY; i++) {
+            WebHookEvent event = events.get(i);
+            if (event != null) {
+                snapshot.add(event);
+            }
+        }
+        Collections.sort(snapshot, NEWEST_FIRST);
+        return snapshot;
+    }
+
+    /**
+     * @return the number of events recorded since the startup of Jenkins (including the ones no longer in the journal)
+     */
+    @Exported
+    public long getReceived() {
+        return sequence.get();
+    }
+
+    @Exported
+    public int getCapacity() {
+        return CAPACITY;
+    }
+
+    /**
+     * Remote API, for the administrators only
+     */
+    public Api getApi() {
+        Hudson.getInstance().checkPermission(Hudson.ADMINISTER);
+        return new Api(this);
+    }
+
+    /**
+     * A WebHook notification, and what we did with it
+     */
+    @ExportedBean(defaultVisibility = 2)
+    public static class WebHookEvent {
+
+        /** position in the journal */
+        private long sequence;
+
+        private final long receivedAt = System.currentTimeMillis();
+
+        private long parseNanos;
+
+        private String error;
+
+        /** true if the notification has already been received, and was ignored */
+        private boolean duplicate;
+
+        private Long executionId;
+
+        private String job;
+
+        private String status;
+
+        private final List<String> matchedTriggers = new ArrayList<String>();
+
+        private final List<String> scheduledBuilds = new ArrayList<String>();
+
+        private final List<String> rejectedBuilds = new ArrayList<String>();
+
+        /**
+         * @param execution parsed from the notification
+         * @param parseNanos time spent reading and parsing the notification
+         */
+        void parsed(RundeckExecution execution, long parseNanos) {
+            this.parseNanos = parseNanos;
+            this.executionId = execution.getId();
+            if (execution.getJob() != null) {
+                this.job = execution.getJob().getProject() + ":" + execution.getJob().getFullName();
+            }
+            this.status = execution.getStatus() != null ? execution.getStatus().toString() : null;
+        }
+
+        /**
+         * @param error why the notification could not be parsed
+         * @param parseNanos time spent reading and parsing the notification
+         */
+        void failed(String error, long parseNanos) {
+            this.parseNanos = parseNanos;
+            this.error = error;
+        }
+
+        /**
+         * The notification has already been received (from RunDeck or a peer), and was ignored
+         */
+        void duplicate() {
+            this.duplicate = true;
+        }
+
+        /**
+         * @param projectName full name of the project of a trigger matching the notification
+         * @param scheduled true if a build has been scheduled, false if it has been rejected (already in the queue)
+         */
+        void matched(String projectName, boolean scheduled) {
+            matchedTriggers.add(projectName);
+            if (scheduled) {
+                scheduledBuilds.add(projectName);
+            } else {
+                rejectedBuilds.add(projectName);
+            }
+        }
+
+        @Exported
+        public long getReceivedAt() {
+            return receivedAt;
+        }
+
+        public Date getReceivedDate() {
+            return new Date(receivedAt);
+        }
+
+        @Exported
+        public long getParseMillis() {
+            return TimeUnit.NANOSECONDS.toMillis(parseNanos);
+        }
+
+        /**
+         * @return why the notification could not be parsed - null if it has been parsed
+         */
+        @Exported
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return true if the notification has already been received (from RunDeck or a peer), and was ignored
+         */
+        @Exported
+        public boolean isDuplicate() {
+            return duplicate;
+        }
+
+        @Exported
+        public Long getExecutionId() {
+            return executionId;
+        }
+
+        /**
+         * @return the RunDeck job, as "project:group/name" - null if unknown
+         */
+        @Exported
+        public String getJob() {
+            return job;
+        }
+
+        @Exported
+        public String getStatus() {
+            return status;
+        }
+
+        /**
+         * @return the Jenkins projects whose trigger matched the notification
+         */
+        @Exported
+        public List<String> getMatchedTriggers() {
+            return matchedTriggers;
+        }
+
+        @Exported
+        public List<String> getScheduledBuilds() {
+            return scheduledBuilds;
+        }
+
+        /**
+         * @return the Jenkins projects whose build has not been scheduled (already in the queue)
+         */
+        @Exported
+        public List<String> getRejectedBuilds() {
+            return rejectedBuilds;
+        }
+    }
+}
@@ -0,0 +1,548 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Extension;
+import hudson.model.AsyncPeriodicWork;
+import hudson.model.Hudson;
+import hudson.model.TaskListener;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckDescriptor;
+
+/**
+ * Relay of the RunDeck WebHook notifications to the WebHook of peer Jenkins controllers, so that a single RunDeck
+ * WebHook reaches all the controllers. The relay is asynchronous : the notification is handed to a background
+ * thread, and RunDeck gets its response without waiting for the peers.<br>
+ * Each peer has its own queue, persisted as an append-only journal (one record per line) in
+ * JENKINS_HOME/rundeck/relay, replayed on startup : the notifications are not lost if a peer (or this controller) is
+ * down. The pending notifications of a peer are sent in batches (several executions in one notification), and retried
+ * with a jittered exponential backoff if the peer fails. A notification is only queued once for each execution and
+ * status (RunDeck may send the same notification twice), and the relayed notifications carry the
+ * {@link #RELAY_HEADER} header, so that they are never relayed again by the peers.
+ */
+public class RundeckWebHookRelay {
+
+    private static final Logger LOGGER = Logger.getLogger(RundeckWebHookRelay.class.getName());
+
+    /** HTTP header set on the relayed notifications (with the URL of the controller relaying them) */
+    public static final String RELAY_HEADER = "X-Rundeck-Relayed-By";
+
+    /** Maximum number of executions sent to a peer in one notification */
+    private static final int MAX_BATCH_SIZE = 50;
+
+    /** Maximum number of pending notifications for a peer - the oldest ones are dropped */
+    private static final int MAX_QUEUE_SIZE = 10000;
+
+    /** Pending notifications older than this are dropped : the executions are long finished */
+    private static final long MAX_AGE_MILLIS = 24 * 60 * 60 * 1000L;
+
+    /** Number of notifications remembered for each peer once sent, to ignore the duplicates */
+    private static final int MAX_SENT_KEYS = 1000;
+
+    private static final int TIMEOUT_MILLIS = 10000;
+
+    /** Compact the journal of a peer when it contains more finished records than this */
+    private static final int COMPACTION_THRESHOLD = 1000;
+
+    private static final int SENDER_THREADS = 4;
+
+    private static final String QUEUED = "Q";
+
+    private static final String SENT = "S";
+
+    private static final String JOURNAL_EXTENSION = ".queue";
+
+    private final File directory;
+
+    /** queue of each peer, by WebHook URL */
+    private final ConcurrentMap<String, PeerQueue> queues = new ConcurrentHashMap<String, PeerQueue>();
+
+    /** writes the journals and sends the notifications */
+    private final Executor executor;
+
+    /**
+     * @param directory where the journals are stored (in a "relay" sub-directory, created if needed)
+     */
+    public RundeckWebHookRelay(File directory) {
+        this(directory, createExecutor());
+    }
+
+    /**
+     * @param directory where the journals are stored (in a "relay" sub-directory, created if needed)
+     * @param executor writing the journals and sending the notifications (the tests use the calling thread)
+     */
+    RundeckWebHookRelay(File directory, Executor executor) {
+        super();
+        this.directory = new File(directory, "relay");
+        this.directory.mkdirs();
+        this.executor = executor;
+    }
+
+    /**
+     * Replay the journals of the peers, and compact them
+     */
+    public void load() {
+        queues.clear();
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            // a ".tmp" file is a compacted journal, left alone if we crashed during the compaction
+            String name = StringUtils.removeEnd(file.getName(), ".tmp");
+            if (!name.endsWith(JOURNAL_EXTENSION)) {
+                continue;
+            }
+            String peer = RundeckJournal.decode(StringUtils.removeEnd(name, JOURNAL_EXTENSION));
+            if (!queues.containsKey(peer)) {
+                PeerQueue queue = new PeerQueue(peer, new File(directory, name));
+                queue.load();
+                queues.put(peer, queue);
+            }
+        }
+    }
+
+    /**
+     * Relay the given notification to the given peers, in background
+     * 
+     * @param peers URLs of the WebHook of the peers
+     * @param executionId ID of the RunDeck execution
+     * @param status of the RunDeck execution - may be null
+     * @param executionXml the "execution" element of the notification, as received
+     */
+    public void relay(final List<String> peers, Long executionId, String status, final String executionXml) {
+        if (peers.isEmpty()) {
+            return;
+        }
+        final String key = key(executionId, status);
+        final long receivedAt = System.currentTimeMillis();
+        // writing the journals is done in background too : RunDeck is not slowed down by our disk
+        executor.execute(new Runnable() {
+
+            public void run() {
+                for (String peer : peers) {
+                    PeerQueue queue = getQueue(peer);
+                    if (queue.enqueue(key, executionXml, receivedAt)) {
+                        RundeckMetrics.get().webHookRelayQueued.increment();
+                    }
+                    schedule(queue);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send the due notifications of the given peers (the ones whose backoff is over), and drop the queues of the
+     * peers which are no longer configured
+     * 
+     * @param peers URLs of the WebHook of the peers
+     */
+    public void retry(List<String> peers) {
+        for (PeerQueue queue : queues.values()) {
+            if (peers.contains(queue.peer)) {
+                if (queue.isDue(System.currentTimeMillis())) {
+                    schedule(queue);
+                }
+            } else if (queues.remove(queue.peer, queue)) {
+                LOGGER.info("Dropping the " + queue.size() + " notifications pending for the WebHook at "
+                            + queue.peer + " (no longer configured)");
+                queue.delete();
+            }
+        }
+    }
+
+    /**
+     * @return the number of notifications pending for each peer
+     */
+    public Map<String, Integer> getPendingNotifications() {
+        Map<String, Integer> pending = new LinkedHashMap<String, Integer>();
+        for (PeerQueue queue : queues.values()) {
+            pending.put(queue.peer, queue.size());
+        }
+        return pending;
+    }
+
+    /**
+     * @param peers URLs of the WebHook of the peers, one per line (blank lines are ignored)
+     * @return the list of URLs
+     * @throws IllegalArgumentException if an URL is not valid
+     */
+    public static List<String> parsePeers(String peers) throws IllegalArgumentException {
+        List<String> urls = new ArrayList<String>();
+        for (String line : StringUtils.split(StringUtils.defaultString(peers), "\r\n")) {
+            String url = StringUtils.trimToNull(line);
+            if (url == null) {
+                continue;
+            }
+            try {
+                new URL(url);
+            } catch (MalformedURLException e) {
+                throw new IllegalArgumentException("Invalid WebHook URL : " + url);
+            }
+            if (!urls.contains(url)) {
+                urls.add(url);
+            }
+        }
+        return Collections.unmodifiableList(urls);
+    }
+
+    /**
+     * @param executionId ID of the RunDeck execution
+     * @param status of the RunDeck execution - may be null
+     * @return the key identifying a notification, to ignore the duplicates
+     */
+    static String key(Long executionId, String status) {
+        return executionId + ":" + status;
+    }
+
+    private PeerQueue getQueue(String peer) {
+        PeerQueue queue = queues.get(peer);
+        if (queue == null) {
+            PeerQueue newQueue = new PeerQueue(peer, new File(directory, encodeFileName(peer) + JOURNAL_EXTENSION));
+            queue = queues.putIfAbsent(peer, newQueue);
+            if (queue == null) {
+                queue = newQueue;
+            }
+        }
+        return queue;
+    }
+
+    /**
+     * Send the due notifications of the given queue in background, unless they are already being sent
+     */
+    private void schedule(final PeerQueue queue) {
+        if (!queue.sending.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+
+            public void run() {
+                try {
+                    drain(queue);
+                } finally {
+                    queue.sending.set(false);
+                }
+                // a notification may have been queued after the end of the drain, while we were still "sending"
+                if (queue.isDue(System.currentTimeMillis())) {
+                    schedule(queue);
+                }
+            }
+        });
+    }
+
+    /**
+     * Send the pending notifications of the given queue, batch after batch, until the queue is empty or the peer
+     * fails
+     */
+    private void drain(PeerQueue queue) {
+        RundeckMetrics metrics = RundeckMetrics.get();
+        List<QueuedNotification> batch;
+        while (!(batch = queue.nextBatch(System.currentTimeMillis())).isEmpty()) {
+            try {
+                send(queue.peer, batch);
+                queue.sent(batch);
+                metrics.webHookRelaySent.add(batch.size());
+            } catch (IOException e) {
+                long delay = RundeckNotificationSpool.backoffMillis(queue.failed());
+                metrics.webHookRelayFailures.increment();
+                LOGGER.log(Level.WARNING, "Failed to relay " + batch.size() + " notifications to the WebHook at "
+                                          + queue.peer + ", next attempt in " + delay / 1000 + " seconds", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * Send the given notifications to the given peer, as a single RunDeck notification
+     * 
+     * @throws IOException if the peer did not accept the notification
+     */
+    private void send(String peer, List<QueuedNotification> batch) throws IOException {
+        StringBuilder body = new StringBuilder("<notification><executions>");
+        for (QueuedNotification notification : batch) {
+            body.append(notification.executionXml);
+        }
+        body.append("</executions></notification>");
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(peer).openConnection();
+        try {
+            connection.setConnectTimeout(TIMEOUT_MILLIS);
+            connection.setReadTimeout(TIMEOUT_MILLIS);
+            connection.setDoOutput(true);
+            connection.setRequestMethod("POST");
+            connection.setRequestProperty("Content-Type", "text/xml; charset=UTF-8");
+            connection.setRequestProperty(RELAY_HEADER, StringUtils.defaultIfEmpty(Hudson.getInstance().getRootUrl(),
+                                                                               "unknown"));
+            OutputStream output = connection.getOutputStream();
+            try {
+                output.write(body.toString().getBytes("UTF-8"));
+            } finally {
+                IOUtils.closeQuietly(output);
+            }
+            int status = connection.getResponseCode();
+            // read the response, so that the connection can be kept alive for the next batch
+            IOUtils.closeQuietly(status < 400 ? connection.getInputStream() : connection.getErrorStream());
+            if (status < 200 || status >= 300) {
+                throw new IOException("HTTP status " + status + " - " + connection.getResponseMessage());
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor() {
+        ThreadFactory threadFactory = new ThreadFactory() {
+
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "RunDeck WebHook relay");
+                thread.setDaemon(true);
+                return thread;
+            }
+        };
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(SENDER_THREADS,
+                                                             SENDER_THREADS,
+                                                             60L,
+                                                             TimeUnit.SECONDS,
+                                                             new LinkedBlockingQueue<Runnable>(),
+                                                             threadFactory);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    private static String encodeFileName(String peer) {
+        try {
+            return URLEncoder.encode(peer, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Pending notifications of a peer, with their journal
+     */
+    private class PeerQueue {
+
+        private final String peer;
+
+        private final RundeckJournal journal;
+
+        /** pending notifications, by key (execution and status), oldest first */
+        private final LinkedHashMap<String, QueuedNotification> pending =
+                new LinkedHashMap<String, QueuedNotification>();
+
+        /** keys of the last notifications sent (or dropped), oldest first */
+        private final LinkedHashMap<String, Boolean> sentKeys = new LinkedHashMap<String, Boolean>() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > MAX_SENT_KEYS;
+            }
+        };
+
+        /** true while a thread is sending the notifications of this peer */
+        private final AtomicBoolean sending = new AtomicBoolean();
+
+        private int attempts;
+
+        private long nextAttemptAt;
+
+        private int finishedRecords;
+
+        private PeerQueue(String peer, File journal) {
+            this.peer = peer;
+            this.journal = new RundeckJournal(journal, "WebHook relay queue");
+        }
+
+        synchronized void load() {
+            journal.replay(new RundeckJournal.RecordHandler() {
+
+                public void replay(String[] record) {
+                    PeerQueue.this.replay(record);
+                }
+            });
+            compact();
+        }
+
+        /**
+         * @return true if the notification has been queued, false if it is a duplicate
+         */
+        synchronized boolean enqueue(String key, String executionXml, long receivedAt) {
+            if (pending.containsKey(key) || sentKeys.containsKey(key)) {
+                return false;
+            }
+            pending.put(key, new QueuedNotification(key, executionXml, receivedAt));
+            append(QUEUED, key, executionXml, String.valueOf(receivedAt));
+            if (pending.size() > MAX_QUEUE_SIZE) {
+                QueuedNotification oldest = pending.values().iterator().next();
+                LOGGER.warning("Too many notifications pending for the WebHook at " + peer + ", dropping "
+                               + oldest.key);
+                finished(oldest);
+            }
+            return true;
+        }
+
+        synchronized boolean isDue(long now) {
+            return !pending.isEmpty() && nextAttemptAt <= now;
+        }
+
+        /**
+         * @return the next notifications to send (none if the backoff is not over), after dropping the expired ones
+         */
+        synchronized List<QueuedNotification> nextBatch(long now) {
+            List<QueuedNotification> batch = new ArrayList<QueuedNotification>();
+            if (nextAttemptAt > now) {
+                return batch;
+            }
+            Iterator<QueuedNotification> notifications = new ArrayList<QueuedNotification>(pending.values())
+                    .iterator();
+            while (notifications.hasNext() && batch.size() < MAX_BATCH_SIZE) {
+                QueuedNotification notification = notifications.next();
+                if (now - notification.receivedAt > MAX_AGE_MILLIS) {
+                    LOGGER.warning("Dropping the notification " + notification.key + " for the WebHook at " + peer
+                                   + " (too old)");
+                    finished(notification);
+                } else {
+                    batch.add(notification);
+                }
+            }
+            return batch;
+        }
+
+        synchronized void sent(List<QueuedNotification> batch) {
+            attempts = 0;
+            nextAttemptAt = 0;
+            for (QueuedNotification notification : batch) {
+                finished(notification);
+            }
+        }
+
+        /**
+         * @return the number of consecutive failures
+         */
+        synchronized int failed() {
+            attempts++;
+            nextAttemptAt = System.currentTimeMillis() + RundeckNotificationSpool.backoffMillis(attempts);
+            return attempts;
+        }
+
+        synchronized int size() {
+            return pending.size();
+        }
+
+        synchronized void delete() {
+            pending.clear();
+            journal.delete();
+        }
+
+        private void finished(QueuedNotification notification) {
+            if (pending.remove(notification.key) != null) {
+                sentKeys.put(notification.key, Boolean.TRUE);
+                append(SENT, notification.key);
+                finishedRecords++;
+                if (finishedRecords > COMPACTION_THRESHOLD) {
+                    compact();
+                }
+            }
+        }
+
+        private void replay(String[] record) {
+            String key = RundeckJournal.decode(record[1]);
+            if (QUEUED.equals(record[0])) {
+                pending.put(key, new QueuedNotification(key,
+                                                        RundeckJournal.decode(record[2]),
+                                                        Long.parseLong(record[3])));
+            } else if (SENT.equals(record[0])) {
+                pending.remove(key);
+                sentKeys.put(key, Boolean.TRUE);
+            }
+        }
+
+        /**
+         * Rewrite the journal with only the pending notifications
+         */
+        private void compact() {
+            List<String> records = new ArrayList<String>();
+            for (QueuedNotification notification : pending.values()) {
+                records.add(RundeckJournal.record(QUEUED, notification.key, notification.executionXml,
+                                                  String.valueOf(notification.receivedAt)));
+            }
+            if (journal.compact(records)) {
+                finishedRecords = 0;
+            }
+        }
+
+        private void append(String... fields) {
+            journal.append(fields);
+        }
+    }
+
+    /**
+     * A notification waiting to be relayed
+     */
+    private static class QueuedNotification {
+
+        /** execution ID and status */
+        private final String key;
+
+        private final String executionXml;
+
+        private final long receivedAt;
+
+        private QueuedNotification(String key, String executionXml, long receivedAt) {
+            this.key = key;
+            this.executionXml = executionXml;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    /**
+     * Retry the notifications that could not be relayed (peer down), and the ones queued before a restart
+     */
+    @Extension
+    public static class RelayRetryWork extends AsyncPeriodicWork {
+
+        public RelayRetryWork() {
+            super("RunDeck WebHook relay");
+        }
+
+        @Override
+        public long getRecurrencePeriod() {
+            return 10 * 1000L;
+        }
+
+        @Override
+        protected void execute(TaskListener listener) {
+            RundeckPlugin plugin = Hudson.getInstance().getPlugin(RundeckPlugin.class);
+            RundeckDescriptor descriptor = Hudson.getInstance().getDescriptorByType(RundeckDescriptor.class);
+            if (plugin == null || plugin.getWebHookRelay() == null || descriptor == null) {
+                return;
+            }
+            plugin.getWebHookRelay().retry(descriptor.getConfiguration().getWebHookRelayPeers());
+        }
+    }
+}
@@ -1,11 +1,19 @@
 package org.jenkinsci.plugins.rundeck;
 
-import hudson.model.AbstractProject;
 import hudson.model.Hudson;
 import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import javax.servlet.http.HttpServletResponse;
 import org.apache.commons.io.IOUtils;
 import org.dom4j.Document;
+import org.dom4j.Node;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckDescriptor;
+import org.jenkinsci.plugins.rundeck.RundeckWebHookJournal.WebHookEvent;
 import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 import org.rundeck.api.domain.RundeckExecution;
@@ -20,25 +28,145 @@ import org.rundeck.api.parser.ParserHelper;
  */
 public class WebHookListener {
 
+    /** parser of an "execution" element */
+    private static final ExecutionParser EXECUTION_PARSER = new ExecutionParser();
+
+    /** Number of notifications remembered once received, to ignore the duplicates */
+    private static final int MAX_SEEN_KEYS = 1000;
+
+    /**
+     * keys (execution and status) of the last notifications received, oldest first : the same notification may be
+     * sent by RunDeck and relayed by a peer, or relayed by several peers
+     */
+    private final Map<String, Boolean> seenKeys = new LinkedHashMap<String, Boolean>() {
+
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+            return size() > MAX_SEEN_KEYS;
+        }
+    };
+
     public void doIndex(StaplerRequest request, StaplerResponse response) throws IOException {
-        // read request body / parse RunDeck execution
-        Document document = ParserHelper.loadDocument(request.getInputStream());
-        IOUtils.closeQuietly(request.getInputStream());
-        ExecutionParser parser = new ExecutionParser("notification/executions/execution");
-        RundeckExecution execution = parser.parseXmlNode(document);
+        RundeckMetrics metrics = RundeckMetrics.get();
+
+        // read request body / parse RunDeck executions (a relayed notification may contain several executions)
+        List<Node> executionNodes;
+        List<RundeckExecution> executions = new ArrayList<RundeckExecution>();
+        long parseStart = System.nanoTime();
+        try {
+            executionNodes = parseExecutionNodes(request.getInputStream());
+            for (Node executionNode : executionNodes) {
+                executions.add(EXECUTION_PARSER.parseXmlNode(executionNode));
+            }
+            if (executions.isEmpty()) {
+                throw new IllegalArgumentException("No execution in the notification !");
+            }
+        } catch (RuntimeException e) {
+            metrics.webHookParseFailures.increment();
+            WebHookEvent event = new WebHookEvent();
+            event.failed(e.toString(), System.nanoTime() - parseStart);
+            RundeckWebHookJournal.get().record(event);
+            throw e;
+        } finally {
+            metrics.webHookParseDuration.observeSince(parseStart);
+        }
+        long parseNanos = (System.nanoTime() - parseStart) / executions.size();
 
         // write a basic response
         response.setStatus(HttpServletResponse.SC_OK);
         response.setContentType("text/plain");
         response.getWriter().append("Thanks");
 
-        // notify all registered triggers
-        for (AbstractProject<?, ?> job : Hudson.getInstance().getItems(AbstractProject.class)) {
-            RundeckTrigger trigger = job.getTrigger(RundeckTrigger.class);
-            if (trigger != null) {
-                trigger.onNotification(execution);
+        // ignore the notifications already received (whatever the relay header says)
+        List<RundeckExecution> newExecutions = new ArrayList<RundeckExecution>();
+        List<Node> newExecutionNodes = new ArrayList<Node>();
+        for (int i = 0; i < executions.size(); i++) {
+            RundeckExecution execution = executions.get(i);
+            if (isNew(execution)) {
+                newExecutions.add(execution);
+                newExecutionNodes.add(executionNodes.get(i));
+            } else {
+                metrics.webHookDuplicates.increment();
+                WebHookEvent event = new WebHookEvent();
+                event.parsed(execution, parseNanos);
+                event.duplicate();
+                RundeckWebHookJournal.get().record(event);
             }
         }
+
+        // relay the notifications received from RunDeck to the other Jenkins instances (in background)
+        RundeckPlugin plugin = Hudson.getInstance().getPlugin(RundeckPlugin.class);
+        if (plugin != null && request.getHeader(RundeckWebHookRelay.RELAY_HEADER) == null) {
+            RundeckDescriptor descriptor = Hudson.getInstance().getDescriptorByType(RundeckDescriptor.class);
+            List<String> peers = descriptor != null ? descriptor.getConfiguration().getWebHookRelayPeers()
+                    : Collections.<String> emptyList();
+            for (int i = 0; i < newExecutions.size(); i++) {
+                RundeckExecution execution = newExecutions.get(i);
+                plugin.getWebHookRelay().relay(peers,
+                                               execution.getId(),
+                                               getStatus(execution),
+                                               newExecutionNodes.get(i).asXML());
+            }
+        }
+
+        for (RundeckExecution execution : newExecutions) {
+            WebHookEvent event = new WebHookEvent();
+            event.parsed(execution, parseNanos);
+
+            // the final status of a deployment triggered by Jenkins
+            if (plugin != null) {
+                plugin.getDeployments().finished(execution);
+            }
+
+            // notify all registered triggers (except the ones polling RunDeck, to avoid duplicate builds)
+            long dispatchStart = System.nanoTime();
+            int notified = 0;
+            for (RundeckTrigger trigger : RundeckTriggerRegistry.get().getWebHookTriggers()) {
+                notified++;
+                if (!trigger.shouldScheduleBuild(execution)) {
+                    continue;
+                }
+                boolean scheduled = trigger.scheduleBuild(execution);
+                if (scheduled) {
+                    metrics.webHookBuildsScheduled.increment();
+                }
+                event.matched(trigger.getProject().getFullName(), scheduled);
+            }
+            metrics.webHookFanOut.observe(notified);
+            metrics.webHookDispatchDuration.observeSince(dispatchStart);
+            RundeckWebHookJournal.get().record(event);
+        }
+    }
+
+    /**
+     * @return true if the notification of the given execution (and status) has not been received recently
+     */
+    private boolean isNew(RundeckExecution execution) {
+        String key = RundeckWebHookRelay.key(execution.getId(), getStatus(execution));
+        synchronized (seenKeys) {
+            return seenKeys.put(key, Boolean.TRUE) == null;
+        }
+    }
+
+    private static String getStatus(RundeckExecution execution) {
+        return execution.getStatus() != null ? execution.getStatus().toString() : null;
+    }
+
+    /**
+     * @param input stream of the notification XML - will be closed
+     * @return the "execution" elements of the notification (one for a notification sent by RunDeck, maybe more for a
+     *         notification relayed by another Jenkins instance)
+     */
+    @SuppressWarnings("unchecked")
+    static List<Node> parseExecutionNodes(InputStream input) {
+        try {
+            Document document = ParserHelper.loadDocument(input);
+            return document.selectNodes("notification/executions/execution");
+        } finally {
+            IOUtils.closeQuietly(input);
+        }
     }
 
 }
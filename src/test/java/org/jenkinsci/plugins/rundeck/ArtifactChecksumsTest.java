@@ -0,0 +1,94 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Run.Artifact;
+import hudson.tasks.ArtifactArchiver;
+import java.io.File;
+import java.io.IOException;
+import org.apache.commons.io.FileUtils;
+import org.jenkinsci.plugins.rundeck.ArtifactChecksums.Checksum;
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.TestBuilder;
+
+/**
+ * Test the {@link ArtifactChecksums}
+ */
+public class ArtifactChecksumsTest extends HudsonTestCase {
+
+    private static final String HELLO_SHA256 = "2cf24dba5fb0a30e26e83b2ac5b9e29e1b161e5c1fa7425e73043362938b9824";
+
+    private static final String HELLO_WORLD_SHA256 = "b94d27b9934d3e08a52e52d7da7dabfac484efe37a5380ee9088f7ace2efcde9";
+
+    public void testCache() throws Exception {
+        FreeStyleBuild build = createArchivedBuild("hello");
+        Artifact artifact = build.getArtifacts().get(0);
+        RundeckMetrics metrics = RundeckMetrics.get();
+        ArtifactChecksums checksums = new ArtifactChecksums();
+
+        long misses = metrics.checksumCacheMisses.getValue();
+        long hits = metrics.checksumCacheHits.getValue();
+        Checksum checksum = checksums.getChecksum(build, artifact);
+        assertEquals(HELLO_SHA256, checksum.getSha256());
+        assertEquals(5, checksum.getSize());
+        assertEquals(misses + 1, metrics.checksumCacheMisses.getValue());
+
+        // unchanged artifact : the checksum in memory is reused
+        assertSame(checksum, checksums.getChecksum(build, artifact));
+        assertEquals(misses + 1, metrics.checksumCacheMisses.getValue());
+        assertEquals(hits + 1, metrics.checksumCacheHits.getValue());
+
+        // and the one stored with the build, after a restart
+        Checksum stored = new ArtifactChecksums().getChecksum(build, artifact);
+        assertEquals(HELLO_SHA256, stored.getSha256());
+        assertEquals(misses + 1, metrics.checksumCacheMisses.getValue());
+        assertEquals(hits + 2, metrics.checksumCacheHits.getValue());
+
+        // changed artifact : the checksum is computed again
+        File file = artifact.getFile();
+        FileUtils.writeStringToFile(file, "hello world", "UTF-8");
+        assertEquals(HELLO_WORLD_SHA256, checksums.getChecksum(build, artifact).getSha256());
+        assertEquals(misses + 2, metrics.checksumCacheMisses.getValue());
+        assertEquals(HELLO_WORLD_SHA256, new ArtifactChecksums().getChecksum(build, artifact).getSha256());
+        assertEquals(misses + 2, metrics.checksumCacheMisses.getValue());
+
+        // same size, but a new date
+        FileUtils.writeStringToFile(file, "HELLO WORLD", "UTF-8");
+        file.setLastModified(file.lastModified() + 10000);
+        assertEquals(ArtifactChecksums.sha256(file), checksums.getChecksum(build, artifact).getSha256());
+        assertFalse(HELLO_WORLD_SHA256.equals(checksums.getChecksum(build, artifact).getSha256()));
+        assertEquals(misses + 3, metrics.checksumCacheMisses.getValue());
+    }
+
+    public void testFormat() throws Exception {
+        Checksum checksum = new Checksum(HELLO_SHA256, 5, 1310159014000L);
+        Checksum parsed = Checksum.parse(checksum.format());
+        assertEquals(HELLO_SHA256, parsed.getSha256());
+        assertTrue(parsed.matches(5, 1310159014000L));
+        assertFalse(parsed.matches(5, 1310159015000L));
+        assertFalse(parsed.matches(6, 1310159014000L));
+
+        assertNull(Checksum.parse(null));
+        assertNull(Checksum.parse(HELLO_SHA256));
+        assertNull(Checksum.parse(HELLO_SHA256 + " five 1310159014000"));
+    }
+
+    private FreeStyleBuild createArchivedBuild(final String content) throws Exception {
+        FreeStyleProject project = createFreeStyleProject();
+        project.getBuildersList().add(new TestBuilder() {
+
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace().child("target").mkdirs();
+                build.getWorkspace().child("target/my-webapp.war").write(content, "UTF-8");
+                return true;
+            }
+        });
+        project.getPublishersList().add(new ArtifactArchiver("target/*.war", null, false));
+        return assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+    }
+}
@@ -0,0 +1,197 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.tasks.ArtifactArchiver;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.rundeck.ArtifactDownloader.DownloadSlots;
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.TestBuilder;
+
+/**
+ * Test the {@link ArtifactDownloader}
+ */
+public class ArtifactDownloaderTest extends HudsonTestCase {
+
+    private static final String CONTENT = "0123456789";
+
+    public void testParseRange() throws Exception {
+        assertEquals(Arrays.toString(new long[] { 0, 9 }), parseRange("bytes=0-9", 10));
+        assertEquals(Arrays.toString(new long[] { 2, 5 }), parseRange("bytes=2-5", 10));
+        // the end is capped to the length of the file
+        assertEquals(Arrays.toString(new long[] { 2, 9 }), parseRange("bytes=2-42", 10));
+
+        // open-ended
+        assertEquals(Arrays.toString(new long[] { 4, 9 }), parseRange("bytes=4-", 10));
+        assertEquals(Arrays.toString(new long[] { 9, 9 }), parseRange(" bytes=9- ", 10));
+
+        // suffix : the last N bytes
+        assertEquals(Arrays.toString(new long[] { 7, 9 }), parseRange("bytes=-3", 10));
+        assertEquals(Arrays.toString(new long[] { 0, 9 }), parseRange("bytes=-42", 10));
+
+        // not satisfiable
+        assertNull(ArtifactDownloader.parseRange("bytes=10-", 10));
+        assertNull(ArtifactDownloader.parseRange("bytes=10-12", 10));
+        assertNull(ArtifactDownloader.parseRange("bytes=5-2", 10));
+        assertNull(ArtifactDownloader.parseRange("bytes=-0", 10));
+        assertNull(ArtifactDownloader.parseRange("bytes=-", 10));
+        assertNull(ArtifactDownloader.parseRange("bytes=0-", 0));
+        assertNull(ArtifactDownloader.parseRange("bytes=99999999999999999999-", 10));
+
+        // malformed or multiple ranges : the whole file is sent
+        assertEquals(0, ArtifactDownloader.parseRange("bytes=0-1,4-5", 10).length);
+        assertEquals(0, ArtifactDownloader.parseRange("items=0-1", 10).length);
+        assertEquals(0, ArtifactDownloader.parseRange("bytes=a-b", 10).length);
+        assertEquals(0, ArtifactDownloader.parseRange("", 10).length);
+    }
+
+    public void testDownload() throws Exception {
+        String url = getURL() + "plugin/rundeck/download/my-project/" + createArchivedBuild().getNumber()
+                     + "/target/my-webapp.war";
+
+        HttpURLConnection connection = open(url);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(CONTENT, read(connection));
+        assertEquals("10", connection.getHeaderField("Content-Length"));
+        assertEquals("bytes", connection.getHeaderField("Accept-Ranges"));
+        assertTrue(connection.getHeaderField("Cache-Control").startsWith("public"));
+        String etag = connection.getHeaderField("ETag");
+        assertNotNull(etag);
+
+        connection = open(url, "Range", "bytes=2-5");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 2-5/10", connection.getHeaderField("Content-Range"));
+        assertEquals("2345", read(connection));
+
+        connection = open(url, "Range", "bytes=-3");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("bytes 7-9/10", connection.getHeaderField("Content-Range"));
+        assertEquals("789", read(connection));
+
+        connection = open(url, "Range", "bytes=8-");
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("89", read(connection));
+
+        connection = open(url, "Range", "bytes=10-");
+        assertEquals(416, connection.getResponseCode());
+        assertEquals("bytes */10", connection.getHeaderField("Content-Range"));
+        connection.disconnect();
+
+        // the artifact has not changed
+        connection = open(url, "If-None-Match", etag);
+        assertEquals(304, connection.getResponseCode());
+        connection.disconnect();
+        connection = open(url, "If-None-Match", "\"other\", " + etag);
+        assertEquals(304, connection.getResponseCode());
+        connection.disconnect();
+        connection = open(url, "If-None-Match", "\"other\"");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(CONTENT, read(connection));
+
+        // resume only if the artifact is the same
+        connection = open(url, "Range", "bytes=5-", "If-Range", etag);
+        assertEquals(206, connection.getResponseCode());
+        assertEquals("56789", read(connection));
+        connection = open(url, "Range", "bytes=5-", "If-Range", "\"other\"");
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(CONTENT, read(connection));
+    }
+
+    public void testUnknownArtifact() throws Exception {
+        String url = getURL() + "plugin/rundeck/download/my-project/" + createArchivedBuild().getNumber() + "/";
+
+        assertEquals(404, getResponseCode(url + "target/unknown.war"));
+        assertEquals(404, getResponseCode(url + "target"));
+        // files of the build, outside of its artifacts
+        assertEquals(404, getResponseCode(url + "..%2Fbuild.xml"));
+        assertEquals(404, getResponseCode(url + "target%2F..%2F..%2Flog"));
+        assertEquals(404, getResponseCode(getURL() + "plugin/rundeck/download/my-project/42/target/my-webapp.war"));
+        assertEquals(404, getResponseCode(getURL() + "plugin/rundeck/download/unknown-project/1/target/my-webapp.war"));
+    }
+
+    public void testTooManyDownloads() throws Exception {
+        FreeStyleBuild build = createArchivedBuild();
+        String url = getURL() + "plugin/rundeck/download/my-project/" + build.getNumber() + "/target/my-webapp.war";
+        ArtifactDownloader downloader = hudson.getPlugin(RundeckPlugin.class).getDownload();
+        downloader.slotTimeoutSeconds = 1;
+        long rejected = RundeckMetrics.get().downloadsRejected.getValue();
+
+        // all the slots of the artifact are taken
+        File file = new File(build.getArtifactsDir(), "target/my-webapp.war").getCanonicalFile();
+        DownloadSlots slots = downloader.acquireSlots(file);
+        int permits = slots.semaphore.drainPermits();
+        try {
+            HttpURLConnection connection = open(url);
+            assertEquals(503, connection.getResponseCode());
+            assertEquals("1", connection.getHeaderField("Retry-After"));
+            connection.disconnect();
+            assertEquals(rejected + 1, RundeckMetrics.get().downloadsRejected.getValue());
+        } finally {
+            slots.semaphore.release(permits);
+            downloader.releaseSlots(file, slots);
+        }
+
+        HttpURLConnection connection = open(url);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals(CONTENT, read(connection));
+    }
+
+    private FreeStyleBuild createArchivedBuild() throws Exception {
+        FreeStyleProject project = createFreeStyleProject("my-project");
+        project.getBuildersList().add(new TestBuilder() {
+
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                build.getWorkspace().child("target").mkdirs();
+                build.getWorkspace().child("target/my-webapp.war").write(CONTENT, "UTF-8");
+                return true;
+            }
+        });
+        project.getPublishersList().add(new ArtifactArchiver("target/*.war", null, false));
+        return assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+    }
+
+    private static String parseRange(String range, long length) {
+        return Arrays.toString(ArtifactDownloader.parseRange(range, length));
+    }
+
+    /**
+     * @param headers names and values of the request headers
+     */
+    private static HttpURLConnection open(String url, String... headers) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        for (int i = 0; i < headers.length; i += 2) {
+            connection.setRequestProperty(headers[i], headers[i + 1]);
+        }
+        return connection;
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        InputStream input = connection.getInputStream();
+        try {
+            return IOUtils.toString(input, "UTF-8");
+        } finally {
+            IOUtils.closeQuietly(input);
+            connection.disconnect();
+        }
+    }
+
+    private static int getResponseCode(String url) throws IOException {
+        HttpURLConnection connection = open(url);
+        try {
+            return connection.getResponseCode();
+        } finally {
+            connection.disconnect();
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.Launcher;
+import hudson.model.AbstractBuild;
+import hudson.model.BuildListener;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.util.OneShotEvent;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import net.sf.json.JSONObject;
+import org.apache.commons.io.IOUtils;
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.TestBuilder;
+
+/**
+ * Test the {@link BuildCompletionListener}
+ */
+public class BuildCompletionListenerTest extends HudsonTestCase {
+
+    private final OneShotEvent started = new OneShotEvent();
+
+    private final OneShotEvent release = new OneShotEvent();
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+
+    /** clients already waiting before the test */
+    private long waiters;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        waiters = RundeckMetrics.get().completionWaiters.getValue();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        // don't leave a blocked build behind us
+        release.signal();
+        executor.shutdownNow();
+        super.tearDown();
+    }
+
+    public void testLongPollWokenByCompletion() throws Exception {
+        FreeStyleBuild build = startBlockedBuild();
+        Future<String> response = request("plugin/rundeck/completion/?project=my-project&build=" + build.getNumber()
+                                          + "&timeout=60");
+        waitForWaiters(1);
+        assertFalse(response.isDone());
+
+        release.signal();
+        JSONObject json = JSONObject.fromObject(response.get(30, TimeUnit.SECONDS));
+        assertTrue(json.getBoolean("completed"));
+        JSONObject result = json.getJSONArray("builds").getJSONObject(0);
+        assertEquals("my-project", result.getString("project"));
+        assertEquals(build.getNumber(), result.getInt("number"));
+        assertTrue(result.getBoolean("completed"));
+        assertEquals("SUCCESS", result.getString("result"));
+        waitForWaiters(0);
+    }
+
+    public void testStreamWokenByCompletion() throws Exception {
+        FreeStyleBuild build = startBlockedBuild();
+        Future<String> response = request("plugin/rundeck/completion/?project=my-project&build=" + build.getNumber()
+                                          + "&timeout=60&stream=true");
+        waitForWaiters(1);
+        assertFalse(response.isDone());
+
+        release.signal();
+        String events = response.get(30, TimeUnit.SECONDS);
+        assertTrue(events, events.startsWith(": waiting for 1 builds\n\n"));
+        assertTrue(events, events.contains("event: completed\ndata: {\"project\":\"my-project\",\"number\":"
+                                           + build.getNumber() + ",\"completed\":true,\"result\":\"SUCCESS\""));
+        assertFalse(events, events.contains("event: timeout"));
+        waitForWaiters(0);
+    }
+
+    public void testLongPollTimeout() throws Exception {
+        FreeStyleBuild build = startBlockedBuild();
+        long start = System.currentTimeMillis();
+        Future<String> response = request("plugin/rundeck/completion/?project=my-project&build=" + build.getNumber()
+                                          + "&timeout=1");
+
+        JSONObject json = JSONObject.fromObject(response.get(30, TimeUnit.SECONDS));
+        long duration = System.currentTimeMillis() - start;
+        assertTrue(String.valueOf(duration), duration >= 1000 && duration < 10000);
+        assertFalse(json.getBoolean("completed"));
+        JSONObject result = json.getJSONArray("builds").getJSONObject(0);
+        assertEquals(build.getNumber(), result.getInt("number"));
+        assertFalse(result.getBoolean("completed"));
+        assertFalse(result.has("result"));
+        // the waiter is gone, and the build is still running
+        waitForWaiters(0);
+        assertTrue(build.isBuilding());
+    }
+
+    public void testStreamTimeout() throws Exception {
+        FreeStyleBuild build = startBlockedBuild();
+        long start = System.currentTimeMillis();
+        Future<String> response = request("plugin/rundeck/completion/?project=my-project&build=" + build.getNumber()
+                                          + "&timeout=1&stream=true");
+
+        String events = response.get(30, TimeUnit.SECONDS);
+        long duration = System.currentTimeMillis() - start;
+        assertTrue(String.valueOf(duration), duration >= 1000 && duration < 10000);
+        assertTrue(events, events.endsWith("event: timeout\ndata: 1\n\n"));
+        assertFalse(events, events.contains("event: completed"));
+        waitForWaiters(0);
+        assertTrue(build.isBuilding());
+    }
+
+    /**
+     * Start a build of "my-project", which runs until {@link #release} is signaled
+     */
+    private FreeStyleBuild startBlockedBuild() throws Exception {
+        FreeStyleProject project = createFreeStyleProject("my-project");
+        project.getBuildersList().add(new TestBuilder() {
+
+            @Override
+            public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, BuildListener listener)
+                    throws InterruptedException, IOException {
+                started.signal();
+                release.block();
+                return true;
+            }
+        });
+        project.scheduleBuild2(0);
+        started.block();
+        FreeStyleBuild build = project.getLastBuild();
+        assertTrue(build.isBuilding());
+        return build;
+    }
+
+    /**
+     * Send a GET request in the background
+     * 
+     * @return the body of the response
+     */
+    private Future<String> request(String path) throws Exception {
+        final URL url = new URL(getURL() + path);
+        return executor.submit(new Callable<String>() {
+
+            public String call() throws Exception {
+                HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+                assertEquals(200, connection.getResponseCode());
+                InputStream input = connection.getInputStream();
+                try {
+                    return IOUtils.toString(input, "UTF-8");
+                } finally {
+                    IOUtils.closeQuietly(input);
+                    connection.disconnect();
+                }
+            }
+        });
+    }
+
+    /**
+     * Wait until the given number of clients of the test are waiting for builds, so that we know the endpoint is
+     * blocked
+     */
+    private void waitForWaiters(long count) throws InterruptedException {
+        long expected = waiters + count;
+        long deadline = System.currentTimeMillis() + 30000;
+        while (RundeckMetrics.get().completionWaiters.getValue() != expected) {
+            assertTrue("Waiters : " + RundeckMetrics.get().completionWaiters.getValue() + " instead of " + expected,
+                       System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+}
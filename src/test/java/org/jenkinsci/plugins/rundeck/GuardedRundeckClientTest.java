@@ -0,0 +1,200 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import junit.framework.TestCase;
+import org.jenkinsci.plugins.rundeck.GuardedRundeckClient.RundeckUnavailableException;
+import org.jenkinsci.plugins.rundeck.RundeckCircuitBreaker.State;
+import org.rundeck.api.RundeckApiException;
+import org.rundeck.api.RundeckClient;
+
+/**
+ * Test the {@link GuardedRundeckClient}
+ */
+public class GuardedRundeckClientTest extends TestCase {
+
+    private static final Callable<String> SUCCESS = new Callable<String>() {
+
+        public String call() {
+            return "ok";
+        }
+    };
+
+    private static final Callable<String> CONNECTION_ERROR = new Callable<String>() {
+
+        public String call() {
+            throw new RundeckApiException("Failed to execute an HTTP GET", new IOException("Connection refused"));
+        }
+    };
+
+    private static final Callable<String> API_ERROR = new Callable<String>() {
+
+        public String call() {
+            throw new RundeckApiException("No job with ID 42 !");
+        }
+    };
+
+    public void testIsUnavailable() throws Exception {
+        assertTrue(GuardedRundeckClient.isUnavailable(new RundeckUnavailableException("circuit breaker is open")));
+        assertTrue(GuardedRundeckClient.isUnavailable(new RundeckApiException("Failed to execute an HTTP GET",
+                                                                              new IOException("Connection reset"))));
+        assertTrue(GuardedRundeckClient.isUnavailable(new RundeckApiException("Invalid HTTP response '503' for "
+                                                                              + "http://localhost:4440/api/1/jobs")));
+        assertFalse(GuardedRundeckClient.isUnavailable(new RundeckApiException("No job with ID 42 !")));
+        assertFalse(GuardedRundeckClient.isUnavailable(new RundeckApiException("Login failed !",
+                                                                               new IllegalStateException())));
+    }
+
+    public void testFailuresOpenCircuitBreaker() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(2, 60000);
+        GuardedRundeckClient rundeck = createClient(circuitBreaker, new RundeckRateLimiter(0, 1), 0);
+
+        assertEquals("ok", rundeck.call("success", SUCCESS));
+        callAndExpectFailure(rundeck, CONNECTION_ERROR);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        callAndExpectFailure(rundeck, CONNECTION_ERROR);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        // fail fast, without calling RunDeck
+        long rejected = RundeckMetrics.get().clientRejectedCalls.getValue();
+        try {
+            rundeck.call("success", SUCCESS);
+            fail("The call should fail fast");
+        } catch (RundeckUnavailableException e) {
+            assertTrue(e.getMessage().contains("circuit breaker is open"));
+        }
+        assertEquals(rejected + 1, RundeckMetrics.get().clientRejectedCalls.getValue());
+    }
+
+    public void testApiErrorsDoNotOpenCircuitBreaker() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(2, 60000);
+        GuardedRundeckClient rundeck = createClient(circuitBreaker, new RundeckRateLimiter(0, 1), 0);
+
+        for (int i = 0; i < 5; i++) {
+            callAndExpectFailure(rundeck, API_ERROR);
+        }
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+
+        // an API error also proves that RunDeck is alive
+        callAndExpectFailure(rundeck, CONNECTION_ERROR);
+        callAndExpectFailure(rundeck, API_ERROR);
+        callAndExpectFailure(rundeck, CONNECTION_ERROR);
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    public void testHalfOpenProbe() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 0);
+        GuardedRundeckClient rundeck = createClient(circuitBreaker, new RundeckRateLimiter(0, 1), 0);
+
+        callAndExpectFailure(rundeck, CONNECTION_ERROR);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        // failed probe
+        callAndExpectFailure(rundeck, CONNECTION_ERROR);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        // successful probe
+        assertEquals("ok", rundeck.call("success", SUCCESS));
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    public void testInterruptedProbe() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 0);
+        GuardedRundeckClient rundeck = createClient(circuitBreaker, new RundeckRateLimiter(0, 1), 0);
+
+        callAndExpectFailure(rundeck, CONNECTION_ERROR);
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        // interrupted probes : neither a success nor a failure, and another probe is allowed
+        callAndExpectFailure(rundeck, new Callable<String>() {
+
+            public String call() {
+                throw new RundeckApiException("Interrupted while calling the RunDeck API : getJob",
+                                              new InterruptedException());
+            }
+        });
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        callAndExpectFailure(rundeck, new Callable<String>() {
+
+            public String call() throws Exception {
+                throw new InterruptedException();
+            }
+        });
+        assertTrue(Thread.interrupted());
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+
+        assertEquals("ok", rundeck.call("success", SUCCESS));
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    public void testRateLimit() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 60000);
+        GuardedRundeckClient rundeck = createClient(circuitBreaker, new RundeckRateLimiter(0.01, 2), 0);
+
+        assertEquals("ok", rundeck.call("success", SUCCESS));
+        assertEquals("ok", rundeck.call("success", SUCCESS));
+        try {
+            rundeck.call("success", SUCCESS);
+            fail("The call should be rejected by the rate limiter");
+        } catch (RundeckUnavailableException e) {
+            assertTrue(e.getMessage().contains("rate limit reached"));
+        }
+
+        // a rejected call is not a failure of RunDeck
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    public void testTimeout() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 60000);
+        GuardedRundeckClient rundeck = createClient(circuitBreaker, new RundeckRateLimiter(0, 1), 200);
+        long timeouts = RundeckMetrics.get().clientTimeouts.getValue();
+
+        long start = System.currentTimeMillis();
+        try {
+            rundeck.call("stalled", new Callable<String>() {
+
+                public String call() throws Exception {
+                    Thread.sleep(60000);
+                    return "too late";
+                }
+            });
+            fail("The call should time out");
+        } catch (RundeckUnavailableException e) {
+            assertTrue(e.getMessage().contains("after 200 ms"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 5000);
+        assertEquals(timeouts + 1, RundeckMetrics.get().clientTimeouts.getValue());
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    public void testTimeoutNotReached() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 60000);
+        GuardedRundeckClient rundeck = createClient(circuitBreaker, new RundeckRateLimiter(0, 1), 5000);
+
+        assertEquals("ok", rundeck.call("success", SUCCESS));
+        try {
+            rundeck.call("apiError", API_ERROR);
+            fail("The API error should be propagated");
+        } catch (RundeckUnavailableException e) {
+            fail("An API error is not a timeout");
+        } catch (RundeckApiException e) {
+            assertEquals("No job with ID 42 !", e.getMessage());
+        }
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    private void callAndExpectFailure(GuardedRundeckClient rundeck, Callable<String> call) {
+        try {
+            rundeck.call("failure", call);
+            fail("The call should fail");
+        } catch (RundeckApiException e) {
+            // expected
+        }
+    }
+
+    private GuardedRundeckClient createClient(RundeckCircuitBreaker circuitBreaker, RundeckRateLimiter rateLimiter,
+            long callTimeoutMillis) {
+        RundeckClient rundeck = new RundeckClient("http://localhost:4440", "admin", "admin");
+        return new GuardedRundeckClient(rundeck, circuitBreaker, rateLimiter, callTimeoutMillis);
+    }
+}
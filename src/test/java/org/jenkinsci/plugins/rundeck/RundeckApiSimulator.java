@@ -0,0 +1,629 @@
+package org.jenkinsci.plugins.rundeck;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringEscapeUtils;
+import org.apache.commons.lang.StringUtils;
+import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckExecution.ExecutionStatus;
+
+/**
+ * Embedded, in-process stand-in for the RunDeck HTTP API : login, ping, job / jobs, job run, execution, execution
+ * abort, execution output and running executions endpoints, plus a WebHook emitter. Latency, error-rate and execution
+ * duration are driven by a {@link Profile}, so that the plugin can be exercised against real HTTP calls and slow or
+ * failing responses.
+ */
+public class RundeckApiSimulator {
+
+    public static final String LOGIN = "admin";
+
+    public static final String PASSWORD = "admin";
+
+    private static final Pattern API_PATTERN = Pattern.compile("^/api/\\d+(/.*)$");
+
+    private static final Pattern JOB_RUN_PATTERN = Pattern.compile("^/job/([^/]+)/run/?$");
+
+    private static final Pattern JOB_PATTERN = Pattern.compile("^/job/([^/]+)/?$");
+
+    private static final Pattern EXECUTION_ABORT_PATTERN = Pattern.compile("^/execution/(\\d+)/abort/?$");
+
+    private static final Pattern EXECUTION_PATTERN = Pattern.compile("^/execution/(\\d+)/?$");
+
+    private static final Pattern EXECUTION_OUTPUT_PATTERN = Pattern.compile("^/execution/(\\d+)/output/?$");
+
+    /** Interval between 2 lines of output of a simulated execution */
+    private static final long OUTPUT_LINE_INTERVAL_MILLIS = 100;
+
+    private final Random random = new Random();
+
+    private final Map<String, SimulatedJob> jobs = new ConcurrentHashMap<String, SimulatedJob>();
+
+    private final Map<Long, SimulatedExecution> executions = new ConcurrentHashMap<Long, SimulatedExecution>();
+
+    private final AtomicLong executionIds = new AtomicLong();
+
+    private final AtomicLong requests = new AtomicLong();
+
+    private final AtomicLong errors = new AtomicLong();
+
+    private final AtomicLong webHooksSent = new AtomicLong();
+
+    private volatile Profile profile;
+
+    private volatile String webHookUrl;
+
+    private HttpServer server;
+
+    private ExecutorService requestExecutor;
+
+    private ScheduledExecutorService scheduler;
+
+    public RundeckApiSimulator(Profile profile) {
+        super();
+        this.profile = profile;
+    }
+
+    /**
+     * Start the HTTP server, on a random free port
+     */
+    public void start() throws IOException {
+        requestExecutor = Executors.newCachedThreadPool();
+        scheduler = Executors.newScheduledThreadPool(2);
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new SimulatorHandler());
+        server.setExecutor(requestExecutor);
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(0);
+        }
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+        if (requestExecutor != null) {
+            requestExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * @return the base url of the simulated RunDeck instance
+     */
+    public String getUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * @return a real {@link RundeckClient}, talking to this simulator over HTTP
+     */
+    public RundeckClient createClient() {
+        return new RundeckClient(getUrl(), LOGIN, PASSWORD);
+    }
+
+    public void addJob(String id, String project, String group, String name) {
+        jobs.put(id, new SimulatedJob(id, project, group, name));
+    }
+
+    public void setProfile(Profile profile) {
+        this.profile = profile;
+    }
+
+    /**
+     * @param webHookUrl to notify when an execution ends - null to disable the notifications
+     */
+    public void setWebHookUrl(String webHookUrl) {
+        this.webHookUrl = webHookUrl;
+    }
+
+    public long getRequestsCount() {
+        return requests.get();
+    }
+
+    public long getErrorsCount() {
+        return errors.get();
+    }
+
+    public long getExecutionsCount() {
+        return executions.size();
+    }
+
+    public long getWebHooksSentCount() {
+        return webHooksSent.get();
+    }
+
+    /**
+     * Start a new execution of the given job, as if it was started from the RunDeck GUI
+     * 
+     * @return the ID of the new execution
+     */
+    public Long runJob(String jobId) {
+        SimulatedJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new IllegalArgumentException("Unknown job : " + jobId);
+        }
+        return startExecution(job, "").id;
+    }
+
+    /**
+     * Send a WebHook notification for the given execution, to the given url
+     * 
+     * @return the HTTP status code of the response
+     */
+    public int emitWebHook(String url, Long executionId) throws IOException {
+        SimulatedExecution execution = executions.get(executionId);
+        if (execution == null) {
+            throw new IllegalArgumentException("Unknown execution : " + executionId);
+        }
+        String status = execution.getStatus().toString().toLowerCase();
+        StringBuilder xml = new StringBuilder();
+        String trigger = ExecutionStatus.SUCCEEDED.equals(execution.getStatus()) ? "success" : "failure";
+        xml.append("<notification trigger=\"").append(trigger);
+        xml.append("\" status=\"").append(status).append("\" executionId=\"").append(execution.id).append("\">");
+        xml.append("<executions count=\"1\">");
+        appendExecution(xml, execution);
+        xml.append("</executions></notification>");
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setRequestProperty("Content-Type", "text/xml;charset=UTF-8");
+            OutputStream output = connection.getOutputStream();
+            try {
+                output.write(xml.toString().getBytes("UTF-8"));
+            } finally {
+                IOUtils.closeQuietly(output);
+            }
+            int code = connection.getResponseCode();
+            IOUtils.closeQuietly(code < 400 ? connection.getInputStream() : connection.getErrorStream());
+            webHooksSent.incrementAndGet();
+            return code;
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private SimulatedExecution startExecution(SimulatedJob job, String argString) {
+        Profile currentProfile = profile;
+        long duration = currentProfile.executionDurationMillis + jitter(currentProfile.executionDurationJitterMillis);
+        boolean willFail = random.nextDouble() < currentProfile.executionFailureRate;
+        final SimulatedExecution execution = new SimulatedExecution(executionIds.incrementAndGet(),
+                                                                    job,
+                                                                    argString,
+                                                                    duration,
+                                                                    willFail);
+        executions.put(execution.id, execution);
+        execution.end = scheduler.schedule(new Runnable() {
+
+            public void run() {
+                notifyWebHook(execution);
+            }
+        }, duration, TimeUnit.MILLISECONDS);
+        return execution;
+    }
+
+    private void notifyWebHook(SimulatedExecution execution) {
+        String url = webHookUrl;
+        if (url != null) {
+            try {
+                emitWebHook(url, execution.id);
+            } catch (IOException e) {
+                // the receiver is down, like a real RunDeck we don't retry
+            }
+        }
+    }
+
+    private long jitter(long maxJitter) {
+        return maxJitter > 0 ? (long) (random.nextDouble() * maxJitter) : 0;
+    }
+
+    private void appendExecution(StringBuilder xml, SimulatedExecution execution) {
+        xml.append("<execution id=\"").append(execution.id).append("\" href=\"").append(getUrl());
+        xml.append("/execution/follow/").append(execution.id).append("\" status=\"");
+        xml.append(execution.getStatus().toString().toLowerCase()).append("\">");
+        xml.append("<user>").append(LOGIN).append("</user>");
+        xml.append("<date-started unixtime=\"").append(execution.startedAt).append("\">");
+        xml.append(new Date(execution.startedAt)).append("</date-started>");
+        if (!ExecutionStatus.RUNNING.equals(execution.getStatus())) {
+            long endedAt = execution.getEndedAt();
+            xml.append("<date-ended unixtime=\"").append(endedAt).append("\">");
+            xml.append(new Date(endedAt)).append("</date-ended>");
+        }
+        if (execution.abortedBy != null) {
+            xml.append("<abortedby>").append(escape(execution.abortedBy)).append("</abortedby>");
+        }
+        xml.append("<job id=\"").append(escape(execution.job.id)).append("\">");
+        appendJobFields(xml, execution.job);
+        xml.append("</job>");
+        xml.append("<description>").append(escape(execution.argString)).append("</description>");
+        xml.append("</execution>");
+    }
+
+    private void appendJobFields(StringBuilder xml, SimulatedJob job) {
+        xml.append("<name>").append(escape(job.name)).append("</name>");
+        xml.append("<group>").append(escape(job.group)).append("</group>");
+        xml.append("<project>").append(escape(job.project)).append("</project>");
+        xml.append("<description>").append(escape(job.name)).append("</description>");
+    }
+
+    private static String escape(String value) {
+        return StringEscapeUtils.escapeXml(StringUtils.defaultString(value));
+    }
+
+    /**
+     * Latency, error-rate and execution-duration profile of the simulated RunDeck instance
+     */
+    public static class Profile {
+
+        private long latencyMillis;
+
+        private long latencyJitterMillis;
+
+        private double errorRate;
+
+        private long executionDurationMillis = 1000;
+
+        private long executionDurationJitterMillis;
+
+        private double executionFailureRate;
+
+        /**
+         * @param latencyMillis fixed latency added to every HTTP response
+         * @param latencyJitterMillis random latency (between 0 and this value) added to every HTTP response
+         */
+        public Profile latency(long latencyMillis, long latencyJitterMillis) {
+            this.latencyMillis = latencyMillis;
+            this.latencyJitterMillis = latencyJitterMillis;
+            return this;
+        }
+
+        /**
+         * @param errorRate ratio (between 0 and 1) of HTTP requests answered with an HTTP 500 error
+         */
+        public Profile errorRate(double errorRate) {
+            this.errorRate = errorRate;
+            return this;
+        }
+
+        /**
+         * @param durationMillis fixed duration of every execution
+         * @param durationJitterMillis random duration (between 0 and this value) added to every execution
+         * @param failureRate ratio (between 0 and 1) of executions ending with the FAILED status
+         */
+        public Profile executions(long durationMillis, long durationJitterMillis, double failureRate) {
+            this.executionDurationMillis = durationMillis;
+            this.executionDurationJitterMillis = durationJitterMillis;
+            this.executionFailureRate = failureRate;
+            return this;
+        }
+
+        @Override
+        public String toString() {
+            return "Profile [latencyMillis=" + latencyMillis + ", latencyJitterMillis=" + latencyJitterMillis
+                   + ", errorRate=" + errorRate + ", executionDurationMillis=" + executionDurationMillis
+                   + ", executionDurationJitterMillis=" + executionDurationJitterMillis + ", executionFailureRate="
+                   + executionFailureRate + "]";
+        }
+    }
+
+    private static class SimulatedJob {
+
+        private final String id;
+
+        private final String project;
+
+        private final String group;
+
+        private final String name;
+
+        private SimulatedJob(String id, String project, String group, String name) {
+            this.id = id;
+            this.project = project;
+            this.group = group;
+            this.name = name;
+        }
+    }
+
+    private static class SimulatedExecution {
+
+        private final Long id;
+
+        private final SimulatedJob job;
+
+        private final String argString;
+
+        private final long startedAt;
+
+        private final long plannedEndedAt;
+
+        private final boolean willFail;
+
+        private volatile String abortedBy;
+
+        private volatile long abortedAt;
+
+        private volatile ScheduledFuture<?> end;
+
+        private SimulatedExecution(Long id, SimulatedJob job, String argString, long duration, boolean willFail) {
+            this.id = id;
+            this.job = job;
+            this.argString = argString;
+            this.startedAt = System.currentTimeMillis();
+            this.plannedEndedAt = startedAt + duration;
+            this.willFail = willFail;
+        }
+
+        private ExecutionStatus getStatus() {
+            if (abortedBy != null) {
+                return ExecutionStatus.ABORTED;
+            }
+            if (System.currentTimeMillis() < plannedEndedAt) {
+                return ExecutionStatus.RUNNING;
+            }
+            return willFail ? ExecutionStatus.FAILED : ExecutionStatus.SUCCEEDED;
+        }
+
+        private long getEndedAt() {
+            return abortedBy != null ? abortedAt : plannedEndedAt;
+        }
+    }
+
+    private class SimulatorHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            requests.incrementAndGet();
+            try {
+                Profile currentProfile = profile;
+                Thread.sleep(currentProfile.latencyMillis + jitter(currentProfile.latencyJitterMillis));
+                if (random.nextDouble() < currentProfile.errorRate) {
+                    errors.incrementAndGet();
+                    respond(exchange, 500, "text/plain", "Simulated RunDeck error");
+                    return;
+                }
+                dispatch(exchange);
+            } catch (InterruptedException e) {
+                respond(exchange, 503, "text/plain", "Simulator is stopping");
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void dispatch(HttpExchange exchange) throws IOException {
+            String path = exchange.getRequestURI().getPath();
+            Map<String, String> parameters = parseParameters(exchange.getRequestURI().getRawQuery());
+
+            if ("/".equals(path) || "".equals(path)) {
+                respond(exchange, 200, "text/html", "<html><body>RunDeck API simulator</body></html>");
+                return;
+            }
+            if (path.startsWith("/j_security_check")) {
+                Map<String, String> form = parseParameters(IOUtils.toString(exchange.getRequestBody(), "UTF-8"));
+                if (LOGIN.equals(form.get("j_username")) && PASSWORD.equals(form.get("j_password"))) {
+                    respond(exchange, 200, "text/html", "<html><body>Welcome</body></html>");
+                } else {
+                    respond(exchange, 200, "text/html", "<html><form action=\"j_security_check\"></form></html>");
+                }
+                return;
+            }
+
+            Matcher api = API_PATTERN.matcher(path);
+            if (!api.matches()) {
+                respond(exchange, 404, "text/plain", "Not found : " + path);
+                return;
+            }
+            String apiPath = api.group(1);
+
+            Matcher matcher = JOB_RUN_PATTERN.matcher(apiPath);
+            if (matcher.matches()) {
+                SimulatedJob job = jobs.get(matcher.group(1));
+                if (job == null) {
+                    respondError(exchange, "Job ID does not exist: " + matcher.group(1));
+                } else {
+                    String argString = StringUtils.defaultString(parameters.get("argString"));
+                    respondExecutions(exchange, startExecution(job, argString));
+                }
+                return;
+            }
+            matcher = JOB_PATTERN.matcher(apiPath);
+            if (matcher.matches()) {
+                SimulatedJob job = jobs.get(matcher.group(1));
+                if (job == null) {
+                    respondError(exchange, "Job ID does not exist: " + matcher.group(1));
+                } else {
+                    StringBuilder xml = new StringBuilder("<joblist><job>");
+                    xml.append("<id>").append(escape(job.id)).append("</id>");
+                    xml.append("<name>").append(escape(job.name)).append("</name>");
+                    xml.append("<group>").append(escape(job.group)).append("</group>");
+                    xml.append("<description>").append(escape(job.name)).append("</description>");
+                    xml.append("<context><project>").append(escape(job.project)).append("</project></context>");
+                    xml.append("</job></joblist>");
+                    respond(exchange, 200, "text/xml", xml.toString());
+                }
+                return;
+            }
+            if (apiPath.startsWith("/jobs")) {
+                List<SimulatedJob> found = new ArrayList<SimulatedJob>();
+                for (SimulatedJob job : jobs.values()) {
+                    if (StringUtils.equals(job.project, parameters.get("project"))
+                        && (parameters.get("jobFilter") == null || StringUtils.equals(job.name,
+                                                                                       parameters.get("jobFilter")))
+                        && (parameters.get("groupPath") == null || StringUtils.equals(job.group,
+                                                                                       parameters.get("groupPath")))) {
+                        found.add(job);
+                    }
+                }
+                StringBuilder xml = new StringBuilder("<result success=\"true\" apiversion=\"2\">");
+                xml.append("<jobs count=\"").append(found.size()).append("\">");
+                for (SimulatedJob job : found) {
+                    xml.append("<job id=\"").append(escape(job.id)).append("\">");
+                    appendJobFields(xml, job);
+                    xml.append("</job>");
+                }
+                xml.append("</jobs></result>");
+                respond(exchange, 200, "text/xml", xml.toString());
+                return;
+            }
+            matcher = EXECUTION_ABORT_PATTERN.matcher(apiPath);
+            if (matcher.matches()) {
+                SimulatedExecution execution = executions.get(Long.valueOf(matcher.group(1)));
+                if (execution == null) {
+                    respondError(exchange, "Execution ID does not exist: " + matcher.group(1));
+                    return;
+                }
+                String abortStatus = "failed";
+                if (ExecutionStatus.RUNNING.equals(execution.getStatus())) {
+                    execution.abortedAt = System.currentTimeMillis();
+                    execution.abortedBy = LOGIN;
+                    if (execution.end != null && execution.end.cancel(false)) {
+                        notifyWebHook(execution);
+                    }
+                    abortStatus = "aborted";
+                }
+                StringBuilder xml = new StringBuilder("<result success=\"true\" apiversion=\"2\">");
+                xml.append("<abort status=\"").append(abortStatus).append("\">");
+                xml.append("<execution id=\"").append(execution.id).append("\" status=\"");
+                xml.append(execution.getStatus().toString().toLowerCase()).append("\"/>");
+                xml.append("</abort></result>");
+                respond(exchange, 200, "text/xml", xml.toString());
+                return;
+            }
+            matcher = EXECUTION_OUTPUT_PATTERN.matcher(apiPath);
+            if (matcher.matches()) {
+                SimulatedExecution execution = executions.get(Long.valueOf(matcher.group(1)));
+                if (execution == null) {
+                    respondError(exchange, "Execution ID does not exist: " + matcher.group(1));
+                } else {
+                    respondOutput(exchange, execution, parameters);
+                }
+                return;
+            }
+            matcher = EXECUTION_PATTERN.matcher(apiPath);
+            if (matcher.matches()) {
+                SimulatedExecution execution = executions.get(Long.valueOf(matcher.group(1)));
+                if (execution == null) {
+                    respondError(exchange, "Execution ID does not exist: " + matcher.group(1));
+                } else {
+                    respondExecutions(exchange, execution);
+                }
+                return;
+            }
+            if (apiPath.startsWith("/executions/running")) {
+                List<SimulatedExecution> running = new ArrayList<SimulatedExecution>();
+                for (SimulatedExecution execution : executions.values()) {
+                    if (StringUtils.equals(execution.job.project, parameters.get("project"))
+                        && ExecutionStatus.RUNNING.equals(execution.getStatus())) {
+                        running.add(execution);
+                    }
+                }
+                respondExecutions(exchange, running.toArray(new SimulatedExecution[running.size()]));
+                return;
+            }
+            respond(exchange, 404, "text/plain", "Not found : " + path);
+        }
+
+        private void respondExecutions(HttpExchange exchange, SimulatedExecution... executionsToWrite)
+                throws IOException {
+            StringBuilder xml = new StringBuilder("<result success=\"true\" apiversion=\"2\">");
+            xml.append("<executions count=\"").append(executionsToWrite.length).append("\">");
+            for (SimulatedExecution execution : executionsToWrite) {
+                appendExecution(xml, execution);
+            }
+            xml.append("</executions></result>");
+            respond(exchange, 200, "text/xml", xml.toString());
+        }
+
+        /**
+         * One line of output every {@link #OUTPUT_LINE_INTERVAL_MILLIS} since the start of the execution, the offset
+         * being the number of bytes of output already sent
+         */
+        private void respondOutput(HttpExchange exchange, SimulatedExecution execution, Map<String, String> parameters)
+                throws IOException {
+            boolean completed = !ExecutionStatus.RUNNING.equals(execution.getStatus());
+            long produced = (Math.min(System.currentTimeMillis(), execution.getEndedAt()) - execution.startedAt)
+                            / OUTPUT_LINE_INTERVAL_MILLIS;
+            long requestedOffset = Long.parseLong(StringUtils.defaultIfEmpty(parameters.get("offset"), "0"));
+            int maxLines = Integer.parseInt(StringUtils.defaultIfEmpty(parameters.get("maxlines"), "1000"));
+
+            StringBuilder entries = new StringBuilder();
+            long offset = 0;
+            int lines = 0;
+            for (long line = 1; line <= produced; line++) {
+                String message = "Deploying step " + line + " of " + execution.job.name;
+                int length = message.getBytes("UTF-8").length + 1;
+                if (offset >= requestedOffset) {
+                    if (lines >= maxLines) {
+                        completed = false;
+                        break;
+                    }
+                    entries.append("<entry time=\"00:00:00\" level=\"NORMAL\" node=\"localhost\" log=\"");
+                    entries.append(escape(message)).append("\"/>");
+                    lines++;
+                }
+                offset += length;
+            }
+            StringBuilder xml = new StringBuilder("<result success=\"true\" apiversion=\"5\">");
+            xml.append("<output><id>").append(execution.id).append("</id>");
+            xml.append("<offset>").append(Math.max(offset, requestedOffset)).append("</offset>");
+            xml.append("<completed>").append(completed).append("</completed>");
+            xml.append("<execCompleted>").append(completed).append("</execCompleted>");
+            xml.append("<entries>").append(entries).append("</entries>");
+            xml.append("</output></result>");
+            respond(exchange, 200, "text/xml", xml.toString());
+        }
+
+        private void respondError(HttpExchange exchange, String message) throws IOException {
+            respond(exchange, 200, "text/xml", "<result error=\"true\" apiversion=\"2\"><error><message>"
+                                               + escape(message) + "</message></error></result>");
+        }
+
+        private void respond(HttpExchange exchange, int code, String contentType, String body) throws IOException {
+            byte[] bytes = body.getBytes("UTF-8");
+            exchange.getResponseHeaders().set("Content-Type", contentType + ";charset=UTF-8");
+            exchange.sendResponseHeaders(code, bytes.length);
+            OutputStream output = exchange.getResponseBody();
+            try {
+                output.write(bytes);
+            } finally {
+                IOUtils.closeQuietly(output);
+            }
+        }
+
+        private Map<String, String> parseParameters(String query) throws UnsupportedEncodingException {
+            Map<String, String> parameters = new HashMap<String, String>();
+            if (StringUtils.isBlank(query)) {
+                return parameters;
+            }
+            for (String pair : StringUtils.split(query, '&')) {
+                String key = StringUtils.substringBefore(pair, "=");
+                String value = StringUtils.substringAfter(pair, "=");
+                parameters.put(URLDecoder.decode(key, "UTF-8"), URLDecoder.decode(value, "UTF-8"));
+            }
+            return parameters;
+        }
+    }
+}
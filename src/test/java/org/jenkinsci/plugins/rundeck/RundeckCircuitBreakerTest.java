@@ -0,0 +1,109 @@
+package org.jenkinsci.plugins.rundeck;
+
+import junit.framework.TestCase;
+import org.jenkinsci.plugins.rundeck.RundeckCircuitBreaker.State;
+
+/**
+ * Test the {@link RundeckCircuitBreaker}
+ */
+public class RundeckCircuitBreakerTest extends TestCase {
+
+    public void testOpensAfterThreshold() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(3, 60000);
+
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+
+        circuitBreaker.onFailure();
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertEquals(State.OPEN.ordinal(), RundeckMetrics.get().circuitBreakerState.getValue());
+    }
+
+    public void testSuccessResetsFailures() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(2, 60000);
+
+        circuitBreaker.onFailure();
+        circuitBreaker.onSuccess();
+        circuitBreaker.onFailure();
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+    }
+
+    public void testFailFastWhileOpen() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 60000);
+        circuitBreaker.onFailure();
+
+        for (int i = 0; i < 10; i++) {
+            assertFalse(circuitBreaker.allowRequest());
+        }
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    public void testSingleProbeSucceeds() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 0);
+        circuitBreaker.onFailure();
+        assertEquals(State.OPEN, circuitBreaker.getState());
+
+        // the open duration is over : a single probe is allowed
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+        assertFalse(circuitBreaker.allowRequest());
+
+        circuitBreaker.onSuccess();
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+
+    public void testSingleProbeFails() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(3, 0);
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+        circuitBreaker.onFailure();
+
+        assertTrue(circuitBreaker.allowRequest());
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+
+        // a failed probe opens the circuit again, without waiting for the threshold
+        circuitBreaker.onFailure();
+        assertEquals(State.OPEN, circuitBreaker.getState());
+    }
+
+    public void testAbandonedProbe() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 0);
+        circuitBreaker.onFailure();
+        assertTrue(circuitBreaker.allowRequest());
+        assertFalse(circuitBreaker.allowRequest());
+
+        // neither a success nor a failure : still half-open, and another probe is allowed
+        circuitBreaker.onAbandoned();
+        assertEquals(State.HALF_OPEN, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    public void testFailedProbeKeepsCircuitOpen() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 200);
+        circuitBreaker.onFailure();
+        assertFalse(circuitBreaker.allowRequest());
+
+        Thread.sleep(300);
+        assertTrue(circuitBreaker.allowRequest());
+        circuitBreaker.onFailure();
+
+        // open for another period
+        assertEquals(State.OPEN, circuitBreaker.getState());
+        assertFalse(circuitBreaker.allowRequest());
+    }
+
+    public void testDisabled() throws Exception {
+        RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(0, 60000);
+        for (int i = 0; i < 100; i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(State.CLOSED, circuitBreaker.getState());
+        assertTrue(circuitBreaker.allowRequest());
+    }
+}
@@ -0,0 +1,82 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.util.Date;
+import junit.framework.TestCase;
+import org.rundeck.api.domain.RundeckExecution;
+
+/**
+ * Test the {@link RundeckExecutionFilter}
+ */
+public class RundeckExecutionFilterTest extends TestCase {
+
+    public void testBlankExpression() throws Exception {
+        assertNull(RundeckExecutionFilter.compile(null));
+        assertNull(RundeckExecutionFilter.compile("  "));
+    }
+
+    public void testTextFields() throws Exception {
+        RundeckExecution execution = createExecution("deploy-bot", "Deploy (dry-run) of the app", 45000L);
+
+        assertTrue(matches("startedBy == DEPLOY-BOT", execution));
+        assertFalse(matches("startedBy != \"deploy-bot\"", execution));
+        assertTrue(matches("startedBy ^= deploy", execution));
+        assertTrue(matches("startedBy $= -bot", execution));
+        assertTrue(matches("description *= \"(DRY-RUN)\"", execution));
+        assertFalse(matches("description *= \"release\"", execution));
+        assertTrue(matches("abortedBy == \"\"", execution));
+    }
+
+    public void testDuration() throws Exception {
+        RundeckExecution execution = createExecution("admin", null, 45000L);
+
+        assertTrue(matches("duration >= 30s", execution));
+        assertTrue(matches("duration > 30", execution));
+        assertFalse(matches("duration < 45000ms", execution));
+        assertTrue(matches("duration <= 1m", execution));
+        assertFalse(matches("duration == 1h", execution));
+
+        RundeckExecution running = createExecution("admin", null, null);
+        assertFalse(matches("duration >= 0", running));
+        assertFalse(matches("duration != 0", running));
+    }
+
+    public void testBooleanOperators() throws Exception {
+        RundeckExecution execution = createExecution("deploy-bot", "Deploy (dry-run) of the app", 45000L);
+
+        assertFalse(matches("startedBy != deploy-bot and duration >= 30s", execution));
+        assertTrue(matches("startedBy != deploy-bot or duration >= 30s", execution));
+        assertTrue(matches("not startedBy == admin", execution));
+        assertFalse(matches("duration > 1m and (startedBy == admin or startedBy == deploy-bot)", execution));
+        assertTrue(matches("startedBy == admin or duration > 30s and not description *= release", execution));
+        assertTrue(matches("startedBy == \"and\" or description ^= deploy", execution));
+    }
+
+    public void testInvalidExpressions() throws Exception {
+        for (String expression : new String[] { "startedBy", "startedBy ==", "user == admin",
+                "duration ^= 30", "duration > soon", "startedBy < admin", "(startedBy == admin",
+                "startedBy == admin)", "startedBy == \"admin", "startedBy == admin and" }) {
+            try {
+                RundeckExecutionFilter.compile(expression);
+                fail("should have failed : " + expression);
+            } catch (IllegalArgumentException e) {
+                assertNotNull(e.getMessage());
+            }
+        }
+    }
+
+    private boolean matches(String expression, RundeckExecution execution) {
+        return RundeckExecutionFilter.compile(expression).matches(execution);
+    }
+
+    private RundeckExecution createExecution(String startedBy, String description, Long durationMillis) {
+        RundeckExecution execution = new RundeckExecution();
+        execution.setId(1L);
+        execution.setStartedBy(startedBy);
+        execution.setDescription(description);
+        execution.setStartedAt(new Date(1310159014640L));
+        if (durationMillis != null) {
+            execution.setEndedAt(new Date(1310159014640L + durationMillis));
+        }
+        return execution;
+    }
+}
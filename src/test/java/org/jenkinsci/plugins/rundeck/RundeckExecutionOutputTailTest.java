@@ -0,0 +1,69 @@
+package org.jenkinsci.plugins.rundeck;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.PrintStream;
+import java.net.ServerSocket;
+import junit.framework.TestCase;
+import org.jenkinsci.plugins.rundeck.GuardedRundeckClient.RundeckUnavailableException;
+import org.rundeck.api.RundeckClient;
+
+/**
+ * Test the {@link RundeckExecutionOutputTail}
+ */
+public class RundeckExecutionOutputTailTest extends TestCase {
+
+    public void testStalledRundeck() throws Exception {
+        // accepts the connections (in the backlog), but never answers
+        ServerSocket server = new ServerSocket(0);
+        try {
+            GuardedRundeckClient rundeck = createClient(server, new RundeckCircuitBreaker(5, 60000), 500);
+            RundeckExecutionOutputTail tail = createTail(rundeck);
+            long timeouts = RundeckMetrics.get().clientTimeouts.getValue();
+            long start = System.currentTimeMillis();
+            try {
+                tail.poll();
+                fail("The tail should give up");
+            } catch (RundeckUnavailableException e) {
+                assertTrue(e.getMessage().contains("after 500 ms"));
+            } finally {
+                tail.close();
+            }
+            assertTrue(System.currentTimeMillis() - start < 5000);
+            assertEquals(timeouts + 1, RundeckMetrics.get().clientTimeouts.getValue());
+        } finally {
+            server.close();
+        }
+    }
+
+    public void testOpenCircuitBreaker() throws Exception {
+        ServerSocket server = new ServerSocket(0);
+        try {
+            RundeckCircuitBreaker circuitBreaker = new RundeckCircuitBreaker(1, 60000);
+            circuitBreaker.onFailure();
+            RundeckExecutionOutputTail tail = createTail(createClient(server, circuitBreaker, 500));
+            try {
+                tail.poll();
+                fail("The tail should fail fast");
+            } catch (RundeckUnavailableException e) {
+                assertTrue(e.getMessage().contains("circuit breaker is open"));
+            } finally {
+                tail.close();
+            }
+        } finally {
+            server.close();
+        }
+    }
+
+    private GuardedRundeckClient createClient(ServerSocket server, RundeckCircuitBreaker circuitBreaker,
+            long callTimeoutMillis) {
+        RundeckClient rundeck = new RundeckClient("http://localhost:" + server.getLocalPort(), "admin", "admin");
+        return new GuardedRundeckClient(rundeck, circuitBreaker, new RundeckRateLimiter(0, 1), callTimeoutMillis);
+    }
+
+    private RundeckExecutionOutputTail createTail(RundeckClient rundeck) throws Exception {
+        File outputFile = File.createTempFile("rundeck-execution-", ".log.gz");
+        outputFile.deleteOnExit();
+        return new RundeckExecutionOutputTail(rundeck, 1L, new PrintStream(new ByteArrayOutputStream()), outputFile);
+    }
+}
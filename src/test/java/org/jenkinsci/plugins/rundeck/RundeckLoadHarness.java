@@ -0,0 +1,197 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.jenkinsci.plugins.rundeck.RundeckApiSimulator.Profile;
+import org.jvnet.hudson.test.HudsonTestCase;
+import org.jvnet.hudson.test.MockBuilder;
+
+/**
+ * Load-test harness : drives many concurrent builds (with a {@link RundeckNotifier} waiting for the RunDeck execution)
+ * and many WebHook notifications (for projects with a {@link RundeckTrigger}) against the {@link RundeckApiSimulator},
+ * and reports the throughput and the executor occupancy.<br>
+ * Not part of the regular test run (its name doesn't match the surefire patterns), run it with :
+ * "mvn test -Dtest=RundeckLoadHarness", and tune it with the following system properties : rundeck.load.builds,
+ * rundeck.load.executors, rundeck.load.webhooks, rundeck.load.webhookThreads, rundeck.load.latency,
+ * rundeck.load.latencyJitter, rundeck.load.errorRate, rundeck.load.duration, rundeck.load.durationJitter
+ */
+public class RundeckLoadHarness extends HudsonTestCase {
+
+    private static final int BUILDS = Integer.getInteger("rundeck.load.builds", 50);
+
+    private static final int EXECUTORS = Integer.getInteger("rundeck.load.executors", 10);
+
+    private static final int WEBHOOKS = Integer.getInteger("rundeck.load.webhooks", 500);
+
+    private static final int WEBHOOK_THREADS = Integer.getInteger("rundeck.load.webhookThreads", 20);
+
+    private static final int TRIGGERED_PROJECTS = 10;
+
+    private static final long SAMPLING_PERIOD = 100;
+
+    private RundeckApiSimulator simulator;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        Profile profile = new Profile().latency(Long.getLong("rundeck.load.latency", 50L),
+                                                Long.getLong("rundeck.load.latencyJitter", 100L))
+                                       .errorRate(Double.parseDouble(System.getProperty("rundeck.load.errorRate", "0")))
+                                       .executions(Long.getLong("rundeck.load.duration", 2000L),
+                                                   Long.getLong("rundeck.load.durationJitter", 3000L),
+                                                   0.05);
+        System.out.println("RunDeck simulator : " + profile);
+        simulator = new RundeckApiSimulator(profile);
+        simulator.start();
+        simulator.addJob("1", "load", "deploy", "deploy-app");
+        hudson.setNumExecutors(EXECUTORS);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        simulator.stop();
+        super.tearDown();
+    }
+
+    public void testNotifierLoad() throws Exception {
+        RundeckNotifier notifier = new RundeckNotifier("1", "build=$BUILD_NUMBER", null, null, true, false);
+        notifier.getDescriptor().setRundeckInstance(simulator.createClient());
+
+        List<Future<FreeStyleBuild>> builds = new ArrayList<Future<FreeStyleBuild>>();
+        ExecutorOccupancySampler sampler = new ExecutorOccupancySampler();
+        sampler.start();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < BUILDS; i++) {
+            FreeStyleProject project = createFreeStyleProject("notifier-load-" + i);
+            project.getBuildersList().add(new MockBuilder(Result.SUCCESS));
+            project.getPublishersList().add(notifier);
+            builds.add(project.scheduleBuild2(0));
+        }
+
+        int succeeded = 0;
+        for (Future<FreeStyleBuild> build : builds) {
+            if (Result.SUCCESS.equals(build.get().getResult())) {
+                succeeded++;
+            }
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        sampler.stop();
+
+        System.out.println("Notifier load : " + BUILDS + " builds on " + EXECUTORS + " executors in " + elapsed
+                           + " ms (" + throughput(BUILDS, elapsed) + " builds/s), " + succeeded + " succeeded");
+        System.out.println("Executor occupancy : average " + sampler.getAverageBusy() + " / max "
+                           + sampler.getMaxBusy() + " busy executors (of " + EXECUTORS + ")");
+        System.out.println("RunDeck simulator : " + simulator.getRequestsCount() + " requests, "
+                           + simulator.getErrorsCount() + " simulated errors, " + simulator.getExecutionsCount()
+                           + " executions");
+        assertEquals(BUILDS, simulator.getExecutionsCount());
+    }
+
+    public void testWebHookLoad() throws Exception {
+        for (int i = 0; i < TRIGGERED_PROJECTS; i++) {
+            FreeStyleProject project = createFreeStyleProject("trigger-load-" + i);
+            RundeckTrigger trigger = new RundeckTrigger(false, null, null);
+            project.addTrigger(trigger);
+            trigger.start(project, true);
+        }
+
+        final String webHookUrl = getURL() + "plugin/rundeck/webhook/";
+        final List<Long> executionIds = new ArrayList<Long>();
+        for (int i = 0; i < WEBHOOKS; i++) {
+            executionIds.add(simulator.runJob("1"));
+        }
+
+        final AtomicInteger next = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(WEBHOOK_THREADS);
+        List<Future<Void>> senders = new ArrayList<Future<Void>>();
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < WEBHOOK_THREADS; i++) {
+            senders.add(pool.submit(new Callable<Void>() {
+
+                public Void call() throws Exception {
+                    int idx;
+                    while ((idx = next.getAndIncrement()) < executionIds.size()) {
+                        if (simulator.emitWebHook(webHookUrl, executionIds.get(idx)) != 200) {
+                            failures.incrementAndGet();
+                        }
+                    }
+                    return null;
+                }
+            }));
+        }
+        for (Future<Void> sender : senders) {
+            sender.get();
+        }
+        long elapsed = System.currentTimeMillis() - start;
+        pool.shutdown();
+
+        System.out.println("WebHook load : " + WEBHOOKS + " notifications from " + WEBHOOK_THREADS + " threads in "
+                           + elapsed + " ms (" + throughput(WEBHOOKS, elapsed) + " notifications/s), " + failures.get()
+                           + " failures, " + hudson.getQueue().getItems().length + " builds in the queue");
+        assertEquals(0, failures.get());
+    }
+
+    private static long throughput(int count, long elapsedMillis) {
+        return elapsedMillis > 0 ? count * 1000L / elapsedMillis : count;
+    }
+
+    /**
+     * Samples the number of busy executors of the master, in a background thread
+     */
+    private class ExecutorOccupancySampler implements Runnable {
+
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private Thread thread;
+
+        private long samples;
+
+        private long busyTotal;
+
+        private int maxBusy;
+
+        public void start() {
+            running.set(true);
+            thread = new Thread(this, "executor-occupancy-sampler");
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        public void stop() throws InterruptedException {
+            running.set(false);
+            thread.join();
+        }
+
+        public void run() {
+            while (running.get()) {
+                int busy = hudson.toComputer().countBusy();
+                samples++;
+                busyTotal += busy;
+                maxBusy = Math.max(maxBusy, busy);
+                try {
+                    Thread.sleep(SAMPLING_PERIOD);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        public double getAverageBusy() {
+            return samples > 0 ? (double) busyTotal / samples : 0;
+        }
+
+        public int getMaxBusy() {
+            return maxBusy;
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package org.jenkinsci.plugins.rundeck;
+
+import hudson.model.Hudson;
+import hudson.security.GlobalMatrixAuthorizationStrategy;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+import javax.management.ReflectionException;
+import org.apache.commons.codec.binary.Base64;
+import org.apache.commons.io.IOUtils;
+import org.jenkinsci.plugins.rundeck.RundeckMetrics.Counter;
+import org.jenkinsci.plugins.rundeck.RundeckMetrics.Gauge;
+import org.jenkinsci.plugins.rundeck.RundeckMetrics.Histogram;
+import org.jvnet.hudson.test.HudsonTestCase;
+
+/**
+ * Test the {@link RundeckMetrics}
+ */
+public class RundeckMetricsTest extends HudsonTestCase {
+
+    /** a sample line of the Prometheus text format : name, optional labels, value */
+    private static final Pattern SAMPLE = Pattern.compile("^[a-zA-Z_:][a-zA-Z0-9_:]*(\\{[a-z]+=\"[^\"]*\"\\})? "
+                                                          + "(-?[0-9]+(\\.[0-9]+)?(E-?[0-9]+)?|[+-]Inf|NaN)$");
+
+    public void testPrometheusFormat() throws Exception {
+        RundeckMetrics metrics = new RundeckMetrics();
+        Counter counter = metrics.counter("test_calls_total", "Number of test calls");
+        counter.increment();
+        counter.add(2);
+        Gauge gauge = metrics.gauge("test_queued", "Number of queued tests");
+        gauge.set(5);
+        gauge.add(-2);
+        Histogram histogram = metrics.histogram("test_duration_seconds", "Duration of the tests", new double[] {
+                0.5, 1, 2.5 });
+        histogram.observe(0.25);
+        histogram.observe(0.5);
+        histogram.observe(2);
+        histogram.observe(42);
+
+        List<String> lines = writePrometheus(metrics);
+        for (String line : lines) {
+            assertTrue(line, line.startsWith("# HELP ") || line.startsWith("# TYPE ")
+                             || SAMPLE.matcher(line).matches());
+        }
+
+        assertContains(lines, "# HELP test_calls_total Number of test calls",
+                       "# TYPE test_calls_total counter",
+                       "test_calls_total 3");
+        assertContains(lines, "# HELP test_queued Number of queued tests", "# TYPE test_queued gauge", "test_queued 3");
+        // cumulative buckets, "le" is inclusive
+        assertContains(lines, "# HELP test_duration_seconds Duration of the tests",
+                       "# TYPE test_duration_seconds histogram",
+                       "test_duration_seconds_bucket{le=\"0.5\"} 2",
+                       "test_duration_seconds_bucket{le=\"1\"} 2",
+                       "test_duration_seconds_bucket{le=\"2.5\"} 3",
+                       "test_duration_seconds_bucket{le=\"+Inf\"} 4",
+                       "test_duration_seconds_sum 44.75",
+                       "test_duration_seconds_count 4");
+
+        // each sample belongs to a declared metric (including the ones of the plugin)
+        Set<String> declared = new HashSet<String>();
+        for (String line : lines) {
+            if (line.startsWith("# TYPE ")) {
+                declared.add(line.split(" ")[2]);
+            } else if (!line.startsWith("#")) {
+                String name = line.replaceAll("(_bucket\\{.*|_sum|_count)? .*$", "");
+                assertTrue(line, declared.contains(name));
+            }
+        }
+    }
+
+    public void testMBean() throws Exception {
+        RundeckMetrics.get().pollFailures.increment();
+        RundeckMetricsMBean mbean = new RundeckMetricsMBean(RundeckMetrics.get());
+        assertEquals(RundeckMetrics.get().pollFailures.getValue(),
+                     ((Number) mbean.getAttribute("rundeck_poll_failures_total")).longValue());
+        try {
+            mbean.invoke("reset", new Object[0], new String[0]);
+            fail("There is no operation on the metrics");
+        } catch (ReflectionException e) {
+            assertTrue(e.getTargetException() instanceof NoSuchMethodException);
+        }
+    }
+
+    public void testFormat() throws Exception {
+        assertEquals("1", RundeckMetrics.format(1.0));
+        assertEquals("0.25", RundeckMetrics.format(0.25));
+        assertEquals("+Inf", RundeckMetrics.format(Double.POSITIVE_INFINITY));
+        assertEquals("-Inf", RundeckMetrics.format(Double.NEGATIVE_INFINITY));
+        assertEquals("1.0E15", RundeckMetrics.format(1e15));
+    }
+
+    public void testEndpoint() throws Exception {
+        RundeckMetrics.get().pollFailures.increment();
+        String url = getURL() + "plugin/rundeck/metrics/";
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(connection.getContentType().startsWith("text/plain; version=0.0.4"));
+        String body = read(connection);
+        assertTrue(body.contains("# TYPE rundeck_poll_failures_total counter\n"));
+        assertTrue(body.contains("\nrundeck_poll_failures_total " + RundeckMetrics.get().pollFailures.getValue()
+                                 + "\n"));
+    }
+
+    public void testEndpointPermission() throws Exception {
+        hudson.setSecurityRealm(createDummySecurityRealm());
+        GlobalMatrixAuthorizationStrategy authorization = new GlobalMatrixAuthorizationStrategy();
+        authorization.add(Hudson.READ, "alice");
+        hudson.setAuthorizationStrategy(authorization);
+        String url = getURL() + "plugin/rundeck/metrics/";
+
+        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
+        assertEquals(403, connection.getResponseCode());
+        connection.disconnect();
+
+        connection = (HttpURLConnection) new URL(url).openConnection();
+        connection.setRequestProperty("Authorization", "Basic "
+                                                       + new String(Base64.encodeBase64("alice:alice".getBytes())));
+        assertEquals(200, connection.getResponseCode());
+        assertTrue(read(connection).contains("# TYPE rundeck_plugin_ready gauge\n"));
+    }
+
+    private static List<String> writePrometheus(RundeckMetrics metrics) throws IOException {
+        StringWriter writer = new StringWriter();
+        metrics.writePrometheus(writer);
+        assertTrue(writer.toString().endsWith("\n"));
+        return Arrays.asList(writer.toString().split("\n"));
+    }
+
+    /**
+     * Assert that the given lines contain the expected lines, consecutively
+     */
+    private static void assertContains(List<String> lines, String... expected) {
+        int start = lines.indexOf(expected[0]);
+        assertTrue(expected[0], start >= 0);
+        int end = Math.min(lines.size(), start + expected.length);
+        assertEquals(Arrays.asList(expected), new ArrayList<String>(lines.subList(start, end)));
+    }
+
+    private static String read(HttpURLConnection connection) throws IOException {
+        InputStream input = connection.getInputStream();
+        try {
+            return IOUtils.toString(input, "UTF-8");
+        } finally {
+            IOUtils.closeQuietly(input);
+            connection.disconnect();
+        }
+    }
+}
@@ -1,31 +1,62 @@
 package org.jenkinsci.plugins.rundeck;
 
+import hudson.Extension;
 import hudson.FilePath;
+import hudson.Util;
 import hudson.model.Action;
 import hudson.model.Build;
 import hudson.model.FreeStyleBuild;
+import hudson.model.Hudson;
 import hudson.model.Result;
 import hudson.model.Cause.UpstreamCause;
 import hudson.model.FreeStyleProject;
 import hudson.model.Run;
+import hudson.model.Queue.BuildableItem;
+import hudson.model.queue.QueueSorter;
 import hudson.scm.SubversionSCM;
+import hudson.security.ACL;
+import hudson.security.GlobalMatrixAuthorizationStrategy;
+import hudson.util.FormValidation;
 import java.io.File;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.StringWriter;
+import java.net.URLEncoder;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 import java.util.Properties;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.zip.GZIPInputStream;
+import org.acegisecurity.Authentication;
+import org.acegisecurity.context.SecurityContextHolder;
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.time.DateUtils;
+import org.jenkinsci.plugins.rundeck.RundeckDeploymentLedger.Deployment;
+import org.jenkinsci.plugins.rundeck.RundeckNotificationSpool.SpoolEntry;
+import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckDescriptor;
 import org.jenkinsci.plugins.rundeck.RundeckNotifier.RundeckExecutionBuildBadgeAction;
+import org.jenkinsci.plugins.rundeck.RundeckRevisionIndex.Revision;
+import org.jenkinsci.plugins.rundeck.RundeckTriggerPoller.PollCursor;
+import org.jenkinsci.plugins.rundeck.RundeckWebHookJournal.WebHookEvent;
 import org.junit.Assert;
 import org.jvnet.hudson.test.HudsonHomeLoader.CopyExisting;
 import org.jvnet.hudson.test.HudsonTestCase;
 import org.jvnet.hudson.test.MockBuilder;
 import org.rundeck.api.RundeckApiException;
 import org.rundeck.api.RundeckClient;
+import org.rundeck.api.domain.RundeckEvent;
+import org.rundeck.api.domain.RundeckEvent.EventStatus;
 import org.rundeck.api.domain.RundeckExecution;
 import org.rundeck.api.domain.RundeckExecution.ExecutionStatus;
+import org.rundeck.api.domain.RundeckHistory;
 import org.rundeck.api.domain.RundeckJob;
+import org.rundeck.api.domain.RundeckNode;
+import org.rundeck.api.domain.RundeckProject;
 import org.tmatesoft.svn.core.SVNDepth;
 import org.tmatesoft.svn.core.wc.SVNClientManager;
 
@@ -36,6 +67,14 @@ import org.tmatesoft.svn.core.wc.SVNClientManager;
  */
 public class RundeckNotifierTest extends HudsonTestCase {
 
+    /** runs the tasks in the calling thread */
+    private static final Executor SAME_THREAD = new Executor() {
+
+        public void execute(Runnable command) {
+            command.run();
+        }
+    };
+
     public void testCommitWithoutTag() throws Exception {
         RundeckNotifier notifier = new RundeckNotifier("1", createOptions(), null, "", false, false);
         notifier.getDescriptor().setRundeckInstance(new MockRundeckClient());
@@ -255,6 +294,793 @@ public class RundeckNotifierTest extends HudsonTestCase {
         assertTrue(s.contains("Notification succeeded !"));
         assertTrue(s.contains("Waiting for RunDeck execution to finish..."));
         assertTrue(s.contains("RunDeck execution #1 finished in 3 minutes 27 seconds, with status : SUCCEEDED"));
+
+        RundeckExecutionBuildBadgeAction badge = build.getAction(RundeckExecutionBuildBadgeAction.class);
+        assertEquals(Long.valueOf(1), badge.getExecutionId());
+        assertEquals("SUCCEEDED", badge.getStatus());
+        assertEquals(Long.valueOf(207000), badge.getExecutionDurationMillis());
+        assertNotNull(badge.getHealthCheckMillis());
+        assertNotNull(badge.getTriggerMillis());
+    }
+
+    public void testWaitForRundeckJobOverHttp() throws Exception {
+        RundeckApiSimulator simulator = new RundeckApiSimulator(new RundeckApiSimulator.Profile().latency(50, 50)
+                                                                                                 .executions(1000,
+                                                                                                             0,
+                                                                                                             0));
+        simulator.start();
+        try {
+            simulator.addJob("1", "my-project", "main-group", "my-job");
+            RundeckNotifier notifier = new RundeckNotifier("1", createOptions(), null, "", true, false);
+            notifier.getDescriptor().setRundeckInstance(simulator.createClient());
+
+            FreeStyleProject project = createFreeStyleProject();
+            project.getBuildersList().add(new MockBuilder(Result.SUCCESS));
+            project.getPublishersList().add(notifier);
+
+            FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+            assertTrue(buildContainsAction(build, RundeckExecutionBuildBadgeAction.class));
+            String s = FileUtils.readFileToString(build.getLogFile());
+            assertTrue(s.contains("Notification succeeded ! Execution #1, at " + simulator.getUrl()));
+            assertTrue(s.contains("Waiting for RunDeck execution to finish..."));
+            assertTrue(s.contains("RunDeck execution #1 finished in"));
+            assertTrue(s.contains("with status : SUCCEEDED"));
+            assertTrue(s.contains("[localhost] Deploying step 1 of my-job"));
+            assertTrue(s.contains("[localhost] Deploying step 10 of my-job"));
+            assertFalse(s.contains("Unable to get the output of the RunDeck execution"));
+
+            File output = new File(build.getArtifactsDir(), "rundeck-execution-1.log.gz");
+            assertTrue(output.exists());
+            GZIPInputStream input = new GZIPInputStream(new FileInputStream(output));
+            try {
+                List<String> lines = IOUtils.readLines(input, "UTF-8");
+                assertEquals(10, lines.size());
+                assertEquals("[localhost] Deploying step 1 of my-job", lines.get(0));
+            } finally {
+                IOUtils.closeQuietly(input);
+            }
+        } finally {
+            simulator.stop();
+        }
+    }
+
+    public void testAbortedBuildAbortsRundeckJob() throws Exception {
+        RundeckApiSimulator simulator = new RundeckApiSimulator(new RundeckApiSimulator.Profile().executions(600000,
+                                                                                                             0,
+                                                                                                             0));
+        simulator.start();
+        try {
+            simulator.addJob("1", "my-project", "main-group", "my-job");
+            RundeckNotifier notifier = new RundeckNotifier("1", null, null, "", true, true);
+            notifier.getDescriptor().setRundeckInstance(simulator.createClient());
+
+            FreeStyleProject project = createFreeStyleProject();
+            project.getBuildersList().add(new MockBuilder(Result.SUCCESS));
+            project.getPublishersList().add(notifier);
+
+            Future<FreeStyleBuild> future = project.scheduleBuild2(0);
+            FreeStyleBuild build = null;
+            for (int i = 0; i < 300; i++) {
+                build = project.getLastBuild();
+                if (build != null
+                    && FileUtils.readFileToString(build.getLogFile()).contains("Waiting for RunDeck execution")) {
+                    break;
+                }
+                Thread.sleep(100);
+            }
+            assertNotNull(build);
+            build.getExecutor().interrupt();
+
+            build = future.get();
+            assertEquals(Result.ABORTED, build.getResult());
+            String s = FileUtils.readFileToString(build.getLogFile());
+            assertTrue(s.contains("Aborting RunDeck execution #1..."));
+            assertTrue(s.contains("RunDeck execution #1 abort status : ABORTED"));
+            assertEquals("ABORTED", build.getAction(RundeckExecutionBuildBadgeAction.class).getStatus());
+        } finally {
+            simulator.stop();
+        }
+    }
+
+    public void testReuseRunningExecution() throws Exception {
+        RundeckApiSimulator simulator = new RundeckApiSimulator(new RundeckApiSimulator.Profile().executions(3000,
+                                                                                                             0,
+                                                                                                             0));
+        simulator.start();
+        try {
+            simulator.addJob("1", "my-project", "main-group", "my-job");
+            hudson.setNumExecutors(2);
+            FreeStyleProject project1 = createFreeStyleProject();
+            FreeStyleProject project2 = createFreeStyleProject();
+            for (FreeStyleProject project : Arrays.asList(project1, project2)) {
+                RundeckNotifier notifier = new RundeckNotifier("1", "option1=value", null, "", true, true, null, true);
+                notifier.getDescriptor().setRundeckInstance(simulator.createClient());
+                project.getPublishersList().add(notifier);
+            }
+
+            Future<FreeStyleBuild> future1 = project1.scheduleBuild2(0);
+            Future<FreeStyleBuild> future2 = project2.scheduleBuild2(0);
+            FreeStyleBuild build1 = assertBuildStatusSuccess(future1.get());
+            FreeStyleBuild build2 = assertBuildStatusSuccess(future2.get());
+
+            assertEquals(1, simulator.getExecutionsCount());
+            String s = FileUtils.readFileToString(build1.getLogFile())
+                       + FileUtils.readFileToString(build2.getLogFile());
+            assertTrue(s.contains("Notification succeeded ! Execution #1"));
+            assertTrue(s.contains("attached to execution #1"));
+            assertEquals(0, RundeckSingleFlight.get().size());
+        } finally {
+            simulator.stop();
+        }
+    }
+
+    public void testReuseRunningExecutionWithoutWaiting() throws Exception {
+        RundeckApiSimulator simulator = new RundeckApiSimulator(new RundeckApiSimulator.Profile().executions(500,
+                                                                                                             0,
+                                                                                                             0));
+        simulator.start();
+        try {
+            simulator.addJob("1", "my-project", "main-group", "my-job");
+            RundeckNotifier notifier = new RundeckNotifier("1", "option1=value", null, "", false, true, null, true);
+            notifier.getDescriptor().setRundeckInstance(simulator.createClient());
+            FreeStyleProject project = createFreeStyleProject();
+            project.getPublishersList().add(notifier);
+
+            // the build does not follow the execution : nobody is left in its flight
+            FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+            String s = FileUtils.readFileToString(build.getLogFile());
+            assertTrue(s.contains("Notification succeeded ! Execution #1"));
+            assertEquals(0, RundeckSingleFlight.get().size());
+
+            // so the next identical trigger, once the execution is finished, starts a new one
+            RundeckClient rundeck = simulator.createClient();
+            for (int i = 0; i < 100 && ExecutionStatus.RUNNING.equals(rundeck.getExecution(1L).getStatus()); i++) {
+                Thread.sleep(100);
+            }
+            build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+            s = FileUtils.readFileToString(build.getLogFile());
+            assertTrue(s.contains("Notification succeeded ! Execution #2"));
+            assertEquals(2, simulator.getExecutionsCount());
+            assertEquals(0, RundeckSingleFlight.get().size());
+        } finally {
+            simulator.stop();
+        }
+    }
+
+    public void testConcurrencyLimit() throws Exception {
+        RundeckApiSimulator simulator = new RundeckApiSimulator(new RundeckApiSimulator.Profile().executions(2000,
+                                                                                                             0,
+                                                                                                             0));
+        simulator.start();
+        try {
+            simulator.addJob("1", "my-project", "main-group", "my-job");
+            hudson.setNumExecutors(2);
+            FreeStyleProject project1 = createFreeStyleProject();
+            FreeStyleProject project2 = createFreeStyleProject();
+            for (FreeStyleProject project : Arrays.asList(project1, project2)) {
+                RundeckNotifier notifier = new RundeckNotifier("1", null, null, "", true, true);
+                notifier.getDescriptor().setRundeckInstance(simulator.createClient());
+                notifier.getDescriptor().setConcurrencyLimits("job.1=1");
+                project.getPublishersList().add(notifier);
+            }
+
+            Future<FreeStyleBuild> future1 = project1.scheduleBuild2(0);
+            Future<FreeStyleBuild> future2 = project2.scheduleBuild2(0);
+            FreeStyleBuild build1 = assertBuildStatusSuccess(future1.get());
+            FreeStyleBuild build2 = assertBuildStatusSuccess(future2.get());
+
+            assertEquals(2, simulator.getExecutionsCount());
+            String s = FileUtils.readFileToString(build1.getLogFile())
+                       + FileUtils.readFileToString(build2.getLogFile());
+            assertTrue(s.contains("Waiting for one of the 1 RunDeck execution slots of the job 1 "
+                                  + "(position in queue : 1)"));
+            assertTrue(s.contains("Got a RunDeck execution slot of the job 1 after"));
+            assertEquals(0, RundeckMetrics.get().notifierPermitsQueued.getValue());
+        } finally {
+            simulator.stop();
+        }
+    }
+
+    public void testInterruptedWhileWaitingForPermit() throws Exception {
+        RundeckApiSimulator simulator = new RundeckApiSimulator(new RundeckApiSimulator.Profile().executions(60000,
+                                                                                                             0,
+                                                                                                             0));
+        simulator.start();
+        try {
+            simulator.addJob("1", "my-project", "main-group", "my-job");
+            hudson.setNumExecutors(2);
+            FreeStyleProject project1 = createFreeStyleProject();
+            FreeStyleProject project2 = createFreeStyleProject();
+            for (FreeStyleProject project : Arrays.asList(project1, project2)) {
+                RundeckNotifier notifier = new RundeckNotifier("1", null, null, "", true, true);
+                notifier.getDescriptor().setRundeckInstance(simulator.createClient());
+                notifier.getDescriptor().setConcurrencyLimits("job.1=1");
+                project.getPublishersList().add(notifier);
+            }
+            RundeckNotificationSpool spool = hudson.getPlugin(RundeckPlugin.class).getSpool();
+
+            // the first build holds the only slot, the second one waits for it
+            Future<FreeStyleBuild> future1 = project1.scheduleBuild2(0);
+            for (int i = 0; i < 100 && simulator.getExecutionsCount() == 0; i++) {
+                Thread.sleep(100);
+            }
+            Future<FreeStyleBuild> future2 = project2.scheduleBuild2(0);
+            String log = "";
+            for (int i = 0; i < 100 && !log.contains("Waiting for one of the 1 RunDeck execution slots"); i++) {
+                Thread.sleep(100);
+                if (project2.getLastBuild() != null) {
+                    log = FileUtils.readFileToString(project2.getLastBuild().getLogFile());
+                }
+            }
+            assertEquals(2, spool.size());
+
+            // the aborted build leaves nothing in the spool : nothing to replay after a restart
+            project2.getLastBuild().getExecutor().interrupt();
+            FreeStyleBuild build2 = future2.get();
+            assertEquals(Result.ABORTED, build2.getResult());
+            assertEquals(1, simulator.getExecutionsCount());
+            assertEquals(1, spool.size());
+            assertTrue(spool.getDueEntries().isEmpty());
+
+            project1.getLastBuild().getExecutor().interrupt();
+            future1.get();
+            assertEquals(0, spool.size());
+        } finally {
+            simulator.stop();
+        }
+    }
+
+    public void testJobCatalog() throws Exception {
+        RundeckNotifier notifier = new RundeckNotifier("1", null, null, "", false, false);
+        RundeckDescriptor descriptor = notifier.getDescriptor();
+        descriptor.setRundeckInstance(new MockRundeckClient());
+        RundeckJobCatalog catalog = descriptor.getJobCatalog();
+        assertFalse(catalog.isLoaded());
+
+        assertEquals(2, catalog.refresh(descriptor.getRundeckInstance()));
+        assertTrue(catalog.isLoaded());
+        assertEquals("1", catalog.findJob("1").getId());
+        assertEquals("1", catalog.findJob("my-project:main-group/my-job").getId());
+        assertEquals("1", catalog.findJob("My-Project:Main-Group/My-Job").getId());
+        assertEquals("2", catalog.findJob("my-project:other-job").getId());
+        assertNull(catalog.findJob("my-project:main-group/unknown-job"));
+        assertEquals(2, catalog.findJobsByPrefix("my-project:", 10).size());
+        assertEquals(1, catalog.findJobsByPrefix("my-project:main", 10).size());
+        assertEquals(0, catalog.findJobsByPrefix("other-project:", 10).size());
+
+        assertEquals(FormValidation.Kind.OK, descriptor.doCheckJobIdentifier("my-project:main-group/my-job").kind);
+        assertEquals(FormValidation.Kind.WARNING, descriptor.doCheckJobIdentifier("3").kind);
+        assertEquals(1, descriptor.doAutoCompleteJobIdentifier("my-project:m").getValues().size());
+    }
+
+    public void testCircuitBreakerSurvivesConfigurationChanges() throws Exception {
+        RundeckNotifier notifier = new RundeckNotifier("1", null, null, "", false, false);
+        RundeckDescriptor descriptor = notifier.getDescriptor();
+        descriptor.setRundeckInstance(new MockRundeckClient());
+        RundeckCircuitBreaker circuitBreaker = descriptor.getConfiguration().getCircuitBreaker();
+        RundeckRateLimiter rateLimiter = descriptor.getConfiguration().getRateLimiter();
+        for (int i = 0; i < descriptor.getCircuitBreakerFailureThreshold(); i++) {
+            circuitBreaker.onFailure();
+        }
+        assertEquals(RundeckCircuitBreaker.State.OPEN, circuitBreaker.getState());
+
+        // same RunDeck instance, same settings : the open circuit is kept
+        descriptor.setConcurrencyLimits("job.1=2");
+        descriptor.setWebHookRelayPeers(null);
+        descriptor.setRundeckInstance(new MockRundeckClient());
+        assertSame(circuitBreaker, descriptor.getConfiguration().getCircuitBreaker());
+        assertSame(rateLimiter, descriptor.getConfiguration().getRateLimiter());
+        assertEquals(RundeckCircuitBreaker.State.OPEN, descriptor.getConfiguration().getCircuitBreaker().getState());
+
+        // another RunDeck instance starts with a closed circuit
+        descriptor.setRundeckInstance(new RundeckClient("http://rundeck.example.com:4440", "admin", "admin"));
+        assertNotSame(circuitBreaker, descriptor.getConfiguration().getCircuitBreaker());
+        assertNotSame(rateLimiter, descriptor.getConfiguration().getRateLimiter());
+        assertEquals(RundeckCircuitBreaker.State.CLOSED, descriptor.getConfiguration().getCircuitBreaker().getState());
+        descriptor.setConcurrencyLimits(null);
+    }
+
+    public void testRevisionIndex() throws Exception {
+        FreeStyleProject project = createFreeStyleProject();
+        project.getBuildersList().add(new MockBuilder(Result.SUCCESS));
+        project.setScm(createScm());
+
+        FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+        addScmCommit(build.getWorkspace(), "file-1", "first commit");
+        addScmCommit(build.getWorkspace(), "file-2", "second commit");
+
+        // the revisions of a failed build are attributed to the next successful build
+        project.getBuildersList().clear();
+        project.getBuildersList().add(new MockBuilder(Result.FAILURE));
+        assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+        addScmCommit(build.getWorkspace(), "file-3", "third commit");
+        project.getBuildersList().clear();
+        project.getBuildersList().add(new MockBuilder(Result.SUCCESS));
+        FreeStyleBuild successfulBuild = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+
+        List<Revision> revisions = RundeckRevisionIndex.get().getRevisions(project);
+        assertEquals(3, revisions.size());
+        assertEquals("third commit", revisions.get(0).getMessage());
+        assertEquals("first commit", revisions.get(2).getMessage());
+        for (Revision revision : revisions) {
+            assertEquals(successfulBuild.getNumber(), revision.getBuildNumber());
+            assertNotNull(revision.getRevision());
+        }
+    }
+
+    public void testNotificationSpool() throws Exception {
+        File directory = createTmpDir();
+        Properties options = new Properties();
+        options.setProperty("option1", "value 1\twith\nspecial chars");
+        RundeckNotificationSpool spool = new RundeckNotificationSpool(directory);
+        spool.load();
+        SpoolEntry waited = spool.enqueue(RundeckNotificationSpool.key("project", 1, "1"), "1", options, null, true);
+        assertSame(waited, spool.enqueue(RundeckNotificationSpool.key("project", 1, "1"), "1", options, null, true));
+        SpoolEntry notWaited = spool.enqueue(RundeckNotificationSpool.key("project", 2, "1"), "1", null, null, false);
+        assertTrue(spool.attemptFailed(notWaited));
+        assertTrue(spool.claim(waited));
+        assertFalse(spool.claim(waited));
+        spool.triggered(waited, 42L);
+        spool.release(waited);
+        assertEquals(2, spool.size());
+
+        // replay the journal, as after a restart
+        spool = new RundeckNotificationSpool(directory);
+        spool.load();
+        assertEquals(2, spool.size());
+        assertTrue(spool.containsExecution(42L));
+        waited = spool.enqueue(RundeckNotificationSpool.key("project", 1, "1"), "1", null, null, true);
+        assertEquals(Long.valueOf(42), waited.getExecutionId());
+        assertEquals("value 1\twith\nspecial chars", waited.getOptions().getProperty("option1"));
+        assertEquals(1, spool.getDueEntries().size());
+
+        spool.triggered(spool.enqueue(RundeckNotificationSpool.key("project", 2, "1"), "1", null, null, false), 43L);
+        spool.done(waited);
+        spool = new RundeckNotificationSpool(directory);
+        spool.load();
+        assertEquals(0, spool.size());
+
+        // crash during a compaction, between the deletion of the journal and the rename of the compacted one
+        spool.enqueue(RundeckNotificationSpool.key("project", 3, "1"), "1", null, null, false);
+        File compacted = new File(directory, "spool.journal.tmp");
+        assertTrue(new File(directory, "spool.journal").renameTo(compacted));
+        spool = new RundeckNotificationSpool(directory);
+        spool.load();
+        assertEquals(1, spool.size());
+        assertFalse(compacted.exists());
+    }
+
+    public void testNotificationSpooledWhenRundeckIsDown() throws Exception {
+        MockRundeckClient rundeck = new MockRundeckClient() {
+
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            public void ping() {
+                throw new RundeckApiException("Failed to ping RunDeck", new IOException("Connection refused"));
+            }
+        };
+        RundeckNotifier notifier = new RundeckNotifier("1", "build=$BUILD_NUMBER", "tags=web", "", false, true, null,
+                                                       false, true);
+        notifier.getDescriptor().setRundeckInstance(rundeck);
+        notifier.getDescriptor().getJobCatalog().refresh(rundeck);
+        RundeckNotificationSpool spool = hudson.getPlugin(RundeckPlugin.class).getSpool();
+        int spooled = spool.size();
+        FreeStyleProject project = createFreeStyleProject();
+        project.getPublishersList().add(notifier);
+
+        // spooled after the same checks as a live trigger
+        FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+        String s = FileUtils.readFileToString(build.getLogFile());
+        assertTrue(s.contains("RunDeck is not running !"));
+        assertTrue(s.contains("The node filters match 2 node(s) of the RunDeck project my-project"));
+        assertTrue(s.contains("the notification has been spooled, and will be retried in background"));
+        assertFalse(buildContainsAction(build, RundeckExecutionBuildBadgeAction.class));
+        assertEquals(spooled + 1, spool.size());
+        SpoolEntry entry = spool.enqueue(RundeckNotificationSpool.key(project.getFullName(), build.getNumber(), "1"),
+                                         "1", null, null, false);
+        assertEquals(String.valueOf(build.getNumber()), entry.getOptions().getProperty("build"));
+        assertEquals(1, entry.getAttempts());
+        spool.done(entry);
+
+        // an empty node set is refused, and not spooled
+        project.getPublishersList().replace(new RundeckNotifier("1", null, "tags=mobile", "", false, true, null,
+                                                                false, true));
+        build = assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+        assertTrue(FileUtils.readFileToString(build.getLogFile()).contains("match no node of the RunDeck project"));
+        assertEquals(spooled, spool.size());
+
+        // invalid options fail the build cleanly
+        project.getPublishersList().replace(new RundeckNotifier("1", "artifact=$ARTIFACT_NAME{[}", null, "", false,
+                                                                true));
+        build = assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+        assertTrue(FileUtils.readFileToString(build.getLogFile()).contains("Configuration error : "));
+        assertEquals(spooled, spool.size());
+    }
+
+    public void testQueueSorterYieldsToAnotherSorter() throws Exception {
+        // the only sorter, installed on startup
+        assertTrue(hudson.getQueue().getSorter() instanceof RundeckQueueSorter);
+        // after the sorters of the other plugins, by ordinal
+        assertTrue(RundeckQueueSorter.class.getAnnotation(Extension.class).ordinal() < 0);
+
+        // a sorter already installed by another plugin is kept
+        QueueSorter other = new QueueSorter() {
+
+            @Override
+            public void sortBuildableItems(List<BuildableItem> buildables) {
+            }
+        };
+        hudson.getQueue().setSorter(other);
+        QueueSorter.installDefaultQueueSorter();
+        assertSame(other, hudson.getQueue().getSorter());
+    }
+
+    public void testProjectIndex() throws Exception {
+        RundeckProjectIndex index = RundeckProjectIndex.get();
+        FreeStyleProject project = createFreeStyleProject("indexed-project");
+        assertSame(project, index.getProject("indexed-project"));
+        assertSame(project, index.getProject("/indexed-project/"));
+        assertNull(index.getProject("unknown-project"));
+        assertNull(index.getProject(" "));
+
+        project.renameTo("renamed-project");
+        assertNull(index.getProject("indexed-project"));
+        assertSame(project, index.getProject("renamed-project"));
+
+        FreeStyleProject copy = hudson.copy(project, "copied-project");
+        assertSame(copy, index.getProject("copied-project"));
+
+        project.delete();
+        assertNull(index.getProject("renamed-project"));
+        assertSame(copy, index.getProject("copied-project"));
+    }
+
+    public void testProjectIndexPermission() throws Exception {
+        RundeckProjectIndex index = RundeckProjectIndex.get();
+        FreeStyleProject project = createFreeStyleProject("secret-project");
+        index.clear();
+        hudson.setSecurityRealm(createDummySecurityRealm());
+        GlobalMatrixAuthorizationStrategy authorization = new GlobalMatrixAuthorizationStrategy();
+        authorization.add(Hudson.ADMINISTER, "alice");
+        hudson.setAuthorizationStrategy(authorization);
+
+        // built with the system permissions, even if the first caller is anonymous
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        SecurityContextHolder.getContext().setAuthentication(Hudson.ANONYMOUS);
+        try {
+            assertNull(index.getProject("secret-project"));
+            assertTrue(index.size() > 0);
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+        }
+        SecurityContextHolder.getContext().setAuthentication(ACL.SYSTEM);
+        try {
+            assertSame(project, index.getProject("secret-project"));
+        } finally {
+            SecurityContextHolder.getContext().setAuthentication(authentication);
+        }
+    }
+
+    public void testDeploymentLedger() throws Exception {
+        File directory = createTmpDir();
+        Properties nodeFilters = new Properties();
+        nodeFilters.setProperty("tags", "web");
+        nodeFilters.setProperty("env", "prod");
+        RundeckDeploymentLedger ledger = new RundeckDeploymentLedger(directory);
+        ledger.load();
+
+        ledger.triggered("project", 1, "1", nodeFilters, createExecution(10L, ExecutionStatus.RUNNING), false);
+        ledger.triggered("project", 2, "1", nodeFilters, createExecution(11L, ExecutionStatus.RUNNING), true);
+        ledger.triggered("project", 3, "1", null, createExecution(12L, ExecutionStatus.SUCCEEDED), false);
+        // already recorded
+        ledger.triggered("project", 3, "1", null, createExecution(13L, ExecutionStatus.RUNNING), false);
+        assertEquals(2, ledger.getRunningDeployments().size());
+
+        ledger.finished(createExecution(10L, ExecutionStatus.SUCCEEDED));
+        ledger.finished(createExecution(11L, ExecutionStatus.FAILED));
+        ledger.finished(createExecution(42L, ExecutionStatus.SUCCEEDED));
+        assertEquals(0, ledger.getRunningDeployments().size());
+
+        // the ledger is replayed on startup
+        ledger = new RundeckDeploymentLedger(directory);
+        ledger.load();
+        List<Deployment> deployments = ledger.getDeployments("project");
+        assertEquals(3, deployments.size());
+        assertEquals(3, deployments.get(0).getBuildNumber());
+        assertEquals("FAILED", deployments.get(1).getStatus());
+        assertEquals("env=prod,tags=web", deployments.get(2).getNodeFilter());
+        assertTrue(deployments.get(2).isSucceeded());
+        assertTrue(deployments.get(2).getEndedAt() > 0);
+
+        // the current deployment of each job and node filters : build 1 is still deployed on the web nodes
+        List<Deployment> current = ledger.getCurrentDeployments();
+        assertEquals(2, current.size());
+        assertEquals(Long.valueOf(10), current.get(1).getExecutionId());
+        assertEquals(Long.valueOf(12), current.get(0).getExecutionId());
+    }
+
+    public void testDeploymentLedgerCompaction() throws Exception {
+        File directory = createTmpDir();
+        RundeckDeploymentLedger ledger = new RundeckDeploymentLedger(directory);
+        ledger.load();
+        for (int build = 1; build <= 105; build++) {
+            RundeckExecution execution = createExecution(Long.valueOf(build), ExecutionStatus.SUCCEEDED);
+            ledger.triggered("project", build, "1", null, execution, false);
+        }
+        // executions triggered before a restart : an old one, and a recent one
+        RundeckJournal journal = new RundeckJournal(new File(directory, "deployments.ledger"), "ledger");
+        long old = System.currentTimeMillis() - 2 * 24 * 60 * 60 * 1000L;
+        journal.append("T", "old-project", "1", "1", "", "200", String.valueOf(old));
+        journal.append("T", "recent-project", "1", "1", "", "201", String.valueOf(System.currentTimeMillis()));
+        assertEquals(212, FileUtils.readLines(journal.getFile()).size());
+
+        ledger = new RundeckDeploymentLedger(directory);
+        ledger.load();
+        // the old execution is no longer followed
+        List<Deployment> running = ledger.getRunningDeployments();
+        assertEquals(1, running.size());
+        assertEquals(Long.valueOf(201), running.get(0).getExecutionId());
+        assertEquals("UNKNOWN", ledger.getDeployments("old-project").get(0).getStatus());
+
+        // only the deployments kept in memory are left in the ledger
+        assertEquals(100 * 2 + 2 + 1, FileUtils.readLines(journal.getFile()).size());
+        assertFalse(new File(directory, "deployments.ledger.tmp").exists());
+        ledger = new RundeckDeploymentLedger(directory);
+        ledger.load();
+        List<Deployment> deployments = ledger.getDeployments("project");
+        assertEquals(100, deployments.size());
+        assertEquals(105, deployments.get(0).getBuildNumber());
+        assertEquals(6, deployments.get(99).getBuildNumber());
+        assertEquals(Long.valueOf(105), ledger.getCurrentDeployments().get(0).getExecutionId());
+        assertEquals(1, ledger.getRunningDeployments().size());
+    }
+
+    public void testWebHookJournal() throws Exception {
+        RundeckWebHookJournal journal = RundeckWebHookJournal.get();
+        long received = journal.getReceived();
+        for (long id = 1; id <= journal.getCapacity() + 5; id++) {
+            WebHookEvent event = new WebHookEvent();
+            event.parsed(createExecution(id, ExecutionStatus.SUCCEEDED), 1000000L);
+            if (id % 2 == 1) {
+                event.matched("project", true);
+            }
+            journal.record(event);
+        }
+        WebHookEvent failed = new WebHookEvent();
+        failed.failed("invalid notification", 1000000L);
+        journal.record(failed);
+
+        assertEquals(received + journal.getCapacity() + 6, journal.getReceived());
+        List<WebHookEvent> events = journal.getEvents();
+        assertEquals(journal.getCapacity(), events.size());
+        assertEquals("invalid notification", events.get(0).getError());
+        assertEquals(Long.valueOf(journal.getCapacity() + 5), events.get(1).getExecutionId());
+        assertEquals(Arrays.asList("project"), events.get(1).getScheduledBuilds());
+        assertEquals(1, events.get(1).getParseMillis());
+        assertTrue(events.get(2).getMatchedTriggers().isEmpty());
+    }
+
+    public void testNodeInventory() throws Exception {
+        RundeckNotifier notifier = new RundeckNotifier("1", null, "tags=web+prod", "", false, true, null, false, true);
+        RundeckDescriptor descriptor = notifier.getDescriptor();
+        descriptor.setRundeckInstance(new MockRundeckClient());
+        descriptor.getJobCatalog().refresh(descriptor.getRundeckInstance());
+        RundeckNodeInventory inventory = descriptor.getNodeInventory();
+        assertEquals(0, inventory.getLoadedAt("my-project"));
+
+        assertEquals(1, inventory.findMatchingNodes(descriptor.getRundeckInstance(), "my-project",
+                                                    Util.loadProperties("tags=web+prod")).size());
+        assertTrue(inventory.getLoadedAt("my-project") > 0);
+        assertEquals(3, inventory.findMatchingNodes(descriptor.getRundeckInstance(), "my-project",
+                                                    Util.loadProperties("tags=web,db")).size());
+        assertEquals(1, inventory.findMatchingNodes(descriptor.getRundeckInstance(), "my-project",
+                                                    Util.loadProperties("name=web.*\nexclude-os-family=windows"))
+                                 .size());
+        assertEquals(0, inventory.findMatchingNodes(descriptor.getRundeckInstance(), "my-project",
+                                                    Util.loadProperties("hostname=unknown")).size());
+
+        assertEquals(FormValidation.Kind.OK, descriptor.doCheckNodeFilters("1", "tags=web").kind);
+        assertEquals(FormValidation.Kind.WARNING, descriptor.doCheckNodeFilters("1", "tags=mobile").kind);
+        assertEquals(FormValidation.Kind.WARNING, descriptor.doCheckNodeFilters("1", "color=blue").kind);
+        assertEquals(FormValidation.Kind.OK, descriptor.doCheckNodeFilters("1", "tags=$TAGS").kind);
+
+        FreeStyleProject project = createFreeStyleProject();
+        project.getBuildersList().add(new MockBuilder(Result.SUCCESS));
+        project.getPublishersList().add(notifier);
+        FreeStyleBuild build = assertBuildStatusSuccess(project.scheduleBuild2(0).get());
+        assertTrue(buildContainsAction(build, RundeckExecutionBuildBadgeAction.class));
+
+        project.getPublishersList().replace(new RundeckNotifier("1", null, "tags=mobile", "", false, true, null,
+                                                                false, true));
+        build = assertBuildStatus(Result.FAILURE, project.scheduleBuild2(0).get());
+        assertFalse(buildContainsAction(build, RundeckExecutionBuildBadgeAction.class));
+        String s = FileUtils.readFileToString(build.getLogFile());
+        assertTrue(s.contains("match no node of the RunDeck project my-project"));
+    }
+
+    public void testWebHookRelay() throws Exception {
+        File directory = createTmpDir();
+        // the notifications are queued and sent synchronously
+        RundeckWebHookRelay relay = new RundeckWebHookRelay(directory, SAME_THREAD);
+        relay.load();
+        String peer = getURL() + "plugin/rundeck/webhook/";
+        String executionXml = "<execution id=\"42\" href=\"http://localhost:4440/execution/follow/42\" "
+                              + "status=\"succeeded\"><user>admin</user>"
+                              + "<date-started unixtime=\"1310159014640\">2011-07-08T21:03:34Z</date-started>"
+                              + "<date-ended unixtime=\"1310159015640\">2011-07-08T21:03:35Z</date-ended>"
+                              + "<description>echo hello</description></execution>";
+        RundeckWebHookJournal journal = RundeckWebHookJournal.get();
+        long received = journal.getReceived();
+        long duplicates = RundeckMetrics.get().webHookDuplicates.getValue();
+
+        // the duplicate is not relayed
+        relay.relay(Arrays.asList(peer), 42L, "SUCCEEDED", executionXml);
+        relay.relay(Arrays.asList(peer), 42L, "SUCCEEDED", executionXml);
+        assertEquals(received + 1, journal.getReceived());
+        assertEquals(Long.valueOf(42), journal.getEvents().get(0).getExecutionId());
+        assertFalse(journal.getEvents().get(0).isDuplicate());
+        assertEquals(Integer.valueOf(0), relay.getPendingNotifications().get(peer));
+
+        // the same notification relayed by another peer is received, but not dispatched
+        RundeckWebHookRelay otherRelay = new RundeckWebHookRelay(createTmpDir(), SAME_THREAD);
+        otherRelay.relay(Arrays.asList(peer), 42L, "SUCCEEDED", executionXml);
+        assertEquals(received + 2, journal.getReceived());
+        assertTrue(journal.getEvents().get(0).isDuplicate());
+        assertTrue(journal.getEvents().get(0).getMatchedTriggers().isEmpty());
+        assertEquals(duplicates + 1, RundeckMetrics.get().webHookDuplicates.getValue());
+
+        // the notifications for a peer which is down are kept on disk
+        String deadPeer = "http://localhost:1/plugin/rundeck/webhook/";
+        relay.relay(Arrays.asList(deadPeer), 43L, "FAILED", executionXml);
+        assertEquals(Integer.valueOf(1), relay.getPendingNotifications().get(deadPeer));
+        RundeckWebHookRelay restarted = new RundeckWebHookRelay(directory, SAME_THREAD);
+        restarted.load();
+        assertEquals(Integer.valueOf(1), restarted.getPendingNotifications().get(deadPeer));
+        assertEquals(Integer.valueOf(0), restarted.getPendingNotifications().get(peer));
+
+        // crash during a compaction, between the deletion of the journal and the rename of the compacted one
+        File queue = new File(directory, "relay/" + URLEncoder.encode(deadPeer, "UTF-8") + ".queue");
+        assertTrue(queue.renameTo(new File(queue.getPath() + ".tmp")));
+        restarted = new RundeckWebHookRelay(directory, SAME_THREAD);
+        restarted.load();
+        assertEquals(Integer.valueOf(1), restarted.getPendingNotifications().get(deadPeer));
+        assertTrue(queue.exists());
+
+        // and dropped when the peer is no longer configured
+        restarted.retry(Arrays.asList(peer));
+        assertNull(restarted.getPendingNotifications().get(deadPeer));
+    }
+
+    public void testPollCursor() throws Exception {
+        RundeckTrigger.RundeckDescriptor triggerDescriptor = hudson.getDescriptorByType(
+                RundeckTrigger.RundeckDescriptor.class);
+        final List<Long> dispatched = new ArrayList<Long>();
+        RundeckTrigger trigger = new RundeckTrigger(false, null, Arrays.asList("SUCCEEDED"), "my-project") {
+
+            @Override
+            public boolean onNotification(RundeckExecution execution) {
+                dispatched.add(execution.getId());
+                return true;
+            }
+        };
+        List<RundeckTrigger> triggers = Arrays.asList(trigger);
+        RundeckTriggerPoller poller = new RundeckTriggerPoller();
+        HistoryRundeckClient rundeck = new HistoryRundeckClient();
+
+        // the first poll only initializes the cursor, the running executions will be dispatched when they finish
+        rundeck.addEvents(4, 1, EventStatus.SUCCEEDED);
+        rundeck.running.add(5L);
+        assertEquals(0, poller.poll(rundeck, "my-project", triggers, triggerDescriptor));
+        assertTrue(dispatched.isEmpty());
+        assertEquals(new PollCursor(5, Collections.singleton(5L)), triggerDescriptor.getPollCursor("my-project"));
+
+        // 5 ended after 6 : the history stops at 4, already seen
+        rundeck.running.clear();
+        rundeck.addEvents(6, 6, EventStatus.SUCCEEDED);
+        rundeck.addEvents(7, 7, EventStatus.FAILED);
+        rundeck.addEvents(5, 5, EventStatus.SUCCEEDED);
+        rundeck.historyCalls = 0;
+        assertEquals(2, poller.poll(rundeck, "my-project", triggers, triggerDescriptor));
+        assertEquals(Arrays.asList(5L, 6L), dispatched);
+        assertEquals(1, rundeck.historyCalls);
+        assertEquals(new PollCursor(7, Collections.<Long> emptySet()), triggerDescriptor.getPollCursor("my-project"));
+
+        // nothing new
+        dispatched.clear();
+        assertEquals(0, poller.poll(rundeck, "my-project", triggers, triggerDescriptor));
+        assertTrue(dispatched.isEmpty());
+
+        // a long outage : only the last pages are fetched
+        rundeck.addEvents(500, 8, EventStatus.SUCCEEDED);
+        rundeck.historyCalls = 0;
+        assertEquals(200, poller.poll(rundeck, "my-project", triggers, triggerDescriptor));
+        assertEquals(10, rundeck.historyCalls);
+        assertEquals(Long.valueOf(301), dispatched.get(0));
+        assertEquals(Long.valueOf(500), dispatched.get(199));
+        assertEquals(500, triggerDescriptor.getPollCursor("my-project").getLastExecutionId());
+    }
+
+    public void testPollCursorWithEmptyHistory() throws Exception {
+        RundeckTrigger.RundeckDescriptor triggerDescriptor = hudson.getDescriptorByType(
+                RundeckTrigger.RundeckDescriptor.class);
+        final List<Long> dispatched = new ArrayList<Long>();
+        RundeckTrigger trigger = new RundeckTrigger(false, null, Arrays.asList("SUCCEEDED"), "new-project") {
+
+            @Override
+            public boolean onNotification(RundeckExecution execution) {
+                dispatched.add(execution.getId());
+                return true;
+            }
+        };
+        List<RundeckTrigger> triggers = Arrays.asList(trigger);
+        RundeckTriggerPoller poller = new RundeckTriggerPoller();
+        HistoryRundeckClient rundeck = new HistoryRundeckClient();
+
+        // the cursor starts at the running executions, not at 0
+        rundeck.running.add(41L);
+        rundeck.running.add(42L);
+        assertEquals(0, poller.poll(rundeck, "new-project", triggers, triggerDescriptor));
+        PollCursor cursor = triggerDescriptor.getPollCursor("new-project");
+        assertEquals(42, cursor.getLastExecutionId());
+        assertFalse(cursor.isNew(40L));
+        assertTrue(cursor.isNew(41L));
+
+        rundeck.running.remove(41L);
+        rundeck.addEvents(43, 43, EventStatus.SUCCEEDED);
+        rundeck.addEvents(41, 41, EventStatus.SUCCEEDED);
+        assertEquals(2, poller.poll(rundeck, "new-project", triggers, triggerDescriptor));
+        assertEquals(Arrays.asList(41L, 43L), dispatched);
+        assertEquals(new PollCursor(43, Collections.singleton(42L)), triggerDescriptor.getPollCursor("new-project"));
+    }
+
+    public void testTriggerLatency() throws Exception {
+        RundeckTriggerLatency.Stage stage = new RundeckTriggerLatency.Stage();
+        assertNull(stage.getP50());
+        for (long millis = 100; millis > 0; millis--) {
+            stage.record(millis);
+        }
+        assertEquals(Long.valueOf(50), stage.getP50());
+        assertEquals(Long.valueOf(90), stage.getP90());
+        assertEquals(Long.valueOf(99), stage.getP99());
+        assertEquals(Long.valueOf(100), stage.getMax());
+
+        FreeStyleProject project = createFreeStyleProject();
+        RundeckTrigger trigger = new RundeckTrigger(false, null, null, null, null, 0, 1);
+        project.addTrigger(trigger);
+        assertEquals(FormValidation.Kind.OK, trigger.getDescriptor().doCheckPriority("").kind);
+        assertEquals(FormValidation.Kind.ERROR, trigger.getDescriptor().doCheckPriority("6").kind);
+        assertEquals(FormValidation.Kind.ERROR, trigger.getDescriptor().doCheckQuietPeriod("soon").kind);
+
+        RundeckTriggerLatency latency = RundeckTriggerLatency.get();
+        long started = latency.getTotal().getCount();
+        RundeckExecution execution = createExecution(1L, ExecutionStatus.SUCCEEDED);
+        execution.setEndedAt(new Date(System.currentTimeMillis() - 2000));
+        assertTrue(trigger.onNotification(execution));
+        for (int i = 0; i < 100 && project.getLastBuild() == null; i++) {
+            Thread.sleep(100);
+        }
+        waitUntilNoActivity();
+
+        RundeckCause cause = project.getLastBuild().getCause(RundeckCause.class);
+        assertEquals(Integer.valueOf(1), cause.getPriority());
+        assertTrue(cause.getNotificationLatencyMillis() >= 2000);
+        assertTrue(cause.getQueueLatencyMillis() >= 0);
+        assertEquals(cause.getNotificationLatencyMillis() + cause.getQueueLatencyMillis(),
+                     cause.getTotalLatencyMillis().longValue());
+        assertEquals(started + 1, latency.getTotal().getCount());
+        assertTrue(latency.getTotal().getMax() >= 2000);
+    }
+
+    private RundeckExecution createExecution(Long id, ExecutionStatus status) {
+        RundeckExecution execution = new RundeckExecution();
+        execution.setId(id);
+        execution.setStatus(status);
+        execution.setStartedAt(new Date(1310159014640L));
+        if (!ExecutionStatus.RUNNING.equals(status)) {
+            execution.setEndedAt(new Date(1310159015640L));
+        }
+        return execution;
     }
 
     private String createOptions() {
@@ -279,9 +1105,13 @@ public class RundeckNotifierTest extends HudsonTestCase {
     }
 
     private void addScmCommit(FilePath workspace, String commitMessage) throws Exception {
+        addScmCommit(workspace, "new-file", commitMessage);
+    }
+
+    private void addScmCommit(FilePath workspace, String fileName, String commitMessage) throws Exception {
         SVNClientManager svnm = SubversionSCM.createSvnClientManager();
 
-        FilePath newFilePath = workspace.child("new-file");
+        FilePath newFilePath = workspace.child(fileName);
         File newFile = new File(newFilePath.getRemote());
         newFilePath.touch(System.currentTimeMillis());
         svnm.getWCClient().doAdd(newFile, false, false, false, SVNDepth.INFINITY, false, false);
@@ -346,6 +1176,42 @@ public class RundeckNotifierTest extends HudsonTestCase {
             return job;
         }
 
+        @Override
+        public List<RundeckProject> getProjects() {
+            RundeckProject project = new RundeckProject();
+            project.setName("my-project");
+            return Collections.singletonList(project);
+        }
+
+        @Override
+        public List<RundeckJob> getJobs(String project) {
+            return Arrays.asList(initJob("1", "main-group", "my-job"), initJob("2", null, "other-job"));
+        }
+
+        @Override
+        public List<RundeckNode> getNodes(String project) {
+            return Arrays.asList(initNode("web1", "unix", "web", "prod"), initNode("db1", "unix", "db", "prod"),
+                                 initNode("web2", "windows", "web", "test"));
+        }
+
+        private RundeckNode initNode(String name, String osFamily, String... tags) {
+            RundeckNode node = new RundeckNode();
+            node.setName(name);
+            node.setHostname(name + ".example.com");
+            node.setOsFamily(osFamily);
+            node.setTags(Arrays.asList(tags));
+            return node;
+        }
+
+        private RundeckJob initJob(String id, String group, String name) {
+            RundeckJob job = new RundeckJob();
+            job.setId(id);
+            job.setProject("my-project");
+            job.setGroup(group);
+            job.setName(name);
+            return job;
+        }
+
         private RundeckExecution initExecution(ExecutionStatus status) {
             RundeckExecution execution = new RundeckExecution();
             execution.setId(1L);
@@ -362,4 +1228,64 @@ public class RundeckNotifierTest extends HudsonTestCase {
         }
 
     }
+
+    /**
+     * Mock {@link RundeckClient} with a history of executions, for the {@link RundeckTriggerPoller}
+     */
+    private static class HistoryRundeckClient extends MockRundeckClient {
+
+        private static final long serialVersionUID = 1L;
+
+        /** events of the history, most recent (end date) first */
+        private final List<RundeckEvent> history = new ArrayList<RundeckEvent>();
+
+        private final List<Long> running = new ArrayList<Long>();
+
+        private int historyCalls;
+
+        /**
+         * Add the events of the given executions at the top of the history, ended in descending order of their ids
+         */
+        private void addEvents(long fromId, long toId, EventStatus status) {
+            List<RundeckEvent> events = new ArrayList<RundeckEvent>();
+            for (long id = fromId; id >= toId; id--) {
+                RundeckEvent event = new RundeckEvent();
+                event.setExecutionId(id);
+                event.setStatus(status);
+                event.setProject("my-project");
+                events.add(event);
+            }
+            history.addAll(0, events);
+        }
+
+        @Override
+        public RundeckHistory getHistory(String project, Long max, Long offset) {
+            historyCalls++;
+            RundeckHistory page = new RundeckHistory();
+            int from = (int) Math.min(offset, history.size());
+            int to = (int) Math.min(offset + max, history.size());
+            page.setEvents(new ArrayList<RundeckEvent>(history.subList(from, to)));
+            return page;
+        }
+
+        @Override
+        public List<RundeckExecution> getRunningExecutions(String project) {
+            List<RundeckExecution> executions = new ArrayList<RundeckExecution>();
+            for (Long id : running) {
+                RundeckExecution execution = new RundeckExecution();
+                execution.setId(id);
+                execution.setStatus(ExecutionStatus.RUNNING);
+                executions.add(execution);
+            }
+            return executions;
+        }
+
+        @Override
+        public RundeckExecution getExecution(Long executionId) {
+            RundeckExecution execution = new RundeckExecution();
+            execution.setId(executionId);
+            execution.setStatus(ExecutionStatus.SUCCEEDED);
+            return execution;
+        }
+    }
 }
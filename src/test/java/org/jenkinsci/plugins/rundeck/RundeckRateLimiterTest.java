@@ -0,0 +1,44 @@
+package org.jenkinsci.plugins.rundeck;
+
+import junit.framework.TestCase;
+
+/**
+ * Test the {@link RundeckRateLimiter}
+ */
+public class RundeckRateLimiterTest extends TestCase {
+
+    public void testBurst() throws Exception {
+        RundeckRateLimiter rateLimiter = new RundeckRateLimiter(0.01, 3);
+
+        assertTrue(rateLimiter.tryAcquire());
+        assertTrue(rateLimiter.tryAcquire());
+        assertTrue(rateLimiter.tryAcquire());
+        assertFalse(rateLimiter.tryAcquire());
+        assertFalse(rateLimiter.tryAcquire());
+    }
+
+    public void testRefill() throws Exception {
+        RundeckRateLimiter rateLimiter = new RundeckRateLimiter(10, 2);
+        assertTrue(rateLimiter.tryAcquire());
+        assertTrue(rateLimiter.tryAcquire());
+        assertFalse(rateLimiter.tryAcquire());
+
+        // 1 token every 100 ms
+        Thread.sleep(150);
+        assertTrue(rateLimiter.tryAcquire());
+        assertFalse(rateLimiter.tryAcquire());
+
+        // the bucket never holds more than the burst
+        Thread.sleep(1000);
+        assertTrue(rateLimiter.tryAcquire());
+        assertTrue(rateLimiter.tryAcquire());
+        assertFalse(rateLimiter.tryAcquire());
+    }
+
+    public void testDisabled() throws Exception {
+        RundeckRateLimiter rateLimiter = new RundeckRateLimiter(0, 1);
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(rateLimiter.tryAcquire());
+        }
+    }
+}